@@ -0,0 +1,109 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An advice standing for multiple advice of the same rule on the same
+ * text. The group takes the location of its first member, and its message
+ * is the one of this member, followed by the locations of the other
+ * members. Only the first {@value #MAX_LOCATIONS} of these locations are
+ * written out, so that the size of the message, and the time taken to
+ * compute it, do not depend on the size of the group. Renderers that show
+ * every location get them from {@link #getMembers()}.
+ * @author Sylvain Hallé
+ */
+public class AdviceGroup extends Advice
+{
+	/**
+	 * The maximum number of other locations written in the message of a
+	 * group
+	 */
+	public static final int MAX_LOCATIONS = 10;
+
+	/**
+	 * The advice in this group, in the order they were generated
+	 */
+	/*@ non_null @*/ protected final List<Advice> m_members;
+
+	/**
+	 * Creates a new group of advice
+	 * @param members The advice in the group. It must contain at least one
+	 * element.
+	 */
+	public AdviceGroup(/*@ non_null @*/ List<Advice> members)
+	{
+		super(members.get(0).getRule(), members.get(0).getRange(), getMessage(members), members.get(0).getReferenceString(), members.get(0).getLine());
+		Advice first = members.get(0);
+		m_members = Collections.unmodifiableList(members);
+		m_originalRange = first.m_originalRange;
+		m_shortMessage = first.getShortMessage();
+		m_replacements = first.getReplacements();
+	}
+
+	/**
+	 * Gets the advice in this group
+	 * @return The list of advice. This list cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<Advice> getMembers()
+	{
+		return m_members;
+	}
+
+	/**
+	 * Gets the number of advice in this group
+	 * @return The number of advice
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_members.size();
+	}
+
+	/**
+	 * Creates the message of a group
+	 * @param members The advice in the group
+	 * @return The message
+	 */
+	/*@ non_null @*/ protected static String getMessage(/*@ non_null @*/ List<Advice> members)
+	{
+		StringBuilder out = new StringBuilder();
+		out.append(members.get(0).getMessage());
+		if (members.size() < 2)
+		{
+			return out.toString();
+		}
+		out.append(" (").append(members.size()).append(" occurrences; also at ");
+		int shown = Math.min(members.size() - 1, MAX_LOCATIONS);
+		for (int i = 1; i <= shown; i++)
+		{
+			if (i > 1)
+			{
+				out.append(", ");
+			}
+			out.append(members.get(i).getPositionRange().getStart());
+		}
+		if (members.size() - 1 > shown)
+		{
+			out.append(" and ").append(members.size() - 1 - shown).append(" more");
+		}
+		out.append(")");
+		return out.toString();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+/**
+ * Collapses the advice that a rule repeats on the same text. Advice are
+ * grouped by rule name and by the text they apply to, ignoring case and
+ * runs of whitespace; each group of more than one advice is replaced by
+ * an {@link AdviceGroup}, placed where its first member was. An advice
+ * that is not repeated is kept as is.
+ * <p>
+ * Since a misspelled word typically generates the same advice at each of
+ * its occurrences, grouping reduces the size of the output, and the time
+ * spent rendering it, without losing the locations of the advice.
+ * @author Sylvain Hallé
+ */
+public class AdviceGrouper
+{
+	/**
+	 * Creates a new advice grouper
+	 */
+	public AdviceGrouper()
+	{
+		super();
+	}
+
+	/**
+	 * Groups a list of advice
+	 * @param advice The list of advice
+	 * @return The grouped list of advice
+	 */
+	/*@ non_null @*/ public List<Advice> group(/*@ non_null @*/ List<Advice> advice)
+	{
+		if (advice.size() < 2)
+		{
+			return advice;
+		}
+		Map<String,List<Advice>> groups = new LinkedHashMap<String,List<Advice>>();
+		Map<AnnotatedString,String> texts = new IdentityHashMap<AnnotatedString,String>();
+		for (Advice ad : advice)
+		{
+			String key = ad.getRule().getName() + "\u0000" + getMatchedText(ad, texts);
+			List<Advice> group = groups.get(key);
+			if (group == null)
+			{
+				group = new ArrayList<Advice>();
+				groups.put(key, group);
+			}
+			group.add(ad);
+		}
+		if (groups.size() == advice.size())
+		{
+			// Nothing is repeated
+			return advice;
+		}
+		List<Advice> out_list = new ArrayList<Advice>(groups.size());
+		for (List<Advice> group : groups.values())
+		{
+			out_list.add(group.size() == 1 ? group.get(0) : new AdviceGroup(group));
+		}
+		return out_list;
+	}
+
+	/**
+	 * Gets the normalized text an advice applies to
+	 * @param ad The advice
+	 * @param texts A cache of the contents of the strings the advice refer
+	 * to
+	 * @return The text, in lowercase and with runs of whitespace replaced
+	 * by a single space
+	 */
+	/*@ non_null @*/ protected static String getMatchedText(/*@ non_null @*/ Advice ad, /*@ non_null @*/ Map<AnnotatedString,String> texts)
+	{
+		AnnotatedString reference = ad.getReferenceString();
+		String text = texts.get(reference);
+		if (text == null)
+		{
+			text = reference.toString();
+			texts.put(reference, text);
+		}
+		Range r = ad.getRange();
+		int start = Math.max(0, Math.min(r.getStart(), text.length()));
+		int end = Math.max(start, Math.min(r.getEnd() + 1, text.length()));
+		return text.substring(start, end).trim().replaceAll("\\s+", " ").toLowerCase();
+	}
+}
@@ -25,7 +25,18 @@ import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.util.AnsiPrinter;
 
 /**
- * Renders a list of advice in a special format
+ * Renders a list of advice in a special format.
+ * <p>
+ * A renderer can be used in two ways. The advice of each file can be
+ * given with {@link #addAdvice(String, AnnotatedString, List) addAdvice()},
+ * and everything is rendered at once by {@link #render()}; the renderer
+ * then keeps the contents and advice of every file until the end. Files
+ * can also be given one at a time, between a call to {@link #begin()} and
+ * a call to {@link #end()}, with
+ * {@link #fileDone(String, AnnotatedString, List) fileDone()}; a renderer
+ * that can print a file on its own does it as soon as the file is done,
+ * and does not keep it afterwards. By default, these methods fall back on
+ * the first way.
  * @author Sylvain Hallé
  */
 public abstract class AdviceRenderer 
@@ -89,6 +100,38 @@ public abstract class AdviceRenderer
 		m_originalStrings.put(filename, contents);
 	}
 	
+	/**
+	 * Signals the start of a rendering where the files are given one at
+	 * a time. The default implementation does nothing.
+	 */
+	public void begin()
+	{
+		// Nothing to do
+	}
+
+	/**
+	 * Gives the advice of a file that has been completely linted. The
+	 * default implementation keeps the advice until {@link #end()} is
+	 * called.
+	 * @param filename The filename
+	 * @param contents The contents of the corresponding file
+	 * @param advice The list of advice
+	 */
+	public void fileDone(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		addAdvice(filename, contents, advice);
+	}
+
+	/**
+	 * Signals that all the files have been given. The default
+	 * implementation renders the advice kept so far with
+	 * {@link #render()}.
+	 */
+	public void end()
+	{
+		render();
+	}
+
 	/**
 	 * Renders the list of advice for each of the files given to the
 	 * renderer, and prints them to the {@link AnsiPrinter} associated to
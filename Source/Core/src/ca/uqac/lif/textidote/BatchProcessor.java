@@ -0,0 +1,730 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.languagetool.Language;
+
+import ca.uqac.lif.json.JsonElement;
+import ca.uqac.lif.json.JsonFalse;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+import ca.uqac.lif.json.JsonString;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.cleaning.CompositeCleaner;
+import ca.uqac.lif.textidote.render.JsonAdviceRenderer;
+import ca.uqac.lif.textidote.rules.CheckLanguage;
+import ca.uqac.lif.textidote.rules.LanguageFactory;
+import ca.uqac.lif.util.MetricRegistry;
+
+/**
+ * Lints a stream of small documents given as newline-delimited JSON
+ * requests, and writes one JSON result per line. Each request is a JSON
+ * object of the form:
+ * <pre>
+ * {"id": 1, "text": "Some \\emph{text}", "type": "tex", "language": "en",
+ *  "options": {"ignore": "sh:001,sh:002", "read-all": true}}
+ * </pre>
+ * Only the <tt>text</tt> field is mandatory. The type (<tt>tex</tt>,
+ * <tt>md</tt> or <tt>txt</tt>) and the language default to the values
+ * given when the processor is created; no language check is performed if
+ * no language is specified. Since snippets seldom contain a preamble,
+ * <tt>read-all</tt> is true unless stated otherwise.
+ * <p>
+ * Each result has the same format as the output of
+ * {@link JsonAdviceRenderer}, on a single line, with the <tt>id</tt> of the
+ * request (if any) added to it. A request that cannot be processed
+ * produces a line with an <tt>error</tt> field instead.
+ * <p>
+ * Requests are processed concurrently by a pool of threads, but results
+ * are written in the order the requests were read. At most a fixed number
+ * of requests are pending at any time; reading the input pauses when this
+ * limit is reached. Requests with the same configuration share a single
+ * {@link LintEngine}, so that rules are loaded once, and LanguageTool once
+ * per thread. At most {@link #MAX_ENGINES} engines are kept at any time.
+ * @author Sylvain Hallé
+ */
+public class BatchProcessor
+{
+	/**
+	 * A special value indicating the end of the stream of results
+	 */
+	protected static final Future<String> s_endOfResults = CompletableFuture.completedFuture(null);
+
+	/**
+	 * The cleaner applied before any file-specific cleaner
+	 */
+	/*@ non_null @*/ protected final CompositeCleaner m_cleaner;
+
+	/**
+	 * The type of the documents when not given by the request
+	 */
+	/*@ non_null @*/ protected Linter.Language m_type = Linter.Language.UNSPECIFIED;
+
+	/**
+	 * The code of the language to check when not given by the request; the
+	 * empty string indicates that no language is checked
+	 */
+	/*@ non_null @*/ protected String m_language = "";
+
+	/**
+	 * The code of the author's first language; may be the empty string
+	 */
+	/*@ non_null @*/ protected String m_firstLanguage = "";
+
+	/**
+	 * The words to ignore when checking the language
+	 */
+	/*@ non_null @*/ protected List<String> m_dictionary = new ArrayList<String>();
+
+	/**
+	 * The folder containing n-gram data, if any
+	 */
+	/*@ null @*/ protected File m_ngramDir = null;
+
+	/**
+	 * The LaTeX environments to remove
+	 */
+	/*@ non_null @*/ protected List<String> m_envBlacklist = new ArrayList<String>();
+
+	/**
+	 * The LaTeX macros to remove
+	 */
+	/*@ non_null @*/ protected List<String> m_macBlacklist = new ArrayList<String>();
+
+	/**
+	 * The rules to ignore in every request
+	 */
+	/*@ non_null @*/ protected List<String> m_ruleBlacklist = new ArrayList<String>();
+
+	/**
+	 * The maximum time each rule can spend on a document, in milliseconds;
+	 * 0 means no limit
+	 */
+	protected long m_ruleBudget = 0;
+
+	/**
+	 * The maximum time all the rules can spend on a document, in
+	 * milliseconds; 0 means no limit
+	 */
+	protected long m_documentBudget = 0;
+
+	/**
+	 * The number of threads processing requests
+	 */
+	protected int m_numThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The maximum number of requests waiting for their result to be written
+	 */
+	protected int m_queueSize = 4 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The maximum number of engines kept at any time. Each engine holds its
+	 * own copy of the rules and one instance of LanguageTool per thread;
+	 * when this number is reached, the engine used least recently is
+	 * dropped.
+	 */
+	public static final int MAX_ENGINES = 16;
+
+	/**
+	 * The engines created so far, indexed by their configuration, from the
+	 * least to the most recently used
+	 */
+	/*@ non_null @*/ protected final Map<String,LintEngine> m_engines = new LinkedHashMap<String,LintEngine>(16, 0.75f, true)
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,LintEngine> eldest)
+		{
+			return size() > MAX_ENGINES;
+		}
+	};
+
+	/**
+	 * Creates a new batch processor
+	 * @param cleaner The cleaner applied before any file-specific cleaner
+	 */
+	public BatchProcessor(/*@ non_null @*/ CompositeCleaner cleaner)
+	{
+		super();
+		m_cleaner = cleaner;
+	}
+
+	/**
+	 * Creates a new batch processor
+	 */
+	public BatchProcessor()
+	{
+		this(new CompositeCleaner());
+	}
+
+	/**
+	 * Sets the type of the documents when not given by the request
+	 * @param type The type
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setType(/*@ non_null @*/ Linter.Language type)
+	{
+		m_type = type;
+		return this;
+	}
+
+	/**
+	 * Sets the language to check when not given by the request
+	 * @param lang_code The code of the language; the empty string disables
+	 * the language check
+	 * @param first_lang_code The code of the author's first language; may be
+	 * the empty string
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setLanguage(/*@ non_null @*/ String lang_code, /*@ non_null @*/ String first_lang_code)
+	{
+		m_language = lang_code;
+		m_firstLanguage = first_lang_code;
+		return this;
+	}
+
+	/**
+	 * Sets the words to ignore when checking the language
+	 * @param dictionary The list of words
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setDictionary(/*@ non_null @*/ List<String> dictionary)
+	{
+		m_dictionary = dictionary;
+		return this;
+	}
+
+	/**
+	 * Sets the folder containing n-gram data
+	 * @param ngram_dir The folder, or {@code null} to disable n-gram rules
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setLanguageModel(/*@ null @*/ File ngram_dir)
+	{
+		m_ngramDir = ngram_dir;
+		return this;
+	}
+
+	/**
+	 * Sets the LaTeX environments and macros to remove
+	 * @param env_blacklist The environments
+	 * @param mac_blacklist The macros
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setRemoved(/*@ non_null @*/ List<String> env_blacklist, /*@ non_null @*/ List<String> mac_blacklist)
+	{
+		m_envBlacklist = env_blacklist;
+		m_macBlacklist = mac_blacklist;
+		return this;
+	}
+
+	/**
+	 * Sets the rules to ignore in every request
+	 * @param rule_blacklist The names of the rules
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setIgnored(/*@ non_null @*/ List<String> rule_blacklist)
+	{
+		m_ruleBlacklist = rule_blacklist;
+		return this;
+	}
+
+	/**
+	 * Sets the time the rules can spend on each request
+	 * @param rule_budget The maximum time each rule can spend on a request,
+	 * in milliseconds; 0 means no limit
+	 * @param document_budget The maximum time all the rules together can
+	 * spend on a request, in milliseconds; 0 means no limit
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setTimeBudget(long rule_budget, long document_budget)
+	{
+		m_ruleBudget = rule_budget;
+		m_documentBudget = document_budget;
+		return this;
+	}
+
+	/**
+	 * Sets the number of threads processing requests
+	 * @param num_threads The number of threads
+	 * @param queue_size The maximum number of requests waiting for their
+	 * result to be written
+	 * @return This processor
+	 */
+	/*@ non_null @*/ public BatchProcessor setThreads(int num_threads, int queue_size)
+	{
+		m_numThreads = Math.max(1, num_threads);
+		m_queueSize = Math.max(1, queue_size);
+		return this;
+	}
+
+	/**
+	 * Processes all the requests of an input stream, until its end.
+	 * @param in The stream to read requests from
+	 * @param out The stream to write results to
+	 * @return The number of requests processed
+	 * @throws IOException If the input stream cannot be read
+	 */
+	public int process(/*@ non_null @*/ InputStream in, /*@ non_null @*/ final PrintStream out) throws IOException
+	{
+		final BlockingQueue<Future<String>> pending = new ArrayBlockingQueue<Future<String>>(m_queueSize);
+		final ThreadPoolExecutor pool = (ThreadPoolExecutor) Executors.newFixedThreadPool(m_numThreads);
+		MetricRegistry metrics = MetricRegistry.getDefault();
+		metrics.gauge("textidote_batch_queue_depth", "Number of requests waiting for their result to be written", new MetricRegistry.Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return pending.size();
+			}
+		});
+		metrics.gauge("textidote_batch_active_threads", "Number of threads processing a request", new MetricRegistry.Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return pool.getActiveCount();
+			}
+		});
+		Thread writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while (true)
+					{
+						Future<String> result = pending.take();
+						if (result == s_endOfResults)
+						{
+							break;
+						}
+						out.println(getResult(result));
+						out.flush();
+					}
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		writer.start();
+		int count = 0;
+		boolean interrupted = false;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, "utf-8"));
+		try
+		{
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				if (line.trim().isEmpty())
+				{
+					continue;
+				}
+				pending.put(pool.submit(new BatchTask(line)));
+				metrics.counter("textidote_batch_requests_total", "Number of requests read by the batch processor").increment();
+				count++;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			interrupted = true;
+		}
+		finally
+		{
+			// Whatever stopped the reading, the writer must be told to stop
+			// and must be waited for, otherwise it waits forever
+			interrupted = stopWriter(writer, pending, interrupted);
+			pool.shutdownNow();
+			if (interrupted)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Stops the thread writing the results, and waits for it to end
+	 * @param writer The thread
+	 * @param pending The results waiting to be written
+	 * @param interrupted Set to {@code true} if the writer should stop
+	 * right away; otherwise, it first writes the pending results
+	 * @return {@code true} if the current thread has been interrupted,
+	 * either before or during this call
+	 */
+	protected static boolean stopWriter(/*@ non_null @*/ Thread writer, /*@ non_null @*/ BlockingQueue<Future<String>> pending, boolean interrupted)
+	{
+		if (!interrupted)
+		{
+			try
+			{
+				pending.put(s_endOfResults);
+				writer.join();
+				return false;
+			}
+			catch (InterruptedException e)
+			{
+				// Stop the writer right away
+			}
+		}
+		writer.interrupt();
+		while (writer.isAlive())
+		{
+			try
+			{
+				writer.join();
+			}
+			catch (InterruptedException e)
+			{
+				// Keep waiting; the writer has already been interrupted
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Processes a single request.
+	 * @param request The request, as a line of JSON
+	 * @return The result, as a line of JSON
+	 */
+	/*@ non_null @*/ public String process(/*@ non_null @*/ String request)
+	{
+		JsonElement id = null;
+		try
+		{
+			JsonElement e = new JsonParser().parse(request);
+			if (!(e instanceof JsonMap))
+			{
+				return getError(null, "Request is not a JSON object");
+			}
+			JsonMap j_request = (JsonMap) e;
+			id = j_request.get("id");
+			if (j_request.containsKey("metrics"))
+			{
+				return getMetrics(id, getString(j_request, "metrics", "json"));
+			}
+			String text = getString(j_request, "text", null);
+			if (text == null)
+			{
+				return getError(id, "Missing text");
+			}
+			String lang_code = getString(j_request, "language", m_language);
+			LintEngine engine = getEngine(getType(getString(j_request, "type", null)), lang_code, getOptions(j_request));
+			AnnotatedString as = AnnotatedString.read(new Scanner(text));
+			List<Advice> advice;
+			try
+			{
+				advice = engine.lint(as).getAdvice();
+			}
+			catch (EmptyInputException ex)
+			{
+				advice = new ArrayList<Advice>();
+			}
+			JsonMap result = JsonAdviceRenderer.getReport(advice, lang_code);
+			if (id != null)
+			{
+				result.put("id", id);
+			}
+			return JsonAdviceRenderer.toSingleLine(result);
+		}
+		catch (JsonParseException ex)
+		{
+			return getError(null, "Invalid JSON: " + ex.getMessage());
+		}
+		catch (CheckLanguage.UnsupportedLanguageException ex)
+		{
+			return getError(id, "Unknown language");
+		}
+		catch (LinterException ex)
+		{
+			return getError(id, ex.getMessage());
+		}
+		catch (RuntimeException ex)
+		{
+			return getError(id, ex.toString());
+		}
+	}
+
+	/**
+	 * Gets the metrics of the process, in answer to a request
+	 * @param id The ID of the request, if any
+	 * @param format The format of the metrics: <tt>json</tt>, or
+	 * <tt>prometheus</tt> for the text format of Prometheus
+	 * @return The result, as a line of JSON
+	 */
+	/*@ non_null @*/ protected String getMetrics(/*@ null @*/ JsonElement id, /*@ non_null @*/ String format)
+	{
+		JsonMap result = new JsonMap();
+		if (id != null)
+		{
+			result.put("id", id);
+		}
+		if (format.compareTo("prometheus") == 0)
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			PrintStream ps = new PrintStream(baos);
+			MetricRegistry.getDefault().printPrometheus(ps);
+			ps.flush();
+			result.put("metrics", new JsonString(baos.toString()));
+		}
+		else if (format.compareTo("json") == 0)
+		{
+			result.put("metrics", MetricRegistry.getDefault().toJson());
+		}
+		else
+		{
+			return getError(id, "Unknown metrics format " + format);
+		}
+		return JsonAdviceRenderer.toSingleLine(result);
+	}
+
+	/**
+	 * Gets the engine for a given configuration, creating it if necessary.
+	 * The configuration is normalized first, so that requests that differ
+	 * only in the way they write it share the same engine. An engine is
+	 * created outside of the lock on the engines, and is checked before it
+	 * is shared: its language must be supported, and its n-gram folder is
+	 * dropped if it cannot be read. Each thread then loads its own language
+	 * checker the first time it uses the engine.
+	 * @param type The type of the document
+	 * @param lang_code The code of the language to check; may be empty
+	 * @param options The options of the request
+	 * @return The engine
+	 * @throws CheckLanguage.UnsupportedLanguageException If the language is
+	 * unknown
+	 */
+	/*@ non_null @*/ protected LintEngine getEngine(/*@ non_null @*/ Linter.Language type, /*@ non_null @*/ String lang_code, /*@ non_null @*/ JsonMap options) throws CheckLanguage.UnsupportedLanguageException
+	{
+		boolean read_all = !(options.get("read-all") instanceof JsonFalse);
+		String lang_key = "";
+		if (!lang_code.isEmpty())
+		{
+			Language lang = LanguageFactory.getLanguageFromString(lang_code);
+			if (lang == null)
+			{
+				throw new CheckLanguage.UnsupportedLanguageException();
+			}
+			lang_key = lang.getClass().getName();
+		}
+		SortedSet<String> ignored = new TreeSet<String>();
+		for (String rule : getString(options, "ignore", "").split(","))
+		{
+			if (!rule.trim().isEmpty())
+			{
+				ignored.add(rule.trim());
+			}
+		}
+		String key = type + "|" + lang_key + "|" + read_all + "|" + ignored;
+		LintEngine engine;
+		synchronized (m_engines)
+		{
+			engine = m_engines.get(key);
+		}
+		LintEngine.countCacheRequest("engine", engine != null);
+		if (engine != null)
+		{
+			return engine;
+		}
+		List<String> rule_blacklist = new ArrayList<String>(m_ruleBlacklist);
+		rule_blacklist.addAll(ignored);
+		engine = new LintEngine(m_cleaner);
+		engine.setType(type).setReadAll(read_all).setRemoved(m_envBlacklist, m_macBlacklist).setIgnored(rule_blacklist)
+			.setLanguage(lang_code, m_firstLanguage).setDictionary(m_dictionary).setLanguageModel(m_ngramDir)
+			.setTimeBudget(m_ruleBudget, m_documentBudget);
+		try
+		{
+			engine.getLanguageChecker();
+		}
+		catch (CheckLanguage.FolderNotFoundException e)
+		{
+			// Fall back to the checker without n-grams
+			engine.setLanguageModel(null);
+		}
+		catch (CheckLanguage.IncorrectFolderStructureException e)
+		{
+			// Fall back to the checker without n-grams
+			engine.setLanguageModel(null);
+		}
+		synchronized (m_engines)
+		{
+			// Another thread may have created the same engine in the meantime
+			LintEngine existing = m_engines.get(key);
+			if (existing != null)
+			{
+				return existing;
+			}
+			m_engines.put(key, engine);
+		}
+		return engine;
+	}
+
+	/**
+	 * Gets the type of a document from the type given in a request
+	 * @param type The type in the request, or {@code null}
+	 * @return The type of the document
+	 * @throws LinterException If the type is unknown
+	 */
+	/*@ non_null @*/ protected Linter.Language getType(/*@ null @*/ String type) throws LinterException
+	{
+		if (type == null)
+		{
+			return m_type;
+		}
+		if (type.compareToIgnoreCase("md") == 0)
+		{
+			return Linter.Language.MARKDOWN;
+		}
+		if (type.compareToIgnoreCase("tex") == 0)
+		{
+			return Linter.Language.LATEX;
+		}
+		if (type.compareToIgnoreCase("txt") == 0)
+		{
+			return Linter.Language.TEXT;
+		}
+		throw new LinterException("Unknown type '" + type + "'");
+	}
+
+	/**
+	 * Gets the options of a request
+	 * @param request The request
+	 * @return The options; an empty map if the request has none
+	 */
+	/*@ non_null @*/ protected static JsonMap getOptions(/*@ non_null @*/ JsonMap request)
+	{
+		JsonElement options = request.get("options");
+		if (options instanceof JsonMap)
+		{
+			return (JsonMap) options;
+		}
+		return new JsonMap();
+	}
+
+	/**
+	 * Gets the value of a string field in a JSON object
+	 * @param map The object
+	 * @param key The name of the field
+	 * @param default_value The value to return if the field is absent or is
+	 * not a string
+	 * @return The value
+	 */
+	/*@ null @*/ protected static String getString(/*@ non_null @*/ JsonMap map, /*@ non_null @*/ String key, /*@ null @*/ String default_value)
+	{
+		JsonElement e = map.get(key);
+		if (e instanceof JsonString)
+		{
+			return ((JsonString) e).stringValue();
+		}
+		return default_value;
+	}
+
+	/**
+	 * Creates a result line reporting an error
+	 * @param id The ID of the request, or {@code null}
+	 * @param message The error message
+	 * @return The result line
+	 */
+	/*@ non_null @*/ protected static String getError(/*@ null @*/ JsonElement id, /*@ non_null @*/ String message)
+	{
+		JsonMap result = new JsonMap();
+		if (id != null)
+		{
+			result.put("id", id);
+		}
+		result.put("error", message);
+		return JsonAdviceRenderer.toSingleLine(result);
+	}
+
+	/**
+	 * Waits for the result of a request
+	 * @param result The pending result
+	 * @return The result line
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting
+	 */
+	/*@ non_null @*/ protected static String getResult(/*@ non_null @*/ Future<String> result) throws InterruptedException
+	{
+		try
+		{
+			return result.get();
+		}
+		catch (ExecutionException e)
+		{
+			return getError(null, e.getCause().toString());
+		}
+	}
+
+	/**
+	 * Task processing a single request
+	 */
+	protected class BatchTask implements Callable<String>
+	{
+		/**
+		 * The request, as a line of JSON
+		 */
+		/*@ non_null @*/ protected final String m_request;
+
+		/**
+		 * Creates a new task
+		 * @param request The request, as a line of JSON
+		 */
+		public BatchTask(/*@ non_null @*/ String request)
+		{
+			super();
+			m_request = request;
+		}
+
+		@Override
+		public String call()
+		{
+			return process(m_request);
+		}
+	}
+}
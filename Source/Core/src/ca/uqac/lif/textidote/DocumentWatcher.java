@@ -0,0 +1,272 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the files of a document for modifications, and keeps track of
+ * the include graph between these files. When a file changes, the watcher
+ * reports that file, along with all the files that (directly or
+ * indirectly) include it, so that only these files need to be linted
+ * again.
+ * <p>
+ * Since a {@link WatchService} monitors directories and not individual
+ * files, the watcher registers the parent folder of each file it tracks,
+ * and discards the events about files that are not part of the document.
+ * @author Sylvain Hallé
+ */
+public class DocumentWatcher implements Closeable
+{
+	/**
+	 * The delay, in milliseconds, during which successive events are merged
+	 * into a single batch of changes. Editors often write a file in
+	 * multiple steps, which would otherwise trigger multiple runs.
+	 */
+	protected static final long s_settleDelay = 200;
+
+	/**
+	 * The service notifying the watcher of changes in the file system
+	 */
+	/*@ non_null @*/ protected final WatchService m_service;
+
+	/**
+	 * A map associating each watched folder to its watch key
+	 */
+	/*@ non_null @*/ protected final Map<Path,WatchKey> m_folders;
+
+	/**
+	 * A map associating the absolute path of each tracked file to the name
+	 * under which it is known to the linter
+	 */
+	/*@ non_null @*/ protected final Map<Path,String> m_files;
+
+	/**
+	 * A map associating each file to the files it includes
+	 */
+	/*@ non_null @*/ protected final Map<String,Set<String>> m_includes;
+
+	/**
+	 * A map associating each file to the files that include it
+	 */
+	/*@ non_null @*/ protected final Map<String,Set<String>> m_includedBy;
+
+	/**
+	 * Creates a new document watcher
+	 * @throws IOException If the watch service cannot be created
+	 */
+	public DocumentWatcher() throws IOException
+	{
+		super();
+		m_service = FileSystems.getDefault().newWatchService();
+		m_folders = new HashMap<Path,WatchKey>();
+		m_files = new HashMap<Path,String>();
+		m_includes = new HashMap<String,Set<String>>();
+		m_includedBy = new HashMap<String,Set<String>>();
+	}
+
+	/**
+	 * Starts tracking a file
+	 * @param filename The name of the file
+	 * @throws IOException If the folder of the file cannot be watched
+	 */
+	public void watch(/*@ non_null @*/ String filename) throws IOException
+	{
+		Path p = Paths.get(filename).toAbsolutePath().normalize();
+		if (m_files.containsKey(p))
+		{
+			return;
+		}
+		Path folder = p.getParent();
+		if (folder != null && !m_folders.containsKey(folder))
+		{
+			WatchKey key = folder.register(m_service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			m_folders.put(folder, key);
+		}
+		m_files.put(p, filename);
+		if (!m_includes.containsKey(filename))
+		{
+			m_includes.put(filename, new LinkedHashSet<String>());
+		}
+	}
+
+	/**
+	 * Sets the files directly included by a file, replacing any inclusions
+	 * previously declared for it. Both the file and the files it includes
+	 * become tracked by the watcher.
+	 * @param filename The name of the file
+	 * @param includes The names of the files it includes
+	 * @throws IOException If the folder of some file cannot be watched
+	 */
+	public void setIncludes(/*@ non_null @*/ String filename, /*@ non_null @*/ Collection<String> includes) throws IOException
+	{
+		watch(filename);
+		Set<String> previous = m_includes.get(filename);
+		for (String child : previous)
+		{
+			Set<String> parents = m_includedBy.get(child);
+			if (parents != null)
+			{
+				parents.remove(filename);
+			}
+		}
+		previous.clear();
+		for (String child : includes)
+		{
+			watch(child);
+			previous.add(child);
+			Set<String> parents = m_includedBy.get(child);
+			if (parents == null)
+			{
+				parents = new LinkedHashSet<String>();
+				m_includedBy.put(child, parents);
+			}
+			parents.add(filename);
+		}
+	}
+
+	/**
+	 * Gets the files directly included by a file
+	 * @param filename The name of the file
+	 * @return The set of included files; empty if the file is not tracked
+	 */
+	/*@ non_null @*/ public Set<String> getIncludes(/*@ non_null @*/ String filename)
+	{
+		Set<String> includes = m_includes.get(filename);
+		if (includes == null)
+		{
+			return new LinkedHashSet<String>();
+		}
+		return includes;
+	}
+
+	/**
+	 * Gets the files that need to be linted again when a file changes.
+	 * These are the file itself, followed by all the files that include it,
+	 * directly or indirectly, up to the roots of the document.
+	 * @param filename The name of the file that changed
+	 * @return The set of affected files, in breadth-first order
+	 */
+	/*@ non_null @*/ public Set<String> getDependents(/*@ non_null @*/ String filename)
+	{
+		Set<String> affected = new LinkedHashSet<String>();
+		Queue<String> to_visit = new ArrayDeque<String>();
+		to_visit.add(filename);
+		while (!to_visit.isEmpty())
+		{
+			String current = to_visit.remove();
+			if (!affected.add(current))
+			{
+				continue;
+			}
+			Set<String> parents = m_includedBy.get(current);
+			if (parents != null)
+			{
+				to_visit.addAll(parents);
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Waits until at least one tracked file changes.
+	 * @return The files to lint again, in the order given by
+	 * {@link #getDependents(String)}
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting
+	 */
+	/*@ non_null @*/ public List<String> awaitChanges() throws InterruptedException
+	{
+		List<String> changed = new ArrayList<String>();
+		while (changed.isEmpty())
+		{
+			changed = awaitChanges(-1, TimeUnit.MILLISECONDS);
+		}
+		return changed;
+	}
+
+	/**
+	 * Waits until at least one tracked file changes, or until some delay
+	 * elapses.
+	 * @param timeout The maximum time to wait; a negative value waits
+	 * indefinitely
+	 * @param unit The unit of the timeout
+	 * @return The files to lint again, in the order given by
+	 * {@link #getDependents(String)}. The list is empty if no tracked file
+	 * changed before the timeout.
+	 * @throws InterruptedException If the thread is interrupted while
+	 * waiting
+	 */
+	/*@ non_null @*/ public List<String> awaitChanges(long timeout, /*@ non_null @*/ TimeUnit unit) throws InterruptedException
+	{
+		Set<String> changed = new LinkedHashSet<String>();
+		WatchKey key = timeout < 0 ? m_service.take() : m_service.poll(timeout, unit);
+		while (key != null)
+		{
+			Path folder = (Path) key.watchable();
+			for (WatchEvent<?> event : key.pollEvents())
+			{
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+				{
+					// Events were lost: consider that every file changed
+					changed.addAll(m_includes.keySet());
+					continue;
+				}
+				Path p = folder.resolve((Path) event.context()).normalize();
+				String filename = m_files.get(p);
+				if (filename != null)
+				{
+					changed.add(filename);
+				}
+			}
+			key.reset();
+			// Gather the events that follow closely
+			key = m_service.poll(s_settleDelay, TimeUnit.MILLISECONDS);
+		}
+		Set<String> affected = new LinkedHashSet<String>();
+		for (String filename : changed)
+		{
+			affected.addAll(getDependents(filename));
+		}
+		return new ArrayList<String>(affected);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		m_service.close();
+	}
+}
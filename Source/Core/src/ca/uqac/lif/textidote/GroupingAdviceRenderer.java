@@ -0,0 +1,101 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.util.List;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+/**
+ * Renderer that groups the repeated advice of each file with an
+ * {@link AdviceGrouper}, and passes the grouped advice to another
+ * renderer. Any renderer can therefore show grouped advice.
+ * @author Sylvain Hallé
+ */
+public class GroupingAdviceRenderer extends AdviceRenderer
+{
+	/**
+	 * The renderer receiving the grouped advice
+	 */
+	/*@ non_null @*/ protected final AdviceRenderer m_renderer;
+
+	/**
+	 * The grouper used on the advice of each file
+	 */
+	/*@ non_null @*/ protected final AdviceGrouper m_grouper;
+
+	/**
+	 * Creates a new grouping renderer
+	 * @param renderer The renderer receiving the grouped advice
+	 */
+	public GroupingAdviceRenderer(/*@ non_null @*/ AdviceRenderer renderer)
+	{
+		this(renderer, new AdviceGrouper());
+	}
+
+	/**
+	 * Creates a new grouping renderer
+	 * @param renderer The renderer receiving the grouped advice
+	 * @param grouper The grouper used on the advice of each file
+	 */
+	public GroupingAdviceRenderer(/*@ non_null @*/ AdviceRenderer renderer, /*@ non_null @*/ AdviceGrouper grouper)
+	{
+		super(renderer.m_printer, renderer.m_languageCode);
+		m_renderer = renderer;
+		m_grouper = grouper;
+	}
+
+	/**
+	 * Gets the renderer receiving the grouped advice
+	 * @return The renderer
+	 */
+	/*@ pure non_null @*/ public AdviceRenderer getRenderer()
+	{
+		return m_renderer;
+	}
+
+	@Override
+	public void addAdvice(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		m_renderer.addAdvice(filename, contents, m_grouper.group(advice));
+	}
+
+	@Override
+	public void begin()
+	{
+		m_renderer.begin();
+	}
+
+	@Override
+	public void fileDone(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		m_renderer.fileDone(filename, contents, m_grouper.group(advice));
+	}
+
+	@Override
+	public void end()
+	{
+		m_renderer.end();
+	}
+
+	@Override
+	public void render()
+	{
+		m_renderer.render();
+	}
+}
@@ -0,0 +1,618 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.cleaning.CompositeCleaner;
+import ca.uqac.lif.textidote.cleaning.latex.LatexCleaner;
+import ca.uqac.lif.textidote.cleaning.markdown.MarkdownCleaner;
+import ca.uqac.lif.textidote.rules.CheckCaptions;
+import ca.uqac.lif.textidote.rules.CheckCiteMix;
+import ca.uqac.lif.textidote.rules.CheckFigurePaths;
+import ca.uqac.lif.textidote.rules.CheckFigureReferences;
+import ca.uqac.lif.textidote.rules.CheckLanguage;
+import ca.uqac.lif.textidote.rules.CheckNoBreak;
+import ca.uqac.lif.textidote.rules.CheckStackedHeadings;
+import ca.uqac.lif.textidote.rules.CheckSubsectionSize;
+import ca.uqac.lif.textidote.rules.CheckSubsections;
+import ca.uqac.lif.textidote.rules.LanguageFactory;
+import ca.uqac.lif.textidote.rules.ProjectIndex;
+import ca.uqac.lif.textidote.rules.ProjectRule;
+import ca.uqac.lif.textidote.rules.RegexRuleSet;
+import ca.uqac.lif.textidote.rules.StructuralRule;
+import ca.uqac.lif.textidote.rules.StructuralRuleSet;
+import ca.uqac.lif.util.MetricRegistry;
+
+/**
+ * Lints documents according to a fixed set of options. Contrary to a
+ * {@link Linter}, which is configured for a single document, an engine is
+ * set up once and can then lint any number of documents, from any number
+ * of threads at the same time.
+ * <p>
+ * The rules of TeXtidote are read and instantiated only once, when the
+ * engine is created, and are shared by all documents. The same goes for
+ * the cleaners, which return the sub-files they discover along with the
+ * cleaned text instead of keeping them; everything that depends on a
+ * particular document is therefore local to a call to
+ * {@link #lint(AnnotatedString, String, boolean) lint()}. The only
+ * exception is the LanguageTool checker, which cannot be used by two
+ * threads at once: the engine keeps one per thread, so that it is loaded
+ * once per thread and not once per document.
+ * <p>
+ * The setters of this class are meant to be called before linting starts;
+ * changing the configuration of an engine while it is in use by other
+ * threads has unspecified results.
+ * @author Sylvain Hallé
+ */
+public class LintEngine
+{
+	/**
+	 * The rules evaluated on the original text of LaTeX documents
+	 */
+	/*@ non_null @*/ protected final List<Rule> m_latexRules;
+
+	/**
+	 * The rules evaluated on the cleaned text of LaTeX documents
+	 */
+	/*@ non_null @*/ protected final List<Rule> m_latexCleanedRules;
+
+	/**
+	 * The rules evaluated on the original text of LaTeX documents when the
+	 * documents are linted as a project, which leave out the project rules
+	 */
+	/*@ non_null @*/ protected final List<Rule> m_latexLocalRules;
+
+	/**
+	 * The rules evaluated once on all the LaTeX documents of a project
+	 */
+	/*@ non_null @*/ protected final List<ProjectRule> m_projectRules;
+
+	/**
+	 * The rules evaluated on the original text of LaTeX documents, without
+	 * the rules to ignore
+	 */
+	/*@ non_null @*/ protected List<Rule> m_activeLatexRules;
+
+	/**
+	 * The rules evaluated on the cleaned text of LaTeX documents, without
+	 * the rules to ignore
+	 */
+	/*@ non_null @*/ protected List<Rule> m_activeLatexCleanedRules;
+
+	/**
+	 * The rules evaluated on the original text of LaTeX documents in a
+	 * project, without the rules to ignore
+	 */
+	/*@ non_null @*/ protected List<Rule> m_activeLatexLocalRules;
+
+	/**
+	 * The cleaner applied before any file-specific cleaner
+	 */
+	/*@ non_null @*/ protected final CompositeCleaner m_cleaner;
+
+	/**
+	 * The type of the documents
+	 */
+	/*@ non_null @*/ protected Linter.Language m_type = Linter.Language.UNSPECIFIED;
+
+	/**
+	 * Whether the lines before <code>\begin{document}</code> are linted in
+	 * top-level documents
+	 */
+	protected boolean m_readAll = false;
+
+	/**
+	 * The LaTeX environments to remove
+	 */
+	/*@ non_null @*/ protected List<String> m_envBlacklist = new ArrayList<String>();
+
+	/**
+	 * The LaTeX macros to remove
+	 */
+	/*@ non_null @*/ protected List<String> m_macBlacklist = new ArrayList<String>();
+
+	/**
+	 * The rules to ignore
+	 */
+	/*@ non_null @*/ protected List<String> m_ruleBlacklist = new ArrayList<String>();
+
+	/**
+	 * The rules to ignore, compiled
+	 */
+	/*@ non_null @*/ protected RuleBlacklist m_blacklist = new RuleBlacklist();
+
+	/**
+	 * The code of the language to check; the empty string indicates that
+	 * no language is checked
+	 */
+	/*@ non_null @*/ protected String m_language = "";
+
+	/**
+	 * The code of the author's first language; may be the empty string
+	 */
+	/*@ non_null @*/ protected String m_firstLanguage = "";
+
+	/**
+	 * The words to ignore when checking the language
+	 */
+	/*@ non_null @*/ protected List<String> m_dictionary = new ArrayList<String>();
+
+	/**
+	 * The folder containing n-gram data, if any
+	 */
+	/*@ null @*/ protected File m_ngramDir = null;
+
+	/**
+	 * The maximum time each rule can spend on a document, in milliseconds;
+	 * 0 means no limit
+	 */
+	protected long m_ruleBudget = 0;
+
+	/**
+	 * The maximum time all the rules can spend on a document, in
+	 * milliseconds; 0 means no limit
+	 */
+	protected long m_documentBudget = 0;
+
+	/**
+	 * The pool on which the rules of a document are evaluated concurrently,
+	 * or {@code null} to evaluate them one after the other
+	 */
+	/*@ null @*/ protected ForkJoinPool m_pool = null;
+
+	/**
+	 * Whether the documents are linted as a project, in which case the
+	 * project rules are evaluated once on all the documents instead of on
+	 * each document
+	 */
+	protected boolean m_project = false;
+
+	/**
+	 * The language checker of each thread
+	 */
+	/*@ non_null @*/ protected final ThreadLocal<CheckLanguage> m_checkers = new ThreadLocal<CheckLanguage>();
+
+	/**
+	 * The cleaners already created for each combination of document type,
+	 * root dir and handling of the preamble. Since cleaners keep nothing
+	 * about the documents they clean, they are shared by all calls to
+	 * {@link #lint(AnnotatedString, String, boolean) lint()}.
+	 */
+	/*@ non_null @*/ protected final Map<String,CompositeCleaner> m_cleaners = new ConcurrentHashMap<String,CompositeCleaner>();
+
+	/**
+	 * Creates a new lint engine
+	 * @param cleaner The cleaner applied before any file-specific cleaner
+	 */
+	public LintEngine(/*@ non_null @*/ CompositeCleaner cleaner)
+	{
+		super();
+		m_cleaner = cleaner;
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.add(new RegexRuleSet(Main.readRules(Main.REGEX_FILENAME).values()));
+		List<Rule> local_rules = new ArrayList<Rule>(rules);
+		CheckFigureReferences figure_references = new CheckFigureReferences();
+		CheckSubsections subsections = new CheckSubsections();
+		CheckCiteMix cite_mix = new CheckCiteMix();
+		List<StructuralRule> structural_rules = new ArrayList<StructuralRule>();
+		structural_rules.add(figure_references);
+		structural_rules.add(new CheckFigurePaths());
+		structural_rules.add(new CheckCaptions());
+		structural_rules.add(subsections);
+		structural_rules.add(new CheckSubsectionSize());
+		structural_rules.add(new CheckStackedHeadings());
+		structural_rules.add(new CheckNoBreak());
+		structural_rules.add(cite_mix);
+		rules.add(new StructuralRuleSet(structural_rules));
+		m_latexRules = Collections.unmodifiableList(rules);
+		List<ProjectRule> project_rules = new ArrayList<ProjectRule>();
+		project_rules.add(figure_references);
+		project_rules.add(subsections);
+		project_rules.add(cite_mix);
+		m_projectRules = Collections.unmodifiableList(project_rules);
+		structural_rules.removeAll(project_rules);
+		local_rules.add(new StructuralRuleSet(structural_rules));
+		m_latexLocalRules = Collections.unmodifiableList(local_rules);
+		List<Rule> cleaned_rules = new ArrayList<Rule>();
+		cleaned_rules.add(new RegexRuleSet(Main.readRules(Main.REGEX_FILENAME_DETEX).values()));
+		m_latexCleanedRules = Collections.unmodifiableList(cleaned_rules);
+		m_activeLatexRules = m_latexRules;
+		m_activeLatexCleanedRules = m_latexCleanedRules;
+		m_activeLatexLocalRules = m_latexLocalRules;
+	}
+
+	/**
+	 * Creates a new lint engine
+	 */
+	public LintEngine()
+	{
+		this(new CompositeCleaner());
+	}
+
+	/**
+	 * Sets the type of the documents. Regardless of this setting, documents
+	 * whose resource name ends with <tt>.md</tt> are treated as Markdown.
+	 * @param type The type
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setType(/*@ non_null @*/ Linter.Language type)
+	{
+		m_type = type;
+		m_cleaners.clear();
+		return this;
+	}
+
+	/**
+	 * Sets whether the lines before <code>\begin{document}</code> are linted
+	 * in top-level documents
+	 * @param b Set to {@code true} to lint these lines, {@code false}
+	 * otherwise (the default)
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setReadAll(boolean b)
+	{
+		m_readAll = b;
+		return this;
+	}
+
+	/**
+	 * Sets the LaTeX environments and macros to remove
+	 * @param env_blacklist The environments
+	 * @param mac_blacklist The macros
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setRemoved(/*@ non_null @*/ List<String> env_blacklist, /*@ non_null @*/ List<String> mac_blacklist)
+	{
+		m_envBlacklist = env_blacklist;
+		m_macBlacklist = mac_blacklist;
+		m_cleaners.clear();
+		return this;
+	}
+
+	/**
+	 * Sets the rules to ignore. The ignored rules are removed from the rules
+	 * of the engine once, here, so that they are never evaluated; the
+	 * ignored LanguageTool rules are disabled in the language checker.
+	 * @param rule_blacklist The names of the rules; they can contain the
+	 * wildcard character <code>*</code>
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setIgnored(/*@ non_null @*/ List<String> rule_blacklist)
+	{
+		m_ruleBlacklist = rule_blacklist;
+		m_blacklist = new RuleBlacklist().addAll(rule_blacklist);
+		m_activeLatexRules = Collections.unmodifiableList(m_blacklist.filter(m_latexRules));
+		m_activeLatexCleanedRules = Collections.unmodifiableList(m_blacklist.filter(m_latexCleanedRules));
+		m_activeLatexLocalRules = Collections.unmodifiableList(m_blacklist.filter(m_latexLocalRules));
+		return this;
+	}
+
+	/**
+	 * Sets the language to check
+	 * @param lang_code The code of the language; the empty string disables
+	 * the language check
+	 * @param first_lang_code The code of the author's first language; may be
+	 * the empty string
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setLanguage(/*@ non_null @*/ String lang_code, /*@ non_null @*/ String first_lang_code)
+	{
+		m_language = lang_code;
+		m_firstLanguage = first_lang_code;
+		return this;
+	}
+
+	/**
+	 * Sets the words to ignore when checking the language
+	 * @param dictionary The list of words
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setDictionary(/*@ non_null @*/ List<String> dictionary)
+	{
+		m_dictionary = dictionary;
+		return this;
+	}
+
+	/**
+	 * Sets the folder containing n-gram data
+	 * @param ngram_dir The folder, or {@code null} to disable n-gram rules
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setLanguageModel(/*@ null @*/ File ngram_dir)
+	{
+		m_ngramDir = ngram_dir;
+		return this;
+	}
+
+	/**
+	 * Sets the time the rules can spend on a document
+	 * @param rule_budget The maximum time each rule can spend on a document,
+	 * in milliseconds; 0 means no limit
+	 * @param document_budget The maximum time all the rules together can
+	 * spend on a document, in milliseconds; 0 means no limit
+	 * @return This engine
+	 * @see Linter#setTimeBudget(long, long)
+	 */
+	/*@ non_null @*/ public LintEngine setTimeBudget(long rule_budget, long document_budget)
+	{
+		m_ruleBudget = rule_budget;
+		m_documentBudget = document_budget;
+		return this;
+	}
+
+	/**
+	 * Sets the pool on which the rules of a document are evaluated
+	 * @param pool The pool; {@code null} to evaluate the rules one after
+	 * the other in the calling thread (the default)
+	 * @return This engine
+	 * @see Linter#setPool(ForkJoinPool)
+	 */
+	/*@ non_null @*/ public LintEngine setPool(/*@ null @*/ ForkJoinPool pool)
+	{
+		m_pool = pool;
+		return this;
+	}
+
+	/**
+	 * Sets whether the documents are linted as a project. In such a case,
+	 * the rules that concern a whole document (figure references, sub-section
+	 * counts and citation styles) are not evaluated on each file, but once
+	 * on all the files with {@link #lintProject(ProjectIndex)}.
+	 * @param b Set to {@code true} to lint the documents as a project
+	 * @return This engine
+	 */
+	/*@ non_null @*/ public LintEngine setProject(boolean b)
+	{
+		m_project = b;
+		return this;
+	}
+
+	/**
+	 * Gets the code of the language checked by this engine
+	 * @return The code; the empty string if no language is checked
+	 */
+	/*@ pure non_null @*/ public String getLanguage()
+	{
+		return m_language;
+	}
+
+	/**
+	 * Gets the regex rule sets among the active rules of this engine
+	 * @return The list of sets, each appearing once
+	 */
+	/*@ pure non_null @*/ public List<RegexRuleSet> getRegexRuleSets()
+	{
+		List<RegexRuleSet> sets = new ArrayList<RegexRuleSet>();
+		Set<Rule> seen = Collections.newSetFromMap(new IdentityHashMap<Rule,Boolean>());
+		for (List<Rule> rules : Arrays.asList(m_activeLatexRules, m_activeLatexLocalRules, m_activeLatexCleanedRules))
+		{
+			for (Rule r : rules)
+			{
+				if (r instanceof RegexRuleSet && seen.add(r))
+				{
+					sets.add((RegexRuleSet) r);
+				}
+			}
+		}
+		return sets;
+	}
+
+	/**
+	 * Gets the language checker of the current thread, creating it if
+	 * necessary. Calling this method once before linting starts is a way to
+	 * validate the language settings of the engine.
+	 * @return The checker, or {@code null} if the engine does not check the
+	 * language
+	 * @throws CheckLanguage.UnsupportedLanguageException If the language is
+	 * unknown
+	 * @throws CheckLanguage.FolderNotFoundException If the n-gram folder
+	 * cannot be opened
+	 * @throws CheckLanguage.IncorrectFolderStructureException If the n-gram
+	 * folder has the wrong structure
+	 */
+	/*@ null @*/ public CheckLanguage getLanguageChecker() throws CheckLanguage.UnsupportedLanguageException, CheckLanguage.FolderNotFoundException, CheckLanguage.IncorrectFolderStructureException
+	{
+		if (m_language.isEmpty())
+		{
+			return null;
+		}
+		CheckLanguage cl = m_checkers.get();
+		countCacheRequest("languagetool", cl != null);
+		if (cl == null)
+		{
+			cl = new CheckLanguage(LanguageFactory.getLanguageFromString(m_language), LanguageFactory.getLanguageFromString(m_firstLanguage), m_dictionary);
+			if (m_ngramDir != null)
+			{
+				cl.activateLanguageModelRules(m_ngramDir);
+			}
+			cl.disableRules(m_blacklist);
+			m_checkers.set(cl);
+		}
+		return cl;
+	}
+
+	/**
+	 * Counts a request to one of the caches of the engine in the metrics
+	 * @param cache The name of the cache
+	 * @param hit Set to {@code true} if the requested object was in the
+	 * cache, {@code false} otherwise
+	 */
+	protected static void countCacheRequest(/*@ non_null @*/ String cache, boolean hit)
+	{
+		MetricRegistry.getDefault().counter("textidote_cache_requests_total", "Number of requests to the caches of the engine", "cache", cache, "result", hit ? "hit" : "miss").increment();
+	}
+
+	/**
+	 * Lints a top-level document whose sub-files are resolved against the
+	 * current directory
+	 * @param s The document
+	 * @return The result
+	 * @throws LinterException If the document cannot be linted
+	 */
+	/*@ non_null @*/ public LintResult lint(/*@ non_null @*/ AnnotatedString s) throws LinterException
+	{
+		return lint(s, "", true);
+	}
+
+	/**
+	 * Lints a document
+	 * @param s The document. Its resource name, if any, is used to determine
+	 * if it is a Markdown file.
+	 * @param root_dir The root dir used to resolve sub-files
+	 * @param top_level Whether the document is a top-level document; in such
+	 * a case, its lines before <code>\begin{document}</code> are ignored
+	 * unless {@link #setReadAll(boolean)} says otherwise
+	 * @return The result
+	 * @throws LinterException If the document cannot be linted
+	 */
+	/*@ non_null @*/ public LintResult lint(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ String root_dir, boolean top_level) throws LinterException
+	{
+		return createLinter(s.getResourceName(), root_dir, top_level && !m_readAll).lint(s);
+	}
+
+	/**
+	 * Evaluates the project rules on the files of a project. The index is
+	 * built from the structures kept in the {@link LintResult} of each file,
+	 * which are only computed when the engine is in project mode.
+	 * @param index The index of the project
+	 * @return The advice generated by the project rules
+	 * @see #setProject(boolean)
+	 */
+	/*@ non_null @*/ public List<Advice> lintProject(/*@ non_null @*/ ProjectIndex index)
+	{
+		Linter linter = new Linter(m_cleaner);
+		linter.addProject(m_projectRules);
+		linter.addToBlacklist(m_ruleBlacklist);
+		return linter.lintProject(index);
+	}
+
+	/**
+	 * Gets the type of a document
+	 * @param filename The name of the document; may be {@code null}
+	 * @return The type; never {@link Linter.Language#UNSPECIFIED}
+	 */
+	/*@ pure non_null @*/ protected Linter.Language getType(/*@ null @*/ String filename)
+	{
+		if (m_type == Linter.Language.MARKDOWN || (filename != null && filename.endsWith(".md")))
+		{
+			return Linter.Language.MARKDOWN;
+		}
+		if (m_type == Linter.Language.TEXT)
+		{
+			return Linter.Language.TEXT;
+		}
+		return Linter.Language.LATEX;
+	}
+
+	/**
+	 * Gets the cleaner for documents of a given type, creating it if
+	 * necessary
+	 * @param type The type of the documents
+	 * @param root_dir The root dir used to resolve sub-files
+	 * @param ignore_before_document Whether to ignore the lines before
+	 * <code>\begin{document}</code>
+	 * @return The cleaner
+	 */
+	/*@ non_null @*/ protected CompositeCleaner getCleaner(/*@ non_null @*/ Linter.Language type, /*@ non_null @*/ String root_dir, boolean ignore_before_document)
+	{
+		String key = type + "|" + ignore_before_document + "|" + root_dir;
+		CompositeCleaner c_cleaner = m_cleaners.get(key);
+		if (c_cleaner != null)
+		{
+			return c_cleaner;
+		}
+		c_cleaner = new CompositeCleaner(m_cleaner);
+		if (type == Linter.Language.MARKDOWN)
+		{
+			c_cleaner.add(new MarkdownCleaner());
+		}
+		else if (type == Linter.Language.LATEX)
+		{
+			LatexCleaner latex_cleaner = new LatexCleaner(root_dir);
+			latex_cleaner.setIgnoreBeforeDocument(ignore_before_document);
+			latex_cleaner.ignoreEnvironments(m_envBlacklist);
+			latex_cleaner.ignoreMacros(m_macBlacklist);
+			c_cleaner.add(latex_cleaner);
+		}
+		CompositeCleaner existing = m_cleaners.putIfAbsent(key, c_cleaner);
+		return existing != null ? existing : c_cleaner;
+	}
+
+	/**
+	 * Creates a linter for a single document
+	 * @param filename The name of the document; may be {@code null}
+	 * @param root_dir The root dir used to resolve sub-files
+	 * @param ignore_before_document Whether to ignore the lines before
+	 * <code>\begin{document}</code>
+	 * @return The linter
+	 * @throws LinterException If the language checker cannot be created
+	 */
+	/*@ non_null @*/ protected Linter createLinter(/*@ null @*/ String filename, /*@ non_null @*/ String root_dir, boolean ignore_before_document) throws LinterException
+	{
+		Linter.Language type = getType(filename);
+		Linter linter = new Linter(getCleaner(type, root_dir, ignore_before_document));
+		if (type == Linter.Language.LATEX)
+		{
+			if (m_project)
+			{
+				linter.add(m_activeLatexLocalRules);
+				linter.addProject(m_projectRules);
+			}
+			else
+			{
+				linter.add(m_activeLatexRules);
+			}
+			linter.addCleaned(m_activeLatexCleanedRules);
+		}
+		linter.addToBlacklist(m_ruleBlacklist);
+		linter.setTimeBudget(m_ruleBudget, m_documentBudget);
+		linter.setPool(m_pool);
+		try
+		{
+			CheckLanguage cl = getLanguageChecker();
+			if (cl != null)
+			{
+				linter.addCleaned(cl);
+			}
+		}
+		catch (CheckLanguage.UnsupportedLanguageException e)
+		{
+			throw new LinterException("Unknown language: " + m_language);
+		}
+		catch (CheckLanguage.FolderNotFoundException e)
+		{
+			throw new LinterException("Cannot open N-gram directory " + m_ngramDir);
+		}
+		catch (CheckLanguage.IncorrectFolderStructureException e)
+		{
+			throw new LinterException(e.getMessage());
+		}
+		return linter;
+	}
+}
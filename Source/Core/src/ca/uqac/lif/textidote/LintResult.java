@@ -0,0 +1,147 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.util.List;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.cleaning.CleaningStages;
+import ca.uqac.lif.textidote.rules.DocumentStructure;
+
+/**
+ * The outcome of linting a single document: the advice found in it, and
+ * the sub-files it includes.
+ * @author Sylvain Hallé
+ */
+public class LintResult
+{
+	/**
+	 * The document that was linted
+	 */
+	/*@ non_null @*/ protected final AnnotatedString m_contents;
+
+	/**
+	 * The advice found in the document
+	 */
+	/*@ non_null @*/ protected final List<Advice> m_advice;
+
+	/**
+	 * The sub-files found by the cleaner in the document
+	 */
+	/*@ non_null @*/ protected final List<String> m_innerFiles;
+
+	/**
+	 * The stages of the cleaning of the document, if known
+	 */
+	/*@ null @*/ protected final CleaningStages m_stages;
+
+	/**
+	 * The structure of the document, if it was computed
+	 */
+	/*@ null @*/ protected final DocumentStructure m_structure;
+
+	/**
+	 * Creates a new lint result
+	 * @param contents The document that was linted
+	 * @param advice The advice found in the document
+	 * @param inner_files The sub-files found by the cleaner in the document
+	 * @param stages The stages of the cleaning of the document; may be
+	 * {@code null}
+	 * @param structure The structure of the document; may be {@code null}
+	 */
+	public LintResult(/*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice, /*@ non_null @*/ List<String> inner_files, /*@ null @*/ CleaningStages stages, /*@ null @*/ DocumentStructure structure)
+	{
+		super();
+		m_contents = contents;
+		m_advice = advice;
+		m_innerFiles = inner_files;
+		m_stages = stages;
+		m_structure = structure;
+	}
+
+	/**
+	 * Creates a new lint result
+	 * @param contents The document that was linted
+	 * @param advice The advice found in the document
+	 * @param inner_files The sub-files found by the cleaner in the document
+	 * @param stages The stages of the cleaning of the document; may be
+	 * {@code null}
+	 */
+	public LintResult(/*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice, /*@ non_null @*/ List<String> inner_files, /*@ null @*/ CleaningStages stages)
+	{
+		this(contents, advice, inner_files, stages, null);
+	}
+
+	/**
+	 * Creates a new lint result
+	 * @param contents The document that was linted
+	 * @param advice The advice found in the document
+	 * @param inner_files The sub-files found by the cleaner in the document
+	 */
+	public LintResult(/*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice, /*@ non_null @*/ List<String> inner_files)
+	{
+		this(contents, advice, inner_files, null);
+	}
+
+	/**
+	 * Gets the document that was linted
+	 * @return The document
+	 */
+	/*@ pure non_null @*/ public AnnotatedString getContents()
+	{
+		return m_contents;
+	}
+
+	/**
+	 * Gets the advice found in the document
+	 * @return The list of advice
+	 */
+	/*@ pure non_null @*/ public List<Advice> getAdvice()
+	{
+		return m_advice;
+	}
+
+	/**
+	 * Gets the sub-files found by the cleaner in the document
+	 * @return The list of filenames
+	 */
+	/*@ pure non_null @*/ public List<String> getInnerFiles()
+	{
+		return m_innerFiles;
+	}
+
+	/**
+	 * Gets the stages of the cleaning of the document, which give access to
+	 * the intermediate strings and to the time spent on each stage
+	 * @return The stages, or {@code null} if they are not known
+	 */
+	/*@ pure null @*/ public CleaningStages getCleaningStages()
+	{
+		return m_stages;
+	}
+
+	/**
+	 * Gets the structure of the document, which is used by the rules that
+	 * apply to a whole project
+	 * @return The structure, or {@code null} if it was not computed
+	 */
+	/*@ pure null @*/ public DocumentStructure getStructure()
+	{
+		return m_structure;
+	}
+}
@@ -19,11 +19,30 @@ package ca.uqac.lif.textidote;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
+import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.cleaning.CleaningResult;
+import ca.uqac.lif.textidote.cleaning.CleaningStages;
+import ca.uqac.lif.textidote.cleaning.CleaningStages.Stage;
 import ca.uqac.lif.textidote.cleaning.TextCleaner;
 import ca.uqac.lif.textidote.cleaning.TextCleanerException;
+import ca.uqac.lif.textidote.rules.DocumentStructure;
+import ca.uqac.lif.textidote.rules.ProjectIndex;
+import ca.uqac.lif.textidote.rules.ProjectRule;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.textidote.rules.RegexRuleSet;
+import ca.uqac.lif.textidote.rules.StructuralRule;
+import ca.uqac.lif.textidote.rules.StructuralRuleSet;
+import ca.uqac.lif.util.Deadline;
+import ca.uqac.lif.util.FlightEvent;
+import ca.uqac.lif.util.MetricRegistry;
+import ca.uqac.lif.util.Profiler;
 
 /**
  * Object in charge of evaluating a set of rules on a piece of text.
@@ -33,6 +52,17 @@ import ca.uqac.lif.textidote.cleaning.TextCleanerException;
  */
 public class Linter 
 {
+	/**
+	 * The flight recorder event emitted for each rule evaluated on a
+	 * document
+	 */
+	/*@ non_null @*/ public static final FlightEvent.Type RULE_EVENT = new FlightEvent.Type("ca.uqac.lif.textidote.Rule", "Rule Evaluation", "A rule evaluated on a document")
+			.withField("rule", "Rule", String.class)
+			.withField("resource", "Resource", String.class)
+			.withField("length", "Length", int.class)
+			.withField("mappingSize", "Mapping Size", int.class)
+			.withField("advice", "Advice", int.class);
+
 	/**
 	 * The list of rules that will be evaluated on the original text
 	 */
@@ -43,15 +73,39 @@ public class Linter
 	 */
 	protected List<Rule> m_rulesDetexed;
 	
+	/**
+	 * The list of rules that will be evaluated once on a whole project
+	 */
+	protected List<ProjectRule> m_projectRules;
+	
 	/**
 	 * The detexer used to clean the document
 	 */
 	protected TextCleaner m_cleaner;
 	
 	/**
-	 * A list of rules to ignore
+	 * The rules to ignore. Ignored rules are removed from the lists of rules
+	 * as soon as they are known, so that they are never evaluated.
+	 */
+	protected RuleBlacklist m_blacklist;
+	
+	/**
+	 * The maximum time each rule can spend on a document, in milliseconds;
+	 * 0 means no limit
+	 */
+	protected long m_ruleBudget = 0;
+	
+	/**
+	 * The maximum time all the rules can spend on a document, in
+	 * milliseconds; 0 means no limit
+	 */
+	protected long m_documentBudget = 0;
+	
+	/**
+	 * The pool on which the rules are evaluated concurrently, or
+	 * {@code null} to evaluate them one after the other
 	 */
-	protected List<String> m_blacklist;
+	/*@ null @*/ protected ForkJoinPool m_pool = null;
 	
 	/**
 	 * The markup language used in the source file
@@ -67,8 +121,9 @@ public class Linter
 		super();
 		m_rules = new ArrayList<Rule>();
 		m_rulesDetexed = new ArrayList<Rule>();
+		m_projectRules = new ArrayList<ProjectRule>();
 		m_cleaner = cleaner;
-		m_blacklist = new ArrayList<String>();
+		m_blacklist = new RuleBlacklist();
 	}
 	
 	/**
@@ -79,19 +134,21 @@ public class Linter
 	 */
 	public Linter add(/*@ non_null @*/ Rule r)
 	{
-		m_rules.add(r);
+		m_rules.addAll(m_blacklist.filter(Collections.singletonList(r)));
 		return this;
 	}
 	
 	/**
 	 * Adds new rules to the linter, which should apply to the original
 	 * text.
-	 * @param r The rules to add
+	 * @param r The rules to add. Regex rules in this collection are
+	 * evaluated together as a {@link RegexRuleSet}, and structural rules
+	 * share the structure of the text.
 	 * @return This linter
 	 */
 	/*@ non_null @*/ public Linter add(/*@ non_null @*/ Collection<? extends Rule> r)
 	{
-		m_rules.addAll(r);
+		m_rules.addAll(m_blacklist.filter(groupRules(r)));
 		return this;
 	}
 	
@@ -103,24 +160,50 @@ public class Linter
 	 */
 	/*@ non_null @*/ public Linter addCleaned(/*@ non_null @*/ Rule r)
 	{
-		m_rulesDetexed.add(r);
+		m_rulesDetexed.addAll(m_blacklist.filter(Collections.singletonList(r)));
 		return this;
 	}
 	
 	/**
 	 * Adds new rules to the linter, which should apply on the clean
 	 * ("detexed") text.
-	 * @param r The rules to add
+	 * @param r The rules to add. Regex rules in this collection are
+	 * evaluated together as a {@link RegexRuleSet}, and structural rules
+	 * share the structure of the text.
 	 * @return This linter
 	 */
 	/*@ non_null @*/ public Linter addCleaned(/*@ non_null @*/ Collection<? extends Rule> r)
 	{
-		m_rulesDetexed.addAll(r);
+		m_rulesDetexed.addAll(m_blacklist.filter(groupRules(r)));
+		return this;
+	}
+	
+	/**
+	 * Adds new rules to the linter, which should apply once to a whole
+	 * project, after all its files have been linted. The linter then
+	 * computes the {@link DocumentStructure} of each file it lints, and
+	 * keeps it in the {@link LintResult} of the file.
+	 * @param r The rules to add
+	 * @return This linter
+	 * @see #lintProject(ProjectIndex)
+	 */
+	/*@ non_null @*/ public Linter addProject(/*@ non_null @*/ Collection<? extends ProjectRule> r)
+	{
+		for (ProjectRule p_r : r)
+		{
+			if (!m_blacklist.isIgnored(p_r.getName()))
+			{
+				m_projectRules.add(p_r);
+			}
+		}
 		return this;
 	}
 	
 	/**
-	 * Adds a list of rule IDs to ignore
+	 * Adds a list of rule IDs to ignore. The rules of the linter whose IDs
+	 * are in the list are removed, and are therefore not evaluated; this
+	 * also applies to rules added afterwards. Advice whose rule is in the
+	 * list, such as that of a specific LanguageTool rule, is also dropped.
 	 * @param list The list of rule IDs to ignore. IDs can also contain the
 	 * wildcard character <code>*</code>; this can be used to ignore multiple
 	 * rules at once.
@@ -128,84 +211,432 @@ public class Linter
 	 */
 	/*@ non_null @*/ public Linter addToBlacklist(/*@ non_null @*/ List<String> list)
 	{
-		for (String rule_pat : list)
+		m_blacklist.addAll(list);
+		m_rules = m_blacklist.filter(m_rules);
+		m_rulesDetexed = m_blacklist.filter(m_rulesDetexed);
+		List<ProjectRule> project_rules = m_projectRules;
+		m_projectRules = new ArrayList<ProjectRule>();
+		addProject(project_rules);
+		return this;
+	}
+	
+	/**
+	 * Sets the time the rules can spend on a document. A rule that exceeds
+	 * its budget is stopped, and the linter reports it with an advice
+	 * instead of the advice the rule would have produced. Rules are stopped
+	 * cooperatively: they must check the current {@link Deadline} (regex
+	 * rules do so when reading the text).
+	 * @param rule_budget The maximum time each rule can spend on a document,
+	 * in milliseconds; 0 means no limit
+	 * @param document_budget The maximum time all the rules together can
+	 * spend on a document, in milliseconds; 0 means no limit. Once this
+	 * budget is spent, the remaining rules are not evaluated.
+	 * @return This linter
+	 */
+	/*@ non_null @*/ public Linter setTimeBudget(long rule_budget, long document_budget)
+	{
+		m_ruleBudget = rule_budget;
+		m_documentBudget = document_budget;
+		return this;
+	}
+	
+	/**
+	 * Sets the pool on which the rules are evaluated. When a pool is set,
+	 * the rules on the original text are evaluated concurrently with each
+	 * other and with the cleaning of the text, and the rules on the cleaned
+	 * text start as soon as the cleaned text is ready. The advice comes out
+	 * in the same order as when the rules are evaluated one after the
+	 * other.
+	 * @param pool The pool, for example {@link ForkJoinPool#commonPool()};
+	 * {@code null} to evaluate the rules one after the other in the calling
+	 * thread (the default)
+	 * @return This linter
+	 */
+	/*@ non_null @*/ public Linter setPool(/*@ null @*/ ForkJoinPool pool)
+	{
+		m_pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Replaces the regex rules of a collection by a single
+	 * {@link RegexRuleSet}, which finds all their matches in one scan of
+	 * the text, and its structural rules by a single
+	 * {@link StructuralRuleSet}, which computes the structure of the text
+	 * once for all of them. Each set takes the place of the first rule of
+	 * the collection it groups.
+	 * @param rules The rules
+	 * @return The rules, with the regex and structural rules grouped
+	 */
+	/*@ non_null @*/ protected static List<Rule> groupRules(/*@ non_null @*/ Collection<? extends Rule> rules)
+	{
+		List<Rule> out_list = new ArrayList<Rule>(rules.size());
+		List<RegexRule> regex_rules = new ArrayList<RegexRule>();
+		List<StructuralRule> structural_rules = new ArrayList<StructuralRule>();
+		int regex_index = -1;
+		int structural_index = -1;
+		for (Rule r : rules)
 		{
-			if (rule_pat.contains("*"))
+			if (r instanceof RegexRule)
 			{
-				m_blacklist.addAll(getMatchingRules(rule_pat));
+				if (regex_index < 0)
+				{
+					regex_index = out_list.size();
+					out_list.add(r);
+				}
+				regex_rules.add((RegexRule) r);
+			}
+			else if (r instanceof StructuralRule)
+			{
+				if (structural_index < 0)
+				{
+					structural_index = out_list.size();
+					out_list.add(r);
+				}
+				structural_rules.add((StructuralRule) r);
 			}
 			else
 			{
-				m_blacklist.add(rule_pat);
+				out_list.add(r);
 			}
 		}
-		return this;
+		if (regex_rules.size() > 1)
+		{
+			out_list.set(regex_index, new RegexRuleSet(regex_rules));
+		}
+		if (structural_rules.size() > 1)
+		{
+			out_list.set(structural_index, new StructuralRuleSet(structural_rules));
+		}
+		return out_list;
 	}
 	
 	/**
-	 * Gets all the rules whose name matches a pattern.
-	 * @param rule_pattern The pattern. The only special character allowed is
-	 * the wildcard (<code>*</code>), which can match zero or more arbitrary
-	 * characters in the rule's name.
-	 * @return The list of rules matching the pattern
+	 * Evaluates all the rules added to the linter on a given string, and
+	 * collects the advice these rules generate.
+	 * @param s The string on which to evaluate the rules
+	 * @return The list of advice generated by these rules
+	 * @throws LinterException Thrown if a problem occurs during the linting
+	 * process
 	 */
-	protected List<String> getMatchingRules(String rule_pattern)
+	/*@ non_null @*/ List<Advice> evaluateAll(/*@ non_null @*/ AnnotatedString s) throws LinterException
 	{
-		List<String> list = new ArrayList<String>();
-		String regex_pat = rule_pattern.replaceAll("\\*", ".*");
-		for (Rule r : m_rules)
+		return lint(s).getAdvice();
+	}
+	
+	/**
+	 * Evaluates all the rules added to the linter on a given string, and
+	 * collects the advice these rules generate along with the files the
+	 * string includes. Nothing pertaining to the string is kept in the
+	 * linter, so that it can be called on multiple strings at once.
+	 * @param s The string on which to evaluate the rules
+	 * @return The result of the evaluation
+	 * @throws LinterException Thrown if a problem occurs during the linting
+	 * process
+	 */
+	/*@ non_null @*/ LintResult lint(/*@ non_null @*/ AnnotatedString s) throws LinterException
+	{
+		long start = System.nanoTime();
+		try
 		{
-			String r_name = r.getName();
-			if (r_name.matches(regex_pat))
+			if (m_pool != null)
 			{
-				list.add(r_name);
+				return lintConcurrently(s);
 			}
+			return lintSequentially(s);
 		}
-		for (Rule r : m_rulesDetexed)
+		finally
 		{
-			String r_name = r.getName();
-			if (r_name.matches(regex_pat))
+			MetricRegistry metrics = MetricRegistry.getDefault();
+			metrics.counter("textidote_documents_linted_total", "Number of documents linted").increment();
+			metrics.histogram("textidote_document_duration_seconds", "Time spent linting each document").observeNanos(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Evaluates all the rules added to the linter on a given string, one
+	 * after the other in the calling thread
+	 * @param s The string on which to evaluate the rules
+	 * @return The result of the evaluation
+	 * @throws LinterException Thrown if a problem occurs during the linting
+	 * process
+	 * @see #lint(AnnotatedString)
+	 */
+	/*@ non_null @*/ protected LintResult lintSequentially(/*@ non_null @*/ AnnotatedString s) throws LinterException
+	{
+		List<Advice> out_list = new ArrayList<Advice>();
+		try
+		{
+			Deadline doc_deadline = Deadline.after(m_documentBudget);
+			CleaningStages stages = m_cleaner.cleanInStages(s);
+			AnnotatedString s_decommented = stages.get(Stage.DECOMMENTED);
+			DocumentStructure structure = computeStructure(s_decommented, doc_deadline);
+			for (Rule r : m_rules)
+			{
+				filterAdvice(out_list, evaluate(r, s_decommented, structure, doc_deadline));
+			}
+			CleaningResult result = stages.getResult();
+			AnnotatedString s_detexed = result.getString();
+			if (s_detexed.toString().trim().isEmpty())
 			{
-				list.add(r_name);
+				throw new EmptyInputException("No text to analyze. Did you omit --read-all?");
 			}
+			for (Rule r : m_rulesDetexed)
+			{
+				filterAdvice(out_list, evaluate(r, s_detexed, null, doc_deadline));
+			}
+			return new LintResult(s, out_list, result.getInnerFiles(), stages, structure);
+		}
+		catch (TextCleanerException e)
+		{
+			// Abort
+			throw new LinterException(e);
 		}
-		return list;
 	}
 	
 	/**
-	 * Evaluates all the rules added to the linter on a given string, and
-	 * collects the advice these rules generate.
+	 * Evaluates all the rules added to the linter on a given string, using
+	 * the pool of the linter
 	 * @param s The string on which to evaluate the rules
-	 * @return The list of advice generated by these rules
+	 * @return The result of the evaluation
 	 * @throws LinterException Thrown if a problem occurs during the linting
 	 * process
+	 * @see #lint(AnnotatedString)
 	 */
-	/*@ non_null @*/ List<Advice> evaluateAll(/*@ non_null @*/ AnnotatedString s) throws LinterException
+	/*@ non_null @*/ protected LintResult lintConcurrently(/*@ non_null @*/ AnnotatedString s) throws LinterException
 	{
-		List<Advice> out_list = new ArrayList<Advice>();
+		List<ForkJoinTask<List<Advice>>> tasks = new ArrayList<ForkJoinTask<List<Advice>>>(m_rules.size() + m_rulesDetexed.size());
 		try
 		{
-			AnnotatedString s_decommented = m_cleaner.cleanComments(new AnnotatedString(s));
+			Deadline doc_deadline = Deadline.after(m_documentBudget);
+			CleaningStages stages = m_cleaner.cleanInStages(s);
+			AnnotatedString s_decommented = stages.get(Stage.DECOMMENTED);
+			DocumentStructure structure = computeStructure(s_decommented, doc_deadline);
 			for (Rule r : m_rules)
 			{
-				filterAdvice(out_list, r.evaluate(s_decommented));
+				tasks.add(m_pool.submit(new RuleTask(r, s_decommented, structure, doc_deadline)));
 			}
-			AnnotatedString s_detexed = m_cleaner.clean(new AnnotatedString(s));
+			CleaningResult result = stages.getResult();
+			AnnotatedString s_detexed = result.getString();
 			if (s_detexed.toString().trim().isEmpty())
 			{
 				throw new EmptyInputException("No text to analyze. Did you omit --read-all?");
 			}
 			for (Rule r : m_rulesDetexed)
 			{
-				filterAdvice(out_list, r.evaluate(s_detexed));
+				tasks.add(m_pool.submit(new RuleTask(r, s_detexed, null, doc_deadline)));
+			}
+			List<Advice> out_list = new ArrayList<Advice>();
+			for (ForkJoinTask<List<Advice>> task : tasks)
+			{
+				filterAdvice(out_list, join(task));
 			}
-			return out_list;
+			return new LintResult(s, out_list, result.getInnerFiles(), stages, structure);
 		}
 		catch (TextCleanerException e)
 		{
 			// Abort
 			throw new LinterException(e);
 		}
+		finally
+		{
+			// Only has an effect if we abort before all tasks are done
+			for (ForkJoinTask<List<Advice>> task : tasks)
+			{
+				task.cancel(false);
+			}
+		}
+	}
+	
+	/**
+	 * Evaluates the project rules added to the linter on the files of a
+	 * project. Each rule is evaluated once, on the indexes of all the files
+	 * together; the texts of the files are not scanned again.
+	 * @param index The index of the project
+	 * @return The advice generated by these rules
+	 * @see #addProject(Collection)
+	 */
+	/*@ non_null @*/ public List<Advice> lintProject(/*@ non_null @*/ ProjectIndex index)
+	{
+		List<Advice> out_list = new ArrayList<Advice>();
+		for (ProjectRule r : m_projectRules)
+		{
+			filterAdvice(out_list, r.evaluate(index));
+		}
+		return out_list;
+	}
+	
+	/**
+	 * Computes the structure of a document, if a rule of the linter needs
+	 * it. The structure is shared by all the structural rules, and kept for
+	 * the project rules.
+	 * @param s The document, with comments removed
+	 * @param doc_deadline The deadline of the whole document
+	 * @return The structure, or {@code null} if no rule needs it or if it
+	 * could not be computed within the deadline; the structural rules then
+	 * compute it on their own
+	 * @throws LinterException If the thread was interrupted
+	 */
+	/*@ null @*/ protected DocumentStructure computeStructure(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ Deadline doc_deadline) throws LinterException
+	{
+		if (m_projectRules.isEmpty() && !hasStructuralRules())
+		{
+			return null;
+		}
+		Deadline previous = Deadline.setCurrent(doc_deadline);
+		Profiler.Sample sample = Profiler.start("structure");
+		try
+		{
+			return new DocumentStructure(s);
+		}
+		catch (Deadline.DeadlineExceededException e)
+		{
+			if (e.isInterrupted())
+			{
+				throw new LinterException("Linting was interrupted");
+			}
+			return null;
+		}
+		finally
+		{
+			Profiler.stop(sample);
+			Deadline.setCurrent(previous);
+		}
+	}
+	
+	/**
+	 * Determines if some of the rules on the original text are structural
+	 * @return {@code true} if there is at least one such rule
+	 */
+	/*@ pure @*/ protected boolean hasStructuralRules()
+	{
+		for (Rule r : m_rules)
+		{
+			if (r instanceof StructuralRule || r instanceof StructuralRuleSet)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Waits for the result of a rule evaluated on the pool
+	 * @param task The task evaluating the rule
+	 * @return The advice generated by the rule
+	 * @throws LinterException If the evaluation of the rule was interrupted
+	 */
+	/*@ non_null @*/ protected static List<Advice> join(/*@ non_null @*/ ForkJoinTask<List<Advice>> task) throws LinterException
+	{
+		try
+		{
+			return task.join();
+		}
+		catch (RuntimeException e)
+		{
+			// The pool may wrap the exception thrown by the task in another one
+			for (Throwable t = e; t != null; t = t.getCause())
+			{
+				if (t instanceof LinterException)
+				{
+					throw (LinterException) t;
+				}
+			}
+			throw e;
+		}
+	}
+	
+	/**
+	 * Evaluates a rule on a string within the time budget of the linter
+	 * @param r The rule
+	 * @param s The string
+	 * @param structure The structure of the string, or {@code null} if it
+	 * is not known
+	 * @param doc_deadline The deadline of the whole document
+	 * @return The advice generated by the rule, or a single advice saying
+	 * that the rule was stopped if it exceeded its budget
+	 * @throws LinterException If the thread was interrupted
+	 */
+	/*@ non_null @*/ protected List<Advice> evaluate(/*@ non_null @*/ Rule r, /*@ non_null @*/ AnnotatedString s, /*@ null @*/ DocumentStructure structure, /*@ non_null @*/ Deadline doc_deadline) throws LinterException
+	{
+		FlightEvent event = RULE_EVENT.begin();
+		long start = System.nanoTime();
+		List<Advice> advice = evaluateWithinBudget(r, s, structure, doc_deadline);
+		MetricRegistry.getDefault().histogram("textidote_rule_duration_seconds", "Time spent evaluating each rule on a document", "rule", r.getName()).observeNanos(System.nanoTime() - start);
+		if (event != null)
+		{
+			FlightEvent.commit(event, r.getName(), s.getResourceName(), s.length(), s.getMappingSize(), advice.size());
+		}
+		return advice;
+	}
+
+	/**
+	 * Evaluates a rule on a string within the time budget of the linter,
+	 * without emitting any event or metric
+	 * @param r The rule
+	 * @param s The string
+	 * @param structure The structure of the string, or {@code null} if it
+	 * is not known
+	 * @param doc_deadline The deadline of the whole document
+	 * @return The advice generated by the rule, or a single advice saying
+	 * that the rule was stopped if it exceeded its budget
+	 * @throws LinterException If the thread was interrupted
+	 */
+	/*@ non_null @*/ protected List<Advice> evaluateWithinBudget(/*@ non_null @*/ Rule r, /*@ non_null @*/ AnnotatedString s, /*@ null @*/ DocumentStructure structure, /*@ non_null @*/ Deadline doc_deadline) throws LinterException
+	{
+		if (doc_deadline.isExpired())
+		{
+			return timeout(r, s, doc_deadline, "for the document");
+		}
+		Deadline rule_deadline = Deadline.after(m_ruleBudget);
+		Deadline previous = Deadline.setCurrent(rule_deadline.min(doc_deadline));
+		Profiler.Sample sample = Profiler.start("rule", r.getName());
+		try
+		{
+			if (structure != null && r instanceof StructuralRuleSet)
+			{
+				return ((StructuralRuleSet) r).evaluate(s, structure);
+			}
+			if (structure != null && r instanceof StructuralRule)
+			{
+				return ((StructuralRule) r).evaluate(s, structure);
+			}
+			return r.evaluate(s);
+		}
+		catch (Deadline.DeadlineExceededException e)
+		{
+			if (e.isInterrupted())
+			{
+				throw new LinterException("Linting was interrupted");
+			}
+			if (e.getDeadline() == rule_deadline)
+			{
+				return timeout(r, s, rule_deadline, "per rule");
+			}
+			return timeout(r, s, doc_deadline, "for the document");
+		}
+		finally
+		{
+			Profiler.stop(sample);
+			Deadline.setCurrent(previous);
+		}
+	}
+	
+	/**
+	 * Creates the advice reporting that a rule exceeded its time budget
+	 * @param r The rule
+	 * @param s The string the rule was evaluated on
+	 * @param d The deadline that was exceeded
+	 * @param scope A description of the budget
+	 * @return A list containing the advice
+	 */
+	/*@ non_null @*/ protected static List<Advice> timeout(/*@ non_null @*/ Rule r, /*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ Deadline d, /*@ non_null @*/ String scope)
+	{
+		List<Advice> out_list = new ArrayList<Advice>(1);
+		Advice ad = new Advice(r, new Range(0, 0), "Rule " + r.getName() + " was stopped: it exceeded the time budget of " + d.getBudget() + " ms " + scope, s, s.getOriginalLine(0));
+		ad.setShortMessage("Timed out");
+		out_list.add(ad);
+		return out_list;
 	}
 	
 	/**
@@ -215,10 +646,15 @@ public class Linter
 	 */
 	protected void filterAdvice(List<Advice> out_list, List<Advice> advice)
 	{
+		if (m_blacklist.isEmpty())
+		{
+			out_list.addAll(advice);
+			return;
+		}
 		for (Advice ad : advice)
 		{
 			String rule_name = ad.getRule().getName();
-			if (!m_blacklist.contains(rule_name))
+			if (!m_blacklist.isIgnored(rule_name))
 			{
 				out_list.add(ad);
 			}
@@ -233,4 +669,65 @@ public class Linter
 	{
 		return m_cleaner;
 	}
+	
+	/**
+	 * Task evaluating a rule on the pool of the linter
+	 */
+	protected class RuleTask extends RecursiveTask<List<Advice>>
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * The rule to evaluate
+		 */
+		/*@ non_null @*/ protected final transient Rule m_rule;
+		
+		/**
+		 * The string on which to evaluate the rule
+		 */
+		/*@ non_null @*/ protected final transient AnnotatedString m_string;
+		
+		/**
+		 * The structure of the string, if known
+		 */
+		/*@ null @*/ protected final transient DocumentStructure m_structure;
+		
+		/**
+		 * The deadline of the whole document
+		 */
+		/*@ non_null @*/ protected final transient Deadline m_deadline;
+		
+		/**
+		 * Creates a new task
+		 * @param r The rule to evaluate
+		 * @param s The string on which to evaluate the rule
+		 * @param structure The structure of the string, or {@code null} if
+		 * it is not known
+		 * @param doc_deadline The deadline of the whole document
+		 */
+		public RuleTask(/*@ non_null @*/ Rule r, /*@ non_null @*/ AnnotatedString s, /*@ null @*/ DocumentStructure structure, /*@ non_null @*/ Deadline doc_deadline)
+		{
+			super();
+			m_rule = r;
+			m_string = s;
+			m_structure = structure;
+			m_deadline = doc_deadline;
+		}
+		
+		@Override
+		protected List<Advice> compute()
+		{
+			try
+			{
+				return evaluate(m_rule, m_string, m_structure, m_deadline);
+			}
+			catch (LinterException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+	}
 }
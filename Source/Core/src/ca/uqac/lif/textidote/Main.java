@@ -19,6 +19,7 @@ package ca.uqac.lif.textidote;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -29,40 +30,48 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.cleaning.CompositeCleaner;
 import ca.uqac.lif.textidote.cleaning.ReplacementCleaner;
 import ca.uqac.lif.textidote.cleaning.TextCleanerException;
+import ca.uqac.lif.textidote.cleaning.latex.IncludeScanner;
 import ca.uqac.lif.textidote.cleaning.latex.LatexCleaner;
 import ca.uqac.lif.textidote.cleaning.markdown.MarkdownCleaner;
 import ca.uqac.lif.textidote.render.AnsiAdviceRenderer;
 import ca.uqac.lif.textidote.render.ClickableAdviceRenderer;
-import ca.uqac.lif.textidote.render.HtmlAdviceRenderer;
-import ca.uqac.lif.textidote.render.JsonAdviceRenderer;
+import ca.uqac.lif.textidote.render.PagedHtmlAdviceRenderer;
 import ca.uqac.lif.textidote.render.SinglelineAdviceRenderer;
-import ca.uqac.lif.textidote.rules.CheckCaptions;
-import ca.uqac.lif.textidote.rules.CheckCiteMix;
-import ca.uqac.lif.textidote.rules.CheckFigurePaths;
-import ca.uqac.lif.textidote.rules.CheckFigureReferences;
+import ca.uqac.lif.textidote.render.StreamingHtmlAdviceRenderer;
+import ca.uqac.lif.textidote.render.StreamingJsonAdviceRenderer;
 import ca.uqac.lif.textidote.rules.CheckLanguage;
-import ca.uqac.lif.textidote.rules.CheckNoBreak;
-import ca.uqac.lif.textidote.rules.CheckStackedHeadings;
-import ca.uqac.lif.textidote.rules.CheckSubsectionSize;
-import ca.uqac.lif.textidote.rules.CheckSubsections;
-import ca.uqac.lif.textidote.rules.LanguageFactory;
+import ca.uqac.lif.textidote.rules.DocumentStructure;
+import ca.uqac.lif.textidote.rules.ProjectIndex;
 import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.textidote.rules.RegexRuleSet;
 import ca.uqac.lif.util.AnsiPrinter;
+import ca.uqac.lif.util.RegexPattern;
 import ca.uqac.lif.util.CliParser;
 import ca.uqac.lif.util.CliParser.Argument;
 import ca.uqac.lif.util.CliParser.ArgumentMap;
+import ca.uqac.lif.util.MetricRegistry;
 import ca.uqac.lif.util.NullPrintStream;
+import ca.uqac.lif.util.Profiler;
 
 /**
  * Command-line interface for TeXtidote.
@@ -135,6 +144,19 @@ public class Main
 	 */
 	protected static final transient int ERR_EMPTY_INPUT = -7;
 
+	/**
+	 * The size of the buffer of the standard output, in bytes
+	 */
+	protected static final transient int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The maximum number of threads linting the sub-files of a document
+	 * ahead of time. Each thread that checks the language loads its own
+	 * instance of LanguageTool, which takes seconds and hundreds of MB, so
+	 * this number is kept small whatever the number of processors.
+	 */
+	protected static final transient int MAX_PREFETCH_THREADS = 2;
+
 	/**
 	 * Main method. This method simply calls the static method
 	 * {@link #main(String[]) mainLoop()},
@@ -180,6 +202,34 @@ public class Main
 	 * @throws IOException Thrown if some file cannot be found or open
 	 */
 	public static int mainLoop(String[] args, InputStream in, PrintStream out, PrintStream err, Class<?> base_class) throws IOException
+	{
+		// The output is buffered; when it does not go to a console, the
+		// buffers are written by a background thread
+		AnsiPrinter stdout = new AnsiPrinter(out, OUTPUT_BUFFER_SIZE, System.console() == null);
+		try
+		{
+			return mainLoop(args, in, stdout, out, err, base_class);
+		}
+		finally
+		{
+			stdout.flush();
+		}
+	}
+
+	/**
+	 * Main method, printing its results to a given printer.
+	 * @param args Command-line arguments
+	 * @param in A stream corresponding to the standard input
+	 * @param stdout The printer where results are printed
+	 * @param out A stream corresponding to the standard output, used by
+	 * the batch mode
+	 * @param err A stream corresponding to the standard error
+	 * @param base_class Unit tests can pass a {@code Class} object to indicate
+	 * that the loop is being run inside a unit test.
+	 * @return An exit code
+	 * @throws IOException Thrown if some file cannot be found or open
+	 */
+	protected static int mainLoop(String[] args, InputStream in, AnsiPrinter stdout, PrintStream out, PrintStream err, Class<?> base_class) throws IOException
 	{
 		// Store input type
 		Linter.Language input_type = Linter.Language.UNSPECIFIED;
@@ -205,11 +255,24 @@ public class Main
 		cli_parser.addArgument(new Argument().withLongName("replace").withArgument("file").withDescription("Apply replacement patterns from file"));
 		cli_parser.addArgument(new Argument().withLongName("type").withArgument("x").withDescription("Input is of type x (tex or md)"));
 		cli_parser.addArgument(new Argument().withLongName("version").withDescription("Show version number"));
-		cli_parser.addArgument(new Argument().withLongName("output").withArgument("method").withDescription("Output as plain (default), json, html, singleline, or clickable"));
+		cli_parser.addArgument(new Argument().withLongName("output").withArgument("method").withDescription("Output as plain (default), json, html, html-pages, singleline, or clickable"));
+		cli_parser.addArgument(new Argument().withLongName("group").withDescription("Show advice repeated on the same text once, with all its locations"));
+		cli_parser.addArgument(new Argument().withLongName("report-dir").withArgument("dir").withDescription("Write the pages of the html-pages output to dir"));
 		cli_parser.addArgument(new Argument().withLongName("ci").withDescription("Ignores the return code for CI usage"));
 		cli_parser.addArgument(new Argument().withLongName("encoding").withArgument("x").withDescription("Read files using encoding x"));
 		cli_parser.addArgument(new Argument().withLongName("single-file").withDescription("Don't read sub-files if any"));
 		cli_parser.addArgument(new Argument().withLongName("root").withArgument("file").withDescription("Manually set the root of the LaTeX document"));
+		cli_parser.addArgument(new Argument().withLongName("batch").withDescription("Read NDJSON requests from stdin and write one JSON result per line"));
+		cli_parser.addArgument(new Argument().withLongName("watch").withDescription("Keep running and lint files again when they change"));
+		cli_parser.addArgument(new Argument().withLongName("rule-timeout").withArgument("ms").withDescription("Stop a rule that runs for more than ms milliseconds on a file"));
+		cli_parser.addArgument(new Argument().withLongName("file-timeout").withArgument("ms").withDescription("Stop evaluating rules on a file after ms milliseconds"));
+		cli_parser.addArgument(new Argument().withLongName("parallel-rules").withDescription("Evaluate the rules on a file concurrently"));
+		cli_parser.addArgument(new Argument().withLongName("project").withDescription("Check figure references, sub-sections and citations across all files"));
+		cli_parser.addArgument(new Argument().withLongName("linear-regex").withDescription("Evaluate rule and replacement patterns in linear time when possible"));
+		cli_parser.addArgument(new Argument().withLongName("profile").withDescription("Print the time and memory spent on each stage of the analysis"));
+		cli_parser.addArgument(new Argument().withLongName("profile-json").withArgument("file").withDescription("Write the time and memory spent on each stage of the analysis to file as JSON"));
+		cli_parser.addArgument(new Argument().withLongName("metrics").withArgument("file").withDescription("Write operational metrics to file in the Prometheus text format"));
+		cli_parser.addArgument(new Argument().withLongName("metrics-json").withArgument("file").withDescription("Write operational metrics to file as JSON"));
 
 		// Check if we are using textidote in a CI tool
 		boolean usingCI = false;
@@ -258,7 +321,10 @@ public class Main
 		boolean read_all = map.hasOption("read-all");
 		boolean enable_colors = !map.hasOption("no-color");
 		boolean single_file = map.hasOption("single-file");
-		AnsiPrinter stdout = new AnsiPrinter(out);
+		RegexPattern.setLinear(map.hasOption("linear-regex"));
+		boolean profile = map.hasOption("profile") || map.hasOption("profile-json");
+		Profiler.reset();
+		Profiler.setEnabled(profile);
 		AnsiPrinter stderr = null;
 		if (map.hasOption("version"))
 		{
@@ -362,6 +428,24 @@ public class Main
 			}
 			temp_scanner.close();
 		}
+		long rule_budget = 0;
+		long file_budget = 0;
+		try
+		{
+			if (map.hasOption("rule-timeout"))
+			{
+				rule_budget = Long.parseLong(map.getOptionValue("rule-timeout").trim());
+			}
+			if (map.hasOption("file-timeout"))
+			{
+				file_budget = Long.parseLong(map.getOptionValue("file-timeout").trim());
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			stderr.println("Invalid timeout: " + e.getMessage());
+			return ERR_ARGUMENTS;
+		}
 
 		// Only detex input
 		if (map.hasOption("clean"))
@@ -458,6 +542,7 @@ public class Main
 					}
 				}
 			}
+			printRegexFallbacks(stderr);
 			stdout.close();
 			return 0;
 		}
@@ -530,6 +615,20 @@ public class Main
 			}
 		}
 
+		// Lint the snippets given as requests on stdin
+		if (map.hasOption("batch"))
+		{
+			BatchProcessor processor = new BatchProcessor(cleaner);
+			processor.setType(input_type).setLanguage(lang_s, firstlang_s).setDictionary(dictionary)
+				.setLanguageModel(f_ngram_dir).setRemoved(env_blacklist, mac_blacklist).setIgnored(rule_blacklist)
+				.setTimeBudget(rule_budget, file_budget);
+			int num_requests = processor.process(in, out);
+			stderr.println("Processed " + num_requests + " request(s)");
+			printRegexFallbacks(stderr);
+			writeMetrics(map, stderr);
+			return 0;
+		}
+
 		// Setup the advice renderer
 		if (enable_colors)
 		{
@@ -550,7 +649,17 @@ public class Main
 			else if (output_method.compareToIgnoreCase("html") == 0)
 			{
 				stdout.disableColors();
-				renderer = new HtmlAdviceRenderer(stdout);
+				renderer = new StreamingHtmlAdviceRenderer(stdout);
+			}
+			else if (output_method.compareToIgnoreCase("html-pages") == 0)
+			{
+				File report_dir = new File(map.hasOption("report-dir") ? map.getOptionValue("report-dir") : "textidote-report");
+				if (!report_dir.isDirectory() && !report_dir.mkdirs())
+				{
+					stderr.println("Cannot create directory " + report_dir);
+					return ERR_ARGUMENTS;
+				}
+				renderer = new PagedHtmlAdviceRenderer(stdout, report_dir);
 			}
 			else if (output_method.compareToIgnoreCase("singleline") == 0)
 			{
@@ -563,7 +672,8 @@ public class Main
 			else if (output_method.compareToIgnoreCase("json") == 0)
 			{
 				stdout.disableColors();
-				renderer = new JsonAdviceRenderer(stdout, lang_s);
+				// In watch mode, each report must also cover the files that did not change
+				renderer = new StreamingJsonAdviceRenderer(stdout, lang_s, map.hasOption("watch"));
 			}
 			else
 			{
@@ -575,6 +685,10 @@ public class Main
 		{
 			renderer = new AnsiAdviceRenderer(stdout);
 		}
+		if (map.hasOption("group"))
+		{
+			renderer = new GroupingAdviceRenderer(renderer);
+		}
 		if (map.hasOption("ci"))
 		{
 			usingCI = true;
@@ -592,153 +706,184 @@ public class Main
 			filenames.add("--"); // This indicates: read from stdin
 			cmd_filenames.add("--");
 		}
+		// Create the engine linting all the files
+		LintEngine engine = new LintEngine(cleaner);
+		engine.setType(input_type).setReadAll(read_all).setRemoved(env_blacklist, mac_blacklist).setIgnored(rule_blacklist)
+			.setLanguage(lang_s, firstlang_s).setDictionary(dictionary).setLanguageModel(f_ngram_dir)
+			.setTimeBudget(rule_budget, file_budget);
+		if (map.hasOption("parallel-rules"))
+		{
+			engine.setPool(ForkJoinPool.commonPool());
+		}
+		boolean project = map.hasOption("project");
+		engine.setProject(project);
+		try
+		{
+			engine.getLanguageChecker();
+		}
+		catch (CheckLanguage.FolderNotFoundException e)
+		{
+			stderr.println("Cannot open N-gram directory " + ngram_dir + ". N-gram rules will be ignored.");
+			engine.setLanguageModel(null);
+		}
+		catch (CheckLanguage.IncorrectFolderStructureException e)
+		{
+			stderr.println(e.getMessage().replaceAll("[\n\r]+", " ") + " N-gram rules will be ignored.");
+			engine.setLanguageModel(null);
+		}
+		catch (CheckLanguage.UnsupportedLanguageException e)
+		{
+			stderr.println("Unknown language: " + map.getOptionValue("check"));
+			stdout.close();
+			return ERR_UNKNOWN_LANGUAGE;
+		}
 		Set<String> processed_filenames = new HashSet<String>();
 		Queue<String> filename_queue = new ArrayDeque<String>(filenames);
 		String top_level_filename = null;
 		boolean empty_input = true;
-		while (!filename_queue.isEmpty())
+		// Sub-files discovered ahead of time are loaded and linted in parallel
+		Map<String,Future<LintResult>> prefetched = new HashMap<String,Future<LintResult>>();
+		ExecutorService prefetch_pool = null;
+		// Include graph and root dir of each file, kept for watch mode
+		Map<String,List<String>> inner_files = new HashMap<String,List<String>>();
+		Map<String,String> root_dirs = new HashMap<String,String>();
+		// Result of each file, kept for the rules on the whole project
+		Map<String,LintResult> results = new LinkedHashMap<String,LintResult>();
+		// Unless all the files are needed at the end, each file is rendered
+		// as soon as it is linted, and is not kept afterwards
+		boolean streaming = !project && !map.hasOption("watch");
+		if (streaming)
 		{
-			String filename = filename_queue.remove();
-			if (processed_filenames.contains(filename))
-			{
-				continue;
-			}
-			processed_filenames.add(filename);
-			if (top_level_filename == null || cmd_filenames.contains(filename))
-			{
-				// This is a top level filename
-				top_level_filename = filename;
-			}
-			Scanner scanner = null;
-			try
+			renderer.begin();
+		}
+		// The number of files already given to the renderer, and whether all
+		// the files have been processed
+		int num_rendered = 0;
+		boolean completed = false;
+		try
+		{
+			while (!filename_queue.isEmpty())
 			{
-				if (filename.compareTo("--") == 0)
+				String filename = filename_queue.remove();
+				if (processed_filenames.contains(filename))
 				{
-					// Open scanner on stdin
-					scanner = new Scanner(in, encoding);
+					continue;
 				}
-				else
+				processed_filenames.add(filename);
+				if (top_level_filename == null || cmd_filenames.contains(filename))
 				{
-					if (base_class != null)
-					{
-						InputStream is = base_class.getResourceAsStream(filename);
-						if (is == null)
-						{
-							stderr.println("File " + filename + " not found (skipping)");
-							continue;
-						}
-						scanner = new Scanner(is, encoding);
-					}
-					else
+					// This is a top level filename
+					top_level_filename = filename;
+				}
+				String root_dir = calculateRootDir(top_level_filename, map.getOptionValue("root"));
+				root_dirs.put(filename, root_dir);
+				if (prefetch_pool == null && !single_file && cmd_filenames.size() == 1 && filename.compareTo("--") != 0
+						&& input_type != Linter.Language.MARKDOWN && input_type != Linter.Language.TEXT && !filename.endsWith(".md"))
+				{
+					// Resolve the include tree up front and schedule the sub-files
+					prefetch_pool = Executors.newFixedThreadPool(Math.min(MAX_PREFETCH_THREADS, Runtime.getRuntime().availableProcessors()));
+					IncludeScanner inc_scanner = createIncludeScanner(root_dir, base_class);
+					inc_scanner.setEncoding(encoding).setIgnoreBeforeDocument(!read_all);
+					for (String inner_filename : inc_scanner.scanTree(filename).keySet())
 					{
-						File f = new File(filename);
-						if (!f.exists())
+						if (inner_filename.compareTo(filename) != 0 && !prefetched.containsKey(inner_filename))
 						{
-							stderr.println("File " + filename + " not found (skipping)");
-							continue;
+							prefetched.put(inner_filename, prefetch_pool.submit(new PrefetchTask(engine, inner_filename, base_class, encoding, root_dir)));
 						}
-						scanner = new Scanner(f, encoding);
 					}
 				}
-				num_files++;
-				CompositeCleaner c_cleaner = new CompositeCleaner(cleaner);
-				Linter linter = null;
-				if (input_type == Linter.Language.MARKDOWN || filename.endsWith(".md"))
+				LintResult result = getPrefetched(prefetched.remove(filename));
+				if (result != null)
 				{
-					MarkdownCleaner markdown_cleaner = new MarkdownCleaner();
-					c_cleaner.add(markdown_cleaner);
-					linter = new Linter(c_cleaner);
-					populateMarkdownRules(linter);
-					linter.addToBlacklist(rule_blacklist);
+					num_files++;
+					renderAdvice(renderer, streaming, filename, result.getContents(), result.getAdvice());
+					num_rendered++;
+					num_advice += result.getAdvice().size();
+					empty_input = false;
+					if (project)
+					{
+						results.put(filename, result);
+					}
+					inner_files.put(filename, result.getInnerFiles());
+					addInnerFilesToQueue(result.getInnerFiles(), processed_filenames, filename_queue);
+					continue;
 				}
-				else if(input_type != Linter.Language.TEXT)
+				Scanner scanner = null;
+				try
 				{
-					String root_dir = calculateRootDir(top_level_filename, map.getOptionValue("root"));
-					LatexCleaner latex_cleaner = new LatexCleaner(root_dir);
-					if (cmd_filenames.contains(filename))
+					if (filename.compareTo("--") == 0)
 					{
-						latex_cleaner.setIgnoreBeforeDocument(!read_all);
+						// Open scanner on stdin
+						scanner = new Scanner(in, encoding);
 					}
 					else
 					{
-						latex_cleaner.setIgnoreBeforeDocument(false);
-					}
-					latex_cleaner.ignoreEnvironments(env_blacklist);
-					latex_cleaner.ignoreMacros(mac_blacklist);
-					c_cleaner.add(latex_cleaner);
-					linter = new Linter(c_cleaner);
-					populateLatexRules(linter);
-					linter.addToBlacklist(rule_blacklist);
-				}
-				else{
-					linter = new Linter(c_cleaner);
-					linter.addToBlacklist(rule_blacklist);
-				}
-				if (!lang_s.isEmpty())
-				{
-					try
-					{
-						CheckLanguage cl = new CheckLanguage(LanguageFactory.getLanguageFromString(lang_s), LanguageFactory.getLanguageFromString(firstlang_s), dictionary);
-						if (f_ngram_dir != null)
+						InputStream is = openFile(filename, base_class);
+						if (is == null)
 						{
-							cl.activateLanguageModelRules(f_ngram_dir);
+							stderr.println("File " + filename + " not found (skipping)");
+							continue;
 						}
-						linter.addCleaned(cl);
+						scanner = new Scanner(is, encoding);
 					}
-					catch (CheckLanguage.FolderNotFoundException e)
+					num_files++;
+					AnnotatedString last_string = AnnotatedString.read(scanner);
+					last_string.setResourceName(filename);
+					result = engine.lint(last_string, root_dir, cmd_filenames.contains(filename));
+					num_advice += result.getAdvice().size();
+					int added = 0;
+					empty_input = false;
+					if (project)
 					{
-						stderr.println("Cannot open N-gram directory " + ngram_dir + ". N-gram rules will be ignored.");
+						results.put(filename, result);
 					}
-					catch (CheckLanguage.IncorrectFolderStructureException e)
+					if (!single_file)
 					{
-						stderr.println(e.getMessage().replaceAll("[\n\r]+", " ") + " N-gram rules will be ignored.");
+						inner_files.put(filename, result.getInnerFiles());
+						added = addInnerFilesToQueue(result.getInnerFiles(), processed_filenames, filename_queue);
 					}
-					catch (CheckLanguage.UnsupportedLanguageException e)
+					if (added > 0 && cmd_filenames.size() > 1)
 					{
-						stderr.println("Unknown language: " + map.getOptionValue("check"));
-						stdout.close();
-						return ERR_UNKNOWN_LANGUAGE;
+						// Corner case where file checking does not work
+						stderr.println("Warning: one of the input files refers to sub-files, and");
+						stderr.println("more than one file is specified on the command line. When");
+						stderr.println("using sub-files, you should provide a single root document.");
+						return ERR_SINGLE_ROOT;
 					}
+					renderAdvice(renderer, streaming, filename, last_string, result.getAdvice());
+					num_rendered++;
 				}
-				AnnotatedString last_string = AnnotatedString.read(scanner);
-				last_string.setResourceName(filename);
-				List<Advice> all_advice = linter.evaluateAll(last_string);
-				renderer.addAdvice(filename, last_string, all_advice);
-				num_advice += all_advice.size();
-				int added = 0;
-				empty_input = false;
-				if (!single_file)
+				catch (EmptyInputException e)
 				{
-					added = addInnerFilesToQueue(c_cleaner.getInnerFiles(), processed_filenames, filename_queue);
+					// Do nothing
 				}
-				if (added > 0 && cmd_filenames.size() > 1)
+				catch (LinterException e)
 				{
-					// Corner case where file checking does not work
-					stderr.println("Warning: one of the input files refers to sub-files, and");
-					stderr.println("more than one file is specified on the command line. When");
-					stderr.println("using sub-files, you should provide a single root document.");
-					return ERR_SINGLE_ROOT;
+					stderr.print(e.getMessage());
+					return ERR_LINTER;
+				}
+				finally
+				{
+					if (scanner != null)
+					{
+						scanner.close();
+					}
 				}
 			}
-			catch (EmptyInputException e)
-			{
-				// Do nothing
-			}
-			catch (LinterException e)
-			{
-				stderr.print(e.getMessage());
-				return ERR_LINTER;
-			}
-			catch (FileNotFoundException e)
+			completed = true;
+		}
+		finally
+		{
+			if (prefetch_pool != null)
 			{
-				// Nothing to do; we already trapped this
+				prefetch_pool.shutdownNow();
 			}
-			finally
+			if (streaming && !completed && num_rendered > 0)
 			{
-				if (scanner != null)
-				{
-					scanner.close();
-				}
+				// Stopped on an error: close the output of the files already
+				// rendered, so that it is still well formed
+				renderer.end();
+				stdout.flush();
 			}
 		}
 		if (num_files == 0)
@@ -752,18 +897,336 @@ public class Main
 			stderr.println("No input processed. Did you omit --read-all?");
 			return ERR_EMPTY_INPUT;
 		}
+		if (project)
+		{
+			num_advice += addProjectAdvice(engine, results, renderer);
+		}
 		long end_time = System.currentTimeMillis();
+		printRegexFallbacks(stderr);
 		stderr.println("Found " + num_advice + " warning(s)");
 		stderr.println("Total analysis time: " + ((end_time - start_time) / 1000) + " second(s)");
 		stderr.println();
 
-		// Render all the advice
-		renderer.render();
+		// Render all the advice, or what remains of it
+		Profiler.Sample render_sample = Profiler.start("render");
+		try
+		{
+			if (streaming)
+			{
+				renderer.end();
+			}
+			else
+			{
+				renderer.render();
+			}
+			stdout.flush();
+		}
+		finally
+		{
+			Profiler.stop(render_sample);
+		}
+		printReportLocation(renderer, stderr);
+		if (profile)
+		{
+			printProfile(engine, map.hasOption("profile"), map.getOptionValue("profile-json"), stderr);
+		}
+		writeMetrics(map, stderr);
+
+		// Keep linting the files as they change
+		if (map.hasOption("watch"))
+		{
+			if (cmd_filenames.contains("--"))
+			{
+				stderr.println("Cannot watch the standard input");
+				return ERR_ARGUMENTS;
+			}
+			stdout.flush();
+			// The engine keeps its rules and the language checker of this
+			// thread from one run to the next, so LanguageTool stays loaded
+			DocumentWatcher watcher = new DocumentWatcher();
+			try
+			{
+				for (String filename : root_dirs.keySet())
+				{
+					watcher.watch(filename);
+				}
+				for (Map.Entry<String,List<String>> entry : inner_files.entrySet())
+				{
+					watcher.setIncludes(entry.getKey(), entry.getValue());
+				}
+				stderr.println("Watching " + root_dirs.size() + " file(s) for changes. Press Ctrl+C to stop.");
+				while (true)
+				{
+					List<String> changed = watcher.awaitChanges();
+					long watch_start = System.currentTimeMillis();
+					Queue<String> to_lint = new ArrayDeque<String>(changed);
+					Set<String> linted_filenames = new HashSet<String>();
+					int new_advice = 0;
+					while (!to_lint.isEmpty())
+					{
+						String filename = to_lint.remove();
+						if (!linted_filenames.add(filename))
+						{
+							continue;
+						}
+						InputStream is = openFile(filename, null);
+						if (is == null)
+						{
+							stderr.println("File " + filename + " not found (skipping)");
+							continue;
+						}
+						Scanner scanner = new Scanner(is, encoding);
+						AnnotatedString contents = AnnotatedString.read(scanner);
+						scanner.close();
+						contents.setResourceName(filename);
+						try
+						{
+							LintResult result = engine.lint(contents, root_dirs.get(filename), cmd_filenames.contains(filename));
+							renderer.addAdvice(filename, contents, result.getAdvice());
+							new_advice += result.getAdvice().size();
+							if (project)
+							{
+								results.put(filename, result);
+							}
+							if (!single_file)
+							{
+								for (String inner_filename : result.getInnerFiles())
+								{
+									if (!root_dirs.containsKey(inner_filename))
+									{
+										// A new sub-file appeared in the document
+										root_dirs.put(inner_filename, root_dirs.get(filename));
+										to_lint.add(inner_filename);
+									}
+								}
+								watcher.setIncludes(filename, result.getInnerFiles());
+							}
+						}
+						catch (EmptyInputException e)
+						{
+							renderer.addAdvice(filename, contents, new ArrayList<Advice>());
+							results.remove(filename);
+						}
+						catch (LinterException e)
+						{
+							stderr.print(e.getMessage());
+						}
+					}
+					if (project)
+					{
+						// The rules on the whole project see the files that changed
+						new_advice += addProjectAdvice(engine, results, renderer);
+					}
+					stdout.clearScreen();
+					renderer.render();
+					printReportLocation(renderer, stderr);
+					stdout.flush();
+					writeMetrics(map, stderr);
+					stderr.println("Linted " + linted_filenames.size() + " file(s) in " + (System.currentTimeMillis() - watch_start) + " ms, found " + new_advice + " warning(s) in these files. Watching for changes.");
+				}
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				watcher.close();
+			}
+		}
 
 		// The exit code is the number of warnings raised
 		return usingCI ? 0 : num_advice;
 	}
 
+	/**
+	 * Tells where the report was written, when it is not written to the
+	 * standard output
+	 * @param renderer The renderer
+	 * @param stderr The print stream where to print the message
+	 */
+	protected static void printReportLocation(/*@ non_null @*/ AdviceRenderer renderer, /*@ non_null @*/ PrintStream stderr)
+	{
+		if (renderer instanceof GroupingAdviceRenderer)
+		{
+			renderer = ((GroupingAdviceRenderer) renderer).getRenderer();
+		}
+		if (!(renderer instanceof PagedHtmlAdviceRenderer))
+		{
+			return;
+		}
+		PagedHtmlAdviceRenderer paged = (PagedHtmlAdviceRenderer) renderer;
+		File index = new File(paged.getDirectory(), PagedHtmlAdviceRenderer.INDEX_PAGE);
+		if (paged.checkError())
+		{
+			stderr.println("Warning: some pages of the report could not be written to " + paged.getDirectory());
+		}
+		stderr.println("Report written to " + index.getPath());
+	}
+
+	/**
+	 * Gives the advice of a file to a renderer
+	 * @param renderer The renderer
+	 * @param streaming Set to {@code true} if the file is rendered as soon
+	 * as it is linted, {@code false} if it is kept until the end
+	 * @param filename The filename
+	 * @param contents The contents of the file
+	 * @param advice The advice for this file
+	 */
+	protected static void renderAdvice(/*@ non_null @*/ AdviceRenderer renderer, boolean streaming, /*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		Profiler.Sample sample = Profiler.start("render");
+		try
+		{
+			if (streaming)
+			{
+				renderer.fileDone(filename, contents, advice);
+			}
+			else
+			{
+				renderer.addAdvice(filename, contents, advice);
+			}
+		}
+		finally
+		{
+			Profiler.stop(sample);
+		}
+	}
+
+	/**
+	 * Writes the metrics of the process to the files given on the command
+	 * line, if any
+	 * @param map The command line arguments
+	 * @param stderr The printer where to print errors
+	 */
+	protected static void writeMetrics(/*@ non_null @*/ ArgumentMap map, /*@ non_null @*/ AnsiPrinter stderr)
+	{
+		MetricRegistry metrics = MetricRegistry.getDefault();
+		String filename = map.getOptionValue("metrics");
+		try
+		{
+			if (filename != null)
+			{
+				PrintStream ps = new PrintStream(new FileOutputStream(filename));
+				metrics.printPrometheus(ps);
+				ps.close();
+			}
+			filename = map.getOptionValue("metrics-json");
+			if (filename != null)
+			{
+				PrintStream ps = new PrintStream(new FileOutputStream(filename));
+				ps.println(metrics.toJson().toString());
+				ps.close();
+			}
+		}
+		catch (FileNotFoundException e)
+		{
+			stderr.println("Cannot write the metrics to " + filename);
+		}
+	}
+
+	/**
+	 * Prints the time and memory spent on each stage of the analysis, along
+	 * with the number of times each regex rule was skipped
+	 * @param engine The engine that linted the files
+	 * @param table Set to {@code true} to print the profile as a table
+	 * @param json_filename The name of the file where to write the profile
+	 * as JSON, or {@code null} to write no such file
+	 * @param stderr The printer where to print the table
+	 */
+	protected static void printProfile(/*@ non_null @*/ LintEngine engine, boolean table, /*@ null @*/ String json_filename, /*@ non_null @*/ AnsiPrinter stderr)
+	{
+		List<RegexRuleSet> sets = engine.getRegexRuleSets();
+		if (table)
+		{
+			Profiler.printTable(stderr);
+			for (RegexRuleSet set : sets)
+			{
+				stderr.println();
+				set.printSummary(stderr);
+			}
+			stderr.println();
+		}
+		if (json_filename == null)
+		{
+			return;
+		}
+		JsonMap profile = new JsonMap();
+		profile.put("sections", Profiler.toJson());
+		JsonList skips = new JsonList();
+		for (RegexRuleSet set : sets)
+		{
+			for (Map.Entry<String,Long> entry : set.getSkipCounts().entrySet())
+			{
+				JsonMap rule = new JsonMap();
+				rule.put("rule", entry.getKey());
+				rule.put("evaluations", set.getEvaluationCount());
+				rule.put("skipped", entry.getValue());
+				skips.add(rule);
+			}
+		}
+		profile.put("regexSkips", skips);
+		try
+		{
+			PrintStream ps = new PrintStream(new FileOutputStream(json_filename));
+			ps.println(profile.toString());
+			ps.close();
+		}
+		catch (FileNotFoundException e)
+		{
+			stderr.println("Cannot write the profile to " + json_filename);
+		}
+	}
+
+	/**
+	 * Evaluates the rules on the whole project, and adds the advice they
+	 * generate to the advice already rendered for each file. Every file is
+	 * given again to the renderer, even those without advice from the
+	 * project, so that the advice the project rules no longer generate is
+	 * removed from the files that were not linted again.
+	 * @param engine The engine that linted the files
+	 * @param results The result of each file, in the order the files were
+	 * linted
+	 * @param renderer The renderer
+	 * @return The number of advice generated by the rules on the project
+	 */
+	protected static int addProjectAdvice(/*@ non_null @*/ LintEngine engine, /*@ non_null @*/ Map<String,LintResult> results, /*@ non_null @*/ AdviceRenderer renderer)
+	{
+		ProjectIndex index = new ProjectIndex();
+		for (Map.Entry<String,LintResult> entry : results.entrySet())
+		{
+			DocumentStructure structure = entry.getValue().getStructure();
+			if (structure != null)
+			{
+				index.add(entry.getKey(), structure, entry.getValue().getInnerFiles());
+			}
+		}
+		List<Advice> project_advice = engine.lintProject(index);
+		Map<String,List<Advice>> advice_by_file = new HashMap<String,List<Advice>>();
+		for (Advice ad : project_advice)
+		{
+			List<Advice> list = advice_by_file.get(ad.getResource());
+			if (list == null)
+			{
+				list = new ArrayList<Advice>();
+				advice_by_file.put(ad.getResource(), list);
+			}
+			list.add(ad);
+		}
+		for (Map.Entry<String,LintResult> entry : results.entrySet())
+		{
+			LintResult result = entry.getValue();
+			List<Advice> merged = new ArrayList<Advice>(result.getAdvice());
+			List<Advice> file_advice = advice_by_file.get(entry.getKey());
+			if (file_advice != null)
+			{
+				merged.addAll(file_advice);
+			}
+			renderer.addAdvice(entry.getKey(), result.getContents(), merged);
+		}
+		return project_advice.size();
+	}
+
 	/**
 	 * Prints a simple greeting on a command line
 	 * @param out The print stream to print on
@@ -776,30 +1239,150 @@ public class Main
 	}
 
 	/**
-	 * Adds the rules to the LaTeX linter
-	 * @param linter The linter to configure
+	 * Opens an input file. When the main loop is run inside a unit test,
+	 * the file is fetched as a resource of the test class.
+	 * @param filename The name of the file
+	 * @param base_class The class of the unit test, or {@code null}
+	 * @return An input stream open on the file, or {@code null} if the file
+	 * does not exist
 	 */
-	protected static void populateLatexRules(Linter linter)
+	/*@ null @*/ protected static InputStream openFile(/*@ non_null @*/ String filename, /*@ nullable @*/ Class<?> base_class)
 	{
-		linter.add(readRules(REGEX_FILENAME).values());
-		linter.addCleaned(readRules(REGEX_FILENAME_DETEX).values());
-		linter.add(new CheckFigureReferences());
-		linter.add(new CheckFigurePaths());
-		linter.add(new CheckCaptions());
-		linter.add(new CheckSubsections());
-		linter.add(new CheckSubsectionSize());
-		linter.add(new CheckStackedHeadings());
-		linter.add(new CheckNoBreak());
-		linter.add(new CheckCiteMix());
+		if (base_class != null)
+		{
+			return base_class.getResourceAsStream(filename);
+		}
+		File f = new File(filename);
+		if (!f.exists())
+		{
+			return null;
+		}
+		try
+		{
+			return new FileInputStream(f);
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
 	}
 
 	/**
-	 * Adds the rules to the Markdown linter
-	 * @param linter The linter to configure
+	 * Creates a scanner for the include tree of a document, which opens
+	 * files the same way as the main loop.
+	 * @param root_dir The root dir used to resolve sub-files
+	 * @param base_class The class of the unit test, or {@code null}
+	 * @return The scanner
 	 */
-	protected static void populateMarkdownRules(Linter linter)
+	/*@ non_null @*/ protected static IncludeScanner createIncludeScanner(/*@ non_null @*/ String root_dir, /*@ nullable @*/ final Class<?> base_class)
 	{
-		// Do nothing
+		return new IncludeScanner(root_dir)
+		{
+			@Override
+			protected InputStream open(String filename)
+			{
+				return openFile(filename, base_class);
+			}
+		};
+	}
+
+	/**
+	 * Waits for the result of a sub-file that was scheduled ahead of time.
+	 * @param future The pending result, or {@code null} if the file was not
+	 * scheduled
+	 * @return The linted file, or {@code null} if it was not scheduled or
+	 * if its processing failed. In the latter case, the caller processes the
+	 * file again, so that errors are reported as usual.
+	 */
+	/*@ null @*/ protected static LintResult getPrefetched(/*@ nullable @*/ Future<LintResult> future)
+	{
+		if (future == null)
+		{
+			return null;
+		}
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			return null;
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+	}
+
+	/**
+	 * Task that loads and lints a sub-file in a separate thread
+	 */
+	protected static class PrefetchTask implements Callable<LintResult>
+	{
+		/**
+		 * The engine used to lint the file
+		 */
+		/*@ non_null @*/ protected final LintEngine m_engine;
+
+		/**
+		 * The name of the file
+		 */
+		/*@ non_null @*/ protected final String m_filename;
+
+		/**
+		 * The class of the unit test, or {@code null}
+		 */
+		/*@ null @*/ protected final Class<?> m_baseClass;
+
+		/**
+		 * The encoding used to read the file
+		 */
+		/*@ non_null @*/ protected final String m_encoding;
+
+		/**
+		 * The root dir used to resolve sub-files
+		 */
+		/*@ non_null @*/ protected final String m_rootDir;
+
+		/**
+		 * Creates a new prefetch task
+		 * @param engine The engine used to lint the file
+		 * @param filename The name of the file
+		 * @param base_class The class of the unit test, or {@code null}
+		 * @param encoding The encoding used to read the file
+		 * @param root_dir The root dir used to resolve sub-files
+		 */
+		public PrefetchTask(/*@ non_null @*/ LintEngine engine, /*@ non_null @*/ String filename, /*@ null @*/ Class<?> base_class, /*@ non_null @*/ String encoding, /*@ non_null @*/ String root_dir)
+		{
+			super();
+			m_engine = engine;
+			m_filename = filename;
+			m_baseClass = base_class;
+			m_encoding = encoding;
+			m_rootDir = root_dir;
+		}
+
+		@Override
+		public LintResult call() throws Exception
+		{
+			InputStream is = openFile(m_filename, m_baseClass);
+			if (is == null)
+			{
+				throw new FileNotFoundException(m_filename);
+			}
+			Scanner scanner = new Scanner(is, m_encoding);
+			try
+			{
+				AnnotatedString contents = AnnotatedString.read(scanner);
+				contents.setResourceName(m_filename);
+				return m_engine.lint(contents, m_rootDir, false);
+			}
+			finally
+			{
+				scanner.close();
+			}
+		}
 	}
 
 	/**
@@ -839,6 +1422,23 @@ public class Main
 		return list;
 	}
 
+	/**
+	 * Prints the patterns that could not be evaluated by the linear-time
+	 * regex engine, if this engine is enabled
+	 * @param stderr The printer to print to
+	 */
+	protected static void printRegexFallbacks(/*@ non_null @*/ AnsiPrinter stderr)
+	{
+		if (!RegexPattern.isLinearEnabled())
+		{
+			return;
+		}
+		for (String pattern : RegexPattern.getFallbacks())
+		{
+			stderr.println("Pattern " + pattern + " is not supported by the linear-time engine; using java.util.regex");
+		}
+	}
+
 	/**
 	 * Reads a list of word from an Aspell-generated file
 	 * @param filename The name of the file to read from
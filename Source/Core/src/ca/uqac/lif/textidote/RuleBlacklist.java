@@ -0,0 +1,224 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.textidote.rules.RegexRuleSet;
+import ca.uqac.lif.textidote.rules.StructuralRule;
+import ca.uqac.lif.textidote.rules.StructuralRuleSet;
+
+/**
+ * A set of names of rules to ignore. A name can contain the wildcard
+ * character <code>*</code>, which matches zero or more arbitrary
+ * characters. Names without a wildcard are kept in a hash set, and the
+ * names with a wildcard are compiled into a single pattern, so that
+ * checking a rule does not depend on the number of names in the list.
+ * <p>
+ * Besides filtering advice, a blacklist can remove the ignored rules from
+ * a list of rules before they are evaluated, with
+ * {@link #filter(Collection)}.
+ * @author Sylvain Hallé
+ */
+public class RuleBlacklist
+{
+	/**
+	 * The names of the rules to ignore that do not contain a wildcard
+	 */
+	/*@ non_null @*/ protected final Set<String> m_names = new HashSet<String>();
+
+	/**
+	 * The names of the rules to ignore that contain a wildcard
+	 */
+	/*@ non_null @*/ protected final List<String> m_wildcards = new ArrayList<String>();
+
+	/**
+	 * The pattern matching any of the names with a wildcard, or
+	 * {@code null} if there are none
+	 */
+	/*@ null @*/ protected Pattern m_pattern = null;
+
+	/**
+	 * Creates a new empty blacklist
+	 */
+	public RuleBlacklist()
+	{
+		super();
+	}
+
+	/**
+	 * Adds names of rules to ignore
+	 * @param names The names, which can contain the wildcard character
+	 * <code>*</code>
+	 * @return This blacklist
+	 */
+	/*@ non_null @*/ public RuleBlacklist addAll(/*@ non_null @*/ Collection<String> names)
+	{
+		boolean changed = false;
+		for (String name : names)
+		{
+			if (name.contains("*"))
+			{
+				m_wildcards.add(name);
+				changed = true;
+			}
+			else
+			{
+				m_names.add(name);
+			}
+		}
+		if (changed)
+		{
+			StringBuilder regex = new StringBuilder();
+			for (String name : m_wildcards)
+			{
+				if (regex.length() > 0)
+				{
+					regex.append("|");
+				}
+				String[] parts = name.split("\\*", -1);
+				for (int i = 0; i < parts.length; i++)
+				{
+					if (i > 0)
+					{
+						regex.append(".*");
+					}
+					if (!parts[i].isEmpty())
+					{
+						regex.append(Pattern.quote(parts[i]));
+					}
+				}
+			}
+			m_pattern = Pattern.compile(regex.toString(), Pattern.DOTALL);
+		}
+		return this;
+	}
+
+	/**
+	 * Determines if the blacklist is empty
+	 * @return {@code true} if no rule is ignored
+	 */
+	/*@ pure @*/ public boolean isEmpty()
+	{
+		return m_names.isEmpty() && m_pattern == null;
+	}
+
+	/**
+	 * Determines if a rule is ignored
+	 * @param name The name of the rule
+	 * @return {@code true} if the rule is ignored
+	 */
+	/*@ pure @*/ public boolean isIgnored(/*@ non_null @*/ String name)
+	{
+		return m_names.contains(name) || (m_pattern != null && m_pattern.matcher(name).matches());
+	}
+
+	/**
+	 * Gets the names without a wildcard that start with a given prefix
+	 * @param prefix The prefix
+	 * @return The part of these names that follows the prefix
+	 */
+	/*@ pure non_null @*/ public List<String> getSuffixes(/*@ non_null @*/ String prefix)
+	{
+		List<String> suffixes = new ArrayList<String>();
+		for (String name : m_names)
+		{
+			if (name.startsWith(prefix) && name.length() > prefix.length())
+			{
+				suffixes.add(name.substring(prefix.length()));
+			}
+		}
+		return suffixes;
+	}
+
+	/**
+	 * Removes the ignored rules from a list of rules. The ignored rules
+	 * inside a {@link RegexRuleSet} or a {@link StructuralRuleSet} are
+	 * removed from the set; a set from which no rule is removed is kept as
+	 * is, and a set from which all the rules are removed is dropped.
+	 * @param rules The rules
+	 * @return The rules that are not ignored
+	 */
+	/*@ non_null @*/ public List<Rule> filter(/*@ non_null @*/ Collection<? extends Rule> rules)
+	{
+		List<Rule> out_list = new ArrayList<Rule>(rules.size());
+		for (Rule r : rules)
+		{
+			if (isEmpty())
+			{
+				out_list.add(r);
+			}
+			else if (r instanceof RegexRuleSet)
+			{
+				List<RegexRule> set_rules = ((RegexRuleSet) r).getRules();
+				List<RegexRule> kept = filterRules(set_rules);
+				if (kept.size() == set_rules.size())
+				{
+					out_list.add(r);
+				}
+				else if (!kept.isEmpty())
+				{
+					out_list.add(new RegexRuleSet(kept));
+				}
+			}
+			else if (r instanceof StructuralRuleSet)
+			{
+				List<StructuralRule> set_rules = ((StructuralRuleSet) r).getRules();
+				List<StructuralRule> kept = filterRules(set_rules);
+				if (kept.size() == set_rules.size())
+				{
+					out_list.add(r);
+				}
+				else if (!kept.isEmpty())
+				{
+					out_list.add(new StructuralRuleSet(kept));
+				}
+			}
+			else if (!isIgnored(r.getName()))
+			{
+				out_list.add(r);
+			}
+		}
+		return out_list;
+	}
+
+	/**
+	 * Removes the ignored rules from a list of rules of the same type
+	 * @param rules The rules
+	 * @return The rules that are not ignored
+	 * @param <T> The type of the rules
+	 */
+	/*@ non_null @*/ protected <T extends Rule> List<T> filterRules(/*@ non_null @*/ List<T> rules)
+	{
+		List<T> kept = new ArrayList<T>(rules.size());
+		for (T r : rules)
+		{
+			if (!isIgnored(r.getName()))
+			{
+				kept.add(r);
+			}
+		}
+		return kept;
+	}
+}
@@ -44,6 +44,8 @@ import ca.uqac.lif.petitpoucet.function.strings.RemoveLine;
 import ca.uqac.lif.petitpoucet.function.strings.Replace;
 import ca.uqac.lif.petitpoucet.function.strings.StringMappingFunction;
 import ca.uqac.lif.petitpoucet.function.strings.Substring;
+import ca.uqac.lif.util.FlightEvent;
+import ca.uqac.lif.util.Profiler;
 
 /**
  * A multi-line character string with facilities for provenance tracking.
@@ -155,6 +157,16 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	/*@ non_null @*/ protected static final Pattern s_line = Pattern.compile(CRLF);
 
+	/**
+	 * The flight recorder event emitted for each operation applied to a
+	 * string
+	 */
+	/*@ non_null @*/ public static final FlightEvent.Type OPERATION_EVENT = new FlightEvent.Type("ca.uqac.lif.textidote.Operation", "String Operation", "An operation applied to an annotated string")
+			.withField("operation", "Operation", String.class)
+			.withField("resource", "Resource", String.class)
+			.withField("length", "Length", int.class)
+			.withField("mappingSize", "Mapping Size", int.class);
+
 	/**
 	 * The current value of the string.
 	 */
@@ -181,7 +193,7 @@ public class AnnotatedString implements ExplanationQueryable
 	 * {@link #getLines()} are made without modification to the string, the list of
 	 * pre-computed lines is returned instead of being re-calculated.
 	 */
-	/*@ null @*/ protected List<Line> m_lines;
+	/*@ null @*/ protected volatile List<Line> m_lines;
 
 	/**
 	 * Creates a new annotated string from a plain Java string.
@@ -213,6 +225,7 @@ public class AnnotatedString implements ExplanationQueryable
 		m_string = s.m_string;
 		m_mapping = s.m_mapping;
 		m_lines = s.m_lines;
+		m_resourceName = s.m_resourceName;
 	}
 
 	/**
@@ -450,27 +463,31 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	/*@ pure non_null @*/ public List<Line> getLines()
 	{
-		if (m_lines != null)
+		List<Line> lines = m_lines;
+		if (lines != null)
 		{
-			return m_lines;
+			return lines;
 		}
-		m_lines = new ArrayList<Line>();
+		// The list is filled before it is published, so that rules evaluated
+		// concurrently on the same string never see it half-built
+		lines = new ArrayList<Line>();
 		int pos = 0;
 		while (pos < m_string.length())
 		{
 			int next_pos = m_string.indexOf(CRLF, pos);
 			if (next_pos < 0)
 			{
-				m_lines.add(new Line(m_string.substring(pos), pos));
+				lines.add(new Line(m_string.substring(pos), pos));
 				break;
 			}
 			if (next_pos < m_string.length())
 			{
-				m_lines.add(new Line(m_string.substring(pos, next_pos), pos));
+				lines.add(new Line(m_string.substring(pos, next_pos), pos));
 				pos = next_pos + CRLF_S;
 			}
 		}
-		return m_lines;
+		m_lines = lines;
+		return lines;
 	}
 
 	/**
@@ -640,25 +657,33 @@ public class AnnotatedString implements ExplanationQueryable
 		{
 			return Position.NOWHERE;
 		}
-		int pos = 0, line = 0;
-		while (pos < index)
+		Profiler.Sample sample = Profiler.start("provenance:positions");
+		try
 		{
-			int next_pos = s.indexOf(CRLF, pos);
-			if (next_pos < 0)
-			{
-				break;
-			}
-			if (next_pos < index)
+			int pos = 0, line = 0;
+			while (pos < index)
 			{
-				pos = next_pos + CRLF_S;
-				line++;
-			}
-			if (next_pos >= index)
-			{
-				break;
+				int next_pos = s.indexOf(CRLF, pos);
+				if (next_pos < 0)
+				{
+					break;
+				}
+				if (next_pos < index)
+				{
+					pos = next_pos + CRLF_S;
+					line++;
+				}
+				if (next_pos >= index)
+				{
+					break;
+				}
 			}
+			return new Position(line, index - pos);
+		}
+		finally
+		{
+			Profiler.stop(sample);
 		}
-		return new Position(line, index - pos);
 	}
 
 	/**
@@ -797,6 +822,24 @@ public class AnnotatedString implements ExplanationQueryable
 		return addOperation(new Replace(from, to));
 	}
 
+	/**
+	 * Replaces several regions of the string by literal strings, in a single
+	 * operation
+	 * @param starts The position of the first character of each region; the
+	 * regions must be in increasing order and must not overlap
+	 * @param ends The position after the last character of each region
+	 * @param replacements The string replacing each region
+	 * @return The new contents of the string
+	 */
+	/*@ non_null @*/ public AnnotatedString replaceRegions(/*@ non_null @*/ List<Integer> starts, /*@ non_null @*/ List<Integer> ends, /*@ non_null @*/ List<String> replacements)
+	{
+		if (starts.isEmpty())
+		{
+			return this;
+		}
+		return addOperation(new ReplaceRegions(starts, ends, replacements));
+	}
+
 	/*@ non_null @*/ public AnnotatedString removeLine(int line_nb)
 	{
 		return addOperation(new RemoveLine(line_nb));
@@ -848,13 +891,28 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	protected AnnotatedString addOperation(StringMappingFunction r)
 	{
+		FlightEvent event = OPERATION_EVENT.begin();
 		m_lines = null;
 		m_string = (String) r.evaluate(m_string)[0];
 		RangeMapping map = r.getMapping();
 		m_mapping = RangeMapping.compose(m_mapping, map);
+		if (event != null)
+		{
+			FlightEvent.commit(event, r.getClass().getSimpleName(), m_resourceName, m_string.length(), getMappingSize());
+		}
 		return this;
 	}
 
+	/**
+	 * Gets the number of pairs of ranges in the mapping between the original
+	 * string and its current contents
+	 * @return The number of pairs
+	 */
+	/*@ pure @*/ public int getMappingSize()
+	{
+		return m_mapping.getPairs().size();
+	}
+
 	@Override
 	public PartNode getExplanation(Part part)
 	{
@@ -898,9 +956,17 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	/*@ non_null @*/ protected List<Range> trackToInput(/*@ non_null @*/ Range r)
 	{
-		List<Range> ranges = m_mapping.trackToInput(r);
-		sortAndMerge(ranges);
-		return ranges;
+		Profiler.Sample sample = Profiler.start("provenance:ranges");
+		try
+		{
+			List<Range> ranges = m_mapping.trackToInput(r);
+			sortAndMerge(ranges);
+			return ranges;
+		}
+		finally
+		{
+			Profiler.stop(sample);
+		}
 	}
 
 	/**
@@ -925,9 +991,17 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	/*@ non_null @*/ protected List<Range> trackToOutput(/*@ non_null @*/ Range r)
 	{
-		List<Range> ranges = m_mapping.trackToOutput(r);
-		sortAndMerge(ranges);
-		return ranges;
+		Profiler.Sample sample = Profiler.start("provenance:ranges");
+		try
+		{
+			List<Range> ranges = m_mapping.trackToOutput(r);
+			sortAndMerge(ranges);
+			return ranges;
+		}
+		finally
+		{
+			Profiler.stop(sample);
+		}
 	}
 	
 	/**
@@ -951,21 +1025,29 @@ public class AnnotatedString implements ExplanationQueryable
 	 */
 	public static AnnotatedString read(Scanner scanner)
 	{
-		StringBuilder sb = new StringBuilder();
-		boolean first = true;
-		while (scanner.hasNextLine())
+		Profiler.Sample sample = Profiler.start("read");
+		try
 		{
-			if (first)
-			{
-				first = false;
-			}
-			else
+			StringBuilder sb = new StringBuilder();
+			boolean first = true;
+			while (scanner.hasNextLine())
 			{
-				sb.append(CRLF);
+				if (first)
+				{
+					first = false;
+				}
+				else
+				{
+					sb.append(CRLF);
+				}
+				sb.append(scanner.nextLine());
 			}
-			sb.append(scanner.nextLine());
+			return new AnnotatedString(sb.toString());
+		}
+		finally
+		{
+			Profiler.stop(sample);
 		}
-		return new AnnotatedString(sb.toString());
 	}
 
 	/**
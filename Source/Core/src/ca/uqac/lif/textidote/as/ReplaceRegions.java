@@ -0,0 +1,108 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.as;
+
+import java.util.List;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.petitpoucet.function.strings.StringMappingFunction;
+
+/**
+ * Replaces several regions of a string at once. The regions are given by
+ * their positions, and each is replaced by a literal string; the result and
+ * its range mapping are built in a single pass over the string. Each
+ * replaced region is mapped to its replacement as a whole, and the
+ * characters between the regions are mapped to themselves.
+ * @author Sylvain Hallé
+ */
+public class ReplaceRegions extends StringMappingFunction
+{
+	/**
+	 * The position of the first character of each region, in increasing
+	 * order
+	 */
+	/*@ non_null @*/ protected final List<Integer> m_starts;
+
+	/**
+	 * The position after the last character of each region
+	 */
+	/*@ non_null @*/ protected final List<Integer> m_ends;
+
+	/**
+	 * The string replacing each region
+	 */
+	/*@ non_null @*/ protected final List<String> m_replacements;
+
+	/**
+	 * Creates a new replacement of regions
+	 * @param starts The position of the first character of each region; the
+	 * regions must be in increasing order and must not overlap
+	 * @param ends The position after the last character of each region
+	 * @param replacements The string replacing each region
+	 */
+	public ReplaceRegions(/*@ non_null @*/ List<Integer> starts, /*@ non_null @*/ List<Integer> ends, /*@ non_null @*/ List<String> replacements)
+	{
+		super();
+		m_starts = starts;
+		m_ends = ends;
+		m_replacements = replacements;
+	}
+
+	@Override
+	protected String transformString(String s)
+	{
+		StringBuilder out = new StringBuilder(s.length());
+		int pos = 0;
+		for (int i = 0; i < m_starts.size(); i++)
+		{
+			int start = m_starts.get(i);
+			int end = m_ends.get(i);
+			String replacement = m_replacements.get(i);
+			if (start > pos)
+			{
+				map(pos, start, out.length(), out.length() + start - pos);
+				out.append(s, pos, start);
+			}
+			map(start, end, out.length(), out.length() + replacement.length());
+			out.append(replacement);
+			pos = end;
+		}
+		if (pos < s.length())
+		{
+			map(pos, s.length(), out.length(), out.length() + s.length() - pos);
+			out.append(s, pos, s.length());
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Maps a region of the input string to a region of the output string,
+	 * unless one of them is empty
+	 * @param from_start The start of the input region
+	 * @param from_end The end of the input region (excluded)
+	 * @param to_start The start of the output region
+	 * @param to_end The end of the output region (excluded)
+	 */
+	protected void map(int from_start, int from_end, int to_start, int to_end)
+	{
+		if (from_end > from_start && to_end > to_start)
+		{
+			m_mapping.add(new Range(from_start, from_end - 1), new Range(to_start, to_end - 1));
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.cleaning;
+
+import java.util.Collections;
+import java.util.List;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+/**
+ * The outcome of cleaning a single document: the cleaned string, along
+ * with the files included by the document. Since everything that pertains
+ * to a document is stored in this object, and not in the cleaner that
+ * produced it, the same cleaner can process multiple documents at once.
+ * @author Sylvain Hallé
+ */
+public class CleaningResult
+{
+	/**
+	 * The cleaned string
+	 */
+	/*@ non_null @*/ protected final AnnotatedString m_string;
+
+	/**
+	 * The files included by the document
+	 */
+	/*@ non_null @*/ protected final List<String> m_innerFiles;
+
+	/**
+	 * Creates a new cleaning result
+	 * @param s The cleaned string
+	 * @param inner_files The files included by the document
+	 */
+	public CleaningResult(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ List<String> inner_files)
+	{
+		super();
+		m_string = s;
+		m_innerFiles = Collections.unmodifiableList(inner_files);
+	}
+
+	/**
+	 * Creates a new cleaning result for a document that includes no other
+	 * file
+	 * @param s The cleaned string
+	 */
+	public CleaningResult(/*@ non_null @*/ AnnotatedString s)
+	{
+		this(s, Collections.<String>emptyList());
+	}
+
+	/**
+	 * Gets the cleaned string
+	 * @return The string
+	 */
+	/*@ pure non_null @*/ public AnnotatedString getString()
+	{
+		return m_string;
+	}
+
+	/**
+	 * Gets the files included by the document
+	 * @return The list of filenames, in the order they appear in the
+	 * document. This list cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<String> getInnerFiles()
+	{
+		return m_innerFiles;
+	}
+}
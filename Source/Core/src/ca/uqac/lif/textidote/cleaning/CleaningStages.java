@@ -0,0 +1,210 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.cleaning;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.FlightEvent;
+import ca.uqac.lif.util.MetricRegistry;
+import ca.uqac.lif.util.Profiler;
+
+/**
+ * The successive stages of the cleaning of a single document. Each
+ * {@link Stage} is computed the first time it is asked for, and then kept,
+ * so that a stage needed by multiple consumers (for example, the rules on
+ * the original text and the rest of the cleaning) is computed only once.
+ * The time spent on each stage is also kept.
+ * <p>
+ * The strings returned by {@link #get(Stage)} are shared and must not be
+ * modified; a stage computed from another one works on a copy. An instance
+ * of this class is meant to be used by one thread at a time, but the
+ * strings it returns can be read by multiple threads.
+ * @author Sylvain Hallé
+ */
+public abstract class CleaningStages
+{
+	/**
+	 * The stages of the cleaning, in the order they are computed
+	 */
+	public enum Stage
+	{
+		/**
+		 * The document, with comments removed but all other markup kept
+		 */
+		DECOMMENTED,
+
+		/**
+		 * The document, with comments and non-text blocks (such as LaTeX
+		 * environments and ignored macros) removed
+		 */
+		ENVIRONMENTS_REMOVED,
+
+		/**
+		 * The document, with all markup removed
+		 */
+		CLEANED
+	}
+
+	/**
+	 * The name under which each stage is measured by the {@link Profiler}
+	 */
+	/*@ non_null @*/ protected static final String[] PROFILE_NAMES = {"cleaner:comments", "cleaner:environments", "cleaner:markup"};
+
+	/**
+	 * The name under which each stage appears in the events of the flight
+	 * recorder and in the metrics
+	 */
+	/*@ non_null @*/ protected static final String[] EVENT_NAMES = {"comments", "environments", "markup"};
+
+	/**
+	 * The flight recorder event emitted for each cleaner, or each stage of a
+	 * cleaner, applied to a document
+	 */
+	/*@ non_null @*/ public static final FlightEvent.Type CLEANER_EVENT = new FlightEvent.Type("ca.uqac.lif.textidote.Cleaner", "Cleaning Stage", "A cleaner, or a stage of a cleaner, applied to a document")
+			.withField("stage", "Stage", String.class)
+			.withField("resource", "Resource", String.class)
+			.withField("length", "Length", int.class)
+			.withField("mappingSize", "Mapping Size", int.class);
+
+	/**
+	 * The original document
+	 */
+	/*@ non_null @*/ protected final AnnotatedString m_original;
+
+	/**
+	 * The result of each stage computed so far
+	 */
+	/*@ non_null @*/ protected final AnnotatedString[] m_results = new AnnotatedString[Stage.values().length];
+
+	/**
+	 * The time spent on each stage, in nanoseconds
+	 */
+	/*@ non_null @*/ protected final long[] m_durations = new long[Stage.values().length];
+
+	/**
+	 * The total time spent on the stages computed so far, in nanoseconds
+	 */
+	protected long m_totalDuration = 0;
+
+	/**
+	 * The files included by the document
+	 */
+	/*@ non_null @*/ protected List<String> m_innerFiles = new ArrayList<String>();
+
+	/**
+	 * Creates a new set of stages for a document
+	 * @param s The original document. It is not modified.
+	 */
+	public CleaningStages(/*@ non_null @*/ AnnotatedString s)
+	{
+		super();
+		m_original = s;
+	}
+
+	/**
+	 * Gets the original document
+	 * @return The document
+	 */
+	/*@ pure non_null @*/ public AnnotatedString getOriginal()
+	{
+		return m_original;
+	}
+
+	/**
+	 * Gets the result of a stage, computing it if necessary
+	 * @param stage The stage
+	 * @return The document at this stage. This string must not be modified.
+	 * @throws TextCleanerException If a problem occurs when cleaning
+	 */
+	/*@ non_null @*/ public AnnotatedString get(/*@ non_null @*/ Stage stage) throws TextCleanerException
+	{
+		int i = stage.ordinal();
+		if (m_results[i] == null)
+		{
+			// The time of the stages computed along the way is not counted
+			// twice
+			long before = m_totalDuration;
+			long start = System.nanoTime();
+			AnnotatedString result;
+			Profiler.Sample sample = Profiler.start(PROFILE_NAMES[i]);
+			FlightEvent event = CLEANER_EVENT.begin();
+			try
+			{
+				result = compute(stage);
+			}
+			finally
+			{
+				Profiler.stop(sample);
+			}
+			if (event != null)
+			{
+				FlightEvent.commit(event, EVENT_NAMES[i], m_original.getResourceName(), result.length(), result.getMappingSize());
+			}
+			m_durations[i] = System.nanoTime() - start - (m_totalDuration - before);
+			m_totalDuration += m_durations[i];
+			MetricRegistry.getDefault().histogram("textidote_cleaner_duration_seconds", "Time spent on each stage of the cleaning of a document", "stage", EVENT_NAMES[i]).observeNanos(m_durations[i]);
+			m_results[i] = result;
+		}
+		return m_results[i];
+	}
+
+	/**
+	 * Gets the fully cleaned document, along with the files it includes
+	 * @return The cleaning result
+	 * @throws TextCleanerException If a problem occurs when cleaning
+	 */
+	/*@ non_null @*/ public CleaningResult getResult() throws TextCleanerException
+	{
+		AnnotatedString cleaned = get(Stage.CLEANED);
+		return new CleaningResult(cleaned, m_innerFiles);
+	}
+
+	/**
+	 * Gets the time spent on a stage
+	 * @param stage The stage
+	 * @return The time, in nanoseconds; 0 if the stage has not been
+	 * computed
+	 */
+	/*@ pure @*/ public long getDuration(/*@ non_null @*/ Stage stage)
+	{
+		return m_durations[stage.ordinal()];
+	}
+
+	/**
+	 * Gets the files included by the document. The list is complete only
+	 * once the {@link Stage#CLEANED CLEANED} stage has been computed.
+	 * @return The list of filenames. This list cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<String> getInnerFiles()
+	{
+		return Collections.unmodifiableList(m_innerFiles);
+	}
+
+	/**
+	 * Computes a stage. Implementations that start from the result of a
+	 * previous stage obtain it with {@link #get(Stage)}, and copy it before
+	 * modifying it.
+	 * @param stage The stage
+	 * @return The document at this stage
+	 * @throws TextCleanerException If a problem occurs when cleaning
+	 */
+	/*@ non_null @*/ protected abstract AnnotatedString compute(/*@ non_null @*/ Stage stage) throws TextCleanerException;
+}
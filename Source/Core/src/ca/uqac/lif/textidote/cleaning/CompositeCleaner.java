@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.FlightEvent;
 
 /**
  * Text cleaner that calls multiple other cleaners in succession.
@@ -64,11 +65,48 @@ public class CompositeCleaner extends TextCleaner
 	{
 		for (TextCleaner tc : m_cleaners)
 		{
+			FlightEvent event = CleaningStages.CLEANER_EVENT.begin();
 			s = tc.clean(s);
+			if (event != null)
+			{
+				FlightEvent.commit(event, tc.getClass().getSimpleName(), s.getResourceName(), s.length(), s.getMappingSize());
+			}
 		}
 		return s;
 	}
 	
+	@Override
+	/*@ non_null @*/ public CleaningResult cleanDocument(/*@ non_null @*/ AnnotatedString s) throws TextCleanerException
+	{
+		List<String> files = new ArrayList<String>();
+		for (TextCleaner tc : m_cleaners)
+		{
+			FlightEvent event = CleaningStages.CLEANER_EVENT.begin();
+			CleaningResult result = tc.cleanDocument(s);
+			s = result.getString();
+			if (event != null)
+			{
+				FlightEvent.commit(event, tc.getClass().getSimpleName(), s.getResourceName(), s.length(), s.getMappingSize());
+			}
+			files.addAll(result.getInnerFiles());
+		}
+		return new CleaningResult(s, files);
+	}
+	
+	@Override
+	/*@ non_null @*/ public CleaningStages cleanInStages(/*@ non_null @*/ AnnotatedString s)
+	{
+		if (m_cleaners.size() == 1)
+		{
+			// The stages of a single cleaner are those of the composite
+			return m_cleaners.get(0).cleanInStages(s);
+		}
+		// Otherwise, the cleaners before the last one change the text before
+		// it is cleaned, but not before its comments are removed: the stages
+		// cannot be shared
+		return super.cleanInStages(s);
+	}
+	
 	@Override
 	/*@ pure non_null @*/ public AnnotatedString cleanComments(/*@ non_null @*/ AnnotatedString s) throws TextCleanerException
 	{
@@ -91,6 +129,7 @@ public class CompositeCleaner extends TextCleaner
 	}
 
 	@Override
+	@Deprecated
 	/*@ pure non_null @*/ public List<String> getInnerFiles()
 	{
 		ArrayList<String> files = new ArrayList<String>();
@@ -25,6 +25,8 @@ import java.util.Scanner;
 import java.util.regex.PatternSyntaxException;
 
 import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.RegexMatcher;
+import ca.uqac.lif.util.RegexPattern;
 
 /**
  * Text cleaner that applies a series of find/replace operations on a
@@ -65,6 +67,15 @@ public class ReplacementCleaner extends TextCleaner
 		{
 			try
 			{
+				if (RegexPattern.isLinearEnabled())
+				{
+					RegexPattern pat = RegexPattern.compile(entry.getKey());
+					if (pat.isLinear() && !entry.getValue().contains("${"))
+					{
+						s = replaceAll(s, pat, entry.getValue());
+						continue;
+					}
+				}
 				s = s.replaceAll(entry.getKey(), entry.getValue());
 			}
 			catch (PatternSyntaxException pse)
@@ -75,6 +86,40 @@ public class ReplacementCleaner extends TextCleaner
 		return s;
 	}
 
+	/**
+	 * Replaces all the matches of a pattern in a string. The matches are
+	 * found by the pattern's own engine, and are then all replaced as
+	 * literal strings in a single operation on the string, so that
+	 * <tt>java.util.regex</tt> never evaluates the pattern itself.
+	 * @param s The string
+	 * @param pat The pattern to find
+	 * @param replacement The replacement template; it can refer to the
+	 * capture groups of the pattern with <tt>$n</tt>
+	 * @return The string with the replacements applied
+	 * @throws TextCleanerException If the replacement template is not valid
+	 */
+	/*@ non_null @*/ protected static AnnotatedString replaceAll(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ RegexPattern pat, /*@ non_null @*/ String replacement) throws TextCleanerException
+	{
+		List<Integer> starts = new ArrayList<Integer>();
+		List<Integer> ends = new ArrayList<Integer>();
+		List<String> replacements = new ArrayList<String>();
+		RegexMatcher mat = pat.matcher(s.toString());
+		try
+		{
+			while (mat.find())
+			{
+				starts.add(mat.start());
+				ends.add(mat.end());
+				replacements.add(RegexPattern.expandReplacement(mat, replacement));
+			}
+		}
+		catch (IllegalArgumentException | IndexOutOfBoundsException e)
+		{
+			throw new TextCleanerException(e);
+		}
+		return s.replaceRegions(starts, ends, replacements);
+	}
+
 	@Override
 	public AnnotatedString cleanComments(AnnotatedString s) 
 	{
@@ -117,6 +162,7 @@ public class ReplacementCleaner extends TextCleaner
 	}
 
 	@Override
+	@Deprecated
 	/*@ pure non_null @*/ public List<String> getInnerFiles() 
 	{
 		return new ArrayList<String>(0);
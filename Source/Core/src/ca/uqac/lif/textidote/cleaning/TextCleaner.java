@@ -19,6 +19,7 @@ package ca.uqac.lif.textidote.cleaning;
 
 import ca.uqac.lif.textidote.as.AnnotatedString;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -67,6 +68,64 @@ public abstract class TextCleaner
 	 */
 	/*@ non_null @*/ public abstract AnnotatedString cleanComments(/*@ non_null @*/ AnnotatedString s) throws TextCleanerException;
 
+	/**
+	 * Removes markup from a document, and collects the files it includes.
+	 * Contrary to {@link #clean(AnnotatedString) clean()}, this method keeps
+	 * no trace of the document in the cleaner, and can be called by multiple
+	 * threads at the same time on cleaners that support it.
+	 * <p>
+	 * The default implementation calls {@link #clean(AnnotatedString)
+	 * clean()} followed by {@link #getInnerFiles()}; descendants that find
+	 * inner files should override it.
+	 * @param s The original string. Note that this string can be modified
+	 * by the method.
+	 * @return The cleaned string and the files included by the document
+	 * @throws TextCleanerException If a problem occurs when cleaning
+	 */
+	/*@ non_null @*/ public CleaningResult cleanDocument(/*@ non_null @*/ AnnotatedString s) throws TextCleanerException
+	{
+		AnnotatedString cleaned = clean(s);
+		return new CleaningResult(cleaned, new ArrayList<String>(getInnerFiles()));
+	}
+
+	/**
+	 * Prepares the cleaning of a document in successive stages, which can
+	 * be asked for separately and are computed only once. The
+	 * {@link CleaningStages.Stage#CLEANED CLEANED} stage is the same string
+	 * as the one produced by {@link #cleanDocument(AnnotatedString)
+	 * cleanDocument()}, and the {@link CleaningStages.Stage#DECOMMENTED
+	 * DECOMMENTED} stage is the same as the one produced by
+	 * {@link #cleanComments(AnnotatedString) cleanComments()}.
+	 * <p>
+	 * The default implementation computes these two stages independently,
+	 * and has nothing to remove in the intermediate stage; descendants whose
+	 * cleaning starts by removing comments should override it, so that
+	 * comments are removed only once.
+	 * @param s The original string. It is not modified.
+	 * @return The stages of the cleaning
+	 */
+	/*@ non_null @*/ public CleaningStages cleanInStages(/*@ non_null @*/ AnnotatedString s)
+	{
+		return new CleaningStages(s)
+		{
+			@Override
+			/*@ non_null @*/ protected AnnotatedString compute(/*@ non_null @*/ Stage stage) throws TextCleanerException
+			{
+				switch (stage)
+				{
+				case DECOMMENTED:
+					return cleanComments(new AnnotatedString(m_original));
+				case ENVIRONMENTS_REMOVED:
+					return get(Stage.DECOMMENTED);
+				default:
+					CleaningResult result = cleanDocument(new AnnotatedString(m_original));
+					m_innerFiles.addAll(result.getInnerFiles());
+					return result.getString();
+				}
+			}
+		};
+	}
+
 	/**
 	 * Returns the list of inner files included in the file to be cleaned.
 	 * Currently, this only has a meaning for cleaners based on LaTeX,
@@ -74,6 +133,10 @@ public abstract class TextCleaner
 	 * This result will be non-empty only after
 	 * {@link #clean(AnnotatedString) clean()} has been called.
 	 * @return The list of filenames
+	 * @deprecated The result refers to the last document cleaned by this
+	 * object, which is meaningless when the cleaner is shared. Use
+	 * {@link #cleanDocument(AnnotatedString)} instead.
 	 */
+	@Deprecated
 	/*@ non_null @*/ public abstract List<String> getInnerFiles();
 }
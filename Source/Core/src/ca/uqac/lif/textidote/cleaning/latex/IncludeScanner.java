@@ -0,0 +1,266 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.cleaning.latex;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+
+import ca.uqac.lif.textidote.cleaning.TextCleaner;
+
+/**
+ * Discovers the tree of files included by a LaTeX document, without
+ * cleaning it. Contrary to {@link LatexCleaner}, which only finds the
+ * <code>input</code> and <code>include</code> declarations of a file once
+ * it has been fully cleaned, this scanner performs a single cheap pass
+ * over each line of the source. It skips commented lines, comment
+ * environments and "ignore" blocks, and honors the <code>%!TEX root</code>
+ * directive, so that filenames are resolved exactly like
+ * {@link LatexCleaner#fetchIncludes(ca.uqac.lif.textidote.as.AnnotatedString, Path)
+ * fetchIncludes()} does.
+ * <p>
+ * The scan is a conservative approximation: it may report a file that the
+ * cleaner would ignore (for example an <code>\input</code> located inside
+ * a figure environment), but never the other way around. It is therefore
+ * meant to find files that can be loaded ahead of time, and not to replace
+ * the list of inner files computed by the cleaner.
+ * @author Sylvain Hallé
+ */
+public class IncludeScanner
+{
+	/**
+	 * The path of the root dir
+	 */
+	protected final Path m_rootDir;
+
+	/**
+	 * The encoding used to read files
+	 */
+	/*@ non_null @*/ protected String m_encoding = "utf-8";
+
+	/**
+	 * Whether the scanner ignores all lines of the top-level file before
+	 * seeing <code>\begin{document}</code>
+	 */
+	protected boolean m_ignoreBeforeDocument = false;
+
+	/**
+	 * Creates a new include scanner
+	 * @param root_dir Path to the root location
+	 */
+	public IncludeScanner(/*@ non_null @*/ String root_dir)
+	{
+		super();
+		m_rootDir = Paths.get(root_dir);
+	}
+
+	/**
+	 * Creates a new include scanner, assuming the root dir is the working
+	 * directory
+	 */
+	public IncludeScanner()
+	{
+		this("");
+	}
+
+	/**
+	 * Sets the encoding used to read the files of the tree
+	 * @param encoding The name of the encoding
+	 * @return This scanner
+	 */
+	/*@ non_null @*/ public IncludeScanner setEncoding(/*@ non_null @*/ String encoding)
+	{
+		m_encoding = encoding;
+		return this;
+	}
+
+	/**
+	 * Sets whether the scanner ignores the lines of the top-level file that
+	 * come before <code>\begin{document}</code>. This should mirror the
+	 * setting of the {@link LatexCleaner} applied on that file.
+	 * @param b Set to {@code true} to ignore these lines, {@code false}
+	 * otherwise (the default)
+	 * @return This scanner
+	 */
+	/*@ non_null @*/ public IncludeScanner setIgnoreBeforeDocument(boolean b)
+	{
+		m_ignoreBeforeDocument = b;
+		return this;
+	}
+
+	/**
+	 * Resolves the whole include tree of a document. Files are visited in
+	 * breadth-first order; each file is read at most once, and files that
+	 * cannot be opened are kept in the tree as leaves.
+	 * @param filename The name of the top-level file
+	 * @return A map associating each file of the tree (starting with the
+	 * top-level file) to the list of files it includes directly. The
+	 * iteration order of the map is the order in which the files were
+	 * discovered.
+	 */
+	/*@ non_null @*/ public Map<String,List<String>> scanTree(/*@ non_null @*/ String filename)
+	{
+		Map<String,List<String>> tree = new LinkedHashMap<String,List<String>>();
+		Queue<String> queue = new ArrayDeque<String>();
+		queue.add(filename);
+		boolean top_level = true;
+		while (!queue.isEmpty())
+		{
+			String current = queue.remove();
+			if (tree.containsKey(current))
+			{
+				continue;
+			}
+			List<String> includes = new ArrayList<String>();
+			tree.put(current, includes);
+			InputStream is = open(current);
+			if (is != null)
+			{
+				Scanner scanner = new Scanner(is, m_encoding);
+				List<String> lines = new ArrayList<String>();
+				while (scanner.hasNextLine())
+				{
+					lines.add(scanner.nextLine());
+				}
+				scanner.close();
+				includes.addAll(scan(lines, top_level && m_ignoreBeforeDocument));
+				queue.addAll(includes);
+			}
+			top_level = false;
+		}
+		return tree;
+	}
+
+	/**
+	 * Finds the <em>non-commented</em> <code>input</code> and
+	 * <code>include</code> declarations in the lines of a file.
+	 * @param lines The lines of the file
+	 * @param ignore_before_document Set to {@code true} to skip all the lines
+	 * before <code>\begin{document}</code>
+	 * @return The list of filenames, resolved against the root dir
+	 */
+	/*@ non_null @*/ public List<String> scan(/*@ non_null @*/ List<String> lines, boolean ignore_before_document)
+	{
+		List<String> files = new ArrayList<String>();
+		Path root = m_rootDir;
+		if (!lines.isEmpty())
+		{
+			// !TEX root directive needs to be in the first line
+			Matcher mat = LatexCleaner.m_rootPattern.matcher(lines.get(0));
+			if (mat.find())
+			{
+				root = root.resolve(Paths.get(mat.group(1).trim())).getParent();
+				if (root == null)
+				{
+					root = Paths.get("");
+				}
+			}
+		}
+		boolean in_comment = false;
+		boolean in_document = !ignore_before_document;
+		for (String line : lines)
+		{
+			if (line.matches(".*\\\\begin\\s*\\{\\s*comment.*") || line.matches("\\s*%+.*" + TextCleaner.IGNORE_BEGIN + ".*"))
+			{
+				in_comment = true;
+			}
+			boolean skip = in_comment || line.trim().startsWith("%");
+			if (in_comment && line.matches(".*\\\\end\\s*\\{\\s*comment.*") || line.matches("\\s*%+.*" + TextCleaner.IGNORE_END + ".*"))
+			{
+				in_comment = false;
+			}
+			if (skip)
+			{
+				continue;
+			}
+			line = removeComment(line);
+			if (!in_document)
+			{
+				if (line.matches("[^%]*\\\\begin\\s*\\{\\s*document.*"))
+				{
+					in_document = true;
+				}
+				continue;
+			}
+			Matcher mat = LatexCleaner.m_includePattern.matcher(line);
+			if (mat.find())
+			{
+				String filename = mat.group(2).trim();
+				if (!filename.endsWith(".tex"))
+				{
+					filename += ".tex";
+				}
+				files.add(root.resolve(Paths.get(filename)).toString());
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Opens a file of the include tree. Descendants of this class can
+	 * override this method to fetch files from another location than the
+	 * local file system.
+	 * @param filename The name of the file
+	 * @return An input stream open on the file, or {@code null} if the file
+	 * cannot be opened
+	 */
+	/*@ null @*/ protected InputStream open(/*@ non_null @*/ String filename)
+	{
+		File f = new File(filename);
+		if (!f.exists())
+		{
+			return null;
+		}
+		try
+		{
+			return new FileInputStream(f);
+		}
+		catch (FileNotFoundException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Removes the trailing comment of a line, if any
+	 * @param line The line
+	 * @return The line, truncated at the first non-escaped <code>%</code>
+	 */
+	/*@ non_null @*/ protected static String removeComment(/*@ non_null @*/ String line)
+	{
+		for (int pos = line.indexOf('%'); pos >= 0; pos = line.indexOf('%', pos + 1))
+		{
+			if (pos == 0 || line.charAt(pos - 1) != '\\')
+			{
+				return line.substring(0, pos);
+			}
+		}
+		return line;
+	}
+}
@@ -20,8 +20,12 @@ package ca.uqac.lif.textidote.cleaning.latex;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.Match;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.cleaning.CleaningResult;
+import ca.uqac.lif.textidote.cleaning.CleaningStages;
 import ca.uqac.lif.textidote.cleaning.TextCleaner;
 import ca.uqac.lif.textidote.cleaning.TextCleanerException;
+import ca.uqac.lif.util.FlightEvent;
+import ca.uqac.lif.util.Profiler;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -61,9 +65,10 @@ public class LatexCleaner extends TextCleaner
 
 	/**
 	 * A list of <em>non-commented</em> <code>input</code> and <code>include</code>
-	 * declarations found in the file to be cleaned.
+	 * declarations found in the last file passed to {@link #clean(AnnotatedString)
+	 * clean()}. This is only kept for {@link #getInnerFiles()}.
 	 */
-	protected final List<String> m_innerFiles = new ArrayList<String>();
+	protected volatile List<String> m_innerFiles = new ArrayList<String>();
 
 	/**
 	 * A regex pattern matching the <code>input</code> and <code>include</code>
@@ -143,22 +148,21 @@ public class LatexCleaner extends TextCleaner
 	@Override
 	/*@ non_null @*/ public AnnotatedString clean(/*@ non_null @*/ AnnotatedString as) throws TextCleanerException
 	{
-		// Reset list of inner files every time we clean
-		m_innerFiles.clear();
-		AnnotatedString new_as = new AnnotatedString(as);
-		Path root = m_rootDir;
-		String root_directive = parseRoot(new_as);
-		if(root_directive != null){
-			root = root.resolve(Paths.get(root_directive)).getParent();
-		}
-		new_as = cleanComments(new_as);
-		new_as = removeEnvironments(new_as);
-		new_as = removeMacros(new_as);
-		fetchIncludes(new_as, root);
-		//new_as = removeAllMarkup(new_as);
-		new_as = removeMarkup(new_as);
-		//new_as = simplifySpaces(new_as);
-		return new_as;
+		CleaningResult result = cleanDocument(as);
+		m_innerFiles = result.getInnerFiles();
+		return result.getString();
+	}
+
+	@Override
+	/*@ non_null @*/ public CleaningResult cleanDocument(/*@ non_null @*/ AnnotatedString as) throws TextCleanerException
+	{
+		return cleanInStages(as).getResult();
+	}
+
+	@Override
+	/*@ non_null @*/ public CleaningStages cleanInStages(/*@ non_null @*/ AnnotatedString as)
+	{
+		return new LatexStages(as);
 	}
 
 	/**
@@ -578,14 +582,16 @@ public class LatexCleaner extends TextCleaner
 	}
 
 	/**
-	 * Populates a list of <em>non-commented</em> <code>input</code> and
-	 * <code>include</code> declarations found in the file to be cleaned.
+	 * Finds the <em>non-commented</em> <code>input</code> and
+	 * <code>include</code> declarations in the file to be cleaned.
 	 * @param as The contents of the file (where environments and
 	 * comments have already been removed).
 	 * @param root Root location
+	 * @return The list of included files
 	 */
-	protected void fetchIncludes(/*@ non_null @*/ AnnotatedString as, /*@ non_null @*/ Path root)
+	/*@ non_null @*/ protected List<String> fetchIncludes(/*@ non_null @*/ AnnotatedString as, /*@ non_null @*/ Path root)
 	{
+		List<String> inner_files = new ArrayList<String>();
 		for (Line l : as.getLines())
 		{
 			String line = l.toString();
@@ -598,7 +604,72 @@ public class LatexCleaner extends TextCleaner
 					filename += ".tex";
 				}
 				Path filepath = root.resolve(Paths.get(filename));
-				m_innerFiles.add(filepath.toString());
+				inner_files.add(filepath.toString());
+			}
+		}
+		return inner_files;
+	}
+
+	/**
+	 * The stages of the cleaning of a LaTeX document. Each stage starts from
+	 * the previous one: comments are removed, then environments and ignored
+	 * macros, and then the remaining markup.
+	 */
+	protected class LatexStages extends CleaningStages
+	{
+		/**
+		 * The folder against which included files are resolved
+		 */
+		/*@ non_null @*/ protected final Path m_root;
+
+		/**
+		 * Creates the stages of the cleaning of a document
+		 * @param as The document
+		 */
+		public LatexStages(/*@ non_null @*/ AnnotatedString as)
+		{
+			super(as);
+			Path root = m_rootDir;
+			String root_directive = parseRoot(as);
+			if(root_directive != null){
+				root = root.resolve(Paths.get(root_directive)).getParent();
+			}
+			m_root = root;
+		}
+
+		@Override
+		/*@ non_null @*/ protected AnnotatedString compute(/*@ non_null @*/ Stage stage) throws TextCleanerException
+		{
+			AnnotatedString new_as;
+			switch (stage)
+			{
+			case DECOMMENTED:
+				return cleanComments(new AnnotatedString(m_original));
+			case ENVIRONMENTS_REMOVED:
+				new_as = new AnnotatedString(get(Stage.DECOMMENTED));
+				new_as = removeEnvironments(new_as);
+				Profiler.Sample sample = Profiler.start("cleaner:macros");
+				FlightEvent event = CLEANER_EVENT.begin();
+				try
+				{
+					new_as = removeMacros(new_as);
+				}
+				finally
+				{
+					Profiler.stop(sample);
+				}
+				if (event != null)
+				{
+					FlightEvent.commit(event, "macros", new_as.getResourceName(), new_as.length(), new_as.getMappingSize());
+				}
+				m_innerFiles.addAll(fetchIncludes(new_as, m_root));
+				return new_as;
+			default:
+				new_as = new AnnotatedString(get(Stage.ENVIRONMENTS_REMOVED));
+				//new_as = removeAllMarkup(new_as);
+				new_as = removeMarkup(new_as);
+				//new_as = simplifySpaces(new_as);
+				return new_as;
 			}
 		}
 	}
@@ -609,8 +680,10 @@ public class LatexCleaner extends TextCleaner
 	 * This result will be non-empty only after
 	 * {@link #clean(AnnotatedString) clean()} has been called.
 	 * @return The list of filenames
+	 * @deprecated Use {@link #cleanDocument(AnnotatedString)}
 	 */
 	@Override
+	@Deprecated
 	/*@ pure non_null @*/ public List<String> getInnerFiles()
 	{
 		return m_innerFiles;
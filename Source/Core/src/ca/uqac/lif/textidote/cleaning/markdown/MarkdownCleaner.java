@@ -19,6 +19,7 @@ package ca.uqac.lif.textidote.cleaning.markdown;
 
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.cleaning.CleaningStages;
 import ca.uqac.lif.textidote.cleaning.TextCleaner;
 import ca.uqac.lif.textidote.cleaning.TextCleanerException;
 
@@ -33,12 +34,30 @@ public class MarkdownCleaner extends TextCleaner
 	@Override
 	/*@ non_null @*/ public AnnotatedString clean(/*@ non_null @*/ AnnotatedString as) throws TextCleanerException
 	{
-		AnnotatedString new_as = new AnnotatedString(as);
-		new_as = cleanComments(new_as);
-		new_as = removeEnvironments(new_as);
-		new_as = removeMarkup(new_as);
-		//new_as = simplifySpaces(new_as);
-		return new_as;
+		return cleanInStages(as).get(CleaningStages.Stage.CLEANED);
+	}
+
+	@Override
+	/*@ non_null @*/ public CleaningStages cleanInStages(/*@ non_null @*/ AnnotatedString as)
+	{
+		return new CleaningStages(as)
+		{
+			@Override
+			/*@ non_null @*/ protected AnnotatedString compute(/*@ non_null @*/ Stage stage) throws TextCleanerException
+			{
+				switch (stage)
+				{
+				case DECOMMENTED:
+					return cleanComments(new AnnotatedString(m_original));
+				case ENVIRONMENTS_REMOVED:
+					return removeEnvironments(new AnnotatedString(get(Stage.DECOMMENTED)));
+				default:
+					AnnotatedString new_as = removeMarkup(new AnnotatedString(get(Stage.ENVIRONMENTS_REMOVED)));
+					//new_as = simplifySpaces(new_as);
+					return new_as;
+				}
+			}
+		};
 	}
 
 	private enum CommentStates {SINGLE_LINE, MULTILINE, INLINE, IGNORE, NONE}
@@ -215,6 +234,7 @@ public class MarkdownCleaner extends TextCleaner
 	}
 
 	@Override
+	@Deprecated
 	/*@ pure non_null @*/ public List<String> getInnerFiles()
 	{
 		return new ArrayList<String>(0);
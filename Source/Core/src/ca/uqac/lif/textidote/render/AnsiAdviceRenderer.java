@@ -17,12 +17,14 @@
  */
 package ca.uqac.lif.textidote.render;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
 import ca.uqac.lif.textidote.AdviceRenderer;
+import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
 import ca.uqac.lif.textidote.as.PositionRange;
 import ca.uqac.lif.util.AnsiPrinter;
@@ -30,7 +32,9 @@ import ca.uqac.lif.util.AnsiPrinter.Color;
 
 /**
  * Renders a list of advice to a terminal (such as {@code stdin}), using
- * colored output.
+ * colored output. When files are given one at a time, the advice of each
+ * file is printed as soon as it is done, except for the first one, which
+ * is kept until it is known whether the filenames must be shown.
  * @author Sylvain Hallé
  */
 public class AnsiAdviceRenderer extends AdviceRenderer 
@@ -46,6 +50,22 @@ public class AnsiAdviceRenderer extends AdviceRenderer
 	 */
 	protected int m_terminalLineWidth = 78;
 
+	/**
+	 * When files are given one at a time, the number of files given so far
+	 */
+	protected int m_fileCount = 0;
+
+	/**
+	 * When files are given one at a time, the name of the first file, kept
+	 * until it is known whether more than one file is rendered
+	 */
+	/*@ null @*/ protected String m_pendingFilename = null;
+
+	/**
+	 * The advice of the file kept in {@link #m_pendingFilename}
+	 */
+	/*@ null @*/ protected List<Advice> m_pendingAdvice = null;
+
 	/**
 	 * Creates a new advice renderer
 	 * @param printer The printer to which the advice will be printed
@@ -61,35 +81,86 @@ public class AnsiAdviceRenderer extends AdviceRenderer
 		boolean map_single = m_advice.size() <= 1;
 		for (Map.Entry<String,List<Advice>> entry : m_advice.entrySet())
 		{
-			String filename = entry.getKey();
-			List<Advice> list = entry.getValue();
-			if (!map_single)
-			{
-				m_printer.println(filename);
-				m_printer.println();
-			}
-			if (list.isEmpty())
+			renderFile(entry.getKey(), entry.getValue(), !map_single);
+		}
+	}
+
+	@Override
+	public void begin()
+	{
+		m_pendingFilename = null;
+		m_pendingAdvice = null;
+		m_fileCount = 0;
+	}
+
+	@Override
+	public void fileDone(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		m_fileCount++;
+		if (m_fileCount == 1)
+		{
+			// Whether the filename must be shown is not known yet
+			m_pendingFilename = filename;
+			m_pendingAdvice = advice;
+			return;
+		}
+		if (m_pendingFilename != null)
+		{
+			renderFile(m_pendingFilename, m_pendingAdvice, true);
+			m_pendingFilename = null;
+			m_pendingAdvice = null;
+		}
+		renderFile(filename, advice, true);
+		m_printer.flush();
+	}
+
+	@Override
+	public void end()
+	{
+		if (m_pendingFilename != null)
+		{
+			renderFile(m_pendingFilename, m_pendingAdvice, false);
+			m_pendingFilename = null;
+			m_pendingAdvice = null;
+		}
+		m_printer.flush();
+	}
+
+	/**
+	 * Renders the advice of a single file
+	 * @param filename The filename
+	 * @param list The advice for this file
+	 * @param show_filename Set to {@code true} to print the filename before
+	 * the advice, as is done when more than one file is rendered
+	 */
+	protected void renderFile(/*@ non_null @*/ String filename, /*@ non_null @*/ List<Advice> list, boolean show_filename)
+	{
+		if (show_filename)
+		{
+			m_printer.println(filename);
+			m_printer.println();
+		}
+		if (list.isEmpty())
+		{
+			if (show_filename)
 			{
-				if (!map_single)
-				{
-					m_printer.print("* ");
-				}
-				m_printer.println("Everything is OK!");
+				m_printer.print("* ");
 			}
-			else
+			m_printer.println("Everything is OK!");
+		}
+		else
+		{
+			for (Advice ad : list)
 			{
-				for (Advice ad : list)
-				{
-					PositionRange pr = ad.getPositionRange();
-					m_printer.setForegroundColor(Color.YELLOW);
-					m_printer.print("* " + pr);
-					m_printer.resetColors();
-					m_printer.print(" ");
-					wrap(ad.getMessage() + " [" + ad.getRule().getName() + "]", "  ", pr.toString().length() + 2);
-					m_printer.println();
-					m_printer.setForegroundColor(Color.WHITE);
-					renderExcerpt(ad, ad.getLine(), ad.getRange());
-				}
+				PositionRange pr = ad.getPositionRange();
+				m_printer.setForegroundColor(Color.YELLOW);
+				m_printer.print("* " + pr);
+				m_printer.resetColors();
+				m_printer.print(" ");
+				wrap(ad.getMessage() + " [" + ad.getRule().getName() + "]", "  ", pr.toString().length() + 2);
+				m_printer.println();
+				m_printer.setForegroundColor(Color.WHITE);
+				renderExcerpt(ad, ad.getLine(), ad.getRange());
 			}
 		}
 	}
@@ -132,10 +203,7 @@ public class AnsiAdviceRenderer extends AdviceRenderer
 		// Show squiggly line
 		printSpaces(indent + Math.max(0, left - offset));
 		m_printer.setForegroundColor(Color.LIGHT_RED);
-		for (int i = 0; i < range_width + 1; i++)
-		{
-			m_printer.append("^");
-		}
+		m_printer.print(repeat('^', range_width + 1));
 		m_printer.resetColors();
 		m_printer.println();
 	}
@@ -146,10 +214,24 @@ public class AnsiAdviceRenderer extends AdviceRenderer
 	 */
 	protected void printSpaces(int n)
 	{
-		for (int i = 0; i < n; i++)
+		m_printer.print(repeat(' ', n));
+	}
+
+	/**
+	 * Creates a string made of the same character repeated
+	 * @param c The character
+	 * @param n The number of times to repeat it
+	 * @return The string
+	 */
+	/*@ non_null @*/ protected static String repeat(char c, int n)
+	{
+		if (n <= 0)
 		{
-			m_printer.print(" ");
-		}	
+			return "";
+		}
+		char[] chars = new char[n];
+		Arrays.fill(chars, c);
+		return new String(chars);
 	}
 
 	/**
@@ -18,16 +18,18 @@
 package ca.uqac.lif.textidote.render;
 
 import java.util.List;
-import java.util.Map;
 
 import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGroup;
 import ca.uqac.lif.textidote.as.Position;
 import ca.uqac.lif.textidote.as.PositionRange;
 import ca.uqac.lif.util.AnsiPrinter;
 
 /**
  * Renders advice in a "file:line:column: message" format that can be parsed by
- * many terminals and editors as clickable diagnostics.
+ * many terminals and editors as clickable diagnostics. Each occurrence of an
+ * {@link AdviceGroup} gets its own line, so that every one of them can be
+ * clicked.
  */
 public class ClickableAdviceRenderer extends SinglelineAdviceRenderer
 {
@@ -43,27 +45,45 @@ public class ClickableAdviceRenderer extends SinglelineAdviceRenderer
 	}
 
 	@Override
-	public void render()
+	protected void renderFile(/*@ non_null @*/ String filename, /*@ non_null @*/ List<Advice> list)
 	{
-		for (Map.Entry<String, List<Advice>> entry : m_advice.entrySet())
+		for (Advice ad : list)
 		{
-			String filename = entry.getKey();
-			List<Advice> list = entry.getValue();
-			if (!list.isEmpty())
+			if (!(ad instanceof AdviceGroup))
 			{
-				for (Advice ad : list)
-				{
-					PositionRange range = ad.getPositionRange();
-					Position start = range.getStart();
-					int line = Math.max(1, start.getLine() + 1);
-					int col = Math.max(1, start.getColumn() + 1);
-					m_printer.print(filename + ":" + line + ":" + col + ": ");
-					m_printer.print(
-							ad.getMessage().replaceAll("<suggestion>", "").replaceAll("</suggestion", "").trim());
-					renderExcerpt(ad.getReferenceString(), ad.getLine(), ad.getRange());
-					m_printer.println();
-				}
+				renderAdvice(filename, ad, ad.getMessage());
+				continue;
+			}
+			// The locations are on their own lines, not in the message
+			List<Advice> members = ((AdviceGroup) ad).getMembers();
+			for (int i = 0; i < members.size(); i++)
+			{
+				Advice member = members.get(i);
+				renderAdvice(filename, member, member.getMessage() + " (occurrence " + (i + 1) + " of " + members.size() + ")");
 			}
 		}
 	}
+
+	/**
+	 * Renders a single advice on its own line
+	 *
+	 * @param filename
+	 *          The filename
+	 * @param ad
+	 *          The advice
+	 * @param message
+	 *          The message to show for this advice
+	 */
+	protected void renderAdvice(/*@ non_null @*/ String filename, /*@ non_null @*/ Advice ad, /*@ non_null @*/ String message)
+	{
+		PositionRange range = ad.getPositionRange();
+		Position start = range.getStart();
+		int line = Math.max(1, start.getLine() + 1);
+		int col = Math.max(1, start.getColumn() + 1);
+		m_printer.print(filename + ":" + line + ":" + col + ": ");
+		m_printer.print(
+				message.replaceAll("<suggestion>", "").replaceAll("</suggestion", "").trim());
+		renderExcerpt(ad.getReferenceString(), ad.getLine(), ad.getRange());
+		m_printer.println();
+	}
 }
@@ -17,22 +17,26 @@
  */
 package ca.uqac.lif.textidote.render;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 
 import org.languagetool.Language;
 
+import ca.uqac.lif.json.JsonElement;
 import ca.uqac.lif.json.JsonFalse;
 import ca.uqac.lif.json.JsonList;
 import ca.uqac.lif.json.JsonMap;
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGroup;
 import ca.uqac.lif.textidote.AdviceRenderer;
 import ca.uqac.lif.textidote.Main;
 import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.as.Position;
 import ca.uqac.lif.textidote.rules.LanguageFactory;
 import ca.uqac.lif.util.AnsiPrinter;
 
@@ -42,7 +46,8 @@ import ca.uqac.lif.util.AnsiPrinter;
  * <b>Caveat emptor:</b> since LT works on single files, its JSON format
  * does not have a structure that supports outputting info for multiple
  * files at once. Hence this advice renderer will only work on the first
- * file it is given.
+ * file it is given. See {@link StreamingJsonAdviceRenderer} for a renderer
+ * that covers all the files.
  * 
  * @author Sylvain Hallé
  */
@@ -55,6 +60,45 @@ public class JsonAdviceRenderer extends AdviceRenderer
 
 	@Override
 	public void render()
+	{
+		List<Advice> list = new ArrayList<Advice>();
+		for (Map.Entry<String,List<Advice>> entry : m_advice.entrySet())
+		{
+			list = entry.getValue();
+			// Break after the first file; see comment at top of this class
+			break;
+		}
+		m_printer.print(getReport(list, m_languageCode).toString());
+	}
+
+	/**
+	 * Creates the JSON report for the advice computed on a single file.
+	 * @param advice The list of advice
+	 * @param lang_code The language code used when checking the file;
+	 * may be the empty string
+	 * @return The report, in LanguageTool's JSON format
+	 */
+	/*@ non_null @*/ public static JsonMap getReport(/*@ non_null @*/ List<Advice> advice, /*@ non_null @*/ String lang_code)
+	{
+		JsonMap root = getHeader(lang_code);
+		JsonList matches = new JsonList();
+		for (Advice a : advice)
+		{
+			matches.add(getMatch(a));
+		}
+		root.put("matches", matches);
+		return root;
+	}
+
+	/**
+	 * Creates the part of the JSON report that comes before the list of
+	 * matches, namely the <tt>software</tt>, <tt>warnings</tt> and
+	 * <tt>language</tt> elements.
+	 * @param lang_code The language code used when checking the file;
+	 * may be the empty string
+	 * @return The header of the report
+	 */
+	/*@ non_null @*/ public static JsonMap getHeader(/*@ non_null @*/ String lang_code)
 	{
 		JsonMap root = new JsonMap();
 		{
@@ -72,9 +116,9 @@ public class JsonAdviceRenderer extends AdviceRenderer
 		{
 			JsonMap lang = new JsonMap();
 			String name = "", code = "";
-			if (!m_languageCode.isEmpty())
+			if (!lang_code.isEmpty())
 			{
-				Language l = LanguageFactory.getLanguageFromString(m_languageCode);
+				Language l = LanguageFactory.getLanguageFromString(lang_code);
 				if (l != null)
 				{
 					code = l.getShortCode();
@@ -85,69 +129,96 @@ public class JsonAdviceRenderer extends AdviceRenderer
 			lang.put("code", code);
 			root.put("language", lang);
 		}
-		JsonList matches = new JsonList();
-		for (Map.Entry<String,List<Advice>> entry : m_advice.entrySet())
+		return root;
+	}
+
+	/**
+	 * Creates the element of the <tt>matches</tt> list of the JSON report
+	 * that corresponds to a single advice.
+	 * @param a The advice
+	 * @return The match
+	 */
+	/*@ non_null @*/ public static JsonMap getMatch(/*@ non_null @*/ Advice a)
+	{
+		int count = 1;
+		JsonMap match = new JsonMap();
+		match.put("message", a.getMessage());
+		match.put("shortMessage", a.getShortMessage());
+		JsonList replacements = new JsonList();
+		List<String> repls = a.getReplacements();
+		if (repls != null)
 		{
-			for (Advice a : entry.getValue())
+			for (String repl : repls)
 			{
-				int count = 1;
-				JsonMap match = new JsonMap();
-				match.put("message", a.getMessage());
-				match.put("shortMessage", a.getShortMessage());
-				JsonList replacements = new JsonList();
-				List<String> repls = a.getReplacements();
-				if (repls != null)
-				{
-					for (String repl : repls)
-					{
-						JsonMap j_rep = new JsonMap();
-						j_rep.put("value", repl);
-						replacements.add(j_rep);
-					}
-				}
-				match.put("replacements", replacements);
-				match.put("offset", a.getOffset());
-				match.put("length", a.getRange().length());
-				String excerpt = renderExcerpt(a.getReferenceString(), a.getLine(), a.getRange(), 80);
-				{
-					JsonMap context = new JsonMap();
-					context.put("text", excerpt);
-					context.put("offset", a.getOffset());
-					context.put("length", a.getRange().length());
-					match.put("context", context);
-				}
-				match.put("sentence", excerpt);
-				{
-					JsonMap type = new JsonMap();
-					type.put("typeName", "Other"); // Haven't seen any other value
-					match.put("type", type);
-				}
-				{
-					JsonMap j_rule = new JsonMap();
-					Rule rule = a.getRule();
-					j_rule.put("id", rule.getName());
-					j_rule.put("description", rule.getDescription());
-					j_rule.put("issueType", "language");
-					{
-						JsonMap category = new JsonMap();
-						category.put("id", "MISC");
-						category.put("name", "Miscellaneous");
-						j_rule.put("category", category);
-					}
-					match.put("rule", j_rule);
-				}
-				match.put("ignoreForIncompleteSentence", JsonFalse.instance);
-				match.put("contextForSureMatch", count);
-				matches.add(match);	
-				count++;
+				JsonMap j_rep = new JsonMap();
+				j_rep.put("value", repl);
+				replacements.add(j_rep);
 			}
-			// Break after the first file; see comment at top of this class
-			break;
 		}
-		root.put("matches", matches);
-		m_printer.print(root.toString());
+		match.put("replacements", replacements);
+		match.put("offset", a.getOffset());
+		match.put("length", a.getRange().length());
+		String excerpt = renderExcerpt(a.getReferenceString(), a.getLine(), a.getRange(), 80);
+		{
+			JsonMap context = new JsonMap();
+			context.put("text", excerpt);
+			context.put("offset", a.getOffset());
+			context.put("length", a.getRange().length());
+			match.put("context", context);
+		}
+		match.put("sentence", excerpt);
+		{
+			JsonMap type = new JsonMap();
+			type.put("typeName", "Other"); // Haven't seen any other value
+			match.put("type", type);
+		}
+		{
+			JsonMap j_rule = new JsonMap();
+			Rule rule = a.getRule();
+			j_rule.put("id", rule.getName());
+			j_rule.put("description", rule.getDescription());
+			j_rule.put("issueType", "language");
+			{
+				JsonMap category = new JsonMap();
+				category.put("id", "MISC");
+				category.put("name", "Miscellaneous");
+				j_rule.put("category", category);
+			}
+			match.put("rule", j_rule);
+		}
+		match.put("ignoreForIncompleteSentence", JsonFalse.instance);
+		match.put("contextForSureMatch", count);
+		if (a instanceof AdviceGroup)
+		{
+			// Not in LanguageTool's format: the location of every occurrence
+			JsonList locations = new JsonList();
+			for (Advice member : ((AdviceGroup) a).getMembers())
+			{
+				Position start = member.getPositionRange().getStart();
+				JsonMap location = new JsonMap();
+				location.put("offset", member.getOffset());
+				location.put("length", member.getRange().length());
+				location.put("line", start.getLine() + 1);
+				location.put("column", start.getColumn() + 1);
+				locations.add(location);
+			}
+			match.put("locations", locations);
+		}
+		return match;
 	}
-	
+
+	/**
+	 * Renders a JSON element on a single line. Since strings are escaped,
+	 * the only line breaks in the serialized element are those added for
+	 * indentation.
+	 * @param e The element
+	 * @return The element, on a single line
+	 */
+	/*@ non_null @*/ public static String toSingleLine(/*@ non_null @*/ JsonElement e)
+	{
+		return e.toString().replaceAll("[\\r\\n]+\\s*", "");
+	}
+
 	/**
 	 * Renders a partial line of text surrounding the location of the advice.
 	 * @param as The original string
@@ -156,7 +227,7 @@ public class JsonAdviceRenderer extends AdviceRenderer
 	 * @param line_width An approximate length for the line of text to produce
 	 * @return The excerpt
 	 */
-	protected String renderExcerpt(AnnotatedString as, /*@ non_null @*/ Line l, /*@ non_null @*/ Range range, int line_width)
+	protected static String renderExcerpt(AnnotatedString as, /*@ non_null @*/ Line l, /*@ non_null @*/ Range range, int line_width)
 	{
 		String line = l.toString();
 		int left = as.getPosition(range.getStart()).getColumn();
@@ -0,0 +1,251 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.AnsiPrinter;
+
+/**
+ * Renders advice as an HTML report split into multiple pages. Each file
+ * is written to a page of its own as soon as it is done, and an index page
+ * listing the files and their number of warnings is written at the end.
+ * All the pages are written to a directory given to the renderer; the
+ * printer given to the renderer is not used.
+ * <p>
+ * Since a file is not kept once its page is written, the memory used by
+ * the renderer does not depend on the size of the project, and a browser
+ * only loads the file the user asks for.
+ * @author Sylvain Hallé
+ */
+public class PagedHtmlAdviceRenderer extends StreamingHtmlAdviceRenderer
+{
+	/**
+	 * The name of the index page
+	 */
+	public static final String INDEX_PAGE = "index.html";
+
+	/**
+	 * The directory where the pages are written
+	 */
+	/*@ non_null @*/ protected final File m_directory;
+
+	/**
+	 * The files whose page has been written, in order
+	 */
+	/*@ non_null @*/ protected final List<PageInfo> m_pages = new ArrayList<PageInfo>();
+
+	/**
+	 * Whether a page could not be written
+	 */
+	protected boolean m_error = false;
+
+	/**
+	 * Creates a new paged HTML advice renderer
+	 * @param printer The printer of the renderer. It is not used, since
+	 * the pages are written to files.
+	 * @param directory The directory where the pages are written. It must
+	 * exist.
+	 */
+	public PagedHtmlAdviceRenderer(/*@ non_null @*/ AnsiPrinter printer, /*@ non_null @*/ File directory)
+	{
+		super(printer);
+		m_directory = directory;
+	}
+
+	@Override
+	public void render()
+	{
+		begin();
+		for (Map.Entry<String,List<Advice>> entry : m_advice.entrySet())
+		{
+			String filename = entry.getKey();
+			fileDone(filename, m_originalStrings.get(filename), entry.getValue());
+		}
+		end();
+	}
+
+	@Override
+	public void begin()
+	{
+		m_pages.clear();
+	}
+
+	@Override
+	public void fileDone(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		PageInfo page = new PageInfo(filename, "file-" + (m_pages.size() + 1) + ".html", advice.size());
+		AnsiPrinter printer = openPage(page.m_page);
+		if (printer == null)
+		{
+			return;
+		}
+		AnsiPrinter previous = m_printer;
+		m_printer = printer;
+		try
+		{
+			printFromInternalFile("preamble.html");
+			m_printer.println("<p><a href=\"" + INDEX_PAGE + "\">Back to the list of files</a></p>");
+			m_printer.println("<h2 class=\"filename\">" + escape(filename) + "</h2>");
+			m_printer.println("");
+			m_printer.println("<p>Found " + advice.size() + " warning(s)</p>");
+			m_printer.println("<div class=\"original-file\">");
+			renderFile(contents, advice);
+			m_printer.println("</div>");
+			printFromInternalFile("postamble.html");
+		}
+		finally
+		{
+			m_printer = previous;
+			closePage(printer);
+		}
+		m_pages.add(page);
+	}
+
+	@Override
+	public void end()
+	{
+		AnsiPrinter printer = openPage(INDEX_PAGE);
+		if (printer == null)
+		{
+			return;
+		}
+		AnsiPrinter previous = m_printer;
+		m_printer = printer;
+		try
+		{
+			int total = 0;
+			for (PageInfo page : m_pages)
+			{
+				total += page.m_count;
+			}
+			printFromInternalFile("preamble.html");
+			m_printer.println("<p>Found " + total + " warning(s) in " + m_pages.size() + " file(s)</p>");
+			m_printer.println("<table class=\"files\">");
+			m_printer.println("<tr><th>File</th><th>Warnings</th></tr>");
+			for (PageInfo page : m_pages)
+			{
+				m_printer.println("<tr><td><a href=\"" + page.m_page + "\">" + escape(page.m_filename) + "</a></td><td>" + page.m_count + "</td></tr>");
+			}
+			m_printer.println("</table>");
+			printFromInternalFile("postamble.html");
+		}
+		finally
+		{
+			m_printer = previous;
+			closePage(printer);
+		}
+	}
+
+	/**
+	 * Gets the directory where the pages are written
+	 * @return The directory
+	 */
+	/*@ pure non_null @*/ public File getDirectory()
+	{
+		return m_directory;
+	}
+
+	/**
+	 * Determines if a page could not be written since the renderer was
+	 * created
+	 * @return {@code true} if a page could not be written, {@code false}
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean checkError()
+	{
+		return m_error;
+	}
+
+	/**
+	 * Opens a page of the report for writing
+	 * @param page The name of the page
+	 * @return The printer to write the page, or {@code null} if it could
+	 * not be opened
+	 */
+	/*@ null @*/ protected AnsiPrinter openPage(/*@ non_null @*/ String page)
+	{
+		try
+		{
+			AnsiPrinter printer = new AnsiPrinter(new BufferedOutputStream(new FileOutputStream(new File(m_directory, page))));
+			printer.disableColors();
+			return printer;
+		}
+		catch (FileNotFoundException e)
+		{
+			m_error = true;
+			return null;
+		}
+	}
+
+	/**
+	 * Closes a page of the report
+	 * @param printer The printer writing the page
+	 */
+	protected void closePage(/*@ non_null @*/ AnsiPrinter printer)
+	{
+		printer.close();
+		if (printer.checkError())
+		{
+			m_error = true;
+		}
+	}
+
+	/**
+	 * The page written for a file
+	 */
+	protected static class PageInfo
+	{
+		/**
+		 * The name of the file
+		 */
+		/*@ non_null @*/ protected final String m_filename;
+
+		/**
+		 * The name of the page
+		 */
+		/*@ non_null @*/ protected final String m_page;
+
+		/**
+		 * The number of advice for the file
+		 */
+		protected final int m_count;
+
+		/**
+		 * Creates a new page info
+		 * @param filename The name of the file
+		 * @param page The name of the page
+		 * @param count The number of advice for the file
+		 */
+		public PageInfo(/*@ non_null @*/ String filename, /*@ non_null @*/ String page, int count)
+		{
+			super();
+			m_filename = filename;
+			m_page = page;
+			m_count = count;
+		}
+	}
+}
@@ -0,0 +1,395 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGroup;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.AnsiPrinter;
+
+/**
+ * Renders advice as an HTML report, in a single pass over each document.
+ * The report has the same layout as the one produced by
+ * {@link HtmlAdviceRenderer}, but instead of inserting tags into the
+ * document and running replacements on the whole result, this renderer
+ * sorts the ranges of the advice once, and then writes each line to the
+ * printer as it goes, escaping, highlighting and numbering it on the way.
+ * Its running time is therefore linear in the size of the document.
+ * <p>
+ * Tags are always properly nested: when a highlighted range overlaps
+ * another one, or spans multiple lines, it is closed and opened again
+ * where needed.
+ * @author Sylvain Hallé
+ */
+public class StreamingHtmlAdviceRenderer extends HtmlAdviceRenderer
+{
+	/**
+	 * The pattern matching the LaTeX commands highlighted as keywords of
+	 * the first kind
+	 */
+	protected static final Pattern s_keyword1 = Pattern.compile("\\\\(textbf|emph|textit|section|subsection|subsubsection|paragraph|includegraphics|caption|label|maketitle|documentclass|item|usepackage|title)");
+
+	/**
+	 * The pattern matching the LaTeX commands highlighted as keywords of
+	 * the second kind
+	 */
+	protected static final Pattern s_keyword2 = Pattern.compile("\\\\(begin|end)(\\{.*?\\})");
+
+	/**
+	 * The tag closing a highlighted range
+	 */
+	protected static final String CLOSING_SPAN = "</span>";
+
+	/**
+	 * Creates a new streaming HTML advice renderer
+	 * @param printer The printer where the renderer will print its
+	 * results
+	 */
+	public StreamingHtmlAdviceRenderer(/*@ non_null @*/ AnsiPrinter printer)
+	{
+		super(printer);
+	}
+
+	@Override
+	public void render()
+	{
+		printFromInternalFile("preamble.html");
+		boolean map_single = m_advice.size() <= 1;
+		for (Map.Entry<String,List<Advice>> entry : m_advice.entrySet())
+		{
+			String filename = entry.getKey();
+			List<Advice> list = entry.getValue();
+			if (!map_single)
+			{
+				m_printer.println("<h2 class=\"filename\">" + escape(filename) + "</h2>");
+				m_printer.println("");
+			}
+			m_printer.println("<p>Found " + list.size() + " warning(s)</p>");
+			m_printer.println("<div class=\"original-file\">");
+			renderFile(m_originalStrings.get(filename), list);
+			m_printer.println("</div>");
+		}
+		printFromInternalFile("postamble.html");
+	}
+
+	/**
+	 * Writes the lines of a document, with the ranges of its advice
+	 * highlighted
+	 * @param contents The document
+	 * @param list The advice on the document
+	 */
+	protected void renderFile(/*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> list)
+	{
+		String text = contents.toString();
+		List<Span> advice_spans = getAdviceSpans(text, list);
+		int line_cnt = contents.lineCount();
+		int num_digits = (int) Math.ceil((Math.log10(line_cnt)));
+		if (num_digits == 0)
+		{
+			num_digits = 1;
+		}
+		// The advice spans that started on a previous line and are not over
+		List<Span> carried = new ArrayList<Span>();
+		int next_advice = 0;
+		int line_start = 0;
+		int line_nb = 1;
+		StringBuilder out = new StringBuilder();
+		while (line_start <= text.length())
+		{
+			int line_end = text.indexOf('\n', line_start);
+			int next_start = line_end + 1;
+			if (line_end < 0)
+			{
+				line_end = text.length();
+				next_start = text.length() + 1;
+			}
+			int content_end = line_end > line_start && text.charAt(line_end - 1) == '\r' ? line_end - 1 : line_end;
+			// Collect the spans that apply to this line, relative to its start
+			List<Span> spans = new ArrayList<Span>();
+			while (next_advice < advice_spans.size() && advice_spans.get(next_advice).m_start < next_start)
+			{
+				carried.add(advice_spans.get(next_advice++));
+			}
+			for (int i = 0; i < carried.size(); i++)
+			{
+				Span s = carried.get(i);
+				int start = Math.max(s.m_start, line_start) - line_start;
+				int end = Math.min(s.m_end, content_end) - line_start;
+				if (start < end)
+				{
+					spans.add(new Span(start, end, s.m_openingTag));
+				}
+				if (s.m_end <= next_start)
+				{
+					carried.remove(i--);
+				}
+			}
+			addHighlightSpans(text.substring(line_start, content_end), spans);
+			out.setLength(0);
+			out.append("<div class=\"linenb\">").append(printLineNumber(line_nb, num_digits)).append("</div><div class=\"codeline\">");
+			if (text.isEmpty())
+			{
+				out.append("&nbsp;");
+			}
+			else
+			{
+				writeLine(text, line_start, content_end, spans, out);
+			}
+			out.append("</div><div class=\"clear\"></div>");
+			m_printer.println(out);
+			line_start = next_start;
+			line_nb++;
+		}
+	}
+
+	/**
+	 * Gets the ranges of the advice on a document, sorted by start position.
+	 * Every member of an {@link AdviceGroup} gets its own range, with the
+	 * message of the group.
+	 * @param text The document
+	 * @param list The advice
+	 * @return The spans, with positions in the document
+	 */
+	/*@ non_null @*/ protected static List<Span> getAdviceSpans(/*@ non_null @*/ String text, /*@ non_null @*/ List<Advice> list)
+	{
+		List<Span> spans = new ArrayList<Span>(list.size());
+		for (Advice ad : list)
+		{
+			String opening = getOpeningSpan(ad);
+			if (ad instanceof AdviceGroup)
+			{
+				for (Advice member : ((AdviceGroup) ad).getMembers())
+				{
+					addAdviceSpan(text, member.getRange(), opening, spans);
+				}
+			}
+			else
+			{
+				addAdviceSpan(text, ad.getRange(), opening, spans);
+			}
+		}
+		// The sort is stable: advice on the same range keeps its order
+		Collections.sort(spans, new Comparator<Span>()
+		{
+			@Override
+			public int compare(Span s1, Span s2)
+			{
+				return s1.m_start - s2.m_start;
+			}
+		});
+		return spans;
+	}
+
+	/**
+	 * Adds to a list the span of an advice, if it has a range in the document
+	 * @param text The document
+	 * @param r The range of the advice
+	 * @param opening The opening tag of the span
+	 * @param spans The list to add to, with positions in the document
+	 */
+	protected static void addAdviceSpan(/*@ non_null @*/ String text, /*@ null @*/ Range r, /*@ non_null @*/ String opening, /*@ non_null @*/ List<Span> spans)
+	{
+		if (r == null || r.getStart() < 0 || r.getStart() >= text.length())
+		{
+			// This advice has no range in the document; nothing to do
+			return;
+		}
+		spans.add(new Span(r.getStart(), Math.min(r.getEnd() + 1, text.length()), opening));
+	}
+
+	/**
+	 * Adds to a list the spans highlighting the LaTeX markup of a line
+	 * @param line The line
+	 * @param spans The list to add to, with positions in the line
+	 */
+	protected static void addHighlightSpans(/*@ non_null @*/ String line, /*@ non_null @*/ List<Span> spans)
+	{
+		if (line.indexOf('\\') >= 0)
+		{
+			Matcher mat = s_keyword1.matcher(line);
+			while (mat.find())
+			{
+				spans.add(new Span(mat.start(), mat.end(), "<span class=\"keyword1\">"));
+			}
+			mat = s_keyword2.matcher(line);
+			while (mat.find())
+			{
+				spans.add(new Span(mat.start(), mat.end(), "<span class=\"keyword2\">"));
+			}
+		}
+		for (int pos = line.indexOf('%'); pos >= 0; pos = line.indexOf('%', pos + 1))
+		{
+			if (pos == 0 || line.charAt(pos - 1) != '\\')
+			{
+				spans.add(new Span(pos, line.length(), "<span class=\"comment\">"));
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Writes a line of a document, escaped, with spans opened and closed at
+	 * their positions. Spans are sorted so that a span starting at the same
+	 * position as another one, but ending later, encloses it.
+	 * @param text The document
+	 * @param start The position of the start of the line in the document
+	 * @param end The position of the end of the line in the document
+	 * @param spans The spans on the line, with positions in the line
+	 * @param out The builder to write to
+	 */
+	protected static void writeLine(/*@ non_null @*/ String text, int start, int end, /*@ non_null @*/ List<Span> spans, /*@ non_null @*/ StringBuilder out)
+	{
+		Collections.sort(spans, new Comparator<Span>()
+		{
+			@Override
+			public int compare(Span s1, Span s2)
+			{
+				if (s1.m_start != s2.m_start)
+				{
+					return s1.m_start - s2.m_start;
+				}
+				return s2.m_end - s1.m_end;
+			}
+		});
+		List<Span> open = new ArrayList<Span>();
+		int next = 0;
+		boolean leading = true;
+		int len = end - start;
+		for (int pos = 0; pos <= len; pos++)
+		{
+			closeSpans(open, pos, out);
+			while (next < spans.size() && spans.get(next).m_start == pos)
+			{
+				Span s = spans.get(next++);
+				open.add(s);
+				out.append(s.m_openingTag);
+			}
+			if (pos == len)
+			{
+				break;
+			}
+			char c = text.charAt(start + pos);
+			leading = leading && c == ' ';
+			switch (c)
+			{
+			case ' ':
+				out.append(leading ? "&nbsp;" : " ");
+				break;
+			case '&':
+				out.append("&amp;");
+				break;
+			case '<':
+				out.append("&lt;");
+				break;
+			case '>':
+				out.append("&gt;");
+				break;
+			default:
+				out.append(c);
+			}
+		}
+		for (int i = open.size() - 1; i >= 0; i--)
+		{
+			out.append(CLOSING_SPAN);
+		}
+	}
+
+	/**
+	 * Closes the open spans that end at a given position. The spans opened
+	 * after them are closed as well, and those that are not over are opened
+	 * again, so that the tags stay properly nested.
+	 * @param open The open spans, from outermost to innermost
+	 * @param pos The position
+	 * @param out The builder to write to
+	 */
+	protected static void closeSpans(/*@ non_null @*/ List<Span> open, int pos, /*@ non_null @*/ StringBuilder out)
+	{
+		int first = -1;
+		for (int i = 0; i < open.size(); i++)
+		{
+			if (open.get(i).m_end <= pos)
+			{
+				first = i;
+				break;
+			}
+		}
+		if (first < 0)
+		{
+			return;
+		}
+		List<Span> reopen = new ArrayList<Span>();
+		for (int i = open.size() - 1; i >= first; i--)
+		{
+			out.append(CLOSING_SPAN);
+			Span s = open.remove(i);
+			if (s.m_end > pos)
+			{
+				reopen.add(0, s);
+			}
+		}
+		for (Span s : reopen)
+		{
+			open.add(s);
+			out.append(s.m_openingTag);
+		}
+	}
+
+	/**
+	 * A range of text enclosed in a &lt;span&gt; tag
+	 */
+	protected static class Span
+	{
+		/**
+		 * The start of the range
+		 */
+		protected final int m_start;
+
+		/**
+		 * The end of the range (exclusive)
+		 */
+		protected final int m_end;
+
+		/**
+		 * The tag opening the span
+		 */
+		/*@ non_null @*/ protected final String m_openingTag;
+
+		/**
+		 * Creates a new span
+		 * @param start The start of the range
+		 * @param end The end of the range (exclusive)
+		 * @param opening_tag The tag opening the span
+		 */
+		public Span(int start, int end, /*@ non_null @*/ String opening_tag)
+		{
+			super();
+			m_start = start;
+			m_end = end;
+			m_openingTag = opening_tag;
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uqac.lif.json.JsonElement;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.AnsiPrinter;
+
+/**
+ * Renders advice in LanguageTool's JSON format, writing each match as soon
+ * as the advice of a file is given to the renderer. Contrary to
+ * {@link JsonAdviceRenderer}, the report covers all the files, and the
+ * renderer does not keep the advice or the contents of the files it has
+ * written, so that its memory use does not depend on the number of advice.
+ * <p>
+ * The report has the same elements as LanguageTool's. Since the offsets
+ * of a match are relative to the file it comes from, each match has an
+ * additional <tt>file</tt> element giving its filename; the matches are
+ * written one per line, in the order the files were given to the renderer.
+ * <p>
+ * The advice of a file can be given more than once, for example when the
+ * rules on a whole project add advice to a file that has already been
+ * written; only the advice beyond the ones already written for this file
+ * is then written. A call to {@link #render()} (or {@link #end()}) closes
+ * the report, and the next advice starts a new one. Since the advice is
+ * written as soon as it is added, files given one at a time with
+ * {@link #fileDone(String, AnnotatedString, List) fileDone()} are handled
+ * the same way.
+ * <p>
+ * When the same files are rendered again and again, for example in watch
+ * mode where only the files that changed are given to the renderer before
+ * each new report, the renderer can be asked to keep the last advice of
+ * each file. A report then also covers the files that were not given again
+ * since the previous one; their matches are written when the report is
+ * closed. Only the advice is kept, not the contents of the files.
+ * @author Sylvain Hallé
+ */
+public class StreamingJsonAdviceRenderer extends JsonAdviceRenderer
+{
+	/**
+	 * The number of advice already written for each file of the current
+	 * report
+	 */
+	/*@ non_null @*/ protected final Map<String,Integer> m_written = new HashMap<String,Integer>();
+
+	/**
+	 * The last advice given for each file, in the order the files were first
+	 * given; {@code null} if the renderer does not keep the advice
+	 */
+	/*@ null @*/ protected final Map<String,List<Advice>> m_kept;
+
+	/**
+	 * Whether the beginning of the report has been written
+	 */
+	protected boolean m_started = false;
+
+	/**
+	 * Whether a match has been written in the current report
+	 */
+	protected boolean m_hasMatches = false;
+
+	/**
+	 * Creates a new streaming JSON renderer
+	 * @param printer The printer where the renderer will print its
+	 * results
+	 * @param lang_code The language code used when checking the files;
+	 * may be the empty string
+	 */
+	public StreamingJsonAdviceRenderer(/*@ non_null @*/ AnsiPrinter printer, String lang_code)
+	{
+		this(printer, lang_code, false);
+	}
+
+	/**
+	 * Creates a new streaming JSON renderer
+	 * @param printer The printer where the renderer will print its
+	 * results
+	 * @param lang_code The language code used when checking the files;
+	 * may be the empty string
+	 * @param keep Set to {@code true} to keep the last advice of each file,
+	 * so that every report covers all the files given so far
+	 */
+	public StreamingJsonAdviceRenderer(/*@ non_null @*/ AnsiPrinter printer, String lang_code, boolean keep)
+	{
+		super(printer, lang_code);
+		m_kept = keep ? new LinkedHashMap<String,List<Advice>>() : null;
+	}
+
+	@Override
+	public void addAdvice(/*@ non_null @*/ String filename, /*@ non_null @*/ AnnotatedString contents, /*@ non_null @*/ List<Advice> advice)
+	{
+		start();
+		write(filename, advice);
+		if (m_kept != null)
+		{
+			m_kept.put(filename, advice);
+		}
+		m_printer.flush();
+	}
+
+	@Override
+	public void render()
+	{
+		start();
+		if (m_kept != null)
+		{
+			for (Map.Entry<String,List<Advice>> entry : m_kept.entrySet())
+			{
+				if (!m_written.containsKey(entry.getKey()))
+				{
+					// This file was not given again since the previous report
+					write(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		m_printer.print(m_hasMatches ? "\n]}" : "]}");
+		m_printer.flush();
+		m_written.clear();
+		m_started = false;
+		m_hasMatches = false;
+	}
+
+	/**
+	 * Writes the matches of a file that have not been written yet in the
+	 * current report
+	 * @param filename The name of the file
+	 * @param advice The advice of the file
+	 */
+	protected void write(/*@ non_null @*/ String filename, /*@ non_null @*/ List<Advice> advice)
+	{
+		Integer written = m_written.get(filename);
+		int from = written == null ? 0 : Math.min(written, advice.size());
+		for (int i = from; i < advice.size(); i++)
+		{
+			JsonMap match = getMatch(advice.get(i));
+			match.put("file", filename);
+			m_printer.print(m_hasMatches ? ",\n" : "\n");
+			m_printer.print(toSingleLine(match));
+			m_hasMatches = true;
+		}
+		m_written.put(filename, Math.max(from, advice.size()));
+	}
+
+	/**
+	 * Writes the beginning of the report, up to the opening of the list of
+	 * matches, if it has not been written already
+	 */
+	protected void start()
+	{
+		if (m_started)
+		{
+			return;
+		}
+		m_started = true;
+		m_printer.print("{");
+		for (Map.Entry<String,JsonElement> entry : getHeader(m_languageCode).entrySet())
+		{
+			m_printer.print("\"" + entry.getKey() + "\": " + toSingleLine(entry.getValue()) + ",\n");
+		}
+		m_printer.print("\"matches\": [");
+	}
+}
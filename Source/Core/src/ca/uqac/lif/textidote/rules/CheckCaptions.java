@@ -22,22 +22,21 @@ import java.util.List;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
-import ca.uqac.lif.textidote.as.AnnotatedString.Line;
 import ca.uqac.lif.textidote.as.Position;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Caption;
 
 /**
  * Checks that captions end with a period. This rule does not evaluate a
  * regular expression, as the nesting of commands within the caption creates
- * lots of false positives. Rather, it finds an occurrence of
- * <code>\caption</code>, and then keeps track of the nesting level of opening
- * and closing braces.
+ * lots of false positives. Rather, the {@link DocumentStructure} finds an
+ * occurrence of <code>\caption</code>, and then keeps track of the nesting
+ * level of opening and closing braces.
  * 
  * @author Sylvain Hallé
  *
  */
-public class CheckCaptions extends Rule 
+public class CheckCaptions extends StructuralRule 
 {
 	public CheckCaptions()
 	{
@@ -45,55 +44,18 @@ public class CheckCaptions extends Rule
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s)
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure)
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (Caption c : structure.getCaptions())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			int start_pos = line.indexOf("\\caption");
-			if (start_pos < 0)
+			if (c.getMissingPeriodAt() >= 0)
 			{
-				continue;
-			}
-			if (line.substring(start_pos).matches("\\\\captionsetup.*"))
-			{
-				// We consider caption, but we ignore captionsetup
-				continue;
-			}
-			boolean period_seen = false;
-			int level = 0;
-			for (int i = start_pos + 1; i < line.length(); i++)
-			{
-				String c = line.substring(i, i + 1);
-				if (c.compareTo("{") == 0)
-				{
-					level++;
-					period_seen = false;
-				}
-				else if (c.compareTo("}") == 0)
-				{
-					level--;
-					if (level == 0 && !period_seen)
-					{
-						int start_p = s.findOriginalIndex(new Position(line_cnt, start_pos));
-						int end_p = s.findOriginalIndex(new Position(line_cnt, i));
-						Range r = new Range(start_p, end_p);
-						out_list.add(new Advice(this, r, "A caption should end with a period", s, s.findOriginalLine(line_cnt)));
-						break;
-					}
-					period_seen = false;
-				}
-				else if (c.compareTo(".") == 0)
-				{
-					period_seen = true;
-				}
-				else if (c.compareTo(" ") != 0)
-				{
-					period_seen = false;
-				}
+				int line_cnt = c.getLineNumber();
+				int start_p = s.findOriginalIndex(new Position(line_cnt, c.getStart()));
+				int end_p = s.findOriginalIndex(new Position(line_cnt, c.getMissingPeriodAt()));
+				Range r = new Range(start_p, end_p);
+				out_list.add(new Advice(this, r, "A caption should end with a period", s, s.findOriginalLine(line_cnt)));
 			}
 		}
 		return out_list;
@@ -22,17 +22,18 @@ import java.util.List;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
-import ca.uqac.lif.textidote.as.Match;
+import ca.uqac.lif.textidote.rules.ProjectIndex.Entry;
 
 /**
  * Checks that a document does not mix occurrences of <code>\cite</code>
- * and <code>\citep</code>/<code>\citet</code>. * 
+ * and <code>\citep</code>/<code>\citet</code>. When evaluated on a
+ * {@link ProjectIndex}, the citations of all the files of the project
+ * are considered together.
  * @author Sylvain Hallé
  *
  */
-public class CheckCiteMix extends Rule 
+public class CheckCiteMix extends StructuralRule implements ProjectRule
 {
 	public CheckCiteMix()
 	{
@@ -40,15 +41,41 @@ public class CheckCiteMix extends Rule
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s)
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure)
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
-		Match m1 = s.find("\\\\cite(p|t)");
-		Match m2 = s.find("\\\\cite[^pt]");
-		if (m1 != null && m2 != null)
+		int natbib_pos = structure.getNatbibCitePosition();
+		if (natbib_pos >= 0 && structure.getPlainCitePosition() >= 0)
 		{
-			Range r = s.findOriginalRange(new Range(m1.getPosition(), m1.getPosition() + m1.getMatch().length()));
-			out_list.add(new Advice(this, r, "Do not mix \\cite with \\citep or \\citet in the same document.", s, s.findOriginalLineOf(m1.getPosition())));
+			// The match of \citep or \citet is 6 characters long
+			Range r = s.findOriginalRange(new Range(natbib_pos, natbib_pos + 6));
+			out_list.add(new Advice(this, r, "Do not mix \\cite with \\citep or \\citet in the same document.", s, s.findOriginalLineOf(natbib_pos)));
+		}
+		return out_list;
+	}
+
+	@Override
+	public List<Advice> evaluate(ProjectIndex index)
+	{
+		// The advice is put on the first natbib citation of the project
+		List<Advice> out_list = new ArrayList<Advice>();
+		Entry natbib = null;
+		boolean plain = false;
+		for (Entry e : index.getDocumentOrder())
+		{
+			DocumentStructure structure = e.getStructure();
+			if (natbib == null && structure.getNatbibCitePosition() >= 0)
+			{
+				natbib = e;
+			}
+			plain |= structure.getPlainCitePosition() >= 0;
+		}
+		if (natbib != null && plain)
+		{
+			AnnotatedString s = natbib.getString();
+			int natbib_pos = natbib.getStructure().getNatbibCitePosition();
+			Range r = s.findOriginalRange(new Range(natbib_pos, natbib_pos + 6));
+			out_list.add(new Advice(this, r, "Do not mix \\cite with \\citep or \\citet in the same document.", s, s.findOriginalLineOf(natbib_pos)));
 		}
 		return out_list;
 	}
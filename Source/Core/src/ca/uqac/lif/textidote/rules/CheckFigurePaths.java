@@ -19,15 +19,12 @@ package ca.uqac.lif.textidote.rules;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.Position;
-import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Graphic;
 
 /**
  * Checks that included figures are not referenced  by an absolute local path.
@@ -45,41 +42,30 @@ import ca.uqac.lif.textidote.as.AnnotatedString.Line;
  * @author Sylvain Hallé
  *
  */
-public class CheckFigurePaths extends Rule 
+public class CheckFigurePaths extends StructuralRule 
 {
-	/**
-	 * The pattern for finding figure labels
-	 */
-	Pattern m_figurePattern = Pattern.compile("\\\\includegraphics\\s*(\\[.*?\\])*?\\{(.*?)\\}");
-
 	public CheckFigurePaths()
 	{
 		super("sh:relpath");
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s)
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure)
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (Graphic g : structure.getGraphics())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			Matcher mat = m_figurePattern.matcher(line);
-			if (mat.find())
+			String path = g.getPath().trim();
+			if (isAbsolute(path))
 			{
-				String path = mat.group(2).trim();
-				if (isAbsolute(path))
-				{
-					// Absolute path
-					int start_pos = mat.start(2);
-					int end_pos = mat.start(2) + mat.group(2).length() - 1;
-					int start_p = s.findOriginalIndex(new Position(line_cnt, start_pos));
-					int end_p = s.findOriginalIndex(new Position(line_cnt, end_pos));
-					Range r = new Range(start_p, end_p);
-					out_list.add(new Advice(this, r, "Do not use an absolute path for a figure", s, l));	
-				}
+				// Absolute path
+				int line_cnt = g.getLineNumber();
+				int start_pos = g.getStart();
+				int end_pos = g.getStart() + g.getPath().length() - 1;
+				int start_p = s.findOriginalIndex(new Position(line_cnt, start_pos));
+				int end_p = s.findOriginalIndex(new Position(line_cnt, end_pos));
+				Range r = new Range(start_p, end_p);
+				out_list.add(new Advice(this, r, "Do not use an absolute path for a figure", s, g.getLine()));	
 			}
 		}
 		return out_list;
@@ -21,14 +21,14 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Figure;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Label;
+import ca.uqac.lif.textidote.rules.ProjectIndex.Entry;
 
 /**
  * Checks that every figure with a label is mentioned in the text
@@ -37,71 +37,74 @@ import ca.uqac.lif.textidote.as.AnnotatedString.Line;
  * Formally, this rule checks that for every occurrence of <code>\label{X}</code>
  * within a <code>figure</code> environment (that is not commented out), there
  * exists a <code>\ref{X}</code> somewhere in the text (that is not commented
- * out).
+ * out). The references are looked up in the {@link ReferenceIndex} of the
+ * document; <code>\cref</code>, <code>\Cref</code> and
+ * <code>\autoref</code> also count, and can refer to multiple labels, as in
+ * <code>\cref{X,Y}</code>.
+ * <p>
+ * When evaluated on a {@link ProjectIndex}, a figure defined in one file
+ * can be referenced in any other file of the project.
  * 
  * @author Sylvain Hallé
  *
  */
-public class CheckFigureReferences extends Rule 
+public class CheckFigureReferences extends StructuralRule implements ProjectRule
 {
-	/**
-	 * The pattern for finding figure labels
-	 */
-	Pattern m_figurePattern = Pattern.compile("\\\\label\\s*\\{(.*?)\\}");
-	
 	public CheckFigureReferences()
 	{
 		super("sh:figref");
 	}
 	
 	@Override
-	public List<Advice> evaluate(AnnotatedString s)
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure)
 	{
+		return evaluate(s, structure, structure.getReferences());
+	}
+
+	@Override
+	public List<Advice> evaluate(ProjectIndex index)
+	{
+		// The figures of each file are looked up in the references of all files
 		List<Advice> out_list = new ArrayList<Advice>();
-		boolean in_figure = false;
-		Map<String,Integer> figure_defs = new HashMap<String,Integer>();
-		List<Line> lines = s.getLines();
-		boolean found_label = false;
-		// Step 1: find all figure labels
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (Entry e : index.getDocumentOrder())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			if (line.matches(".*\\\\begin\\s*\\{\\s*(figure|wrapfigure).*"))
-			{
-				in_figure = true;
-				found_label = false;
-				continue;
-			}
-			if (line.matches(".*\\\\end\\s*\\{\\s*(figure|wrapfigure).*"))
-			{
-				in_figure = false;
-				if (!found_label)
-				{
-					// This figure is missing a label
-					int start_pos = l.getOffset();
-					int end_pos = start_pos + line.length();
-					Range r = new Range(start_pos, end_pos);
-					out_list.add(new Advice(this, r, "This figure is missing a label", s, l));	
-				}
-				continue;
-			}
-			if (in_figure)
+			out_list.addAll(evaluate(e.getString(), e.getStructure(), index.getReferences()));
+		}
+		return out_list;
+	}
+
+	/**
+	 * Checks the figures of a document against an index of references
+	 * @param s The document
+	 * @param structure The structure of the document
+	 * @param references The references to look up
+	 * @return The list of advice
+	 */
+	/*@ non_null @*/ protected List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ DocumentStructure structure, /*@ non_null @*/ ReferenceIndex references)
+	{
+		List<Advice> out_list = new ArrayList<Advice>();
+		// Step 1: find figures without a label, and collect the others
+		for (Figure f : structure.getFigures())
+		{
+			if (!f.hasLabel())
 			{
-				Matcher mat = m_figurePattern.matcher(line);
-				if (mat.find())
-				{
-					String fig_name = mat.group(1).trim();
-					int fig_pos = l.getOffset() + mat.start(1);
-					figure_defs.put(fig_name, fig_pos);
-					found_label = true;
-				}
+				// This figure is missing a label
+				Line l = f.getLine();
+				int start_pos = l.getOffset();
+				int end_pos = start_pos + l.toString().length();
+				Range r = new Range(start_pos, end_pos);
+				out_list.add(new Advice(this, r, "This figure is missing a label", s, l));	
 			}
 		}
-		// Step 2: find references to these figures
+		Map<String,Integer> figure_defs = new HashMap<String,Integer>();
+		for (Label label : structure.getFigureLabels())
+		{
+			figure_defs.put(label.getName(), label.getStart());
+		}
+		// Step 2: look up references to these figures
 		for (String fig_name : figure_defs.keySet())
 		{
-			if (s.find("\\\\(C|c|auto){0,1}ref\\s*\\{.*" + fig_name + ".*?\\}") == null)
+			if (!references.isReferenced(fig_name))
 			{
 				// This figure is not referenced
 				int start_pos = figure_defs.get(fig_name);
@@ -20,7 +20,9 @@ package ca.uqac.lif.textidote.rules;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.languagetool.JLanguageTool;
@@ -32,9 +34,14 @@ import org.languagetool.rules.spelling.SpellingCheckRule;
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
 import ca.uqac.lif.textidote.Rule;
+import ca.uqac.lif.textidote.RuleBlacklist;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
 import ca.uqac.lif.textidote.as.PositionRange;
+import ca.uqac.lif.util.Deadline;
+import ca.uqac.lif.util.FlightEvent;
+import ca.uqac.lif.util.MetricRegistry;
+import ca.uqac.lif.util.Profiler;
 
 /**
  * Checks the text for spelling, grammar and style errors. This rule is a
@@ -69,6 +76,27 @@ public class CheckLanguage extends Rule
 	 */
 	protected boolean m_disableUnpaired = true;
 
+	/**
+	 * The minimum length of the chunks of text checked separately when a
+	 * {@link Deadline} is set
+	 */
+	public static final int CHUNK_LENGTH = 5000;
+
+	/**
+	 * The maximum length of the chunks of text checked separately when a
+	 * {@link Deadline} is set
+	 */
+	public static final int MAX_CHUNK_LENGTH = 2 * CHUNK_LENGTH;
+
+	/**
+	 * The flight recorder event emitted for each call to LanguageTool
+	 */
+	/*@ non_null @*/ public static final FlightEvent.Type LANGUAGETOOL_EVENT = new FlightEvent.Type("ca.uqac.lif.textidote.LanguageTool", "LanguageTool Check", "A chunk of text checked by LanguageTool")
+			.withField("resource", "Resource", String.class)
+			.withField("offset", "Offset", int.class)
+			.withField("length", "Length", int.class)
+			.withField("matches", "Matches", int.class);
+
 	/**
 	 * Creates a new rule for checking a specific language
 	 * @param lang The language to check. If {@code null}, the
@@ -142,108 +170,223 @@ public class CheckLanguage extends Rule
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
 		String s_to_check = s.toString();
-		List<RuleMatch> matches = null;
-		try
+		Deadline deadline = Deadline.current();
+		int offset = 0;
+		do
 		{
-			matches = m_languageTool.check(s_to_check);
-		}
-		catch (IOException e)
-		{
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		if (matches == null)
-		{
-			return out_list;
-		}
-		for (RuleMatch rm : matches)
-		{
-			Line line = null;
-			int start_pos = rm.getFromPos();
-			int end_pos = rm.getToPos();
-			Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
-			boolean original_range = true;
-			if (r == null)
+			// Without a deadline, the whole text is given to LanguageTool at
+			// once; otherwise it is checked by chunks of paragraphs (or of
+			// sentences, for a very long paragraph), so that the deadline can
+			// be checked in between
+			int end = deadline.isBounded() ? getChunkEnd(s_to_check, offset) : s_to_check.length();
+			deadline.check();
+			List<RuleMatch> matches = null;
+			Profiler.Sample sample = Profiler.start("languagetool:check");
+			FlightEvent event = LANGUAGETOOL_EVENT.begin();
+			long start = System.nanoTime();
+			try
 			{
-				// Can't find the text in the original: used detexed
-				original_range = false;
-				line = s.getLineOf(start_pos);
-				r = new Range(-1, -1);
+				matches = m_languageTool.check(s_to_check.substring(offset, end));
 			}
-			else
+			catch (IOException e)
 			{
-				PositionRange source_pr = s.getOriginalPositionRange(r.getStart(), r.getEnd());
-				line = s.getOriginalLine(source_pr.getStart().getLine());
+				// TODO Auto-generated catch block
+				e.printStackTrace();
 			}
-			// Exception for the disable unpaired rule
-			if (m_disableUnpaired && rm.getRule().getId().startsWith("EN_UNPAIRED_BRACKETS"))
+			finally
 			{
-				if (rm.getMessage().contains("{") || rm.getMessage().contains("}"))
-				{
-					// We ignore the unpaired symbol for this character
-					continue;
-				}
+				Profiler.stop(sample);
+				MetricRegistry.getDefault().histogram("textidote_languagetool_check_duration_seconds", "Time spent by LanguageTool on each chunk of text").observeNanos(System.nanoTime() - start);
 			}
-			// Exception if spelling mistake and a dictionary is provided
-			Line cl = s.getLine(s.getPosition(start_pos).getLine());
-			String clean_line = cl.toString();
-			int end_p = 0;
-			if (end_pos >= 0)
+			if (event != null)
 			{
-				end_p = end_pos;
+				FlightEvent.commit(event, s.getResourceName(), offset, end - offset, matches == null ? 0 : matches.size());
 			}
-			if (end_p > 0)
+			if (matches != null)
 			{
-				if (end_p > clean_line.length() - 1)
+				for (RuleMatch rm : matches)
 				{
-					end_p = clean_line.length() - 1;
+					addAdvice(out_list, s, rm, offset);
 				}
 			}
-			// Exception for false alarm regarding "smart quotes"
-			end_p = r.getEnd();
-			/*if (end_p > line.length() - 1)
+			offset = end;
+		} while (offset < s_to_check.length());
+		return out_list;
+	}
+
+	/**
+	 * Finds the end of the next chunk of text to give to LanguageTool when
+	 * a deadline is set. A chunk preferably ends at a paragraph break, and
+	 * contains at least {@value #CHUNK_LENGTH} characters unless the text
+	 * ends before. If there is no paragraph break before
+	 * {@value #MAX_CHUNK_LENGTH} characters, the chunk ends at the last
+	 * sentence before this limit, or else at the last line, or else at the
+	 * limit itself.
+	 * @param s The text
+	 * @param start The start of the chunk
+	 * @return The position after the end of the chunk
+	 */
+	protected static int getChunkEnd(/*@ non_null @*/ String s, int start)
+	{
+		if (s.length() - start <= CHUNK_LENGTH)
+		{
+			return s.length();
+		}
+		int limit = start + MAX_CHUNK_LENGTH;
+		int pos = s.indexOf("\n\n", start + CHUNK_LENGTH);
+		if (pos >= 0 && pos + 2 <= limit)
+		{
+			return pos + 2;
+		}
+		if (s.length() <= limit)
+		{
+			return s.length();
+		}
+		for (int i = limit - 1; i > start; i--)
+		{
+			char c = s.charAt(i - 1);
+			if ((c == '.' || c == '!' || c == '?') && Character.isWhitespace(s.charAt(i)))
+			{
+				return i + 1;
+			}
+		}
+		pos = s.lastIndexOf('\n', limit - 1);
+		if (pos > start)
+		{
+			return pos + 1;
+		}
+		// Do not split a surrogate pair
+		return Character.isHighSurrogate(s.charAt(limit - 1)) ? limit - 1 : limit;
+	}
+
+	/**
+	 * Converts a match found by LanguageTool into an advice
+	 * @param out_list The list where to add the advice
+	 * @param s The string that was checked
+	 * @param rm The match
+	 * @param offset The position in the string of the text given to
+	 * LanguageTool
+	 */
+	protected void addAdvice(/*@ non_null @*/ List<Advice> out_list, /*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ RuleMatch rm, int offset)
+	{
+		Line line = null;
+		int start_pos = offset + rm.getFromPos();
+		int end_pos = offset + rm.getToPos();
+		Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
+		boolean original_range = true;
+		if (r == null)
+		{
+			// Can't find the text in the original: used detexed
+			original_range = false;
+			line = s.getLineOf(start_pos);
+			r = new Range(-1, -1);
+		}
+		else
+		{
+			PositionRange source_pr = s.getOriginalPositionRange(r.getStart(), r.getEnd());
+			line = s.getOriginalLine(source_pr.getStart().getLine());
+		}
+		// Exception for the disable unpaired rule
+		if (m_disableUnpaired && rm.getRule().getId().startsWith("EN_UNPAIRED_BRACKETS"))
+		{
+			if (rm.getMessage().contains("{") || rm.getMessage().contains("}"))
 			{
-				end_p = line.length() - 1;
-			}*/
-			if (rm.getRule().getId().startsWith("FRENCH_WHITESPACE"))
+				// We ignore the unpaired symbol for this character
+				return;
+			}
+		}
+		// Exception if spelling mistake and a dictionary is provided
+		Line cl = s.getLine(s.getPosition(start_pos).getLine());
+		String clean_line = cl.toString();
+		int end_p = 0;
+		if (end_pos >= 0)
+		{
+			end_p = end_pos;
+		}
+		if (end_p > 0)
+		{
+			if (end_p > clean_line.length() - 1)
 			{
-				// LaTeX takes care of whitespace, so ignore LT's advice
-				continue;
+				end_p = clean_line.length() - 1;
 			}
-			if (rm.getRule().getId().startsWith("EN_QUOTES") && rm.getMessage().contains("Use a smart opening quote"))
+		}
+		// Exception for false alarm regarding "smart quotes"
+		end_p = r.getEnd();
+		/*if (end_p > line.length() - 1)
+		{
+			end_p = line.length() - 1;
+		}*/
+		if (rm.getRule().getId().startsWith("FRENCH_WHITESPACE"))
+		{
+			// LaTeX takes care of whitespace, so ignore LT's advice
+			return;
+		}
+		if (rm.getRule().getId().startsWith("EN_QUOTES") && rm.getMessage().contains("Use a smart opening quote"))
+		{
+			if (line.toString().length() > 0)
 			{
-				if (line.toString().length() > 0)
+				int word_start = Math.min(line.toString().length() - 1, r.getStart() - line.getOffset());
+				int word_end = end_p - line.getOffset();
+				String word = line.toString().substring(word_start, word_end).trim();
+				if (word.contains("``"))
 				{
-					int word_start = Math.min(line.toString().length() - 1, r.getStart() - line.getOffset());
-					int word_end = end_p - line.getOffset();
-					String word = line.toString().substring(word_start, word_end).trim();
-					if (word.contains("``"))
-					{
-						// This type of quote is OK in LaTeX: ignore
-						continue;
-					}
+					// This type of quote is OK in LaTeX: ignore
+					return;
 				}
 			}
-			StringBuilder advice_message = new StringBuilder();
-			advice_message.append(rm.getMessage());
-			// Append suggested replacements to advice message, if any
-			List<String> replacements = rm.getSuggestedReplacements();
-			if (!replacements.isEmpty())
+		}
+		StringBuilder advice_message = new StringBuilder();
+		advice_message.append(rm.getMessage());
+		// Append suggested replacements to advice message, if any
+		List<String> replacements = rm.getSuggestedReplacements();
+		if (!replacements.isEmpty())
+		{
+			List<String> suggestions = replacements.stream().limit(5).collect(Collectors.toList());
+			if (replacements.size() > 5)
+			{
+				suggestions.add("...");
+			}
+			advice_message.append(" Suggestions: ").append(suggestions.toString());
+		}
+		advice_message.append(" (").append(start_pos).append(")");
+		Advice ad = new Advice(new CheckLanguageSpecific(rm.getRule().getId(), rm.getRule().getDescription()), r, advice_message.toString(), s, line);
+		ad.setOriginal(original_range);
+		ad.setShortMessage("LanguageTool rule");
+		out_list.add(ad);
+	}
+
+	/**
+	 * Disables the LanguageTool rules that are in a blacklist, so that
+	 * LanguageTool does not look for them at all. In the blacklist, a
+	 * LanguageTool rule is designated by the name of this rule followed by
+	 * the ID of the LanguageTool rule, as in
+	 * <tt>lt:en:MORFOLOGIK_RULE_EN_US</tt>.
+	 * @param blacklist The blacklist
+	 */
+	public void disableRules(/*@ non_null @*/ RuleBlacklist blacklist)
+	{
+		if (blacklist.isEmpty())
+		{
+			return;
+		}
+		String prefix = getName() + ":";
+		Set<String> ids = new HashSet<String>(blacklist.getSuffixes(prefix));
+		List<org.languagetool.rules.Rule> all_rules = m_languageTool.getAllRules();
+		if (all_rules != null)
+		{
+			// Needed for the names with a wildcard
+			for (org.languagetool.rules.Rule rule : all_rules)
 			{
-				List<String> suggestions = replacements.stream().limit(5).collect(Collectors.toList());
-				if (replacements.size() > 5)
+				if (blacklist.isIgnored(prefix + rule.getId()))
 				{
-					suggestions.add("...");
+					ids.add(rule.getId());
 				}
-				advice_message.append(" Suggestions: ").append(suggestions.toString());
 			}
-			advice_message.append(" (").append(rm.getFromPos()).append(")");
-			Advice ad = new Advice(new CheckLanguageSpecific(rm.getRule().getId(), rm.getRule().getDescription()), r, advice_message.toString(), s, line);
-			ad.setOriginal(original_range);
-			ad.setShortMessage("LanguageTool rule");
-			out_list.add(ad);
 		}
-		return out_list;
+		if (!ids.isEmpty())
+		{
+			m_languageTool.disableRules(new ArrayList<String>(ids));
+		}
 	}
 
 	/**
@@ -19,14 +19,11 @@ package ca.uqac.lif.textidote.rules;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
-import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.LineBreak;
 
 /**
  * Checks that text paragraphs do not contain forced line breaks.
@@ -34,47 +31,26 @@ import ca.uqac.lif.textidote.as.AnnotatedString.Line;
  * @author Sylvain Hallé
  *
  */
-public class CheckNoBreak extends Rule 
+public class CheckNoBreak extends StructuralRule 
 {
-	/**
-	 * The pattern for finding figure labels
-	 */
-	Pattern m_breakPattern = Pattern.compile("\\\\\\\\");
-
 	public CheckNoBreak()
 	{
 		super("sh:nobreak");
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s)
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure)
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
-		int env_level = 0;
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (LineBreak b : structure.getLineBreaks())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			if (line.matches(".*\\\\begin\\s*\\{\\s*(equation|equation\\*|align|align\\*|table|tabular|verbatim|lstlisting|IEEEkeywords|figure|matrix|bmatrix|Bmatrix|pmatrix|vmatrix|Vmatrix|smallmatrix).*") || line.matches(".*\\\\\\[.*"))
-			{
-				env_level++;
-			}
-			if (env_level == 0)
-			{
-				Matcher mat = m_breakPattern.matcher(line);
-				if (mat.find())
-				{
-					// Forced break
-					int start_pos = l.getOffset() + mat.start();
-					int end_pos = l.getOffset() + mat.start() + mat.group(0).length();
-					Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
-					out_list.add(new Advice(this, r, "You should not break lines manually in a paragraph. Either start a new paragraph or stay in the current one.", s, l));	
-				}
-			}
-			if (line.matches(".*\\\\end\\s*\\{\\s*(equation|equation\\*|align|align\\*|table|tabular|verbatim|lstlisting|IEEEkeywords|figure|matrix|bmatrix|Bmatrix|pmatrix|vmatrix|Vmatrix|smallmatrix).*") || line.matches(".*\\\\\\].*"))
+			if (b.getDepth() == 0)
 			{
-				env_level--;
+				// Forced break
+				int start_pos = b.getStart();
+				int end_pos = start_pos + 2;
+				Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
+				out_list.add(new Advice(this, r, "You should not break lines manually in a paragraph. Either start a new paragraph or stay in the current one.", s, b.getLine()));	
 			}
 		}
 		return out_list;
@@ -19,26 +19,19 @@ package ca.uqac.lif.textidote.rules;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
 import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
-import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
 
 /**
  * Checks that stacked headings are not present.
  * @author Sylvain Hallé
  */
-public class CheckStackedHeadings extends Rule
+public class CheckStackedHeadings extends StructuralRule
 {
-	/**
-	 * The pattern to detect a new section heading.
-	 */
-	protected Pattern m_headingPattern = Pattern.compile("\\\\(part|chapter|section|subsection|subsubsection|paragraph)\\s*\\{");
-
 	/**
 	 * Creates a new instance of the rule
 	 */
@@ -48,30 +41,17 @@ public class CheckStackedHeadings extends Rule
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s) 
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure) 
 	{
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
-		boolean found_text = true;
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (Heading h : structure.getHeadings())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			Matcher mat = m_headingPattern.matcher(line);
-			if (mat.find())
-			{
-				if (!found_text)
-				{
-					int start_pos = l.getOffset() + mat.start(1);
-					int end_pos = l.getOffset() + mat.start(1) + mat.group(1).length();
-					Range r = s.findOriginalRange(start_pos, end_pos);
-					out_list.add(new Advice(CheckStackedHeadingsAdvice.instance, r, "Avoid stacked headings, i.e. consecutive headings without text in between.", s, l));
-				}
-				found_text = false;
-			}
-			else if (!line.trim().isEmpty())
+			if (!h.isPrecededByText())
 			{
-				found_text = true;
+				int start_pos = h.getStart();
+				int end_pos = start_pos + h.getName().length();
+				Range r = s.findOriginalRange(start_pos, end_pos);
+				out_list.add(new Advice(CheckStackedHeadingsAdvice.instance, r, "Avoid stacked headings, i.e. consecutive headings without text in between.", s, h.getLine()));
 			}
 		}
 		return out_list;
@@ -18,28 +18,27 @@
 package ca.uqac.lif.textidote.rules;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
-import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
-import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
 
 /**
  * Checks that each sub-division in the text (section, sub-section, etc.) has
  * a minimum number of words.
  * @author Sylvain Hallé
  */
-public class CheckSubsectionSize extends Rule
+public class CheckSubsectionSize extends StructuralRule
 {
 	/**
-	 * The pattern to detect a new section heading.
+	 * The headings whose size is checked. The lines of other headings, such
+	 * as paragraphs, count as text of the enclosing sub-division.
 	 */
-	protected Pattern m_headingPattern = Pattern.compile("\\\\(chapter|section|subsection|subsubsection)\\s*\\{");
+	protected static final List<String> s_sizedHeadings = Arrays.asList("chapter", "section", "subsection", "subsubsection");
 
 	/**
 	 * The minimum number of words in a subdivision
@@ -71,74 +70,72 @@ public class CheckSubsectionSize extends Rule
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s) 
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure) 
 	{
 		Stack<SectionInfo> sections = new Stack<SectionInfo>();
 		SectionInfo doc_head = new SectionInfo("", new Range(0, 0));
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
 		sections.push(doc_head);
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		doc_head.m_size += structure.getWordsBeforeHeadings();
+		for (Heading h : structure.getHeadings())
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			Matcher mat = m_headingPattern.matcher(line);
-			if (mat.find())
+			if (!s_sizedHeadings.contains(h.getName()))
 			{
-				int start_pos = l.getOffset() + mat.start(1);
-				int end_pos = l.getOffset() + mat.start(1) + mat.group(1).length();
-				String heading = mat.group(1).trim();
-				SectionInfo si = new SectionInfo(heading, new Range(start_pos, end_pos - 1));
+				// The line of the heading counts as text of the enclosing
+				// sub-division; just increment number of words
 				SectionInfo si_last = sections.peek();
-				if (SectionInfo.isMoveDown(si_last, si))
+				si_last.m_size += h.getLineWords() + h.getWordsAfter();
+				continue;
+			}
+			int start_pos = h.getStart();
+			String heading = h.getName();
+			int end_pos = start_pos + heading.length();
+			SectionInfo si = new SectionInfo(heading, new Range(start_pos, end_pos - 1));
+			SectionInfo si_last = sections.peek();
+			if (SectionInfo.isMoveDown(si_last, si))
+			{
+				si_last.m_size++;
+				sections.push(si);
+			}
+			else
+			{
+				// Move up or same level
+				if (si_last.m_sectionName.compareTo(heading) == 0)
 				{
-					si_last.m_size++;
+					// Same heading
+					SectionInfo si_sibling = sections.pop();
+					SectionInfo si_parent = sections.peek();
+					si_parent.m_size += si_sibling.m_size;
 					sections.push(si);
 				}
 				else
 				{
-					// Move up or same level
-					if (si_last.m_sectionName.compareTo(heading) == 0)
+					// Move up
+					while (!sections.isEmpty() && si_last.m_sectionName.compareTo(si.m_sectionName) != 0)
 					{
-						// Same heading
-						SectionInfo si_sibling = sections.pop();
-						SectionInfo si_parent = sections.peek();
-						si_parent.m_size += si_sibling.m_size;
-						sections.push(si);
+						si_last = sections.pop();
+						if (si_last.m_size < m_minNumWords && !si_last.m_sectionName.isEmpty())
+						{
+							Range r2 = s.findOriginalRange(si_last.m_range);
+							out_list.add(new Advice(this, r2, "This " + si_last.m_sectionName + " is very short (about " + si_last.m_size + " words). You should consider merging it with another section or make it longer.", s, s.findOriginalLine(s.getPosition(si_last.m_range.getStart()).getLine())));
+						}
+					}
+					if (sections.isEmpty())
+					{
+						sections.push(doc_head);
 					}
 					else
 					{
-						// Move up
-						while (!sections.isEmpty() && si_last.m_sectionName.compareTo(si.m_sectionName) != 0)
-						{
-							si_last = sections.pop();
-							if (si_last.m_size < m_minNumWords && !si_last.m_sectionName.isEmpty())
-							{
-								Range r2 = s.findOriginalRange(si_last.m_range);
-								out_list.add(new Advice(this, r2, "This " + si_last.m_sectionName + " is very short (about " + si_last.m_size + " words). You should consider merging it with another section or make it longer.", s, s.findOriginalLine(s.getPosition(si_last.m_range.getStart()).getLine())));
-							}
-						}
-						if (sections.isEmpty())
-						{
-							sections.push(doc_head);
-						}
-						else
-						{
-							SectionInfo si_parent = sections.peek();
-							si_parent.m_size++;
-							sections.push(si);
-						}
+						SectionInfo si_parent = sections.peek();
+						si_parent.m_size++;
 						sections.push(si);
 					}
+					sections.push(si);
 				}
 			}
-			else
-			{
-				// Just increment number of words
-				int num_words = countWords(line);
-				SectionInfo si_last = sections.peek();
-				si_last.m_size += num_words;
-			}
+			// The words up to the next heading belong to the new one, which
+			// is now at the top of the stack
+			sections.peek().m_size += h.getWordsAfter();
 		}
 		// End
 		while (!sections.isEmpty())
@@ -153,19 +150,6 @@ public class CheckSubsectionSize extends Rule
 		return out_list;
 	}
 
-	/**
-	 * Counts the words in a line. This performs a very crude estimation of
-	 * the number of words, by simply counting the number of character
-	 * blobs that are separated by spaces. That's good enough for the "size"
-	 * rule we are evaluating here.
-	 * @param line The line to count words in
-	 * @return The number of words
-	 */
-	protected static int countWords(/*@ non_null @*/ String line)
-	{
-		return line.split("\\s+").length;
-	}
-	
 	@Override
 	public String getDescription()
 	{
@@ -20,26 +20,20 @@ package ca.uqac.lif.textidote.rules;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Stack;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
 import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
 
 /**
  * Checks that each sub-division has either 0 or at least 2 subdivisions.
  * @author Sylvain Hallé
  */
-public class CheckSubsections extends Rule
+public class CheckSubsections extends StructuralRule implements ProjectRule
 {
-	/**
-	 * The pattern to detect a new section heading.
-	 */
-	protected Pattern m_headingPattern = Pattern.compile("\\\\(part|chapter|section|subsection|subsubsection|paragraph)\\s*\\{");
-
 	/**
 	 * Creates a new instance of the rule
 	 */
@@ -49,71 +43,88 @@ public class CheckSubsections extends Rule
 	}
 
 	@Override
-	public List<Advice> evaluate(AnnotatedString s) 
+	public List<Advice> evaluate(AnnotatedString s, DocumentStructure structure) 
+	{
+		return evaluate(structure.getHeadings());
+	}
+
+	@Override
+	public List<Advice> evaluate(ProjectIndex index)
+	{
+		return evaluate(index.getHeadings());
+	}
+
+	/**
+	 * Evaluates the rule on a sequence of headings. The headings may come
+	 * from multiple documents; each advice refers to the document of the
+	 * heading it applies to.
+	 * @param headings The headings, in document order
+	 * @return The list of advice
+	 */
+	/*@ non_null @*/ protected List<Advice> evaluate(/*@ non_null @*/ List<Heading> headings)
 	{
 		Stack<SectionInfo> sections = new Stack<SectionInfo>();
 		SectionInfo doc_head = new SectionInfo("", new Range(0, 0));
 		List<Advice> out_list = new ArrayList<Advice>();
-		List<Line> lines = s.getLines();
 		sections.push(doc_head);
-		for (int line_cnt = 0; line_cnt < lines.size(); line_cnt++)
+		for (Heading h : headings)
 		{
-			Line l = lines.get(line_cnt);
-			String line = l.toString();
-			Matcher mat = m_headingPattern.matcher(line);
-			if (mat.find())
+			AnnotatedString s = h.getString();
+			Line l = h.getLine();
+			int start_pos = h.getStart();
+			String heading = h.getName();
+			int end_pos = start_pos + heading.length();
+			SectionInfo si = new SectionInfo(heading, new Range(start_pos, end_pos - 1));
+			si.m_heading = h;
+			SectionInfo si_last = sections.peek();
+			if (!si_last.m_sectionName.isEmpty() && SectionInfo.distance(si_last.m_sectionName, si.m_sectionName) < -1)
 			{
-				int start_pos = l.getOffset() + mat.start(1);
-				int end_pos = l.getOffset() + mat.start(1) + mat.group(1).length();
-				String heading = mat.group(1).trim();
-				SectionInfo si = new SectionInfo(heading, new Range(start_pos, end_pos - 1));
-				SectionInfo si_last = sections.peek();
-				if (!si_last.m_sectionName.isEmpty() && SectionInfo.distance(si_last.m_sectionName, si.m_sectionName) < -1)
-				{
-					// Moving down more than one level
-					Range o_r = s.findOriginalRange(si.m_range);
-					out_list.add(new Advice(CheckLevelSkip.instance, o_r, "A heading of level n should not be followed by a heading of level n+2 or more.", s, l));
-				}
-				if (SectionInfo.isMoveDown(si_last, si))
+				// Moving down more than one level
+				Range o_r = s.findOriginalRange(si.m_range);
+				out_list.add(new Advice(CheckLevelSkip.instance, o_r, "A heading of level n should not be followed by a heading of level n+2 or more.", s, l));
+			}
+			if (SectionInfo.isMoveDown(si_last, si))
+			{
+				si_last.m_size++;
+				sections.push(si);
+			}
+			else
+			{
+				// Move up or same level
+				if (si_last.m_sectionName.compareTo(heading) == 0)
 				{
-					si_last.m_size++;
+					// Same heading
+					sections.pop();
+					SectionInfo si_parent = sections.peek();
+					si_parent.m_size++;
 					sections.push(si);
 				}
 				else
 				{
-					// Move up or same level
-					if (si_last.m_sectionName.compareTo(heading) == 0)
+					// Move up
+					while (!sections.isEmpty() && si_last.m_sectionName.compareTo(heading) != 0)
 					{
-						// Same heading
-						sections.pop();
-						SectionInfo si_parent = sections.peek();
-						si_parent.m_size++;
-						sections.push(si);
+						si_last = sections.pop();
+						if (si_last.m_size == 1)
+						{
+							// The section may be in another file than the current heading
+							AnnotatedString s_last = si_last.m_heading == null ? s : si_last.m_heading.getString();
+							Line l_last = s_last == s ? l : si_last.m_heading.getLine();
+							Range o_r2 = s_last.findOriginalRange(si_last.m_range);
+							out_list.add(new Advice(this, o_r2, "If a section has sub-sections, it should have more than one such sub-section.", s_last, l_last));
+						}
+					}
+					if (sections.isEmpty())
+					{
+						Range o_r2 = s.findOriginalRange(si.m_range);
+						out_list.add(new Advice(CheckSubsectionOrder.instance, o_r2, "The first heading of a document should be the one with the highest level. For example, if a document contains sections, the first section cannot be preceded by a sub-section.", s, l));
+						sections.push(doc_head);
 					}
 					else
 					{
-						// Move up
-						while (!sections.isEmpty() && si_last.m_sectionName.compareTo(heading) != 0)
-						{
-							si_last = sections.pop();
-							if (si_last.m_size == 1)
-							{
-								Range o_r2 = s.findOriginalRange(si_last.m_range);
-								out_list.add(new Advice(this, o_r2, "If a section has sub-sections, it should have more than one such sub-section.", s, l));
-							}
-						}
-						if (sections.isEmpty())
-						{
-							Range o_r2 = s.findOriginalRange(si.m_range);
-							out_list.add(new Advice(CheckSubsectionOrder.instance, o_r2, "The first heading of a document should be the one with the highest level. For example, if a document contains sections, the first section cannot be preceded by a sub-section.", s, l));
-							sections.push(doc_head);
-						}
-						else
-						{
-							SectionInfo si_parent = sections.peek();
-							si_parent.m_size++;
-							sections.push(si);
-						}
+						SectionInfo si_parent = sections.peek();
+						si_parent.m_size++;
+						sections.push(si);
 					}
 				}
 			}
@@ -124,6 +135,7 @@ public class CheckSubsections extends Rule
 			SectionInfo si_last = sections.pop();
 			if (!si_last.m_sectionName.isEmpty() && si_last.m_size == 1)
 			{
+				AnnotatedString s = si_last.m_heading.getString();
 				Range r2 = si_last.m_range;
 				Range o_r2 = s.findOriginalRange(r2);
 				out_list.add(new Advice(this, o_r2, "If a section has sub-sections, it should have more than one such sub-section.", s, s.findOriginalLine(s.getPosition(r2.getStart()).getLine())));
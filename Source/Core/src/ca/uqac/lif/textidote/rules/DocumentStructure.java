@@ -0,0 +1,1082 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.as.AnnotatedString.Line;
+import ca.uqac.lif.util.Deadline;
+
+/**
+ * The structure of a LaTeX document: its headings and the number of words
+ * under each of them, its forced line breaks, captions, included graphics,
+ * figures, references, citations and included files. The structure is
+ * computed in a single pass over the lines of the document, and is then
+ * queried by the {@link StructuralRule}s, instead of each rule matching its
+ * own patterns on every line. The structures of the files of a project are
+ * brought together in a {@link ProjectIndex}.
+ * <p>
+ * Like the rules that use it, the structure only looks at the first
+ * heading, label, line break and graphic on each line. All the references
+ * on a line are put in a {@link ReferenceIndex}.
+ * @author Sylvain Hallé
+ */
+public class DocumentStructure
+{
+	/**
+	 * The pattern to detect a section heading
+	 */
+	protected static final Pattern s_headingPattern = Pattern.compile("\\\\(part|chapter|section|subsection|subsubsection|paragraph)\\s*\\{");
+
+	/**
+	 * The pattern to detect the start of an environment in which forced
+	 * line breaks are allowed
+	 */
+	protected static final Pattern s_displayBeginPattern = Pattern.compile(".*\\\\begin\\s*\\{\\s*(equation|equation\\*|align|align\\*|table|tabular|verbatim|lstlisting|IEEEkeywords|figure|matrix|bmatrix|Bmatrix|pmatrix|vmatrix|Vmatrix|smallmatrix).*");
+
+	/**
+	 * The pattern to detect the end of an environment in which forced
+	 * line breaks are allowed
+	 */
+	protected static final Pattern s_displayEndPattern = Pattern.compile(".*\\\\end\\s*\\{\\s*(equation|equation\\*|align|align\\*|table|tabular|verbatim|lstlisting|IEEEkeywords|figure|matrix|bmatrix|Bmatrix|pmatrix|vmatrix|Vmatrix|smallmatrix).*");
+
+	/**
+	 * The pattern to detect the start of a display math block
+	 */
+	protected static final Pattern s_mathBeginPattern = Pattern.compile(".*\\\\\\[.*");
+
+	/**
+	 * The pattern to detect the end of a display math block
+	 */
+	protected static final Pattern s_mathEndPattern = Pattern.compile(".*\\\\\\].*");
+
+	/**
+	 * The pattern to detect the start of a figure
+	 */
+	protected static final Pattern s_figureBeginPattern = Pattern.compile(".*\\\\begin\\s*\\{\\s*(figure|wrapfigure).*");
+
+	/**
+	 * The pattern to detect the end of a figure
+	 */
+	protected static final Pattern s_figureEndPattern = Pattern.compile(".*\\\\end\\s*\\{\\s*(figure|wrapfigure).*");
+
+	/**
+	 * The pattern to detect a label
+	 */
+	protected static final Pattern s_labelPattern = Pattern.compile("\\\\label\\s*\\{(.*?)\\}");
+
+	/**
+	 * The pattern to detect an included graphic
+	 */
+	protected static final Pattern s_graphicsPattern = Pattern.compile("\\\\includegraphics\\s*(\\[.*?\\])*?\\{(.*?)\\}");
+
+	/**
+	 * The pattern to detect the inclusion of another file. This is the same
+	 * pattern as the one used by the LaTeX cleaner to find the sub-files of
+	 * a document.
+	 */
+	protected static final Pattern s_includePattern = Pattern.compile("^.*\\\\(input|include)\\s*\\{(.*?)\\}.*$");
+
+	/**
+	 * The pattern to detect a reference to one or more labels
+	 */
+	protected static final Pattern s_refPattern = Pattern.compile("\\\\(C|c|auto)?ref\\s*\\{([^\\}]*)\\}");
+
+	/**
+	 * The pattern separating words
+	 */
+	protected static final Pattern s_spacePattern = Pattern.compile("\\s+");
+
+	/**
+	 * The document
+	 */
+	/*@ non_null @*/ protected final AnnotatedString m_string;
+
+	/**
+	 * The lines of the document
+	 */
+	/*@ non_null @*/ protected final List<Line> m_lines;
+
+	/**
+	 * The headings of the document, in order
+	 */
+	/*@ non_null @*/ protected final List<Heading> m_headings = new ArrayList<Heading>();
+
+	/**
+	 * The number of words before the first heading
+	 */
+	protected int m_wordsBeforeHeadings = 0;
+
+	/**
+	 * The forced line breaks of the document, in order
+	 */
+	/*@ non_null @*/ protected final List<LineBreak> m_breaks = new ArrayList<LineBreak>();
+
+	/**
+	 * The captions of the document, in order
+	 */
+	/*@ non_null @*/ protected final List<Caption> m_captions = new ArrayList<Caption>();
+
+	/**
+	 * The included graphics of the document, in order
+	 */
+	/*@ non_null @*/ protected final List<Graphic> m_graphics = new ArrayList<Graphic>();
+
+	/**
+	 * The figures of the document, in order
+	 */
+	/*@ non_null @*/ protected final List<Figure> m_figures = new ArrayList<Figure>();
+
+	/**
+	 * The labels defined inside figures, in order
+	 */
+	/*@ non_null @*/ protected final List<Label> m_figureLabels = new ArrayList<Label>();
+
+	/**
+	 * The files included by the document, in order
+	 */
+	/*@ non_null @*/ protected final List<Include> m_includes = new ArrayList<Include>();
+
+	/**
+	 * The references to labels
+	 */
+	/*@ non_null @*/ protected final ReferenceIndex m_references = new ReferenceIndex();
+
+	/**
+	 * The position of the first <code>\citep</code> or <code>\citet</code>,
+	 * or -1 if there is none
+	 */
+	protected int m_natbibCite = -1;
+
+	/**
+	 * The position of the first other <code>\cite</code>, or -1 if there is
+	 * none
+	 */
+	protected int m_plainCite = -1;
+
+	/**
+	 * Computes the structure of a document
+	 * @param s The document
+	 */
+	public DocumentStructure(/*@ non_null @*/ AnnotatedString s)
+	{
+		super();
+		m_string = s;
+		m_lines = s.getLines();
+		String resource = s.getResourceName() == null ? "" : s.getResourceName();
+		Heading current = null;
+		boolean found_text = true;
+		int display_depth = 0;
+		boolean in_figure = false;
+		boolean found_label = false;
+		for (int line_cnt = 0; line_cnt < m_lines.size(); line_cnt++)
+		{
+			Deadline.checkCurrent();
+			Line l = m_lines.get(line_cnt);
+			String line = l.toString();
+			int words = countWords(line);
+			// All the patterns start with a backslash
+			boolean has_command = line.indexOf('\\') >= 0;
+			Matcher mat = has_command ? s_headingPattern.matcher(line) : null;
+			if (mat != null && mat.find())
+			{
+				Heading h = new Heading(s, mat.group(1), line_cnt, l, l.getOffset() + mat.start(1), words, found_text);
+				m_headings.add(h);
+				current = h;
+				found_text = false;
+			}
+			else
+			{
+				if (current == null)
+				{
+					m_wordsBeforeHeadings += words;
+				}
+				else
+				{
+					current.m_wordsAfter += words;
+				}
+				if (!line.trim().isEmpty())
+				{
+					found_text = true;
+				}
+			}
+			if (!has_command)
+			{
+				continue;
+			}
+			boolean has_begin = line.contains("\\begin");
+			boolean has_end = line.contains("\\end");
+			if ((has_begin && s_displayBeginPattern.matcher(line).matches()) || (line.contains("\\[") && s_mathBeginPattern.matcher(line).matches()))
+			{
+				display_depth++;
+			}
+			int break_pos = line.indexOf("\\\\");
+			if (break_pos >= 0)
+			{
+				m_breaks.add(new LineBreak(line_cnt, l, l.getOffset() + break_pos, display_depth));
+			}
+			if ((has_end && s_displayEndPattern.matcher(line).matches()) || (line.contains("\\]") && s_mathEndPattern.matcher(line).matches()))
+			{
+				display_depth--;
+			}
+			addCaption(line_cnt, line);
+			if (line.contains("\\includegraphics"))
+			{
+				mat = s_graphicsPattern.matcher(line);
+				if (mat.find())
+				{
+					m_graphics.add(new Graphic(line_cnt, l, mat.group(2), mat.start(2)));
+				}
+			}
+			if (line.contains("\\input") || line.contains("\\include"))
+			{
+				mat = s_includePattern.matcher(line);
+				if (mat.find())
+				{
+					m_includes.add(new Include(mat.group(2).trim(), l.getOffset() + mat.start(2), m_headings.size()));
+				}
+			}
+			if (line.contains("ref"))
+			{
+				addReferences(resource, l, line);
+			}
+			if (has_begin && s_figureBeginPattern.matcher(line).matches())
+			{
+				in_figure = true;
+				found_label = false;
+				continue;
+			}
+			if (has_end && s_figureEndPattern.matcher(line).matches())
+			{
+				in_figure = false;
+				m_figures.add(new Figure(line_cnt, l, found_label));
+				continue;
+			}
+			if (in_figure && line.contains("\\label"))
+			{
+				mat = s_labelPattern.matcher(line);
+				if (mat.find())
+				{
+					m_figureLabels.add(new Label(mat.group(1).trim(), l.getOffset() + mat.start(1)));
+					found_label = true;
+				}
+			}
+		}
+		findCitations(s.toString());
+	}
+
+	/**
+	 * Finds the caption on a line, if any, and checks that it ends with a
+	 * period. The nesting of commands within the caption creates lots of
+	 * false positives for a regular expression, so this method rather keeps
+	 * track of the nesting level of opening and closing braces.
+	 * @param line_cnt The number of the line
+	 * @param line The line
+	 */
+	protected void addCaption(int line_cnt, /*@ non_null @*/ String line)
+	{
+		int start_pos = line.indexOf("\\caption");
+		if (start_pos < 0)
+		{
+			return;
+		}
+		if (line.substring(start_pos).matches("\\\\captionsetup.*"))
+		{
+			// We consider caption, but we ignore captionsetup
+			return;
+		}
+		boolean period_seen = false;
+		int level = 0;
+		int missing_at = -1;
+		for (int i = start_pos + 1; i < line.length(); i++)
+		{
+			char c = line.charAt(i);
+			if (c == '{')
+			{
+				level++;
+				period_seen = false;
+			}
+			else if (c == '}')
+			{
+				level--;
+				if (level == 0 && !period_seen)
+				{
+					missing_at = i;
+					break;
+				}
+				period_seen = false;
+			}
+			else if (c == '.')
+			{
+				period_seen = true;
+			}
+			else if (c != ' ')
+			{
+				period_seen = false;
+			}
+		}
+		m_captions.add(new Caption(line_cnt, start_pos, missing_at));
+	}
+
+	/**
+	 * Adds to the index the references on a line
+	 * @param resource The name of the document
+	 * @param l The line
+	 * @param line The contents of the line
+	 */
+	protected void addReferences(/*@ non_null @*/ String resource, /*@ non_null @*/ Line l, /*@ non_null @*/ String line)
+	{
+		Matcher mat = s_refPattern.matcher(line);
+		while (mat.find())
+		{
+			String names = mat.group(2);
+			int pos = mat.start(2);
+			for (String name : names.split(",", -1))
+			{
+				String label = name.trim();
+				if (!label.isEmpty())
+				{
+					m_references.add(new ReferenceIndex.Reference(label, resource, l.getOffset() + pos + name.indexOf(label)));
+				}
+				pos += name.length() + 1;
+			}
+		}
+	}
+
+	/**
+	 * Finds the first citation of each style in the text
+	 * @param text The text
+	 */
+	protected void findCitations(/*@ non_null @*/ String text)
+	{
+		int pos = text.indexOf("\\cite");
+		while (pos >= 0 && (m_natbibCite < 0 || m_plainCite < 0))
+		{
+			int next = pos + 5;
+			if (next >= text.length())
+			{
+				break;
+			}
+			char c = text.charAt(next);
+			if (c == 'p' || c == 't')
+			{
+				if (m_natbibCite < 0)
+				{
+					m_natbibCite = pos;
+				}
+			}
+			else if (m_plainCite < 0)
+			{
+				m_plainCite = pos;
+			}
+			pos = text.indexOf("\\cite", next);
+		}
+	}
+
+	/**
+	 * Counts the words in a line. This performs a very crude estimation of
+	 * the number of words, by simply counting the number of character
+	 * blobs that are separated by spaces.
+	 * @param line The line to count words in
+	 * @return The number of words
+	 */
+	public static int countWords(/*@ non_null @*/ String line)
+	{
+		return s_spacePattern.split(line).length;
+	}
+
+	/**
+	 * Gets the document this structure was computed from
+	 * @return The document
+	 */
+	/*@ pure non_null @*/ public AnnotatedString getString()
+	{
+		return m_string;
+	}
+
+	/**
+	 * Gets the lines of the document
+	 * @return The lines
+	 */
+	/*@ pure non_null @*/ public List<Line> getLines()
+	{
+		return m_lines;
+	}
+
+	/**
+	 * Gets the headings of the document
+	 * @return The headings, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Heading> getHeadings()
+	{
+		return Collections.unmodifiableList(m_headings);
+	}
+
+	/**
+	 * Gets the number of words before the first heading of the document
+	 * @return The number of words
+	 */
+	/*@ pure @*/ public int getWordsBeforeHeadings()
+	{
+		return m_wordsBeforeHeadings;
+	}
+
+	/**
+	 * Gets the forced line breaks (<code>\\</code>) of the document
+	 * @return The line breaks, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<LineBreak> getLineBreaks()
+	{
+		return Collections.unmodifiableList(m_breaks);
+	}
+
+	/**
+	 * Gets the captions of the document
+	 * @return The captions, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Caption> getCaptions()
+	{
+		return Collections.unmodifiableList(m_captions);
+	}
+
+	/**
+	 * Gets the graphics included in the document
+	 * @return The graphics, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Graphic> getGraphics()
+	{
+		return Collections.unmodifiableList(m_graphics);
+	}
+
+	/**
+	 * Gets the figures of the document
+	 * @return The figures, in the order they end. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Figure> getFigures()
+	{
+		return Collections.unmodifiableList(m_figures);
+	}
+
+	/**
+	 * Gets the labels defined inside figures
+	 * @return The labels, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Label> getFigureLabels()
+	{
+		return Collections.unmodifiableList(m_figureLabels);
+	}
+
+	/**
+	 * Gets the files included by the document with <code>\input</code> or
+	 * <code>\include</code>
+	 * @return The inclusions, in the order they appear. This list cannot be
+	 * modified.
+	 */
+	/*@ pure non_null @*/ public List<Include> getIncludes()
+	{
+		return Collections.unmodifiableList(m_includes);
+	}
+
+	/**
+	 * Gets the references to labels made in the document
+	 * @return The index of references
+	 */
+	/*@ pure non_null @*/ public ReferenceIndex getReferences()
+	{
+		return m_references;
+	}
+
+	/**
+	 * Gets the position of the first <code>\citep</code> or
+	 * <code>\citet</code> in the document
+	 * @return The position, or -1 if there is none
+	 */
+	/*@ pure @*/ public int getNatbibCitePosition()
+	{
+		return m_natbibCite;
+	}
+
+	/**
+	 * Gets the position of the first <code>\cite</code> in the document that
+	 * is not a <code>\citep</code> or <code>\citet</code>
+	 * @return The position, or -1 if there is none
+	 */
+	/*@ pure @*/ public int getPlainCitePosition()
+	{
+		return m_plainCite;
+	}
+
+	/**
+	 * A section heading
+	 */
+	public static class Heading
+	{
+		/**
+		 * The document containing the heading
+		 */
+		/*@ non_null @*/ protected final AnnotatedString m_string;
+
+		/**
+		 * The name of the heading, such as "section"
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The number of the line of the heading
+		 */
+		protected final int m_lineNumber;
+
+		/**
+		 * The line of the heading
+		 */
+		/*@ non_null @*/ protected final Line m_line;
+
+		/**
+		 * The position of the name of the heading in the document
+		 */
+		protected final int m_start;
+
+		/**
+		 * The number of words on the line of the heading
+		 */
+		protected final int m_lineWords;
+
+		/**
+		 * The number of words on the lines after the heading, up to the next
+		 * heading
+		 */
+		protected int m_wordsAfter = 0;
+
+		/**
+		 * Whether text occurs between the previous heading and this one
+		 */
+		protected final boolean m_precededByText;
+
+		/**
+		 * Creates a new heading
+		 * @param s The document containing the heading
+		 * @param name The name of the heading
+		 * @param line_nb The number of the line of the heading
+		 * @param line The line of the heading
+		 * @param start The position of the name of the heading
+		 * @param line_words The number of words on the line of the heading
+		 * @param preceded_by_text Whether text occurs between the previous
+		 * heading and this one
+		 */
+		protected Heading(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ String name, int line_nb, /*@ non_null @*/ Line line, int start, int line_words, boolean preceded_by_text)
+		{
+			super();
+			m_string = s;
+			m_name = name;
+			m_lineNumber = line_nb;
+			m_line = line;
+			m_start = start;
+			m_lineWords = line_words;
+			m_precededByText = preceded_by_text;
+		}
+
+		/**
+		 * Gets the document containing the heading
+		 * @return The document
+		 */
+		/*@ pure non_null @*/ public AnnotatedString getString()
+		{
+			return m_string;
+		}
+
+		/**
+		 * Gets the name of the heading
+		 * @return The name, such as "section"
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the number of the line of the heading
+		 * @return The line number
+		 */
+		/*@ pure @*/ public int getLineNumber()
+		{
+			return m_lineNumber;
+		}
+
+		/**
+		 * Gets the line of the heading
+		 * @return The line
+		 */
+		/*@ pure non_null @*/ public Line getLine()
+		{
+			return m_line;
+		}
+
+		/**
+		 * Gets the position of the name of the heading in the document
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the number of words on the line of the heading
+		 * @return The number of words
+		 */
+		/*@ pure @*/ public int getLineWords()
+		{
+			return m_lineWords;
+		}
+
+		/**
+		 * Gets the number of words on the lines after the heading, up to the
+		 * next heading
+		 * @return The number of words
+		 */
+		/*@ pure @*/ public int getWordsAfter()
+		{
+			return m_wordsAfter;
+		}
+
+		/**
+		 * Determines if text occurs between the previous heading and this
+		 * one. This is always the case for the first heading.
+		 * @return {@code true} if text occurs before the heading
+		 */
+		/*@ pure @*/ public boolean isPrecededByText()
+		{
+			return m_precededByText;
+		}
+
+		@Override
+		public String toString()
+		{
+			return "\\" + m_name + " @" + m_start + " (" + m_wordsAfter + ")";
+		}
+	}
+
+	/**
+	 * A forced line break
+	 */
+	public static class LineBreak
+	{
+		/**
+		 * The number of the line of the break
+		 */
+		protected final int m_lineNumber;
+
+		/**
+		 * The line of the break
+		 */
+		/*@ non_null @*/ protected final Line m_line;
+
+		/**
+		 * The position of the break in the document
+		 */
+		protected final int m_start;
+
+		/**
+		 * The number of enclosing environments in which breaks are allowed
+		 */
+		protected final int m_depth;
+
+		/**
+		 * Creates a new line break
+		 * @param line_nb The number of the line of the break
+		 * @param line The line of the break
+		 * @param start The position of the break in the document
+		 * @param depth The number of enclosing environments in which breaks
+		 * are allowed
+		 */
+		protected LineBreak(int line_nb, /*@ non_null @*/ Line line, int start, int depth)
+		{
+			super();
+			m_lineNumber = line_nb;
+			m_line = line;
+			m_start = start;
+			m_depth = depth;
+		}
+
+		/**
+		 * Gets the number of the line of the break
+		 * @return The line number
+		 */
+		/*@ pure @*/ public int getLineNumber()
+		{
+			return m_lineNumber;
+		}
+
+		/**
+		 * Gets the line of the break
+		 * @return The line
+		 */
+		/*@ pure non_null @*/ public Line getLine()
+		{
+			return m_line;
+		}
+
+		/**
+		 * Gets the position of the break in the document
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the number of enclosing environments in which breaks are
+		 * allowed, such as equations, tables and figures. This number is
+		 * only a count of the lines that open and close such environments,
+		 * and can be negative in a document where they are unbalanced.
+		 * @return The number of environments
+		 */
+		/*@ pure @*/ public int getDepth()
+		{
+			return m_depth;
+		}
+	}
+
+	/**
+	 * A caption
+	 */
+	public static class Caption
+	{
+		/**
+		 * The number of the line of the caption
+		 */
+		protected final int m_lineNumber;
+
+		/**
+		 * The column where the caption starts
+		 */
+		protected final int m_start;
+
+		/**
+		 * The column of the closing brace not preceded by a period, or -1
+		 */
+		protected final int m_missingPeriodAt;
+
+		/**
+		 * Creates a new caption
+		 * @param line_nb The number of the line of the caption
+		 * @param start The column where the caption starts
+		 * @param missing_period_at The column of the closing brace not
+		 * preceded by a period, or -1
+		 */
+		protected Caption(int line_nb, int start, int missing_period_at)
+		{
+			super();
+			m_lineNumber = line_nb;
+			m_start = start;
+			m_missingPeriodAt = missing_period_at;
+		}
+
+		/**
+		 * Gets the number of the line of the caption
+		 * @return The line number
+		 */
+		/*@ pure @*/ public int getLineNumber()
+		{
+			return m_lineNumber;
+		}
+
+		/**
+		 * Gets the column where the caption starts
+		 * @return The column
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the column of the closing brace of the caption, if the caption
+		 * does not end with a period
+		 * @return The column, or -1 if the caption ends with a period
+		 */
+		/*@ pure @*/ public int getMissingPeriodAt()
+		{
+			return m_missingPeriodAt;
+		}
+	}
+
+	/**
+	 * A graphic included with <code>\includegraphics</code>
+	 */
+	public static class Graphic
+	{
+		/**
+		 * The number of the line of the graphic
+		 */
+		protected final int m_lineNumber;
+
+		/**
+		 * The line of the graphic
+		 */
+		/*@ non_null @*/ protected final Line m_line;
+
+		/**
+		 * The path of the graphic, as written in the document
+		 */
+		/*@ non_null @*/ protected final String m_path;
+
+		/**
+		 * The column where the path starts
+		 */
+		protected final int m_start;
+
+		/**
+		 * Creates a new graphic
+		 * @param line_nb The number of the line of the graphic
+		 * @param line The line of the graphic
+		 * @param path The path of the graphic, as written in the document
+		 * @param start The column where the path starts
+		 */
+		protected Graphic(int line_nb, /*@ non_null @*/ Line line, /*@ non_null @*/ String path, int start)
+		{
+			super();
+			m_lineNumber = line_nb;
+			m_line = line;
+			m_path = path;
+			m_start = start;
+		}
+
+		/**
+		 * Gets the number of the line of the graphic
+		 * @return The line number
+		 */
+		/*@ pure @*/ public int getLineNumber()
+		{
+			return m_lineNumber;
+		}
+
+		/**
+		 * Gets the line of the graphic
+		 * @return The line
+		 */
+		/*@ pure non_null @*/ public Line getLine()
+		{
+			return m_line;
+		}
+
+		/**
+		 * Gets the path of the graphic, as written in the document
+		 * @return The path, including any surrounding spaces
+		 */
+		/*@ pure non_null @*/ public String getPath()
+		{
+			return m_path;
+		}
+
+		/**
+		 * Gets the column where the path starts
+		 * @return The column
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+	}
+
+	/**
+	 * A figure, located by the line where it ends
+	 */
+	public static class Figure
+	{
+		/**
+		 * The number of the line where the figure ends
+		 */
+		protected final int m_lineNumber;
+
+		/**
+		 * The line where the figure ends
+		 */
+		/*@ non_null @*/ protected final Line m_line;
+
+		/**
+		 * Whether the figure has a label
+		 */
+		protected final boolean m_labeled;
+
+		/**
+		 * Creates a new figure
+		 * @param line_nb The number of the line where the figure ends
+		 * @param line The line where the figure ends
+		 * @param labeled Whether the figure has a label
+		 */
+		protected Figure(int line_nb, /*@ non_null @*/ Line line, boolean labeled)
+		{
+			super();
+			m_lineNumber = line_nb;
+			m_line = line;
+			m_labeled = labeled;
+		}
+
+		/**
+		 * Gets the number of the line where the figure ends
+		 * @return The line number
+		 */
+		/*@ pure @*/ public int getLineNumber()
+		{
+			return m_lineNumber;
+		}
+
+		/**
+		 * Gets the line where the figure ends
+		 * @return The line
+		 */
+		/*@ pure non_null @*/ public Line getLine()
+		{
+			return m_line;
+		}
+
+		/**
+		 * Determines if the figure has a label
+		 * @return {@code true} if the figure has a label
+		 */
+		/*@ pure @*/ public boolean hasLabel()
+		{
+			return m_labeled;
+		}
+	}
+
+	/**
+	 * The inclusion of a file with <code>\input</code> or
+	 * <code>\include</code>
+	 */
+	public static class Include
+	{
+		/**
+		 * The path of the file, as written in the document
+		 */
+		/*@ non_null @*/ protected final String m_path;
+
+		/**
+		 * The position of the path in the document
+		 */
+		protected final int m_start;
+
+		/**
+		 * The number of headings of the document before the inclusion
+		 */
+		protected final int m_headingIndex;
+
+		/**
+		 * Creates a new inclusion
+		 * @param path The path of the file, as written in the document
+		 * @param start The position of the path in the document
+		 * @param heading_index The number of headings of the document before
+		 * the inclusion
+		 */
+		protected Include(/*@ non_null @*/ String path, int start, int heading_index)
+		{
+			super();
+			m_path = path;
+			m_start = start;
+			m_headingIndex = heading_index;
+		}
+
+		/**
+		 * Gets the path of the file, as written in the document
+		 * @return The path; the <tt>.tex</tt> extension may be omitted
+		 */
+		/*@ pure non_null @*/ public String getPath()
+		{
+			return m_path;
+		}
+
+		/**
+		 * Gets the position of the path in the document
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+
+		/**
+		 * Gets the number of headings of the document that come before the
+		 * inclusion. The headings of the included file come between these
+		 * headings and the following ones.
+		 * @return The number of headings
+		 */
+		/*@ pure @*/ public int getHeadingIndex()
+		{
+			return m_headingIndex;
+		}
+	}
+
+	/**
+	 * A label defined with <code>\label</code>
+	 */
+	public static class Label
+	{
+		/**
+		 * The name of the label
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The position of the name in the document
+		 */
+		protected final int m_start;
+
+		/**
+		 * Creates a new label
+		 * @param name The name of the label
+		 * @param start The position of the name in the document
+		 */
+		protected Label(/*@ non_null @*/ String name, int start)
+		{
+			super();
+			m_name = name;
+			m_start = start;
+		}
+
+		/**
+		 * Gets the name of the label
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the position of the name in the document
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Include;
+
+/**
+ * The structures of all the files of a project, brought together so that
+ * {@link ProjectRule}s can be evaluated once on the whole project. The
+ * structure of each file is the one computed when the file was linted;
+ * the texts of the files are not scanned again.
+ * <p>
+ * The files are put in document order by following the
+ * <code>\input</code> and <code>\include</code> commands from the first
+ * file added to the index: the headings of an included file come at the
+ * point where the file is included. Files that are not reached this way
+ * come after, in the order they were added.
+ * <p>
+ * An index is meant to be filled and read by a single thread.
+ * @author Sylvain Hallé
+ */
+public class ProjectIndex
+{
+	/**
+	 * The entry of each file, in the order they were added
+	 */
+	/*@ non_null @*/ protected final Map<String,Entry> m_entries = new LinkedHashMap<String,Entry>();
+
+	/**
+	 * The references made in all the files
+	 */
+	/*@ non_null @*/ protected final ReferenceIndex m_references = new ReferenceIndex();
+
+	/**
+	 * The entries in document order, or {@code null} if not computed yet
+	 */
+	/*@ null @*/ protected List<Entry> m_order = null;
+
+	/**
+	 * The headings of all the files in document order, or {@code null} if
+	 * not computed yet
+	 */
+	/*@ null @*/ protected List<Heading> m_headings = null;
+
+	/**
+	 * Adds a file to the index
+	 * @param filename The name of the file
+	 * @param structure The structure of the file
+	 * @param inner_files The files included by this file, as returned by
+	 * the cleaner
+	 * @return This index
+	 */
+	/*@ non_null @*/ public ProjectIndex add(/*@ non_null @*/ String filename, /*@ non_null @*/ DocumentStructure structure, /*@ non_null @*/ List<String> inner_files)
+	{
+		Entry previous = m_entries.put(filename, new Entry(filename, structure, inner_files));
+		if (previous == null)
+		{
+			m_references.addAll(structure.getReferences());
+		}
+		else
+		{
+			// The file was linted again; rebuild the references from scratch
+			m_references.clear();
+			for (Entry e : m_entries.values())
+			{
+				m_references.addAll(e.getStructure().getReferences());
+			}
+		}
+		m_order = null;
+		m_headings = null;
+		return this;
+	}
+
+	/**
+	 * Gets the entry of a file
+	 * @param filename The name of the file
+	 * @return The entry, or {@code null} if the file is not in the index
+	 */
+	/*@ pure null @*/ public Entry getEntry(/*@ non_null @*/ String filename)
+	{
+		return m_entries.get(filename);
+	}
+
+	/**
+	 * Gets the number of files in the index
+	 * @return The number of files
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_entries.size();
+	}
+
+	/**
+	 * Gets the references made in all the files of the project
+	 * @return The index of references
+	 */
+	/*@ pure non_null @*/ public ReferenceIndex getReferences()
+	{
+		return m_references;
+	}
+
+	/**
+	 * Gets the entries of the files in document order
+	 * @return The list of entries. This list cannot be modified.
+	 */
+	/*@ non_null @*/ public List<Entry> getDocumentOrder()
+	{
+		computeOrder();
+		return Collections.unmodifiableList(m_order);
+	}
+
+	/**
+	 * Gets the headings of all the files in document order
+	 * @return The list of headings. This list cannot be modified.
+	 */
+	/*@ non_null @*/ public List<Heading> getHeadings()
+	{
+		computeOrder();
+		return Collections.unmodifiableList(m_headings);
+	}
+
+	/**
+	 * Puts the entries and their headings in document order
+	 */
+	protected void computeOrder()
+	{
+		if (m_order != null)
+		{
+			return;
+		}
+		List<Entry> order = new ArrayList<Entry>(m_entries.size());
+		List<Heading> headings = new ArrayList<Heading>();
+		Set<String> visited = new HashSet<String>();
+		for (Entry e : m_entries.values())
+		{
+			visit(e, visited, order, headings);
+		}
+		m_order = order;
+		m_headings = headings;
+	}
+
+	/**
+	 * Visits a file and the files it includes, in document order
+	 * @param e The entry of the file
+	 * @param visited The names of the files visited so far
+	 * @param order The list of entries to add to
+	 * @param headings The list of headings to add to
+	 */
+	protected void visit(/*@ non_null @*/ Entry e, /*@ non_null @*/ Set<String> visited, /*@ non_null @*/ List<Entry> order, /*@ non_null @*/ List<Heading> headings)
+	{
+		if (!visited.add(e.getFilename()))
+		{
+			return;
+		}
+		order.add(e);
+		List<Heading> file_headings = e.getStructure().getHeadings();
+		int h = 0;
+		for (Include inc : e.getStructure().getIncludes())
+		{
+			for (; h < inc.getHeadingIndex(); h++)
+			{
+				headings.add(file_headings.get(h));
+			}
+			Entry child = resolve(e, inc);
+			if (child != null)
+			{
+				visit(child, visited, order, headings);
+			}
+		}
+		for (; h < file_headings.size(); h++)
+		{
+			headings.add(file_headings.get(h));
+		}
+	}
+
+	/**
+	 * Finds the entry of a file included by another one. The path written
+	 * in the document is matched against the end of the paths of the inner
+	 * files of the including file, which the cleaner has already resolved.
+	 * @param e The entry of the including file
+	 * @param inc The inclusion
+	 * @return The entry of the included file, or {@code null} if it is not
+	 * in the index
+	 */
+	/*@ null @*/ protected Entry resolve(/*@ non_null @*/ Entry e, /*@ non_null @*/ Include inc)
+	{
+		String path = inc.getPath();
+		if (!path.endsWith(".tex"))
+		{
+			path += ".tex";
+		}
+		try
+		{
+			Path written = Paths.get(path).normalize();
+			for (String inner : e.getInnerFiles())
+			{
+				if (m_entries.containsKey(inner) && Paths.get(inner).normalize().endsWith(written))
+				{
+					return m_entries.get(inner);
+				}
+			}
+		}
+		catch (InvalidPathException ex)
+		{
+			// Not a path we can match; the file is visited later
+		}
+		return null;
+	}
+
+	/**
+	 * The structure of one file of a project
+	 */
+	public static class Entry
+	{
+		/**
+		 * The name of the file
+		 */
+		/*@ non_null @*/ protected final String m_filename;
+
+		/**
+		 * The structure of the file
+		 */
+		/*@ non_null @*/ protected final DocumentStructure m_structure;
+
+		/**
+		 * The files included by this file
+		 */
+		/*@ non_null @*/ protected final List<String> m_innerFiles;
+
+		/**
+		 * Creates a new entry
+		 * @param filename The name of the file
+		 * @param structure The structure of the file
+		 * @param inner_files The files included by this file
+		 */
+		protected Entry(/*@ non_null @*/ String filename, /*@ non_null @*/ DocumentStructure structure, /*@ non_null @*/ List<String> inner_files)
+		{
+			super();
+			m_filename = filename;
+			m_structure = structure;
+			m_innerFiles = inner_files;
+		}
+
+		/**
+		 * Gets the name of the file
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getFilename()
+		{
+			return m_filename;
+		}
+
+		/**
+		 * Gets the structure of the file
+		 * @return The structure
+		 */
+		/*@ pure non_null @*/ public DocumentStructure getStructure()
+		{
+			return m_structure;
+		}
+
+		/**
+		 * Gets the string the structure of the file was computed from. The
+		 * advice on this file refers to this string.
+		 * @return The string
+		 */
+		/*@ pure non_null @*/ public AnnotatedString getString()
+		{
+			return m_structure.getString();
+		}
+
+		/**
+		 * Gets the files included by this file
+		 * @return The names of the files
+		 */
+		/*@ pure non_null @*/ public List<String> getInnerFiles()
+		{
+			return m_innerFiles;
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.List;
+
+import ca.uqac.lif.textidote.Advice;
+
+/**
+ * A rule that applies to a whole project rather than to a single file.
+ * Such a rule is evaluated once, after all the files of the project have
+ * been linted, on the {@link ProjectIndex} built from these files. This
+ * lets it find relationships across files, such as a figure defined in one
+ * file and referenced in another.
+ * @author Sylvain Hallé
+ */
+public interface ProjectRule
+{
+	/**
+	 * Gets the name given to the rule
+	 * @return The name
+	 */
+	/*@ pure non_null @*/ public String getName();
+
+	/**
+	 * Evaluates the rule on all the files of a project
+	 * @param index The index of the project
+	 * @return A list of advice generated from the evaluation of the rule.
+	 * Each advice refers to the string of the file it applies to.
+	 */
+	/*@ non_null @*/ public List<Advice> evaluate(/*@ non_null @*/ ProjectIndex index);
+}
@@ -0,0 +1,209 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of the references to labels made with <code>\ref</code>,
+ * <code>\cref</code>, <code>\Cref</code> and <code>\autoref</code>. The
+ * index maps each label name to the places where it is referenced; a
+ * command referring to multiple labels, such as <code>\cref{a,b}</code>,
+ * counts as a reference to each of them.
+ * <p>
+ * An index is built for each document by its {@link DocumentStructure}.
+ * The indices of multiple documents, such as the files of an include tree,
+ * can be merged with {@link #addAll(ReferenceIndex)}, so that a label
+ * defined in one file and referenced in another is found.
+ * @author Sylvain Hallé
+ */
+public class ReferenceIndex
+{
+	/**
+	 * The references to each label
+	 */
+	/*@ non_null @*/ protected final Map<String,List<Reference>> m_references = new HashMap<String,List<Reference>>();
+
+	/**
+	 * The total number of references in the index
+	 */
+	protected int m_size = 0;
+
+	/**
+	 * Adds a reference to the index
+	 * @param r The reference
+	 * @return This index
+	 */
+	/*@ non_null @*/ public ReferenceIndex add(/*@ non_null @*/ Reference r)
+	{
+		List<Reference> list = m_references.get(r.getLabel());
+		if (list == null)
+		{
+			list = new ArrayList<Reference>(1);
+			m_references.put(r.getLabel(), list);
+		}
+		list.add(r);
+		m_size++;
+		return this;
+	}
+
+	/**
+	 * Adds all the references of another index to this one
+	 * @param index The other index
+	 * @return This index
+	 */
+	/*@ non_null @*/ public ReferenceIndex addAll(/*@ non_null @*/ ReferenceIndex index)
+	{
+		for (List<Reference> list : index.m_references.values())
+		{
+			for (Reference r : list)
+			{
+				add(r);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Removes all the references from the index
+	 * @return This index
+	 */
+	/*@ non_null @*/ public ReferenceIndex clear()
+	{
+		m_references.clear();
+		m_size = 0;
+		return this;
+	}
+
+	/**
+	 * Determines if a label is referenced
+	 * @param label The name of the label
+	 * @return {@code true} if there is at least one reference to the label
+	 */
+	/*@ pure @*/ public boolean isReferenced(/*@ non_null @*/ String label)
+	{
+		return m_references.containsKey(label);
+	}
+
+	/**
+	 * Gets the references to a label
+	 * @param label The name of the label
+	 * @return The references, in the order they were added. This list
+	 * cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<Reference> getReferences(/*@ non_null @*/ String label)
+	{
+		List<Reference> list = m_references.get(label);
+		if (list == null)
+		{
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	/**
+	 * Gets the names of all the labels that are referenced
+	 * @return The set of names. This set cannot be modified.
+	 */
+	/*@ pure non_null @*/ public Set<String> getLabels()
+	{
+		return Collections.unmodifiableSet(m_references.keySet());
+	}
+
+	/**
+	 * Gets the total number of references in the index
+	 * @return The number of references
+	 */
+	/*@ pure @*/ public int size()
+	{
+		return m_size;
+	}
+
+	/**
+	 * A reference to a label
+	 */
+	public static class Reference
+	{
+		/**
+		 * The name of the label
+		 */
+		/*@ non_null @*/ protected final String m_label;
+
+		/**
+		 * The name of the document containing the reference
+		 */
+		/*@ non_null @*/ protected final String m_resource;
+
+		/**
+		 * The position of the label name in the document
+		 */
+		protected final int m_start;
+
+		/**
+		 * Creates a new reference
+		 * @param label The name of the label
+		 * @param resource The name of the document containing the reference
+		 * @param start The position of the label name in the document
+		 */
+		public Reference(/*@ non_null @*/ String label, /*@ non_null @*/ String resource, int start)
+		{
+			super();
+			m_label = label;
+			m_resource = resource;
+			m_start = start;
+		}
+
+		/**
+		 * Gets the name of the label
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getLabel()
+		{
+			return m_label;
+		}
+
+		/**
+		 * Gets the name of the document containing the reference
+		 * @return The name of the document
+		 */
+		/*@ pure non_null @*/ public String getResource()
+		{
+			return m_resource;
+		}
+
+		/**
+		 * Gets the position of the label name in the document
+		 * @return The position
+		 */
+		/*@ pure @*/ public int getStart()
+		{
+			return m_start;
+		}
+
+		@Override
+		public String toString()
+		{
+			return m_resource + "@" + m_start + ":" + m_label;
+		}
+	}
+}
@@ -0,0 +1,502 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Finds the literal strings that any match of a regular expression must
+ * contain. For example, every match of <code>\\cite\s*\{.*?\}</code>
+ * contains <code>\cite</code>, and every match of
+ * <code>(F|f)igure\s+\d</code> contains either <code>Figure</code> or
+ * <code>figure</code>. A text that contains none of these strings cannot
+ * match the expression, which makes it possible to skip the expression
+ * without running it.
+ * <p>
+ * The analysis is conservative: constructs it does not understand (flags,
+ * quoting, Unicode classes, etc.) make it give up rather than return a
+ * wrong answer.
+ * @author Sylvain Hallé
+ */
+public class RegexLiterals
+{
+	/**
+	 * The maximum number of alternatives in a set of literals
+	 */
+	protected static final transient int MAX_ALTERNATIVES = 16;
+
+	/**
+	 * The escaped letters that stand for a character class, an anchor or
+	 * a special character, and can be treated as "anything"
+	 */
+	protected static final transient String CLASS_ESCAPES = "wWsSdDbBAGZzhHvVRntrfae";
+
+	/**
+	 * The expression being analyzed
+	 */
+	/*@ non_null @*/ protected final String m_regex;
+
+	/**
+	 * The current position in the expression
+	 */
+	protected int m_pos = 0;
+
+	/**
+	 * Gets the literal strings that any match of a regular expression must
+	 * contain
+	 * @param regex The regular expression
+	 * @return A set of non-empty strings, such that every match of the
+	 * expression contains at least one of them; {@code null} if no such set
+	 * could be found
+	 */
+	/*@ null @*/ public static Set<String> getRequiredLiterals(/*@ non_null @*/ String regex)
+	{
+		RegexLiterals rl = new RegexLiterals(regex);
+		try
+		{
+			Element e = rl.parseAlternation();
+			if (rl.m_pos < regex.length())
+			{
+				// Unbalanced parenthesis
+				return null;
+			}
+			return e.m_required;
+		}
+		catch (UnsupportedPatternException ex)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a new analyzer
+	 * @param regex The expression to analyze
+	 */
+	protected RegexLiterals(/*@ non_null @*/ String regex)
+	{
+		super();
+		m_regex = regex;
+	}
+
+	/**
+	 * Parses alternatives separated by <code>|</code>, up to the end of the
+	 * expression or to the closing parenthesis of the current group
+	 * @return The element
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseAlternation() throws UnsupportedPatternException
+	{
+		Element e = parseSequence();
+		while (m_pos < m_regex.length() && m_regex.charAt(m_pos) == '|')
+		{
+			m_pos++;
+			Element branch = parseSequence();
+			if (e.m_exact != null && branch.m_exact != null)
+			{
+				Set<String> union = new LinkedHashSet<String>(e.m_exact);
+				union.addAll(branch.m_exact);
+				e = Element.exact(union);
+			}
+			else if (e.m_required == null || branch.m_required == null)
+			{
+				e = Element.ANYTHING;
+			}
+			else
+			{
+				Set<String> union = new LinkedHashSet<String>(e.m_required);
+				union.addAll(branch.m_required);
+				e = Element.required(union);
+			}
+		}
+		return e;
+	}
+
+	/**
+	 * Parses a sequence of atoms, up to a <code>|</code>, a closing
+	 * parenthesis or the end of the expression
+	 * @return The element
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseSequence() throws UnsupportedPatternException
+	{
+		// The strings matched by the atoms since the last inexact atom
+		Set<String> current = Collections.singleton("");
+		Set<String> best = null;
+		boolean exact = true;
+		while (m_pos < m_regex.length())
+		{
+			char c = m_regex.charAt(m_pos);
+			if (c == '|' || c == ')')
+			{
+				break;
+			}
+			Element e = parseQuantifier(parseAtom());
+			if (e.m_exact != null && current.size() * e.m_exact.size() <= MAX_ALTERNATIVES)
+			{
+				current = concatenate(current, e.m_exact);
+				continue;
+			}
+			best = better(best, current);
+			best = better(best, e.m_required);
+			current = e.m_exact != null ? e.m_exact : Collections.singleton("");
+			exact = false;
+		}
+		if (exact)
+		{
+			return Element.exact(current);
+		}
+		return Element.required(better(best, current));
+	}
+
+	/**
+	 * Parses a single atom: a character, an escape sequence, a character
+	 * class or a group
+	 * @return The element
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseAtom() throws UnsupportedPatternException
+	{
+		char c = m_regex.charAt(m_pos++);
+		switch (c)
+		{
+		case '\\':
+			return parseEscape();
+		case '[':
+			skipClass();
+			return Element.ANYTHING;
+		case '.':
+		case '^':
+		case '$':
+			return Element.ANYTHING;
+		case '(':
+			return parseGroup();
+		case '*':
+		case '+':
+		case '?':
+		case '{':
+			throw new UnsupportedPatternException();
+		default:
+			return Element.exact(Collections.singleton(Character.toString(c)));
+		}
+	}
+
+	/**
+	 * Parses an escape sequence, whose backslash has already been read
+	 * @return The element
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseEscape() throws UnsupportedPatternException
+	{
+		if (m_pos >= m_regex.length())
+		{
+			throw new UnsupportedPatternException();
+		}
+		char c = m_regex.charAt(m_pos++);
+		if (Character.isDigit(c) || CLASS_ESCAPES.indexOf(c) >= 0)
+		{
+			// Back reference or character class
+			return Element.ANYTHING;
+		}
+		if (Character.isLetter(c))
+		{
+			// Quoting, Unicode classes, hexadecimal codes, etc.
+			throw new UnsupportedPatternException();
+		}
+		return Element.exact(Collections.singleton(Character.toString(c)));
+	}
+
+	/**
+	 * Parses a group, whose opening parenthesis has already been read
+	 * @return The element
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseGroup() throws UnsupportedPatternException
+	{
+		boolean lookaround = false;
+		if (m_regex.startsWith("?", m_pos))
+		{
+			if (m_regex.startsWith("?:", m_pos) || m_regex.startsWith("?>", m_pos))
+			{
+				m_pos += 2;
+			}
+			else if (m_regex.startsWith("?=", m_pos) || m_regex.startsWith("?!", m_pos))
+			{
+				m_pos += 2;
+				lookaround = true;
+			}
+			else if (m_regex.startsWith("?<=", m_pos) || m_regex.startsWith("?<!", m_pos))
+			{
+				m_pos += 3;
+				lookaround = true;
+			}
+			else if (m_regex.startsWith("?<", m_pos))
+			{
+				// Named group
+				int end = m_regex.indexOf('>', m_pos);
+				if (end < 0)
+				{
+					throw new UnsupportedPatternException();
+				}
+				m_pos = end + 1;
+			}
+			else
+			{
+				// Flags
+				throw new UnsupportedPatternException();
+			}
+		}
+		Element e = parseAlternation();
+		if (m_pos >= m_regex.length() || m_regex.charAt(m_pos) != ')')
+		{
+			throw new UnsupportedPatternException();
+		}
+		m_pos++;
+		return lookaround ? Element.ANYTHING : e;
+	}
+
+	/**
+	 * Applies the quantifier that follows an atom, if any
+	 * @param e The element corresponding to the atom
+	 * @return The element corresponding to the quantified atom
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	/*@ non_null @*/ protected Element parseQuantifier(/*@ non_null @*/ Element e) throws UnsupportedPatternException
+	{
+		if (m_pos >= m_regex.length())
+		{
+			return e;
+		}
+		char c = m_regex.charAt(m_pos);
+		int min;
+		if (c == '?' || c == '*')
+		{
+			m_pos++;
+			min = 0;
+		}
+		else if (c == '+')
+		{
+			m_pos++;
+			min = 1;
+		}
+		else if (c == '{')
+		{
+			int end = m_regex.indexOf('}', m_pos);
+			if (end < 0)
+			{
+				throw new UnsupportedPatternException();
+			}
+			String[] bounds = m_regex.substring(m_pos + 1, end).split(",", -1);
+			try
+			{
+				min = Integer.parseInt(bounds[0].trim());
+			}
+			catch (NumberFormatException ex)
+			{
+				throw new UnsupportedPatternException();
+			}
+			m_pos = end + 1;
+		}
+		else
+		{
+			return e;
+		}
+		if (m_pos < m_regex.length() && (m_regex.charAt(m_pos) == '?' || m_regex.charAt(m_pos) == '+'))
+		{
+			// Reluctant or possessive quantifier
+			m_pos++;
+		}
+		if (min == 0)
+		{
+			return Element.ANYTHING;
+		}
+		return Element.required(e.m_required);
+	}
+
+	/**
+	 * Skips a character class, whose opening bracket has already been read
+	 * @throws UnsupportedPatternException If the expression cannot be
+	 * analyzed
+	 */
+	protected void skipClass() throws UnsupportedPatternException
+	{
+		int depth = 1;
+		if (m_regex.startsWith("^", m_pos))
+		{
+			m_pos++;
+		}
+		if (m_regex.startsWith("]", m_pos))
+		{
+			// A closing bracket right after the opening one is a literal
+			m_pos++;
+		}
+		while (m_pos < m_regex.length())
+		{
+			char c = m_regex.charAt(m_pos++);
+			if (c == '\\')
+			{
+				m_pos++;
+			}
+			else if (c == '[')
+			{
+				depth++;
+			}
+			else if (c == ']')
+			{
+				depth--;
+				if (depth == 0)
+				{
+					return;
+				}
+			}
+		}
+		throw new UnsupportedPatternException();
+	}
+
+	/**
+	 * Concatenates every string of a set with every string of another set
+	 * @param left The first set
+	 * @param right The second set
+	 * @return The set of concatenations
+	 */
+	/*@ non_null @*/ protected static Set<String> concatenate(/*@ non_null @*/ Set<String> left, /*@ non_null @*/ Set<String> right)
+	{
+		Set<String> out = new LinkedHashSet<String>();
+		for (String l : left)
+		{
+			for (String r : right)
+			{
+				out.add(l + r);
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * Chooses the most selective of two sets of required literals. A set is
+	 * more selective if its shortest string is longer.
+	 * @param s1 The first set; may be {@code null}
+	 * @param s2 The second set; may be {@code null}
+	 * @return The most selective set; {@code null} if none of the sets can
+	 * be used
+	 */
+	/*@ null @*/ protected static Set<String> better(/*@ null @*/ Set<String> s1, /*@ null @*/ Set<String> s2)
+	{
+		int l1 = shortest(s1), l2 = shortest(s2);
+		if (l1 == 0 && l2 == 0)
+		{
+			return null;
+		}
+		if (l1 > l2 || (l1 == l2 && s1.size() <= s2.size()))
+		{
+			return s1;
+		}
+		return s2;
+	}
+
+	/**
+	 * Gets the length of the shortest string in a set
+	 * @param s The set; may be {@code null}
+	 * @return The length, or 0 if the set is null or empty
+	 */
+	protected static int shortest(/*@ null @*/ Set<String> s)
+	{
+		if (s == null || s.isEmpty())
+		{
+			return 0;
+		}
+		int min = Integer.MAX_VALUE;
+		for (String x : s)
+		{
+			min = Math.min(min, x.length());
+		}
+		return min;
+	}
+
+	/**
+	 * Exception thrown when an expression uses constructs that the analyzer
+	 * does not handle, or is malformed; no literal is then required
+	 */
+	protected static class UnsupportedPatternException extends Exception
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * What is known about the strings matched by a part of an expression
+	 */
+	protected static class Element
+	{
+		/**
+		 * An element that can match anything
+		 */
+		protected static final Element ANYTHING = new Element(null, null);
+
+		/**
+		 * If not null, the element matches exactly one of these strings
+		 */
+		/*@ null @*/ protected final Set<String> m_exact;
+
+		/**
+		 * If not null, the element contains one of these (non-empty) strings
+		 */
+		/*@ null @*/ protected final Set<String> m_required;
+
+		/**
+		 * Creates a new element
+		 * @param exact The strings the element matches exactly
+		 * @param required The strings the element must contain
+		 */
+		protected Element(/*@ null @*/ Set<String> exact, /*@ null @*/ Set<String> required)
+		{
+			super();
+			m_exact = exact;
+			m_required = required;
+		}
+
+		/**
+		 * Creates an element that matches exactly one of a set of strings
+		 * @param s The strings
+		 * @return The element
+		 */
+		/*@ non_null @*/ protected static Element exact(/*@ non_null @*/ Set<String> s)
+		{
+			return new Element(s, shortest(s) > 0 ? s : null);
+		}
+
+		/**
+		 * Creates an element that contains one of a set of strings
+		 * @param s The strings; may be {@code null}
+		 * @return The element
+		 */
+		/*@ non_null @*/ protected static Element required(/*@ null @*/ Set<String> s)
+		{
+			return new Element(null, shortest(s) > 0 ? s : null);
+		}
+	}
+}
@@ -17,8 +17,9 @@
  */
 package ca.uqac.lif.textidote.rules;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
@@ -26,6 +27,7 @@ import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.AnnotatedString.Line;
 import ca.uqac.lif.textidote.as.Match;
+import ca.uqac.lif.util.RegexPattern;
 
 /**
  * Rule based on a regular expression pattern to be found in the text.
@@ -48,6 +50,22 @@ public class RegexRule extends Rule
 	 */
 	protected String m_message;
 	
+	/**
+	 * The compiled version of the pattern to find in the text
+	 */
+	/*@ non_null @*/ protected final RegexPattern m_compiledPattern;
+	
+	/**
+	 * The compiled version of the exception pattern, if any
+	 */
+	/*@ null @*/ protected final RegexPattern m_compiledException;
+	
+	/**
+	 * The literal strings that any match of the pattern must contain, or
+	 * {@code null} if there are none
+	 */
+	/*@ null @*/ protected final Set<String> m_literals;
+	
 	/**
 	 * The maximum number of times the rule can look for the pattern in
 	 * the text
@@ -84,51 +102,69 @@ public class RegexRule extends Rule
 		m_pattern = pattern;
 		m_message = message;
 		m_exceptionPattern = exception;
+		m_compiledPattern = RegexPattern.compile(pattern);
+		m_compiledException = exception == null ? null : RegexPattern.compile(exception);
+		Set<String> literals = RegexLiterals.getRequiredLiterals(pattern);
+		m_literals = literals == null ? null : Collections.unmodifiableSet(literals);
+	}
+	
+	/**
+	 * Gets the literal strings that any match of the pattern must contain
+	 * @return The strings, or {@code null} if there are none
+	 */
+	/*@ pure null @*/ public Set<String> getRequiredLiterals()
+	{
+		return m_literals;
 	}
 
 	@Override
 	/*@ non_null @*/ public List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s)
 	{
-		List<Advice> out_list = new ArrayList<Advice>();
-		int pos = 0;
-		for (int num_iterations = 0; num_iterations < MAX_ITERATIONS; num_iterations++)
+		return new RegexRuleSet(Collections.singletonList(this), false).evaluate(s);
+	}
+	
+	/**
+	 * Determines if a match of the pattern is excluded by the exception
+	 * pattern of this rule
+	 * @param match The string that matched the pattern
+	 * @return {@code true} if the rule does not apply to this match,
+	 * {@code false} otherwise
+	 */
+	/*@ pure @*/ protected boolean isException(/*@ non_null @*/ String match)
+	{
+		return m_compiledException != null && m_compiledException.matcher(match).matches();
+	}
+	
+	/**
+	 * Creates the advice corresponding to a match of the pattern
+	 * @param s The string where the match was found
+	 * @param match The match
+	 * @return The advice
+	 */
+	/*@ non_null @*/ protected Advice createAdvice(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ Match match)
+	{
+		String message = createMessage(match);
+		int start_pos = match.getPosition();
+		int end_pos = start_pos + match.getMatch().length();
+		Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
+		Line original_line = null;
+		boolean original_range = true;
+		if (r != null)
 		{
-			Match match = s.find(m_pattern, pos);
-			if (match == null)
-			{
-				// No cigarettes, no matches
-				break;
-			}
-			if (m_exceptionPattern != null && match.getMatch().matches(m_exceptionPattern))
-			{
-				// Rule does not apply
-				continue;
-			}
-			String message = createMessage(match);
-			int start_pos = match.getPosition();
-			int end_pos = start_pos + match.getMatch().length();
-			Range r = s.findOriginalRange(new Range(start_pos, end_pos - 1));
-			Line original_line = null;
-			boolean original_range = true;
-			if (r != null)
-			{
-				// Found a range in the original string
-				original_line = s.getOriginalLineOf(r.getStart());
-			}
-			else
-			{
-				// Did not find a range in the original string, use the clean string instead
-				r = new Range(match.getPosition(), match.getPosition() + match.getMatch().length() - 1);
-				original_line = s.getLineOf(match.getPosition());
-				original_range = false;
-			}
-			assert r != null;
-			Advice a = new Advice(this, r, message, s, original_line);
-			a.setOriginal(original_range);
-			out_list.add(a);
-			pos = start_pos + match.getMatch().length();
+			// Found a range in the original string
+			original_line = s.getOriginalLineOf(r.getStart());
+		}
+		else
+		{
+			// Did not find a range in the original string, use the clean string instead
+			r = new Range(match.getPosition(), match.getPosition() + match.getMatch().length() - 1);
+			original_line = s.getLineOf(match.getPosition());
+			original_range = false;
 		}
-		return out_list;
+		assert r != null;
+		Advice a = new Advice(this, r, message, s, original_line);
+		a.setOriginal(original_range);
+		return a;
 	}
 
 	/**
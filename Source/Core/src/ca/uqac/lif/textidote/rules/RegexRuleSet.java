@@ -0,0 +1,291 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.Rule;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.as.Match;
+import ca.uqac.lif.util.AhoCorasick;
+import ca.uqac.lif.util.Deadline;
+import ca.uqac.lif.util.RegexMatcher;
+
+/**
+ * Evaluates a group of {@link RegexRule}s together. The patterns are
+ * compiled when the rules are created, and not every time they are looked
+ * for. The rules are then run one after the other on the text, each with
+ * its own matcher.
+ * <p>
+ * Before the rules are run, a single pass of an {@link AhoCorasick}
+ * automaton finds the occurrences of the literal strings that the patterns
+ * require (see {@link RegexLiterals}). A rule whose literals do not occur
+ * in the text is not run at all, and a rule stops looking for its pattern
+ * past the last occurrence of its literals. The number of rules skipped
+ * this way is kept, and can be displayed with
+ * {@link #printSummary(PrintStream)}.
+ * <p>
+ * The set does not generate advice of its own: every advice refers to the
+ * regex rule that produced it, and the advice comes out in the same order,
+ * and with the same contents, as if the rules were evaluated one after the
+ * other.
+ * @author Sylvain Hallé
+ */
+public class RegexRuleSet extends Rule
+{
+	/**
+	 * The rules in this set
+	 */
+	/*@ non_null @*/ protected final List<RegexRule> m_rules;
+
+	/**
+	 * The automaton finding the literals required by the rules, or
+	 * {@code null} if no rule is filtered
+	 */
+	/*@ null @*/ protected final AhoCorasick m_prefilter;
+
+	/**
+	 * For each literal of the automaton, the indices of the rules that
+	 * require it
+	 */
+	/*@ non_null @*/ protected final int[][] m_literalRules;
+
+	/**
+	 * Whether each rule is filtered by the automaton
+	 */
+	/*@ non_null @*/ protected final boolean[] m_filtered;
+
+	/**
+	 * The number of times the set has been evaluated
+	 */
+	/*@ non_null @*/ protected final AtomicLong m_evaluations = new AtomicLong();
+
+	/**
+	 * For each rule, the number of evaluations where the rule was skipped
+	 */
+	/*@ non_null @*/ protected final AtomicLongArray m_skips;
+
+	/**
+	 * Creates a new set of regex rules
+	 * @param rules The rules in the set
+	 */
+	public RegexRuleSet(/*@ non_null @*/ Collection<? extends RegexRule> rules)
+	{
+		this(rules, true);
+	}
+
+	/**
+	 * Creates a new set of regex rules
+	 * @param rules The rules in the set
+	 * @param prefilter Set to {@code true} to skip the rules whose literals
+	 * do not occur in the text, {@code false} to always run all the rules
+	 */
+	public RegexRuleSet(/*@ non_null @*/ Collection<? extends RegexRule> rules, boolean prefilter)
+	{
+		super("sh:regex");
+		m_rules = Collections.unmodifiableList(new ArrayList<RegexRule>(rules));
+		m_filtered = new boolean[m_rules.size()];
+		m_skips = new AtomicLongArray(m_rules.size());
+		Map<String,List<Integer>> literals = new LinkedHashMap<String,List<Integer>>();
+		for (int i = 0; prefilter && i < m_rules.size(); i++)
+		{
+			Set<String> rule_literals = m_rules.get(i).getRequiredLiterals();
+			if (rule_literals == null)
+			{
+				continue;
+			}
+			m_filtered[i] = true;
+			for (String literal : rule_literals)
+			{
+				List<Integer> indices = literals.get(literal);
+				if (indices == null)
+				{
+					indices = new ArrayList<Integer>();
+					literals.put(literal, indices);
+				}
+				indices.add(i);
+			}
+		}
+		m_literalRules = new int[literals.size()][];
+		int k = 0;
+		for (List<Integer> indices : literals.values())
+		{
+			m_literalRules[k] = new int[indices.size()];
+			for (int j = 0; j < indices.size(); j++)
+			{
+				m_literalRules[k][j] = indices.get(j);
+			}
+			k++;
+		}
+		m_prefilter = literals.isEmpty() ? null : new AhoCorasick(new ArrayList<String>(literals.keySet()));
+	}
+
+	/**
+	 * Gets the rules in this set
+	 * @return The list of rules. This list cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<RegexRule> getRules()
+	{
+		return m_rules;
+	}
+
+	@Override
+	/*@ non_null @*/ public List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s)
+	{
+		String text = s.toString();
+		m_evaluations.incrementAndGet();
+		int[] last_hits = findLastHits(text);
+		// Reading the text through the deadline stops a runaway match
+		CharSequence input = Deadline.current().wrap(text);
+		List<Advice> out_list = new ArrayList<Advice>();
+		for (int i = 0; i < m_rules.size(); i++)
+		{
+			if (last_hits[i] < 0)
+			{
+				// The pattern cannot occur in the text
+				m_skips.incrementAndGet(i);
+				continue;
+			}
+			evaluate(m_rules.get(i), s, input, last_hits[i], out_list);
+		}
+		return out_list;
+	}
+
+	/**
+	 * Looks for the matches of a rule's pattern in a text
+	 * @param rule The rule
+	 * @param s The string the text comes from
+	 * @param input The text
+	 * @param limit The position after which the rule stops looking for its
+	 * pattern
+	 * @param out_list The list where to put the advice of the rule
+	 */
+	protected static void evaluate(/*@ non_null @*/ RegexRule rule, /*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ CharSequence input, int limit, /*@ non_null @*/ List<Advice> out_list)
+	{
+		RegexMatcher mat = rule.m_compiledPattern.matcher(input);
+		int pos = 0;
+		for (int iterations = 0; iterations < RegexRule.MAX_ITERATIONS && pos <= limit && mat.find(pos); iterations++)
+		{
+			if (rule.isException(mat.group()))
+			{
+				// Rule does not apply, and stops looking for the pattern
+				return;
+			}
+			Match match = new Match(mat.group(), mat.start());
+			for (int i = 0 ; i <= mat.groupCount(); i++)
+			{
+				match.addGroup(mat.group(i));
+			}
+			out_list.add(rule.createAdvice(s, match));
+			pos = mat.end();
+		}
+	}
+
+	/**
+	 * Finds, for each rule, the position of the last occurrence in a text of
+	 * the literals it requires. A match of the rule's pattern that starts
+	 * after this position cannot contain any of these literals.
+	 * @param text The text
+	 * @return For each rule, the position of the last occurrence; -1 if the
+	 * literals do not occur in the text, and {@link Integer#MAX_VALUE} if the
+	 * rule is not filtered
+	 */
+	/*@ non_null @*/ protected int[] findLastHits(/*@ non_null @*/ String text)
+	{
+		final int[] last_hits = new int[m_rules.size()];
+		for (int i = 0; i < last_hits.length; i++)
+		{
+			last_hits[i] = m_filtered[i] ? -1 : Integer.MAX_VALUE;
+		}
+		if (m_prefilter != null)
+		{
+			m_prefilter.search(text, new AhoCorasick.MatchListener()
+			{
+				@Override
+				public void found(int keyword, int start)
+				{
+					for (int i : m_literalRules[keyword])
+					{
+						last_hits[i] = Math.max(last_hits[i], start);
+					}
+				}
+			});
+		}
+		return last_hits;
+	}
+
+	/**
+	 * Gets the number of times this set has been evaluated
+	 * @return The number of evaluations
+	 */
+	/*@ pure @*/ public long getEvaluationCount()
+	{
+		return m_evaluations.get();
+	}
+
+	/**
+	 * Gets the number of evaluations where each rule was skipped, because
+	 * the literals it requires did not occur in the text
+	 * @return A map from rule names to skip counts, in the order of the
+	 * rules in the set
+	 */
+	/*@ pure non_null @*/ public Map<String,Long> getSkipCounts()
+	{
+		Map<String,Long> counts = new LinkedHashMap<String,Long>();
+		for (int i = 0; i < m_rules.size(); i++)
+		{
+			counts.put(m_rules.get(i).getName(), m_skips.get(i));
+		}
+		return counts;
+	}
+
+	/**
+	 * Prints how many times each rule was skipped by the prefilter
+	 * @param ps The print stream to print to
+	 */
+	public void printSummary(/*@ non_null @*/ PrintStream ps)
+	{
+		long evaluations = m_evaluations.get();
+		long total = 0;
+		for (int i = 0; i < m_rules.size(); i++)
+		{
+			RegexRule rule = m_rules.get(i);
+			long skips = m_skips.get(i);
+			total += skips;
+			Set<String> literals = m_filtered[i] ? rule.getRequiredLiterals() : null;
+			ps.println(String.format("%-12s skipped %d/%d  %s", rule.getName(), skips, evaluations, literals == null ? "(not filtered)" : literals));
+		}
+		ps.println(String.format("%d of %d rule evaluations skipped", total, evaluations * m_rules.size()));
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "Regex checks on the text";
+	}
+}
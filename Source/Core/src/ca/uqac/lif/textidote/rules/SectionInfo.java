@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
 
 /**
  * Information on a section heading inside a document.
@@ -45,6 +46,11 @@ class SectionInfo
 	 * the section.
 	 */
 	protected int m_size = 0;
+
+	/**
+	 * The heading in the structure of the document, if known
+	 */
+	/*@ null @*/ protected Heading m_heading = null;
 	
 	protected static final List<String> s_headings = createHeadings();
 
@@ -0,0 +1,58 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.List;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.Rule;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+/**
+ * A rule that examines the {@link DocumentStructure} of a document rather
+ * than its text. When such rules are grouped in a
+ * {@link StructuralRuleSet}, the structure is computed once and shared by
+ * all of them.
+ * @author Sylvain Hallé
+ */
+public abstract class StructuralRule extends Rule
+{
+	/**
+	 * Creates a new structural rule
+	 * @param name A unique name given to the rule
+	 */
+	public StructuralRule(/*@ non_null @*/ String name)
+	{
+		super(name);
+	}
+
+	@Override
+	public List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s)
+	{
+		return evaluate(s, new DocumentStructure(s));
+	}
+
+	/**
+	 * Evaluates the rule on a string whose structure has already been
+	 * computed
+	 * @param s The string on which to evaluate the rule
+	 * @param structure The structure of this string
+	 * @return A list of advice generated from the evaluation of the rule
+	 */
+	/*@ non_null @*/ public abstract List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ DocumentStructure structure);
+}
@@ -0,0 +1,93 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.Rule;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+/**
+ * Evaluates a group of {@link StructuralRule}s on a document. The
+ * {@link DocumentStructure} of the document is computed once, in a single
+ * pass over its lines, and each rule is then evaluated on it.
+ * <p>
+ * The set does not generate advice of its own: the advice of each rule
+ * comes out in the same order as if the rules were evaluated one after the
+ * other.
+ * @author Sylvain Hallé
+ */
+public class StructuralRuleSet extends Rule
+{
+	/**
+	 * The rules in this set
+	 */
+	/*@ non_null @*/ protected final List<StructuralRule> m_rules;
+
+	/**
+	 * Creates a new set of structural rules
+	 * @param rules The rules in the set
+	 */
+	public StructuralRuleSet(/*@ non_null @*/ Collection<? extends StructuralRule> rules)
+	{
+		super("sh:structure");
+		m_rules = Collections.unmodifiableList(new ArrayList<StructuralRule>(rules));
+	}
+
+	/**
+	 * Gets the rules in this set
+	 * @return The list of rules. This list cannot be modified.
+	 */
+	/*@ pure non_null @*/ public List<StructuralRule> getRules()
+	{
+		return m_rules;
+	}
+
+	@Override
+	/*@ non_null @*/ public List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s)
+	{
+		return evaluate(s, new DocumentStructure(s));
+	}
+
+	/**
+	 * Evaluates the rules of this set on a document whose structure has
+	 * already been computed
+	 * @param s The document
+	 * @param structure The structure of the document
+	 * @return The list of advice
+	 */
+	/*@ non_null @*/ public List<Advice> evaluate(/*@ non_null @*/ AnnotatedString s, /*@ non_null @*/ DocumentStructure structure)
+	{
+		List<Advice> out_list = new ArrayList<Advice>();
+		for (StructuralRule rule : m_rules)
+		{
+			out_list.addAll(rule.evaluate(s, structure));
+		}
+		return out_list;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "Checks on the structure of the document";
+	}
+}
@@ -0,0 +1,203 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick automaton, which finds all the occurrences of a set of
+ * keywords in a string in a single pass, whatever the number of keywords.
+ * Once built, the automaton is immutable and can be used by multiple
+ * threads at once.
+ * @author Sylvain Hallé
+ */
+public class AhoCorasick
+{
+	/**
+	 * For each state, the characters that have a transition, in ascending
+	 * order
+	 */
+	/*@ non_null @*/ protected final char[][] m_labels;
+
+	/**
+	 * For each state, the target of each transition
+	 */
+	/*@ non_null @*/ protected final int[][] m_targets;
+
+	/**
+	 * For each state, the state to go to when no transition applies
+	 */
+	/*@ non_null @*/ protected final int[] m_fail;
+
+	/**
+	 * For each state, the keywords that end in this state
+	 */
+	/*@ non_null @*/ protected final int[][] m_outputs;
+
+	/**
+	 * The length of each keyword
+	 */
+	/*@ non_null @*/ protected final int[] m_lengths;
+
+	/**
+	 * Receives the occurrences found by an automaton
+	 */
+	public interface MatchListener
+	{
+		/**
+		 * Notifies the listener that a keyword was found
+		 * @param keyword The index of the keyword in the list given to the
+		 * automaton
+		 * @param start The position of the first character of the occurrence
+		 */
+		public void found(int keyword, int start);
+	}
+
+	/**
+	 * Creates a new automaton
+	 * @param keywords The keywords to look for. They must not be empty.
+	 */
+	public AhoCorasick(/*@ non_null @*/ List<String> keywords)
+	{
+		super();
+		List<TreeMap<Character,Integer>> go_to = new ArrayList<TreeMap<Character,Integer>>();
+		List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+		go_to.add(new TreeMap<Character,Integer>());
+		outputs.add(new ArrayList<Integer>());
+		m_lengths = new int[keywords.size()];
+		for (int k = 0; k < keywords.size(); k++)
+		{
+			String keyword = keywords.get(k);
+			if (keyword.isEmpty())
+			{
+				throw new IllegalArgumentException("Keywords must not be empty");
+			}
+			m_lengths[k] = keyword.length();
+			int state = 0;
+			for (int i = 0; i < keyword.length(); i++)
+			{
+				Integer next = go_to.get(state).get(keyword.charAt(i));
+				if (next == null)
+				{
+					next = go_to.size();
+					go_to.get(state).put(keyword.charAt(i), next);
+					go_to.add(new TreeMap<Character,Integer>());
+					outputs.add(new ArrayList<Integer>());
+				}
+				state = next;
+			}
+			outputs.get(state).add(k);
+		}
+		int num_states = go_to.size();
+		m_labels = new char[num_states][];
+		m_targets = new int[num_states][];
+		m_fail = new int[num_states];
+		for (int s = 0; s < num_states; s++)
+		{
+			TreeMap<Character,Integer> transitions = go_to.get(s);
+			m_labels[s] = new char[transitions.size()];
+			m_targets[s] = new int[transitions.size()];
+			int i = 0;
+			for (Map.Entry<Character,Integer> e : transitions.entrySet())
+			{
+				m_labels[s][i] = e.getKey();
+				m_targets[s][i] = e.getValue();
+				i++;
+			}
+		}
+		// Compute failure links breadth-first, so that the link of a state
+		// is known before those of its children
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (int target : m_targets[0])
+		{
+			queue.add(target);
+		}
+		while (!queue.isEmpty())
+		{
+			int s = queue.remove();
+			outputs.get(s).addAll(outputs.get(m_fail[s]));
+			for (int i = 0; i < m_labels[s].length; i++)
+			{
+				int child = m_targets[s][i];
+				int f = m_fail[s];
+				int next = transition(f, m_labels[s][i]);
+				while (next < 0 && f != 0)
+				{
+					f = m_fail[f];
+					next = transition(f, m_labels[s][i]);
+				}
+				m_fail[child] = next < 0 ? 0 : next;
+				queue.add(child);
+			}
+		}
+		m_outputs = new int[num_states][];
+		for (int s = 0; s < num_states; s++)
+		{
+			List<Integer> out = outputs.get(s);
+			m_outputs[s] = new int[out.size()];
+			for (int i = 0; i < out.size(); i++)
+			{
+				m_outputs[s][i] = out.get(i);
+			}
+		}
+	}
+
+	/**
+	 * Finds all the occurrences of the keywords in a string, including
+	 * overlapping ones
+	 * @param s The string
+	 * @param listener The listener to notify of each occurrence
+	 */
+	public void search(/*@ non_null @*/ CharSequence s, /*@ non_null @*/ MatchListener listener)
+	{
+		int state = 0;
+		for (int i = 0; i < s.length(); i++)
+		{
+			char c = s.charAt(i);
+			int next = transition(state, c);
+			while (next < 0 && state != 0)
+			{
+				state = m_fail[state];
+				next = transition(state, c);
+			}
+			state = next < 0 ? 0 : next;
+			for (int k : m_outputs[state])
+			{
+				listener.found(k, i - m_lengths[k] + 1);
+			}
+		}
+	}
+
+	/**
+	 * Gets the target of a transition
+	 * @param state The source state
+	 * @param c The character
+	 * @return The target state, or -1 if there is no such transition
+	 */
+	protected int transition(int state, char c)
+	{
+		int i = Arrays.binarySearch(m_labels[state], c);
+		return i < 0 ? -1 : m_targets[state][i];
+	}
+}
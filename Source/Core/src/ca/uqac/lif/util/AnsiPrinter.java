@@ -17,6 +17,7 @@
  */
 package ca.uqac.lif.util;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -45,6 +46,11 @@ public class AnsiPrinter extends PrintStream
 		 */
 		protected boolean m_enabled = true;
 
+		/**
+		 * The escape sequence resetting the colors, written in a single call
+		 */
+		private static final String RESET_COLORS = "\u001B[0m\u001B[39m\u001B[49m";
+
 		/**
 		 * Instantiates an AnsiPrinter.
 		 * @param out The OutputStream where the printer will send its output
@@ -54,6 +60,23 @@ public class AnsiPrinter extends PrintStream
 			super(out);
 		}
 
+		/**
+		 * Instantiates an AnsiPrinter that buffers its output. Text and
+		 * escape sequences are collected in a buffer, and only reach the
+		 * output stream when the buffer is full or the printer is flushed;
+		 * printing many small pieces of text hence does not cause one system
+		 * call per piece.
+		 * @param out The OutputStream where the printer will send its output
+		 * @param buffer_size The size of the buffer, in bytes
+		 * @param async Set to {@code true} to have the full buffers written
+		 * by a background thread (see {@link AsyncOutputStream}),
+		 * {@code false} to write them in the calling thread
+		 */
+		public AnsiPrinter(OutputStream out, int buffer_size, boolean async)
+		{
+			super(async ? new AsyncOutputStream(out, buffer_size) : new BufferedOutputStream(out, buffer_size));
+		}
+
 		/**
 		 * A reader from the standard input
 		 */
@@ -281,9 +304,7 @@ public class AnsiPrinter extends PrintStream
 		{
 			if (m_enabled)
 			{
-				printBytes("\u001B[0m");
-				printBytes("\u001B[39m");
-				printBytes("\u001B[49m");
+				printBytes(RESET_COLORS);
 			}
 			return this;	  
 		}
@@ -297,6 +318,19 @@ public class AnsiPrinter extends PrintStream
 			return this;
 		}
 
+		/**
+		 * Clears the terminal and moves the cursor to its top-left corner
+		 * @return This printer
+		 */
+		public AnsiPrinter clearScreen()
+		{
+			if (m_enabled)
+			{
+				printBytes("\u001B[2J\u001B[H");
+			}
+			return this;
+		}
+
 		/**
 		 * Prints a string to bytes
 		 * @param s The string to print
@@ -0,0 +1,250 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Output stream that collects the bytes written to it in a buffer, and
+ * hands each full buffer to a background thread that writes it to another
+ * stream. The thread producing the output therefore does not wait for the
+ * system calls writing it, unless more than {@value #MAX_PENDING} buffers
+ * are waiting to be written, in which case it blocks so that the memory
+ * used stays bounded.
+ * <p>
+ * The buffers are written in the order they are filled. A call to
+ * {@link #flush()} returns once everything written so far has reached the
+ * other stream. The background thread is started when the first buffer is
+ * handed to it, and stops by itself after being idle for a second, so
+ * that a stream that is not closed does not keep a thread alive. An error
+ * raised when writing a buffer is thrown by the next call to this stream.
+ * <p>
+ * An instance of this class is meant to be written by a single thread.
+ * @author Sylvain Hallé
+ */
+public class AsyncOutputStream extends OutputStream
+{
+	/**
+	 * The maximum number of buffers waiting to be written
+	 */
+	public static final int MAX_PENDING = 4;
+
+	/**
+	 * The stream to write to
+	 */
+	/*@ non_null @*/ protected final OutputStream m_out;
+
+	/**
+	 * The size of each buffer
+	 */
+	protected final int m_bufferSize;
+
+	/**
+	 * The buffer being filled
+	 */
+	/*@ non_null @*/ protected byte[] m_buffer;
+
+	/**
+	 * The number of bytes in the buffer being filled
+	 */
+	protected int m_count = 0;
+
+	/**
+	 * The thread writing the buffers
+	 */
+	/*@ non_null @*/ protected final ThreadPoolExecutor m_writer;
+
+	/**
+	 * The permits for buffers waiting to be written
+	 */
+	/*@ non_null @*/ protected final Semaphore m_pending = new Semaphore(MAX_PENDING);
+
+	/**
+	 * The first error raised when writing a buffer, if any
+	 */
+	/*@ null @*/ protected volatile IOException m_error = null;
+
+	/**
+	 * Creates a new asynchronous output stream
+	 * @param out The stream to write to
+	 * @param buffer_size The size of each buffer, in bytes
+	 */
+	public AsyncOutputStream(/*@ non_null @*/ OutputStream out, int buffer_size)
+	{
+		super();
+		m_out = out;
+		m_bufferSize = buffer_size;
+		m_buffer = new byte[buffer_size];
+		m_writer = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+		{
+			@Override
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "textidote-output");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (m_count == m_buffer.length)
+		{
+			handOff();
+		}
+		m_buffer[m_count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		while (len > 0)
+		{
+			if (m_count == m_buffer.length)
+			{
+				handOff();
+			}
+			int n = Math.min(len, m_buffer.length - m_count);
+			System.arraycopy(b, off, m_buffer, m_count, n);
+			m_count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		handOff();
+		Future<Void> done = m_writer.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws IOException
+			{
+				m_out.flush();
+				return null;
+			}
+		});
+		try
+		{
+			done.get();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof IOException)
+			{
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		checkError();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			flush();
+		}
+		finally
+		{
+			m_writer.shutdown();
+			m_out.close();
+		}
+	}
+
+	/**
+	 * Hands the buffer being filled to the background thread, and starts
+	 * a new one
+	 * @throws IOException If writing a previous buffer raised an error
+	 */
+	protected void handOff() throws IOException
+	{
+		checkError();
+		if (m_count == 0)
+		{
+			return;
+		}
+		final byte[] chunk = m_buffer;
+		final int length = m_count;
+		try
+		{
+			m_pending.acquire();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		m_writer.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					if (m_error == null)
+					{
+						m_out.write(chunk, 0, length);
+					}
+				}
+				catch (IOException e)
+				{
+					m_error = e;
+				}
+				finally
+				{
+					m_pending.release();
+				}
+			}
+		});
+		m_buffer = new byte[m_bufferSize];
+		m_count = 0;
+	}
+
+	/**
+	 * Throws the error raised when writing a buffer, if any
+	 * @throws IOException The error
+	 */
+	protected void checkError() throws IOException
+	{
+		IOException e = m_error;
+		if (e != null)
+		{
+			throw e;
+		}
+	}
+}
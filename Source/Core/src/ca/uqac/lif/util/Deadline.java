@@ -0,0 +1,257 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+/**
+ * A point in time after which a computation should stop. Cancellation is
+ * cooperative: long-running code calls {@link #check()} (or
+ * {@link #checkCurrent()}) from time to time, and this method throws a
+ * {@link DeadlineExceededException} once the deadline has passed or the
+ * current thread has been interrupted.
+ * <p>
+ * Each thread has a current deadline, which is {@link #NONE} unless set
+ * with {@link #setCurrent(Deadline)}. This lets code deep inside a
+ * computation check the deadline without it being passed around.
+ * @author Sylvain Hallé
+ */
+public class Deadline
+{
+	/**
+	 * A deadline that never expires
+	 */
+	/*@ non_null @*/ public static final Deadline NONE = new Deadline(Long.MAX_VALUE, 0);
+
+	/**
+	 * The current deadline of each thread
+	 */
+	/*@ non_null @*/ protected static final ThreadLocal<Deadline> s_current = new ThreadLocal<Deadline>();
+
+	/**
+	 * The value of {@link System#nanoTime()} at which the deadline expires
+	 */
+	protected final long m_end;
+
+	/**
+	 * The duration of the budget this deadline was created from, in
+	 * milliseconds
+	 */
+	protected final long m_budget;
+
+	/**
+	 * Creates a new deadline
+	 * @param end The value of {@link System#nanoTime()} at which the
+	 * deadline expires
+	 * @param budget The duration of the budget this deadline was created
+	 * from, in milliseconds
+	 */
+	protected Deadline(long end, long budget)
+	{
+		super();
+		m_end = end;
+		m_budget = budget;
+	}
+
+	/**
+	 * Creates a deadline that expires some time from now
+	 * @param millis The number of milliseconds; 0 or less designates a
+	 * deadline that never expires
+	 * @return The deadline
+	 */
+	/*@ non_null @*/ public static Deadline after(long millis)
+	{
+		if (millis <= 0)
+		{
+			return NONE;
+		}
+		return new Deadline(System.nanoTime() + millis * 1000000L, millis);
+	}
+
+	/**
+	 * Gets the earliest of this deadline and another one
+	 * @param d The other deadline
+	 * @return The earliest deadline
+	 */
+	/*@ pure non_null @*/ public Deadline min(/*@ non_null @*/ Deadline d)
+	{
+		if (this == NONE)
+		{
+			return d;
+		}
+		if (d == NONE)
+		{
+			return this;
+		}
+		return d.m_end - m_end < 0 ? d : this;
+	}
+
+	/**
+	 * Determines if this deadline can expire
+	 * @return {@code false} if this deadline is {@link #NONE}, {@code true}
+	 * otherwise
+	 */
+	/*@ pure @*/ public boolean isBounded()
+	{
+		return this != NONE;
+	}
+
+	/**
+	 * Determines if this deadline has passed
+	 * @return {@code true} if the deadline has passed
+	 */
+	public boolean isExpired()
+	{
+		return this != NONE && System.nanoTime() - m_end >= 0;
+	}
+
+	/**
+	 * Gets the duration of the budget this deadline was created from
+	 * @return The duration, in milliseconds; 0 for {@link #NONE}
+	 */
+	/*@ pure @*/ public long getBudget()
+	{
+		return m_budget;
+	}
+
+	/**
+	 * Stops the computation if this deadline has passed or if the current
+	 * thread has been interrupted
+	 * @throws DeadlineExceededException If the computation must stop
+	 */
+	public void check() throws DeadlineExceededException
+	{
+		if (Thread.currentThread().isInterrupted())
+		{
+			throw new DeadlineExceededException(this, true);
+		}
+		if (isExpired())
+		{
+			throw new DeadlineExceededException(this, false);
+		}
+	}
+
+	/**
+	 * Gets the current deadline of the calling thread
+	 * @return The deadline; {@link #NONE} if none was set
+	 */
+	/*@ non_null @*/ public static Deadline current()
+	{
+		Deadline d = s_current.get();
+		return d == null ? NONE : d;
+	}
+
+	/**
+	 * Sets the current deadline of the calling thread
+	 * @param d The deadline; {@link #NONE} removes the deadline
+	 * @return The previous deadline of the thread
+	 */
+	/*@ non_null @*/ public static Deadline setCurrent(/*@ non_null @*/ Deadline d)
+	{
+		Deadline previous = current();
+		if (d == NONE)
+		{
+			s_current.remove();
+		}
+		else
+		{
+			s_current.set(d);
+		}
+		return previous;
+	}
+
+	/**
+	 * Checks the current deadline of the calling thread
+	 * @throws DeadlineExceededException If the computation must stop
+	 * @see #check()
+	 */
+	public static void checkCurrent() throws DeadlineExceededException
+	{
+		current().check();
+	}
+
+	/**
+	 * Wraps a character sequence so that reading it checks this deadline.
+	 * This is how a regex match, which cannot be interrupted otherwise, is
+	 * stopped when it runs for too long.
+	 * @param s The sequence
+	 * @return The wrapped sequence, or {@code s} itself if this deadline
+	 * never expires
+	 */
+	/*@ non_null @*/ public CharSequence wrap(/*@ non_null @*/ CharSequence s)
+	{
+		if (this == NONE)
+		{
+			return s;
+		}
+		return new InterruptibleCharSequence(s, this);
+	}
+
+	/**
+	 * Exception thrown when a computation must stop because its deadline has
+	 * passed or its thread has been interrupted
+	 */
+	public static class DeadlineExceededException extends RuntimeException
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The deadline that was exceeded
+		 */
+		/*@ non_null @*/ protected final transient Deadline m_deadline;
+
+		/**
+		 * Whether the computation was stopped by an interruption of its
+		 * thread rather than by the deadline
+		 */
+		protected final boolean m_interrupted;
+
+		/**
+		 * Creates a new exception
+		 * @param d The deadline that was exceeded
+		 * @param interrupted Whether the computation was stopped by an
+		 * interruption of its thread
+		 */
+		public DeadlineExceededException(/*@ non_null @*/ Deadline d, boolean interrupted)
+		{
+			super(interrupted ? "Thread interrupted" : "Deadline of " + d.getBudget() + " ms exceeded");
+			m_deadline = d;
+			m_interrupted = interrupted;
+		}
+
+		/**
+		 * Gets the deadline that was exceeded
+		 * @return The deadline
+		 */
+		/*@ pure non_null @*/ public Deadline getDeadline()
+		{
+			return m_deadline;
+		}
+
+		/**
+		 * Determines if the computation was stopped by an interruption of its
+		 * thread rather than by the deadline
+		 * @return {@code true} if the thread was interrupted
+		 */
+		/*@ pure @*/ public boolean isInterrupted()
+		{
+			return m_interrupted;
+		}
+	}
+}
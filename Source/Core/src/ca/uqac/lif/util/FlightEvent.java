@@ -0,0 +1,438 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An event of the Java Flight Recorder (JFR). Events are declared by
+ * creating a {@link Type}, and are emitted around a section of code:
+ * <pre>
+ * FlightEvent event = MY_TYPE.begin();
+ * try
+ * {
+ *   ...
+ * }
+ * finally
+ * {
+ *   if (event != null)
+ *   {
+ *     FlightEvent.commit(event, value1, value2, ...);
+ *   }
+ * }
+ * </pre>
+ * Events are only created while a flight recording is running, for
+ * example when the virtual machine is started with
+ * {@code -XX:StartFlightRecording}. The rest of the time,
+ * {@link Type#begin()} returns {@code null} after reading a single flag.
+ * Callers check for {@code null} before calling
+ * {@link #commit(FlightEvent, Object...) commit()}, so that the values of
+ * the fields are not even computed (and boxed) when nothing is recorded.
+ * <p>
+ * The flight recorder is accessed by reflection, so that the program still
+ * compiles for, and runs on, a virtual machine that does not have it; no
+ * event is ever created in such a case. For the same reason, the events do
+ * not record a stack trace, which would only show the reflective calls.
+ * @author Sylvain Hallé
+ */
+public class FlightEvent
+{
+	/**
+	 * The category under which the events appear in the recordings
+	 */
+	/*@ non_null @*/ public static final String CATEGORY = "TeXtidote";
+
+	/**
+	 * Whether a flight recording is running
+	 */
+	protected static volatile boolean s_recording = false;
+
+	/**
+	 * Whether the flight recorder is available in this virtual machine
+	 */
+	protected static final boolean s_available;
+
+	/**
+	 * The constructor of {@code jdk.jfr.AnnotationElement}
+	 */
+	protected static Constructor<?> s_newAnnotation;
+
+	/**
+	 * The constructor of {@code jdk.jfr.ValueDescriptor}
+	 */
+	protected static Constructor<?> s_newValueDescriptor;
+
+	/**
+	 * The annotation classes {@code jdk.jfr.Name}, {@code jdk.jfr.Label},
+	 * {@code jdk.jfr.Description}, {@code jdk.jfr.Category} and
+	 * {@code jdk.jfr.StackTrace}
+	 */
+	protected static Class<?> s_name, s_label, s_description, s_category, s_stackTrace;
+
+	/**
+	 * The method {@code jdk.jfr.EventFactory.create}
+	 */
+	protected static Method s_createFactory;
+
+	/**
+	 * The method {@code jdk.jfr.EventFactory.newEvent}
+	 */
+	protected static Method s_newEvent;
+
+	/**
+	 * The methods of {@code jdk.jfr.Event}
+	 */
+	protected static Method s_begin, s_end, s_shouldCommit, s_set, s_commit;
+
+	/**
+	 * The methods giving the state of the recordings
+	 */
+	protected static Method s_getRecorder, s_getRecordings, s_getState;
+
+	static
+	{
+		boolean available = false;
+		try
+		{
+			Class<?> annotation = Class.forName("jdk.jfr.AnnotationElement");
+			s_newAnnotation = annotation.getConstructor(Class.class, Object.class);
+			s_newValueDescriptor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+			s_name = Class.forName("jdk.jfr.Name");
+			s_label = Class.forName("jdk.jfr.Label");
+			s_description = Class.forName("jdk.jfr.Description");
+			s_category = Class.forName("jdk.jfr.Category");
+			s_stackTrace = Class.forName("jdk.jfr.StackTrace");
+			Class<?> factory = Class.forName("jdk.jfr.EventFactory");
+			s_createFactory = factory.getMethod("create", List.class, List.class);
+			s_newEvent = factory.getMethod("newEvent");
+			Class<?> event = Class.forName("jdk.jfr.Event");
+			s_begin = event.getMethod("begin");
+			s_end = event.getMethod("end");
+			s_shouldCommit = event.getMethod("shouldCommit");
+			s_set = event.getMethod("set", int.class, Object.class);
+			s_commit = event.getMethod("commit");
+			Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+			s_getRecorder = recorder.getMethod("getFlightRecorder");
+			s_getRecordings = recorder.getMethod("getRecordings");
+			s_getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+			// Follow the recordings as they start and stop
+			Class<?> listener = Class.forName("jdk.jfr.FlightRecorderListener");
+			Object proxy = Proxy.newProxyInstance(FlightEvent.class.getClassLoader(), new Class<?>[] {listener}, new RecordingListener());
+			recorder.getMethod("addListener", listener).invoke(null, proxy);
+			if ((Boolean) recorder.getMethod("isInitialized").invoke(null))
+			{
+				// Asking for the recorder before it is initialized would start it
+				updateRecording();
+			}
+			available = true;
+		}
+		catch (Exception e)
+		{
+			// No flight recorder: events are never created
+		}
+		catch (LinkageError e)
+		{
+			// Same
+		}
+		s_available = available;
+	}
+
+	/**
+	 * The underlying JFR event
+	 */
+	/*@ non_null @*/ protected final Object m_event;
+
+	/**
+	 * Creates a new event
+	 * @param event The underlying JFR event
+	 */
+	protected FlightEvent(/*@ non_null @*/ Object event)
+	{
+		super();
+		m_event = event;
+	}
+
+	/**
+	 * Determines if the flight recorder is available in this virtual
+	 * machine
+	 * @return {@code true} if it is available, {@code false} otherwise
+	 */
+	public static boolean isAvailable()
+	{
+		return s_available;
+	}
+
+	/**
+	 * Determines if events are being recorded
+	 * @return {@code true} if a flight recording is running, {@code false}
+	 * otherwise
+	 */
+	public static boolean isRecording()
+	{
+		return s_recording;
+	}
+
+	/**
+	 * Ends an event and writes it to the running recordings
+	 * @param event The event returned by {@link Type#begin()}; may be
+	 * {@code null}, in which case nothing is done
+	 * @param values The values of the fields of the event, in the order
+	 * they were declared in its type
+	 */
+	public static void commit(/*@ null @*/ FlightEvent event, Object ... values)
+	{
+		if (event == null)
+		{
+			return;
+		}
+		try
+		{
+			s_end.invoke(event.m_event);
+			if (!(Boolean) s_shouldCommit.invoke(event.m_event))
+			{
+				return;
+			}
+			for (int i = 0; i < values.length; i++)
+			{
+				s_set.invoke(event.m_event, i, values[i]);
+			}
+			s_commit.invoke(event.m_event);
+		}
+		catch (Exception e)
+		{
+			// The event is lost; linting goes on
+		}
+	}
+
+	/**
+	 * Checks whether a recording is running, and updates the flag
+	 * accordingly
+	 */
+	protected static void updateRecording()
+	{
+		boolean recording = false;
+		try
+		{
+			Object recorder = s_getRecorder.invoke(null);
+			for (Object r : (List<?>) s_getRecordings.invoke(recorder))
+			{
+				if (s_getState.invoke(r).toString().equals("RUNNING"))
+				{
+					recording = true;
+					break;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			// Consider that nothing is recorded
+		}
+		s_recording = recording;
+	}
+
+	/**
+	 * Creates a JFR annotation
+	 * @param c The class of the annotation
+	 * @param value The value of the annotation
+	 * @return The annotation
+	 * @throws Exception If the annotation cannot be created
+	 */
+	protected static Object annotation(Class<?> c, Object value) throws Exception
+	{
+		return s_newAnnotation.newInstance(c, value);
+	}
+
+	/**
+	 * A type of event, with its fields. A type is declared once, and is
+	 * registered with the flight recorder the first time an event of this
+	 * type is recorded.
+	 */
+	public static class Type
+	{
+		/**
+		 * The name of the type
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The label of the type, as displayed by tools
+		 */
+		/*@ non_null @*/ protected final String m_label;
+
+		/**
+		 * The description of the type
+		 */
+		/*@ non_null @*/ protected final String m_description;
+
+		/**
+		 * The names of the fields
+		 */
+		/*@ non_null @*/ protected final List<String> m_fieldNames = new ArrayList<String>();
+
+		/**
+		 * The labels of the fields
+		 */
+		/*@ non_null @*/ protected final List<String> m_fieldLabels = new ArrayList<String>();
+
+		/**
+		 * The types of the fields
+		 */
+		/*@ non_null @*/ protected final List<Class<?>> m_fieldTypes = new ArrayList<Class<?>>();
+
+		/**
+		 * The JFR factory creating events of this type, or {@code null} if it
+		 * has not been created yet
+		 */
+		/*@ null @*/ protected volatile Object m_factory = null;
+
+		/**
+		 * Whether the factory could not be created
+		 */
+		protected volatile boolean m_failed = false;
+
+		/**
+		 * Declares a new type of event
+		 * @param name The name of the type, such as
+		 * {@code ca.uqac.lif.textidote.Rule}
+		 * @param label The label of the type, as displayed by tools
+		 * @param description The description of the type
+		 */
+		public Type(/*@ non_null @*/ String name, /*@ non_null @*/ String label, /*@ non_null @*/ String description)
+		{
+			super();
+			m_name = name;
+			m_label = label;
+			m_description = description;
+		}
+
+		/**
+		 * Adds a field to this type
+		 * @param name The name of the field
+		 * @param label The label of the field, as displayed by tools
+		 * @param type The type of the field; either {@code String.class} or
+		 * a primitive type
+		 * @return This type
+		 */
+		/*@ non_null @*/ public Type withField(/*@ non_null @*/ String name, /*@ non_null @*/ String label, /*@ non_null @*/ Class<?> type)
+		{
+			m_fieldNames.add(name);
+			m_fieldLabels.add(label);
+			m_fieldTypes.add(type);
+			return this;
+		}
+
+		/**
+		 * Gets the name of this type
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Starts an event of this type
+		 * @return The event, or {@code null} if no recording is running
+		 */
+		/*@ null @*/ public FlightEvent begin()
+		{
+			if (!s_recording || m_failed)
+			{
+				return null;
+			}
+			try
+			{
+				Object event = s_newEvent.invoke(getFactory());
+				s_begin.invoke(event);
+				return new FlightEvent(event);
+			}
+			catch (Exception e)
+			{
+				m_failed = true;
+				return null;
+			}
+		}
+
+		/**
+		 * Gets the JFR factory creating events of this type, creating it if
+		 * necessary
+		 * @return The factory
+		 * @throws Exception If the factory cannot be created
+		 */
+		/*@ non_null @*/ protected Object getFactory() throws Exception
+		{
+			Object factory = m_factory;
+			if (factory != null)
+			{
+				return factory;
+			}
+			synchronized (this)
+			{
+				if (m_factory == null)
+				{
+					List<Object> annotations = Arrays.asList(annotation(s_name, m_name), annotation(s_label, m_label), annotation(s_description, m_description), annotation(s_category, new String[] {CATEGORY}), annotation(s_stackTrace, false));
+					List<Object> fields = new ArrayList<Object>(m_fieldNames.size());
+					for (int i = 0; i < m_fieldNames.size(); i++)
+					{
+						List<Object> field_annotations = Arrays.asList(annotation(s_label, m_fieldLabels.get(i)));
+						fields.add(s_newValueDescriptor.newInstance(m_fieldTypes.get(i), m_fieldNames.get(i), field_annotations));
+					}
+					m_factory = s_createFactory.invoke(null, annotations, fields);
+				}
+				return m_factory;
+			}
+		}
+	}
+
+	/**
+	 * Updates the recording flag when a recording changes state. This class
+	 * implements {@code jdk.jfr.FlightRecorderListener} through a proxy.
+	 */
+	protected static class RecordingListener implements InvocationHandler
+	{
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args)
+		{
+			String name = method.getName();
+			if (name.equals("recordingStateChanged") || name.equals("recorderInitialized"))
+			{
+				updateRecording();
+				return null;
+			}
+			if (name.equals("equals"))
+			{
+				return proxy == args[0];
+			}
+			if (name.equals("hashCode"))
+			{
+				return System.identityHashCode(proxy);
+			}
+			if (name.equals("toString"))
+			{
+				return "RecordingListener";
+			}
+			return null;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+/**
+ * A character sequence that checks a {@link Deadline} as it is read.
+ * A {@link java.util.regex.Matcher} reads its input one character at a
+ * time; giving it such a sequence makes a runaway match throw a
+ * {@link Deadline.DeadlineExceededException} instead of running
+ * indefinitely. To keep the overhead low, the deadline is only checked
+ * every {@value #CHECK_INTERVAL} characters.
+ * <p>
+ * An instance of this class is meant to be read by a single thread.
+ * @author Sylvain Hallé
+ */
+public class InterruptibleCharSequence implements CharSequence
+{
+	/**
+	 * The number of characters read between two checks of the deadline
+	 */
+	public static final int CHECK_INTERVAL = 4096;
+
+	/**
+	 * The sequence to read from
+	 */
+	/*@ non_null @*/ protected final CharSequence m_inner;
+
+	/**
+	 * The deadline to check
+	 */
+	/*@ non_null @*/ protected final Deadline m_deadline;
+
+	/**
+	 * The number of characters read since the last check
+	 */
+	protected int m_reads = 0;
+
+	/**
+	 * Creates a new interruptible sequence
+	 * @param inner The sequence to read from
+	 * @param d The deadline to check
+	 */
+	public InterruptibleCharSequence(/*@ non_null @*/ CharSequence inner, /*@ non_null @*/ Deadline d)
+	{
+		super();
+		m_inner = inner;
+		m_deadline = d;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (++m_reads >= CHECK_INTERVAL)
+		{
+			m_reads = 0;
+			m_deadline.check();
+		}
+		return m_inner.charAt(index);
+	}
+
+	@Override
+	public int length()
+	{
+		return m_inner.length();
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return new InterruptibleCharSequence(m_inner.subSequence(start, end), m_deadline);
+	}
+
+	@Override
+	public String toString()
+	{
+		return m_inner.toString();
+	}
+}
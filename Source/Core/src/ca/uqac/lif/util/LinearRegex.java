@@ -0,0 +1,1477 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regular expression evaluated by simulating a non-deterministic automaton
+ * (a "Pike VM"). Contrary to {@link java.util.regex.Pattern}, which
+ * backtracks and can take exponential time on some inputs, the time taken
+ * to find a match is proportional to the length of the string times the
+ * size of the pattern.
+ * <p>
+ * For the patterns it accepts, the engine returns the same matches and
+ * capture groups as <tt>java.util.regex</tt>: threads are explored in the
+ * order a backtracking engine would try them, and the first thread to reach
+ * the end of the pattern wins. It supports literals, escapes, character
+ * classes, <code>.</code>, <code>^</code>, <code>$</code>, word
+ * boundaries, capturing and non-capturing groups, alternation, and greedy
+ * and reluctant quantifiers. Back references, lookaround, atomic groups,
+ * possessive quantifiers, flags, Unicode properties, class intersections
+ * and supplementary characters in the pattern are not supported. Neither
+ * are repetitions (other than <code>?</code>) of an expression that can
+ * match the empty string, such as <code>(a?)*</code>: a backtracking engine
+ * stops such a loop on an empty iteration, which an automaton cannot
+ * mimic. {@link RegexPattern#compile(String)} falls back to
+ * <tt>java.util.regex</tt> for all these patterns.
+ * <p>
+ * Like <tt>java.util.regex</tt>, the engine reads a surrogate pair as a
+ * single code point: <code>.</code> and negated classes consume both
+ * halves at once.
+ * @author Sylvain Hallé
+ */
+public class LinearRegex extends RegexPattern
+{
+	/**
+	 * The maximum number of instructions in a program; patterns with large
+	 * bounded repetitions are not worth expanding
+	 */
+	protected static final transient int MAX_INSTRUCTIONS = 5000;
+
+	// Instruction codes
+	protected static final transient int CHAR = 0;
+	protected static final transient int ANY = 1;
+	protected static final transient int CLASS = 2;
+	protected static final transient int SPLIT = 3;
+	protected static final transient int JMP = 4;
+	protected static final transient int SAVE = 5;
+	protected static final transient int ASSERT = 6;
+	protected static final transient int MATCH = 7;
+
+	// Assertion codes
+	protected static final transient int BEGIN = 0;
+	protected static final transient int END_LINE = 1;
+	protected static final transient int END = 2;
+	protected static final transient int WORD_BOUNDARY = 3;
+	protected static final transient int NOT_WORD_BOUNDARY = 4;
+
+	/**
+	 * The code of each instruction
+	 */
+	/*@ non_null @*/ protected final int[] m_ops;
+
+	/**
+	 * The first argument of each instruction
+	 */
+	/*@ non_null @*/ protected final int[] m_args1;
+
+	/**
+	 * The second argument of each instruction
+	 */
+	/*@ non_null @*/ protected final int[] m_args2;
+
+	/**
+	 * The character classes referred to by the instructions
+	 */
+	/*@ non_null @*/ protected final CharClass[] m_classes;
+
+	/**
+	 * The number of capture groups
+	 */
+	protected final int m_groupCount;
+
+	/**
+	 * A character that every match must start with, or -1 if there is none
+	 */
+	protected final int m_firstChar;
+
+	/**
+	 * Mask on the number of characters read by {@link #run run()} between
+	 * two checks of the current {@link Deadline}
+	 */
+	protected static final transient int CHECK_MASK = 0xFFF;
+
+	/**
+	 * Creates a new pattern
+	 * @param regex The regular expression
+	 * @throws UnsupportedPatternException If the expression uses constructs
+	 * that this engine does not support
+	 */
+	public LinearRegex(/*@ non_null @*/ String regex) throws UnsupportedPatternException
+	{
+		super(regex);
+		Parser parser = new Parser(regex);
+		Node root = parser.parseAlternation();
+		if (parser.m_pos < regex.length())
+		{
+			throw new UnsupportedPatternException();
+		}
+		Compiler c = new Compiler();
+		c.emit(SAVE, 0, 0);
+		root.compile(c);
+		c.emit(SAVE, 1, 0);
+		c.emit(MATCH, 0, 0);
+		m_ops = Arrays.copyOf(c.m_ops, c.m_size);
+		m_args1 = Arrays.copyOf(c.m_args1, c.m_size);
+		m_args2 = Arrays.copyOf(c.m_args2, c.m_size);
+		m_classes = c.m_classes.toArray(new CharClass[c.m_classes.size()]);
+		m_groupCount = parser.m_groupCount;
+		m_firstChar = m_ops[1] == CHAR ? m_args1[1] : -1;
+	}
+
+	@Override
+	public boolean isLinear()
+	{
+		return true;
+	}
+
+	@Override
+	/*@ non_null @*/ public RegexMatcher matcher(/*@ non_null @*/ CharSequence s)
+	{
+		return new LinearMatcher(s.toString());
+	}
+
+	/**
+	 * Runs the program on a string
+	 * @param text The string
+	 * @param from The position where the search starts
+	 * @param full Set to {@code true} to only accept a match of the whole
+	 * string
+	 * @param clist A list of threads to work with
+	 * @param nlist Another list of threads to work with
+	 * @param slist A list for the threads started in the middle of a
+	 * surrogate pair
+	 * @return The start and end position of the match and of each group, or
+	 * {@code null} if there is no match
+	 */
+	/*@ null @*/ protected int[] run(/*@ non_null @*/ String text, int from, boolean full, /*@ non_null @*/ ThreadList clist, /*@ non_null @*/ ThreadList nlist, /*@ non_null @*/ ThreadList slist)
+	{
+		int len = text.length();
+		clist.clear();
+		int[] matched = null;
+		int[] empty = new int[2 * (m_groupCount + 1)];
+		Arrays.fill(empty, -1);
+		// Whether the threads in clist have read a surrogate pair, and are
+		// already one position ahead
+		boolean carried = false;
+		for (int pos = from; ; pos++)
+		{
+			// The threads started on the second half of a surrogate pair are
+			// kept apart from those that read the whole pair, and come after
+			// them
+			ThreadList list = clist;
+			if (carried)
+			{
+				slist.clear();
+				list = slist;
+			}
+			if (matched == null && (!full || pos == from))
+			{
+				if (clist.m_size == 0 && m_firstChar >= 0 && !full)
+				{
+					// No thread is running: jump to the next possible start
+					int next = text.indexOf(m_firstChar, pos);
+					if (next < 0)
+					{
+						break;
+					}
+					pos = next;
+				}
+				addThread(list, 0, empty, text, pos);
+			}
+			if (clist.m_size == 0 && (matched != null || full))
+			{
+				break;
+			}
+			if (((pos - from) & CHECK_MASK) == CHECK_MASK)
+			{
+				Deadline.checkCurrent();
+			}
+			nlist.clear();
+			if (carried)
+			{
+				for (int i = 0; i < clist.m_size; i++)
+				{
+					nlist.m_marks[clist.m_pcs[i]] = nlist.m_stamp;
+					nlist.add(clist.m_pcs[i], clist.m_caps[i]);
+				}
+			}
+			int c = pos < len ? text.charAt(pos) : 0;
+			int width = 1;
+			if (Character.isHighSurrogate((char) c) && pos + 1 < len && Character.isLowSurrogate(text.charAt(pos + 1)))
+			{
+				c = Character.toCodePoint((char) c, text.charAt(pos + 1));
+				width = 2;
+			}
+			for (int i = 0; i < list.m_size; i++)
+			{
+				int pc = list.m_pcs[i];
+				int[] caps = list.m_caps[i];
+				boolean accept = false;
+				switch (m_ops[pc])
+				{
+				case MATCH:
+					if (full && pos != len)
+					{
+						break;
+					}
+					matched = caps;
+					// Cut off the threads of lower priority
+					i = list.m_size;
+					break;
+				case CHAR:
+					accept = pos < len && c == m_args1[pc];
+					break;
+				case ANY:
+					accept = pos < len && !isLineTerminator(c);
+					break;
+				case CLASS:
+					accept = pos < len && m_classes[m_args1[pc]].matches(c);
+					break;
+				default:
+					break;
+				}
+				if (accept)
+				{
+					addThread(nlist, pc + 1, caps, text, pos + width);
+				}
+			}
+			ThreadList tmp = clist;
+			clist = nlist;
+			nlist = tmp;
+			carried = width == 2 && clist.m_size > 0;
+			if (pos >= len)
+			{
+				break;
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * Adds a thread to a list, following the instructions that do not
+	 * consume a character
+	 * @param list The list
+	 * @param pc0 The instruction of the thread
+	 * @param caps0 The capture positions of the thread
+	 * @param text The string
+	 * @param pos The current position in the string
+	 */
+	protected void addThread(/*@ non_null @*/ ThreadList list, int pc0, /*@ non_null @*/ int[] caps0, /*@ non_null @*/ String text, int pos)
+	{
+		// Each instruction is expanded at most once and pushes at most two
+		// others, so the stack never holds more than twice the program
+		int[] pc_stack = list.m_pcStack;
+		int[][] caps_stack = list.m_capsStack;
+		int top = 0;
+		pc_stack[top] = pc0;
+		caps_stack[top++] = caps0;
+		while (top > 0)
+		{
+			int pc = pc_stack[--top];
+			int[] caps = caps_stack[top];
+			if (list.m_marks[pc] == list.m_stamp)
+			{
+				continue;
+			}
+			list.m_marks[pc] = list.m_stamp;
+			switch (m_ops[pc])
+			{
+			case JMP:
+				pc_stack[top] = m_args1[pc];
+				caps_stack[top++] = caps;
+				break;
+			case SPLIT:
+				// The first branch is pushed last, so that it is explored first
+				pc_stack[top] = m_args2[pc];
+				caps_stack[top++] = caps;
+				pc_stack[top] = m_args1[pc];
+				caps_stack[top++] = caps;
+				break;
+			case SAVE:
+				int[] new_caps = caps.clone();
+				new_caps[m_args1[pc]] = pos;
+				pc_stack[top] = pc + 1;
+				caps_stack[top++] = new_caps;
+				break;
+			case ASSERT:
+				if (checkAssertion(m_args1[pc], text, pos))
+				{
+					pc_stack[top] = pc + 1;
+					caps_stack[top++] = caps;
+				}
+				break;
+			default:
+				list.add(pc, caps);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Checks a zero-width assertion, with the same semantics as
+	 * <tt>java.util.regex</tt>
+	 * @param kind The assertion
+	 * @param text The string
+	 * @param pos The position in the string
+	 * @return {@code true} if the assertion holds
+	 */
+	protected static boolean checkAssertion(int kind, /*@ non_null @*/ String text, int pos)
+	{
+		int len = text.length();
+		switch (kind)
+		{
+		case BEGIN:
+			return pos == 0;
+		case END:
+			return pos == len;
+		case END_LINE:
+			if (pos == len)
+			{
+				return true;
+			}
+			if (pos == len - 2)
+			{
+				return text.charAt(pos) == '\r' && text.charAt(pos + 1) == '\n';
+			}
+			if (pos == len - 1)
+			{
+				char c = text.charAt(pos);
+				if (c == '\n')
+				{
+					// No match between \r and \n
+					return pos == 0 || text.charAt(pos - 1) != '\r';
+				}
+				return isLineTerminator(c);
+			}
+			return false;
+		case WORD_BOUNDARY:
+		case NOT_WORD_BOUNDARY:
+			boolean left = pos > 0 && isWordAt(text, Character.codePointBefore(text, pos), pos - 1);
+			boolean right = pos < len && isWordAt(text, Character.codePointAt(text, pos), pos);
+			return (left != right) == (kind == WORD_BOUNDARY);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Determines if a character is a word character for the purpose of word
+	 * boundaries, like <tt>java.util.regex</tt> does
+	 * @param text The string
+	 * @param c The code point of the character
+	 * @param pos The position of the character, or of its last half if it
+	 * is a surrogate pair
+	 * @return {@code true} if the character is a word character
+	 */
+	protected static boolean isWordAt(/*@ non_null @*/ String text, int c, int pos)
+	{
+		if (c == '_' || Character.isLetterOrDigit(c))
+		{
+			return true;
+		}
+		if (Character.getType(c) != Character.NON_SPACING_MARK)
+		{
+			return false;
+		}
+		// A combining mark counts if it follows a letter or digit
+		for (int x = pos; x >= 0; x--)
+		{
+			int b = text.codePointAt(x);
+			if (Character.isLetterOrDigit(b))
+			{
+				return true;
+			}
+			if (Character.getType(b) != Character.NON_SPACING_MARK)
+			{
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a character is a line terminator
+	 * @param c The code point of the character
+	 * @return {@code true} if the character is a line terminator
+	 */
+	protected static boolean isLineTerminator(int c)
+	{
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * Exception thrown when a pattern uses constructs that are not supported
+	 * by this engine
+	 */
+	public static class UnsupportedPatternException extends Exception
+	{
+		/**
+		 * Dummy UID
+		 */
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * A list of threads, in decreasing order of priority
+	 */
+	protected static class ThreadList
+	{
+		/**
+		 * The instruction of each thread
+		 */
+		/*@ non_null @*/ protected final int[] m_pcs;
+
+		/**
+		 * The capture positions of each thread
+		 */
+		/*@ non_null @*/ protected final int[][] m_caps;
+
+		/**
+		 * The number of threads
+		 */
+		protected int m_size = 0;
+
+		/**
+		 * For each instruction, the stamp of the last list it was added to
+		 */
+		/*@ non_null @*/ protected final int[] m_marks;
+
+		/**
+		 * The stamp of the current contents of the list
+		 */
+		protected int m_stamp = 1;
+
+		/**
+		 * The instructions left to expand when adding a thread
+		 */
+		/*@ non_null @*/ protected final int[] m_pcStack;
+
+		/**
+		 * The capture positions of the instructions left to expand
+		 */
+		/*@ non_null @*/ protected final int[][] m_capsStack;
+
+		/**
+		 * Creates a new list
+		 * @param size The number of instructions in the program
+		 */
+		public ThreadList(int size)
+		{
+			super();
+			m_pcs = new int[size];
+			m_caps = new int[size][];
+			m_marks = new int[size];
+			m_pcStack = new int[2 * size + 1];
+			m_capsStack = new int[2 * size + 1][];
+		}
+
+		/**
+		 * Adds a thread at the end of the list
+		 * @param pc The instruction of the thread
+		 * @param caps The capture positions of the thread
+		 */
+		public void add(int pc, /*@ non_null @*/ int[] caps)
+		{
+			m_pcs[m_size] = pc;
+			m_caps[m_size] = caps;
+			m_size++;
+		}
+
+		/**
+		 * Empties the list
+		 */
+		public void clear()
+		{
+			m_size = 0;
+			m_stamp++;
+		}
+	}
+
+	/**
+	 * Finds the matches of a linear pattern in a string
+	 */
+	protected class LinearMatcher implements RegexMatcher
+	{
+		/**
+		 * The string
+		 */
+		/*@ non_null @*/ protected final String m_text;
+
+		/**
+		 * The positions of the last match and of its groups, or {@code null}
+		 * if the last search failed
+		 */
+		/*@ null @*/ protected int[] m_match = null;
+
+		/**
+		 * The position where {@link #find()} starts its search
+		 */
+		protected int m_next = 0;
+
+		/**
+		 * A list of threads reused by all the searches
+		 */
+		/*@ non_null @*/ protected final ThreadList m_clist = new ThreadList(m_ops.length);
+
+		/**
+		 * Another list of threads reused by all the searches
+		 */
+		/*@ non_null @*/ protected final ThreadList m_nlist = new ThreadList(m_ops.length);
+
+		/**
+		 * A list for the threads started in the middle of a surrogate pair
+		 */
+		/*@ non_null @*/ protected final ThreadList m_slist = new ThreadList(m_ops.length);
+
+		/**
+		 * Creates a new matcher
+		 * @param text The string
+		 */
+		public LinearMatcher(/*@ non_null @*/ String text)
+		{
+			super();
+			m_text = text;
+		}
+
+		@Override
+		public boolean find(int from)
+		{
+			if (from < 0 || from > m_text.length())
+			{
+				throw new IndexOutOfBoundsException("Illegal start index");
+			}
+			m_match = run(m_text, from, false, m_clist, m_nlist, m_slist);
+			if (m_match == null)
+			{
+				m_next = m_text.length() + 1;
+				return false;
+			}
+			// After an empty match, the next search starts one character further
+			m_next = m_match[1] == m_match[0] ? m_match[1] + 1 : m_match[1];
+			return true;
+		}
+
+		@Override
+		public boolean find()
+		{
+			if (m_next > m_text.length())
+			{
+				m_match = null;
+				return false;
+			}
+			return find(m_next);
+		}
+
+		@Override
+		public boolean matches()
+		{
+			m_match = run(m_text, 0, true, m_clist, m_nlist, m_slist);
+			return m_match != null;
+		}
+
+		@Override
+		public int start()
+		{
+			return checkMatch()[0];
+		}
+
+		@Override
+		public int end()
+		{
+			return checkMatch()[1];
+		}
+
+		@Override
+		public String group(int group)
+		{
+			int[] match = checkMatch();
+			if (group < 0 || group > m_groupCount)
+			{
+				throw new IndexOutOfBoundsException("No group " + group);
+			}
+			if (match[2 * group] < 0 || match[2 * group + 1] < 0)
+			{
+				return null;
+			}
+			return m_text.substring(match[2 * group], match[2 * group + 1]);
+		}
+
+		@Override
+		public String group()
+		{
+			return group(0);
+		}
+
+		@Override
+		public int groupCount()
+		{
+			return m_groupCount;
+		}
+
+		/**
+		 * Gets the positions of the last match
+		 * @return The positions
+		 * @throws IllegalStateException If there is no last match
+		 */
+		/*@ non_null @*/ protected int[] checkMatch() throws IllegalStateException
+		{
+			if (m_match == null)
+			{
+				throw new IllegalStateException("No match available");
+			}
+			return m_match;
+		}
+	}
+
+	/**
+	 * A set of characters
+	 */
+	protected static class CharClass
+	{
+		/**
+		 * Whether the set is the complement of its items
+		 */
+		protected final boolean m_negated;
+
+		/**
+		 * The lower bound of each range of characters
+		 */
+		/*@ non_null @*/ protected final List<Character> m_from = new ArrayList<Character>();
+
+		/**
+		 * The upper bound of each range of characters
+		 */
+		/*@ non_null @*/ protected final List<Character> m_to = new ArrayList<Character>();
+
+		/**
+		 * The nested sets of characters
+		 */
+		/*@ non_null @*/ protected final List<CharClass> m_nested = new ArrayList<CharClass>();
+
+		/**
+		 * Creates a new set of characters
+		 * @param negated Whether the set is the complement of its items
+		 */
+		public CharClass(boolean negated)
+		{
+			super();
+			m_negated = negated;
+		}
+
+		/**
+		 * Creates one of the predefined character classes
+		 * @param c The letter of the class: <tt>w</tt>, <tt>s</tt>, <tt>d</tt>
+		 * or their upper case versions
+		 * @return The class
+		 */
+		/*@ non_null @*/ public static CharClass predefined(char c)
+		{
+			CharClass cc = new CharClass(Character.isUpperCase(c));
+			switch (Character.toLowerCase(c))
+			{
+			case 'w':
+				cc.addRange('a', 'z');
+				cc.addRange('A', 'Z');
+				cc.addRange('0', '9');
+				cc.addRange('_', '_');
+				break;
+			case 'd':
+				cc.addRange('0', '9');
+				break;
+			default:
+				cc.addRange(' ', ' ');
+				cc.addRange('\t', '\r');
+				break;
+			}
+			return cc;
+		}
+
+		/**
+		 * Adds a range of characters to the set
+		 * @param from The first character
+		 * @param to The last character
+		 */
+		public void addRange(char from, char to)
+		{
+			m_from.add(from);
+			m_to.add(to);
+		}
+
+		/**
+		 * Determines if a character belongs to the set
+		 * @param c The code point of the character
+		 * @return {@code true} if it belongs to the set
+		 */
+		public boolean matches(int c)
+		{
+			boolean in = false;
+			for (int i = 0; i < m_from.size() && !in; i++)
+			{
+				in = c >= m_from.get(i) && c <= m_to.get(i);
+			}
+			for (int i = 0; i < m_nested.size() && !in; i++)
+			{
+				in = m_nested.get(i).matches(c);
+			}
+			return in != m_negated;
+		}
+	}
+
+	/**
+	 * Builds the instructions of a program
+	 */
+	protected static class Compiler
+	{
+		/*@ non_null @*/ protected int[] m_ops = new int[16];
+
+		/*@ non_null @*/ protected int[] m_args1 = new int[16];
+
+		/*@ non_null @*/ protected int[] m_args2 = new int[16];
+
+		/*@ non_null @*/ protected final List<CharClass> m_classes = new ArrayList<CharClass>();
+
+		protected int m_size = 0;
+
+		/**
+		 * Adds an instruction at the end of the program
+		 * @param op The instruction code
+		 * @param arg1 The first argument
+		 * @param arg2 The second argument
+		 * @return The position of the instruction
+		 * @throws UnsupportedPatternException If the program becomes too large
+		 */
+		public int emit(int op, int arg1, int arg2) throws UnsupportedPatternException
+		{
+			if (m_size >= MAX_INSTRUCTIONS)
+			{
+				throw new UnsupportedPatternException();
+			}
+			if (m_size == m_ops.length)
+			{
+				m_ops = Arrays.copyOf(m_ops, m_size * 2);
+				m_args1 = Arrays.copyOf(m_args1, m_size * 2);
+				m_args2 = Arrays.copyOf(m_args2, m_size * 2);
+			}
+			m_ops[m_size] = op;
+			m_args1[m_size] = arg1;
+			m_args2[m_size] = arg2;
+			return m_size++;
+		}
+	}
+
+	/**
+	 * A node of the syntax tree of a pattern
+	 */
+	protected abstract static class Node
+	{
+		/**
+		 * Adds the instructions corresponding to this node to a program
+		 * @param c The program
+		 * @throws UnsupportedPatternException If the program becomes too large
+		 */
+		public abstract void compile(/*@ non_null @*/ Compiler c) throws UnsupportedPatternException;
+
+		/**
+		 * Determines if this node can match the empty string
+		 * @return {@code true} if it can
+		 */
+		public abstract boolean isNullable();
+	}
+
+	/**
+	 * A node that matches a single character
+	 */
+	protected static class CharNode extends Node
+	{
+		protected final int m_op;
+
+		protected final int m_arg;
+
+		/*@ null @*/ protected final CharClass m_class;
+
+		public CharNode(int op, int arg, /*@ null @*/ CharClass cc)
+		{
+			super();
+			m_op = op;
+			m_arg = arg;
+			m_class = cc;
+		}
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			if (m_class != null)
+			{
+				c.emit(CLASS, c.m_classes.size(), 0);
+				c.m_classes.add(m_class);
+			}
+			else
+			{
+				c.emit(m_op, m_arg, 0);
+			}
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * A zero-width assertion
+	 */
+	protected static class AssertNode extends Node
+	{
+		protected final int m_kind;
+
+		public AssertNode(int kind)
+		{
+			super();
+			m_kind = kind;
+		}
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			c.emit(ASSERT, m_kind, 0);
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * A sequence of nodes
+	 */
+	protected static class ConcatNode extends Node
+	{
+		/*@ non_null @*/ protected final List<Node> m_children = new ArrayList<Node>();
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			for (Node n : m_children)
+			{
+				n.compile(c);
+			}
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			for (Node n : m_children)
+			{
+				if (!n.isNullable())
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A choice between nodes, tried in order
+	 */
+	protected static class AltNode extends Node
+	{
+		/*@ non_null @*/ protected final List<Node> m_children = new ArrayList<Node>();
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			List<Integer> jumps = new ArrayList<Integer>();
+			for (int i = 0; i < m_children.size(); i++)
+			{
+				if (i < m_children.size() - 1)
+				{
+					int split = c.emit(SPLIT, 0, 0);
+					c.m_args1[split] = c.m_size;
+					m_children.get(i).compile(c);
+					jumps.add(c.emit(JMP, 0, 0));
+					c.m_args2[split] = c.m_size;
+				}
+				else
+				{
+					m_children.get(i).compile(c);
+				}
+			}
+			for (int j : jumps)
+			{
+				c.m_args1[j] = c.m_size;
+			}
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			for (Node n : m_children)
+			{
+				if (n.isNullable())
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A capture group
+	 */
+	protected static class GroupNode extends Node
+	{
+		protected final int m_index;
+
+		/*@ non_null @*/ protected final Node m_child;
+
+		public GroupNode(int index, /*@ non_null @*/ Node child)
+		{
+			super();
+			m_index = index;
+			m_child = child;
+		}
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			c.emit(SAVE, 2 * m_index, 0);
+			m_child.compile(c);
+			c.emit(SAVE, 2 * m_index + 1, 0);
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			return m_child.isNullable();
+		}
+	}
+
+	/**
+	 * A repetition of a node
+	 */
+	protected static class RepeatNode extends Node
+	{
+		/*@ non_null @*/ protected final Node m_child;
+
+		protected final int m_min;
+
+		/**
+		 * The maximum number of repetitions, or -1 if unbounded
+		 */
+		protected final int m_max;
+
+		protected final boolean m_greedy;
+
+		public RepeatNode(/*@ non_null @*/ Node child, int min, int max, boolean greedy)
+		{
+			super();
+			m_child = child;
+			m_min = min;
+			m_max = max;
+			m_greedy = greedy;
+		}
+
+		@Override
+		public void compile(Compiler c) throws UnsupportedPatternException
+		{
+			for (int i = 0; i < m_min; i++)
+			{
+				m_child.compile(c);
+			}
+			if (m_max < 0)
+			{
+				int split = c.emit(SPLIT, 0, 0);
+				m_child.compile(c);
+				c.emit(JMP, split, 0);
+				setBranches(c, split, split + 1, c.m_size);
+				return;
+			}
+			List<Integer> splits = new ArrayList<Integer>();
+			for (int i = m_min; i < m_max; i++)
+			{
+				splits.add(c.emit(SPLIT, 0, 0));
+				m_child.compile(c);
+			}
+			for (int split : splits)
+			{
+				setBranches(c, split, split + 1, c.m_size);
+			}
+		}
+
+		@Override
+		public boolean isNullable()
+		{
+			return m_min == 0 || m_child.isNullable();
+		}
+
+		/**
+		 * Sets the targets of a split instruction, in the order given by the
+		 * greediness of the repetition
+		 * @param c The program
+		 * @param split The position of the instruction
+		 * @param body The target that repeats the node
+		 * @param exit The target that leaves the repetition
+		 */
+		protected void setBranches(/*@ non_null @*/ Compiler c, int split, int body, int exit)
+		{
+			c.m_args1[split] = m_greedy ? body : exit;
+			c.m_args2[split] = m_greedy ? exit : body;
+		}
+	}
+
+	/**
+	 * Builds the syntax tree of a pattern
+	 */
+	protected static class Parser
+	{
+		/*@ non_null @*/ protected final String m_regex;
+
+		protected int m_pos = 0;
+
+		protected int m_groupCount = 0;
+
+		public Parser(/*@ non_null @*/ String regex)
+		{
+			super();
+			m_regex = regex;
+		}
+
+		/*@ non_null @*/ public Node parseAlternation() throws UnsupportedPatternException
+		{
+			Node first = parseSequence();
+			if (m_pos >= m_regex.length() || m_regex.charAt(m_pos) != '|')
+			{
+				return first;
+			}
+			AltNode alt = new AltNode();
+			alt.m_children.add(first);
+			while (m_pos < m_regex.length() && m_regex.charAt(m_pos) == '|')
+			{
+				m_pos++;
+				alt.m_children.add(parseSequence());
+			}
+			return alt;
+		}
+
+		/*@ non_null @*/ protected Node parseSequence() throws UnsupportedPatternException
+		{
+			ConcatNode seq = new ConcatNode();
+			while (m_pos < m_regex.length())
+			{
+				char c = m_regex.charAt(m_pos);
+				if (c == '|' || c == ')')
+				{
+					break;
+				}
+				if (m_regex.startsWith("\\Q", m_pos))
+				{
+					// Quoted sequence: every character is a literal
+					int end = m_regex.indexOf("\\E", m_pos + 2);
+					String quoted = m_regex.substring(m_pos + 2, end < 0 ? m_regex.length() : end);
+					m_pos = end < 0 ? m_regex.length() : end + 2;
+					for (int i = 0; i < quoted.length(); i++)
+					{
+						seq.m_children.add(new CharNode(CHAR, checkLiteral(quoted.charAt(i)), null));
+					}
+					if (!quoted.isEmpty())
+					{
+						// A quantifier applies to the last quoted character
+						Node last = seq.m_children.remove(seq.m_children.size() - 1);
+						seq.m_children.add(parseQuantifier(last));
+					}
+					continue;
+				}
+				seq.m_children.add(parseQuantifier(parseAtom()));
+			}
+			return seq.m_children.size() == 1 ? seq.m_children.get(0) : seq;
+		}
+
+		/*@ non_null @*/ protected Node parseQuantifier(/*@ non_null @*/ Node atom) throws UnsupportedPatternException
+		{
+			if (m_pos >= m_regex.length())
+			{
+				return atom;
+			}
+			char c = m_regex.charAt(m_pos);
+			int min, max;
+			if (c == '*')
+			{
+				min = 0;
+				max = -1;
+				m_pos++;
+			}
+			else if (c == '+')
+			{
+				min = 1;
+				max = -1;
+				m_pos++;
+			}
+			else if (c == '?')
+			{
+				min = 0;
+				max = 1;
+				m_pos++;
+			}
+			else if (c == '{')
+			{
+				int end = m_regex.indexOf('}', m_pos);
+				if (end < 0)
+				{
+					throw new UnsupportedPatternException();
+				}
+				String[] bounds = m_regex.substring(m_pos + 1, end).split(",", -1);
+				try
+				{
+					min = Integer.parseInt(bounds[0]);
+					if (bounds.length == 1)
+					{
+						max = min;
+					}
+					else if (bounds.length == 2)
+					{
+						max = bounds[1].isEmpty() ? -1 : Integer.parseInt(bounds[1]);
+					}
+					else
+					{
+						throw new UnsupportedPatternException();
+					}
+				}
+				catch (NumberFormatException e)
+				{
+					throw new UnsupportedPatternException();
+				}
+				if (min > MAX_INSTRUCTIONS || max > MAX_INSTRUCTIONS)
+				{
+					throw new UnsupportedPatternException();
+				}
+				m_pos = end + 1;
+			}
+			else
+			{
+				return atom;
+			}
+			boolean greedy = true;
+			if (m_pos < m_regex.length())
+			{
+				char suffix = m_regex.charAt(m_pos);
+				if (suffix == '?')
+				{
+					greedy = false;
+					m_pos++;
+				}
+				else if (suffix == '+')
+				{
+					// Possessive quantifier
+					throw new UnsupportedPatternException();
+				}
+			}
+			if (max != 0 && max != 1 && atom.isNullable())
+			{
+				// java.util.regex ends the loop on an empty iteration
+				throw new UnsupportedPatternException();
+			}
+			return new RepeatNode(atom, min, max, greedy);
+		}
+
+		/*@ non_null @*/ protected Node parseAtom() throws UnsupportedPatternException
+		{
+			char c = m_regex.charAt(m_pos++);
+			switch (c)
+			{
+			case '(':
+				return parseGroup();
+			case '[':
+				return new CharNode(CLASS, 0, parseClass());
+			case '.':
+				return new CharNode(ANY, 0, null);
+			case '^':
+				return new AssertNode(BEGIN);
+			case '$':
+				return new AssertNode(END_LINE);
+			case '\\':
+				return parseEscape();
+			case '*':
+			case '+':
+			case '?':
+			case '{':
+				throw new UnsupportedPatternException();
+			default:
+				return new CharNode(CHAR, checkLiteral(c), null);
+			}
+		}
+
+		/*@ non_null @*/ protected Node parseGroup() throws UnsupportedPatternException
+		{
+			int index = -1;
+			if (m_regex.startsWith("?:", m_pos))
+			{
+				m_pos += 2;
+			}
+			else if (m_regex.startsWith("?<", m_pos) && m_pos + 2 < m_regex.length() && Character.isLetter(m_regex.charAt(m_pos + 2)))
+			{
+				// Named group: numbered like the others
+				m_pos = m_regex.indexOf('>', m_pos) + 1;
+				index = ++m_groupCount;
+			}
+			else if (m_regex.startsWith("?", m_pos))
+			{
+				// Lookaround, atomic group or flags
+				throw new UnsupportedPatternException();
+			}
+			else
+			{
+				index = ++m_groupCount;
+			}
+			Node child = parseAlternation();
+			if (m_pos >= m_regex.length() || m_regex.charAt(m_pos) != ')')
+			{
+				throw new UnsupportedPatternException();
+			}
+			m_pos++;
+			return index < 0 ? child : new GroupNode(index, child);
+		}
+
+		/*@ non_null @*/ protected Node parseEscape() throws UnsupportedPatternException
+		{
+			if (m_pos >= m_regex.length())
+			{
+				throw new UnsupportedPatternException();
+			}
+			char c = m_regex.charAt(m_pos);
+			switch (c)
+			{
+			case 'w':
+			case 'W':
+			case 's':
+			case 'S':
+			case 'd':
+			case 'D':
+				m_pos++;
+				return new CharNode(CLASS, 0, CharClass.predefined(c));
+			case 'b':
+				m_pos++;
+				return new AssertNode(WORD_BOUNDARY);
+			case 'B':
+				m_pos++;
+				return new AssertNode(NOT_WORD_BOUNDARY);
+			case 'A':
+				m_pos++;
+				return new AssertNode(BEGIN);
+			case 'z':
+				m_pos++;
+				return new AssertNode(END);
+			case 'Z':
+				m_pos++;
+				return new AssertNode(END_LINE);
+			default:
+				return new CharNode(CHAR, checkLiteral(parseEscapedChar()), null);
+			}
+		}
+
+		/**
+		 * Parses an escape sequence that stands for a single character; the
+		 * backslash has already been read
+		 * @return The character
+		 * @throws UnsupportedPatternException If the escape sequence does
+		 * not stand for a single character
+		 */
+		protected char parseEscapedChar() throws UnsupportedPatternException
+		{
+			char c = m_regex.charAt(m_pos++);
+			switch (c)
+			{
+			case 't':
+				return '\t';
+			case 'n':
+				return '\n';
+			case 'r':
+				return '\r';
+			case 'f':
+				return '\f';
+			case 'a':
+				return '\u0007';
+			case 'e':
+				return '\u001B';
+			case 'c':
+				if (m_pos >= m_regex.length())
+				{
+					throw new UnsupportedPatternException();
+				}
+				return (char) (m_regex.charAt(m_pos++) ^ 64);
+			case 'x':
+				return (char) parseHex(2);
+			case 'u':
+				return (char) parseHex(4);
+			case '0':
+				int value = 0, digits = 0;
+				int max_digits = m_pos < m_regex.length() && m_regex.charAt(m_pos) <= '3' ? 3 : 2;
+				while (digits < max_digits && m_pos < m_regex.length() && m_regex.charAt(m_pos) >= '0' && m_regex.charAt(m_pos) <= '7')
+				{
+					value = value * 8 + (m_regex.charAt(m_pos++) - '0');
+					digits++;
+				}
+				if (digits == 0)
+				{
+					throw new UnsupportedPatternException();
+				}
+				return (char) value;
+			default:
+				if (Character.isLetterOrDigit(c))
+				{
+					// Back reference, Unicode property, etc.
+					throw new UnsupportedPatternException();
+				}
+				return c;
+			}
+		}
+
+		/**
+		 * Checks that a character of the pattern is not half of a surrogate
+		 * pair; <tt>java.util.regex</tt> reads such pairs as a single code
+		 * point, which this engine does not support in patterns
+		 * @param c The character
+		 * @return The character
+		 * @throws UnsupportedPatternException If the character is a surrogate
+		 */
+		protected char checkLiteral(char c) throws UnsupportedPatternException
+		{
+			if (Character.isSurrogate(c))
+			{
+				throw new UnsupportedPatternException();
+			}
+			return c;
+		}
+
+		/**
+		 * Parses a hexadecimal number of fixed length
+		 * @param length The number of digits
+		 * @return The number
+		 * @throws UnsupportedPatternException If the number is not valid
+		 */
+		protected int parseHex(int length) throws UnsupportedPatternException
+		{
+			if (m_pos + length > m_regex.length())
+			{
+				throw new UnsupportedPatternException();
+			}
+			try
+			{
+				int value = Integer.parseInt(m_regex.substring(m_pos, m_pos + length), 16);
+				m_pos += length;
+				return value;
+			}
+			catch (NumberFormatException e)
+			{
+				throw new UnsupportedPatternException();
+			}
+		}
+
+		/**
+		 * Parses a character class; the opening bracket has already been read
+		 * @return The class
+		 * @throws UnsupportedPatternException If the class uses nested
+		 * classes, intersections or properties
+		 */
+		/*@ non_null @*/ protected CharClass parseClass() throws UnsupportedPatternException
+		{
+			boolean negated = false;
+			if (m_regex.startsWith("^", m_pos))
+			{
+				negated = true;
+				m_pos++;
+			}
+			CharClass cc = new CharClass(negated);
+			boolean first = true;
+			while (true)
+			{
+				if (m_pos >= m_regex.length())
+				{
+					throw new UnsupportedPatternException();
+				}
+				char c = m_regex.charAt(m_pos);
+				if (c == ']' && !first)
+				{
+					m_pos++;
+					return cc;
+				}
+				first = false;
+				if (c == '[' || c == ']' || m_regex.startsWith("&&", m_pos))
+				{
+					throw new UnsupportedPatternException();
+				}
+				char from;
+				m_pos++;
+				if (c == '\\')
+				{
+					if (m_pos >= m_regex.length())
+					{
+						throw new UnsupportedPatternException();
+					}
+					char e = m_regex.charAt(m_pos);
+					if ("wWsSdD".indexOf(e) >= 0)
+					{
+						m_pos++;
+						cc.m_nested.add(CharClass.predefined(e));
+						continue;
+					}
+					if (e == 'Q')
+					{
+						throw new UnsupportedPatternException();
+					}
+					from = parseEscapedChar();
+				}
+				else
+				{
+					from = c;
+				}
+				char to = from;
+				if (m_pos + 1 < m_regex.length() && m_regex.charAt(m_pos) == '-' && m_regex.charAt(m_pos + 1) != ']')
+				{
+					m_pos++;
+					char d = m_regex.charAt(m_pos++);
+					if (d == '[')
+					{
+						throw new UnsupportedPatternException();
+					}
+					if (d == '\\')
+					{
+						if (m_pos < m_regex.length() && "wWsSdDQ".indexOf(m_regex.charAt(m_pos)) >= 0)
+						{
+							throw new UnsupportedPatternException();
+						}
+						to = parseEscapedChar();
+					}
+					else
+					{
+						to = d;
+					}
+				}
+				cc.addRange(checkLiteral(from), checkLiteral(to));
+			}
+		}
+	}
+}
@@ -0,0 +1,549 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
+
+/**
+ * A set of named metrics describing the activity of a long-running
+ * process: counters, gauges and histograms. Each metric can have labels,
+ * given as name/value pairs; a metric is created the first time it is
+ * asked for with a given name and labels, and is then shared:
+ * <pre>
+ * MetricRegistry.getDefault().counter("documents_total", "Documents linted").increment();
+ * MetricRegistry.getDefault().histogram("rule_duration_seconds", "Time spent on each rule", "rule", name).observeNanos(duration);
+ * </pre>
+ * The registry can be printed in the text format read by Prometheus, or
+ * converted into a JSON element. Updating a metric is lock-free, so that
+ * metrics can be kept in all the threads of a process at all times.
+ * @author Sylvain Hallé
+ */
+public class MetricRegistry
+{
+	/**
+	 * The upper bounds of the buckets of histograms, in seconds
+	 */
+	/*@ non_null @*/ public static final double[] DEFAULT_BUCKETS = {0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60};
+
+	/**
+	 * The registry shared by the whole process
+	 */
+	/*@ non_null @*/ protected static final MetricRegistry s_default = new MetricRegistry();
+
+	/**
+	 * The families of metrics, sorted by name
+	 */
+	/*@ non_null @*/ protected final Map<String,Family> m_families = new ConcurrentSkipListMap<String,Family>();
+
+	/**
+	 * Gets the registry shared by the whole process
+	 * @return The registry
+	 */
+	/*@ non_null @*/ public static MetricRegistry getDefault()
+	{
+		return s_default;
+	}
+
+	/**
+	 * Gets a counter, creating it if necessary
+	 * @param name The name of the counter
+	 * @param help A description of the counter
+	 * @param labels The labels of the counter, as name/value pairs
+	 * @return The counter
+	 */
+	/*@ non_null @*/ public Counter counter(/*@ non_null @*/ String name, /*@ non_null @*/ String help, /*@ non_null @*/ String ... labels)
+	{
+		Family f = getFamily(name, help, Family.COUNTER);
+		String key = formatLabels(labels);
+		Object m = f.m_metrics.get(key);
+		if (m == null)
+		{
+			Object new_m = new Counter();
+			m = ((ConcurrentHashMap<String,Object>) f.m_metrics).putIfAbsent(key, new_m);
+			if (m == null)
+			{
+				m = new_m;
+			}
+		}
+		return (Counter) m;
+	}
+
+	/**
+	 * Gets a histogram with the {@link #DEFAULT_BUCKETS default buckets},
+	 * creating it if necessary
+	 * @param name The name of the histogram
+	 * @param help A description of the histogram
+	 * @param labels The labels of the histogram, as name/value pairs
+	 * @return The histogram
+	 */
+	/*@ non_null @*/ public Histogram histogram(/*@ non_null @*/ String name, /*@ non_null @*/ String help, /*@ non_null @*/ String ... labels)
+	{
+		Family f = getFamily(name, help, Family.HISTOGRAM);
+		String key = formatLabels(labels);
+		Object m = f.m_metrics.get(key);
+		if (m == null)
+		{
+			Object new_m = new Histogram(DEFAULT_BUCKETS);
+			m = ((ConcurrentHashMap<String,Object>) f.m_metrics).putIfAbsent(key, new_m);
+			if (m == null)
+			{
+				m = new_m;
+			}
+		}
+		return (Histogram) m;
+	}
+
+	/**
+	 * Registers a gauge, replacing any gauge with the same name and labels
+	 * @param name The name of the gauge
+	 * @param help A description of the gauge
+	 * @param g The gauge
+	 * @param labels The labels of the gauge, as name/value pairs
+	 */
+	public void gauge(/*@ non_null @*/ String name, /*@ non_null @*/ String help, /*@ non_null @*/ Gauge g, /*@ non_null @*/ String ... labels)
+	{
+		getFamily(name, help, Family.GAUGE).m_metrics.put(formatLabels(labels), g);
+	}
+
+	/**
+	 * Removes all the metrics of this registry
+	 */
+	public void reset()
+	{
+		m_families.clear();
+	}
+
+	/**
+	 * Prints the metrics in the text exposition format of Prometheus. Lines
+	 * end with a line feed, whatever the platform.
+	 * @param ps The print stream to print to
+	 */
+	public void printPrometheus(/*@ non_null @*/ PrintStream ps)
+	{
+		for (Family f : m_families.values())
+		{
+			ps.print("# HELP " + f.m_name + " " + f.m_help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+			ps.print("# TYPE " + f.m_name + " " + f.m_type + "\n");
+			for (Map.Entry<String,Object> entry : new ConcurrentSkipListMap<String,Object>(f.m_metrics).entrySet())
+			{
+				String labels = entry.getKey();
+				Object m = entry.getValue();
+				if (m instanceof Counter)
+				{
+					ps.print(f.m_name + braces(labels) + " " + ((Counter) m).get() + "\n");
+				}
+				else if (m instanceof Gauge)
+				{
+					ps.print(f.m_name + braces(labels) + " " + formatDouble(((Gauge) m).getValue()) + "\n");
+				}
+				else
+				{
+					Histogram h = (Histogram) m;
+					long[] counts = h.getCumulativeCounts();
+					String prefix = labels.isEmpty() ? "" : labels + ",";
+					for (int i = 0; i < h.m_bounds.length; i++)
+					{
+						ps.print(f.m_name + "_bucket{" + prefix + "le=\"" + formatDouble(h.m_bounds[i]) + "\"} " + counts[i] + "\n");
+					}
+					ps.print(f.m_name + "_bucket{" + prefix + "le=\"+Inf\"} " + counts[h.m_bounds.length] + "\n");
+					ps.print(f.m_name + "_sum" + braces(labels) + " " + formatDouble(h.getSum()) + "\n");
+					ps.print(f.m_name + "_count" + braces(labels) + " " + counts[h.m_bounds.length] + "\n");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the metrics as a JSON element. Each metric is an entry of the
+	 * map, with its type, its description and the values for each
+	 * combination of labels.
+	 * @return The metrics
+	 */
+	/*@ non_null @*/ public JsonMap toJson()
+	{
+		JsonMap map = new JsonMap();
+		for (Family f : m_families.values())
+		{
+			JsonMap j_family = new JsonMap();
+			j_family.put("type", f.m_type);
+			j_family.put("help", f.m_help);
+			JsonList values = new JsonList();
+			for (Map.Entry<String,Object> entry : new ConcurrentSkipListMap<String,Object>(f.m_metrics).entrySet())
+			{
+				JsonMap j_value = new JsonMap();
+				j_value.put("labels", parseLabels(entry.getKey()));
+				Object m = entry.getValue();
+				if (m instanceof Counter)
+				{
+					j_value.put("value", ((Counter) m).get());
+				}
+				else if (m instanceof Gauge)
+				{
+					j_value.put("value", ((Gauge) m).getValue());
+				}
+				else
+				{
+					Histogram h = (Histogram) m;
+					long[] counts = h.getCumulativeCounts();
+					JsonMap buckets = new JsonMap();
+					for (int i = 0; i < h.m_bounds.length; i++)
+					{
+						buckets.put(formatDouble(h.m_bounds[i]), counts[i]);
+					}
+					buckets.put("+Inf", counts[h.m_bounds.length]);
+					j_value.put("count", counts[h.m_bounds.length]);
+					j_value.put("sum", h.getSum());
+					j_value.put("buckets", buckets);
+				}
+				values.add(j_value);
+			}
+			j_family.put("values", values);
+			map.put(f.m_name, j_family);
+		}
+		return map;
+	}
+
+	/**
+	 * Gets the family of metrics with a given name, creating it if
+	 * necessary
+	 * @param name The name of the metrics
+	 * @param help A description of the metrics
+	 * @param type The type of the metrics
+	 * @return The family
+	 */
+	/*@ non_null @*/ protected Family getFamily(/*@ non_null @*/ String name, /*@ non_null @*/ String help, /*@ non_null @*/ String type)
+	{
+		Family f = m_families.get(name);
+		if (f == null)
+		{
+			Family new_f = new Family(name, help, type);
+			f = ((ConcurrentSkipListMap<String,Family>) m_families).putIfAbsent(name, new_f);
+			if (f == null)
+			{
+				f = new_f;
+			}
+		}
+		if (!f.m_type.equals(type))
+		{
+			throw new IllegalArgumentException("Metric " + name + " is a " + f.m_type + ", not a " + type);
+		}
+		return f;
+	}
+
+	/**
+	 * Formats labels as in the text format of Prometheus, without the
+	 * braces
+	 * @param labels The labels, as name/value pairs
+	 * @return The formatted labels
+	 */
+	/*@ non_null @*/ protected static String formatLabels(/*@ non_null @*/ String ... labels)
+	{
+		if (labels.length == 0)
+		{
+			return "";
+		}
+		if (labels.length % 2 != 0)
+		{
+			throw new IllegalArgumentException("Labels must be given as name/value pairs");
+		}
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < labels.length; i += 2)
+		{
+			if (i > 0)
+			{
+				out.append(",");
+			}
+			out.append(labels[i]).append("=\"");
+			out.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+			out.append("\"");
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Converts formatted labels back into a JSON map
+	 * @param labels The labels, as produced by {@link #formatLabels(String...)}
+	 * @return A map from label names to values
+	 */
+	/*@ non_null @*/ protected static JsonMap parseLabels(/*@ non_null @*/ String labels)
+	{
+		JsonMap map = new JsonMap();
+		int pos = 0;
+		while (pos < labels.length())
+		{
+			int eq = labels.indexOf("=\"", pos);
+			StringBuilder value = new StringBuilder();
+			int i = eq + 2;
+			for (; labels.charAt(i) != '"'; i++)
+			{
+				char c = labels.charAt(i);
+				if (c == '\\')
+				{
+					i++;
+					c = labels.charAt(i) == 'n' ? '\n' : labels.charAt(i);
+				}
+				value.append(c);
+			}
+			map.put(labels.substring(pos, eq), value.toString());
+			// Skip the closing quote and the comma
+			pos = i + 2;
+		}
+		return map;
+	}
+
+	/**
+	 * Surrounds formatted labels with braces, if there are any
+	 * @param labels The formatted labels
+	 * @return The labels with braces, or the empty string
+	 */
+	/*@ non_null @*/ protected static String braces(/*@ non_null @*/ String labels)
+	{
+		return labels.isEmpty() ? "" : "{" + labels + "}";
+	}
+
+	/**
+	 * Formats a number as in the text format of Prometheus
+	 * @param d The number
+	 * @return The formatted number
+	 */
+	/*@ non_null @*/ protected static String formatDouble(double d)
+	{
+		if (Double.isNaN(d))
+		{
+			return "NaN";
+		}
+		if (Double.isInfinite(d))
+		{
+			return d > 0 ? "+Inf" : "-Inf";
+		}
+		return BigDecimal.valueOf(d).stripTrailingZeros().toPlainString();
+	}
+
+	/**
+	 * A set of metrics with the same name and different labels
+	 */
+	protected static class Family
+	{
+		/**
+		 * The type of counters
+		 */
+		/*@ non_null @*/ protected static final String COUNTER = "counter";
+
+		/**
+		 * The type of gauges
+		 */
+		/*@ non_null @*/ protected static final String GAUGE = "gauge";
+
+		/**
+		 * The type of histograms
+		 */
+		/*@ non_null @*/ protected static final String HISTOGRAM = "histogram";
+
+		/**
+		 * The name of the metrics
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * A description of the metrics
+		 */
+		/*@ non_null @*/ protected final String m_help;
+
+		/**
+		 * The type of the metrics
+		 */
+		/*@ non_null @*/ protected final String m_type;
+
+		/**
+		 * The metrics, indexed by their formatted labels
+		 */
+		/*@ non_null @*/ protected final Map<String,Object> m_metrics = new ConcurrentHashMap<String,Object>();
+
+		/**
+		 * Creates a new family of metrics
+		 * @param name The name of the metrics
+		 * @param help A description of the metrics
+		 * @param type The type of the metrics
+		 */
+		protected Family(/*@ non_null @*/ String name, /*@ non_null @*/ String help, /*@ non_null @*/ String type)
+		{
+			super();
+			m_name = name;
+			m_help = help;
+			m_type = type;
+		}
+	}
+
+	/**
+	 * A value that only increases, such as a number of documents
+	 */
+	public static class Counter
+	{
+		/**
+		 * The value of the counter
+		 */
+		/*@ non_null @*/ protected final LongAdder m_value = new LongAdder();
+
+		/**
+		 * Increments the counter by 1
+		 */
+		public void increment()
+		{
+			m_value.increment();
+		}
+
+		/**
+		 * Increments the counter
+		 * @param n The amount to add
+		 */
+		public void add(long n)
+		{
+			m_value.add(n);
+		}
+
+		/**
+		 * Gets the value of the counter
+		 * @return The value
+		 */
+		public long get()
+		{
+			return m_value.sum();
+		}
+	}
+
+	/**
+	 * A value that can go up and down, such as the length of a queue. The
+	 * value is read when the metrics are printed.
+	 */
+	public interface Gauge
+	{
+		/**
+		 * Gets the current value of the gauge
+		 * @return The value
+		 */
+		public double getValue();
+	}
+
+	/**
+	 * The distribution of a measurement, such as a duration, counted in
+	 * buckets
+	 */
+	public static class Histogram
+	{
+		/**
+		 * The upper bounds of the buckets, in increasing order
+		 */
+		/*@ non_null @*/ protected final double[] m_bounds;
+
+		/**
+		 * The number of observations in each bucket; the last bucket holds
+		 * the observations above the last bound
+		 */
+		/*@ non_null @*/ protected final AtomicLongArray m_counts;
+
+		/**
+		 * The sum of the observations
+		 */
+		/*@ non_null @*/ protected final DoubleAdder m_sum = new DoubleAdder();
+
+		/**
+		 * Creates a new histogram
+		 * @param bounds The upper bounds of the buckets, in increasing order
+		 */
+		public Histogram(/*@ non_null @*/ double[] bounds)
+		{
+			super();
+			m_bounds = bounds;
+			m_counts = new AtomicLongArray(bounds.length + 1);
+		}
+
+		/**
+		 * Adds an observation to the histogram
+		 * @param value The observed value
+		 */
+		public void observe(double value)
+		{
+			int i = 0;
+			while (i < m_bounds.length && value > m_bounds[i])
+			{
+				i++;
+			}
+			m_counts.incrementAndGet(i);
+			m_sum.add(value);
+		}
+
+		/**
+		 * Adds a duration to the histogram, in seconds
+		 * @param nanos The duration, in nanoseconds
+		 */
+		public void observeNanos(long nanos)
+		{
+			observe(nanos / 1e9);
+		}
+
+		/**
+		 * Gets the number of observations
+		 * @return The number of observations
+		 */
+		public long getCount()
+		{
+			long count = 0;
+			for (int i = 0; i < m_counts.length(); i++)
+			{
+				count += m_counts.get(i);
+			}
+			return count;
+		}
+
+		/**
+		 * Gets the sum of the observations
+		 * @return The sum
+		 */
+		public double getSum()
+		{
+			return m_sum.sum();
+		}
+
+		/**
+		 * Gets the number of observations at or below each bound
+		 * @return The counts; the last one is the total number of
+		 * observations
+		 */
+		/*@ non_null @*/ protected long[] getCumulativeCounts()
+		{
+			long[] counts = new long[m_counts.length()];
+			long total = 0;
+			for (int i = 0; i < counts.length; i++)
+			{
+				total += m_counts.get(i);
+				counts[i] = total;
+			}
+			return counts;
+		}
+	}
+}
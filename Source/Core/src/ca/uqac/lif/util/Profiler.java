@@ -0,0 +1,477 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
+
+/**
+ * Records the wall-clock time, CPU time and allocated memory spent in
+ * named sections of the code. A section is measured by surrounding it with
+ * calls to {@link #start(String)} and {@link #stop(Sample)}:
+ * <pre>
+ * Profiler.Sample sample = Profiler.start("read");
+ * try
+ * {
+ *   ...
+ * }
+ * finally
+ * {
+ *   Profiler.stop(sample);
+ * }
+ * </pre>
+ * Sections can be nested within the same thread. Besides its total
+ * figures, each section keeps its <em>self</em> figures, which leave out
+ * the sections nested in it; the self figures of all the sections hence
+ * add up to the time spent in measured code.
+ * <p>
+ * Profiling is disabled by default, in which case {@link #start(String)}
+ * returns {@code null} and costs a single test. CPU time and allocated
+ * memory are measured for the current thread, and only if the virtual
+ * machine supports it; otherwise they are reported as 0.
+ * @author Sylvain Hallé
+ */
+public class Profiler
+{
+	/**
+	 * Whether profiling is enabled
+	 */
+	protected static volatile boolean s_enabled = false;
+
+	/**
+	 * The figures of each section
+	 */
+	/*@ non_null @*/ protected static final Map<String,Section> s_sections = new ConcurrentHashMap<String,Section>();
+
+	/**
+	 * The innermost section being measured in each thread
+	 */
+	/*@ non_null @*/ protected static final ThreadLocal<Sample> s_current = new ThreadLocal<Sample>();
+
+	/**
+	 * The bean giving the CPU time and allocated memory of threads
+	 */
+	/*@ non_null @*/ protected static final ThreadMXBean s_threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Whether the allocated memory of threads can be measured
+	 */
+	protected static boolean s_allocationSupported = false;
+
+	/**
+	 * Enables or disables profiling. The figures recorded so far are kept.
+	 * @param b Set to {@code true} to enable profiling
+	 */
+	public static void setEnabled(boolean b)
+	{
+		if (b)
+		{
+			if (s_threads.isCurrentThreadCpuTimeSupported() && !s_threads.isThreadCpuTimeEnabled())
+			{
+				s_threads.setThreadCpuTimeEnabled(true);
+			}
+			if (s_threads instanceof com.sun.management.ThreadMXBean)
+			{
+				com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) s_threads;
+				if (bean.isThreadAllocatedMemorySupported())
+				{
+					bean.setThreadAllocatedMemoryEnabled(true);
+					s_allocationSupported = true;
+				}
+			}
+		}
+		s_enabled = b;
+	}
+
+	/**
+	 * Determines if profiling is enabled
+	 * @return {@code true} if profiling is enabled, {@code false} otherwise
+	 */
+	public static boolean isEnabled()
+	{
+		return s_enabled;
+	}
+
+	/**
+	 * Clears the figures recorded so far
+	 */
+	public static void reset()
+	{
+		s_sections.clear();
+	}
+
+	/**
+	 * Starts measuring a section in the current thread
+	 * @param name The name of the section
+	 * @return The measurement, to be given to {@link #stop(Sample)}, or
+	 * {@code null} if profiling is disabled
+	 */
+	/*@ null @*/ public static Sample start(/*@ non_null @*/ String name)
+	{
+		if (!s_enabled)
+		{
+			return null;
+		}
+		Sample s = new Sample(name, s_current.get());
+		s_current.set(s);
+		return s;
+	}
+
+	/**
+	 * Starts measuring a section in the current thread. The name of the
+	 * section is made of a category and a name, separated by a colon; the
+	 * name is only built if profiling is enabled.
+	 * @param category The category of the section
+	 * @param name The name of the section within this category
+	 * @return The measurement, to be given to {@link #stop(Sample)}, or
+	 * {@code null} if profiling is disabled
+	 */
+	/*@ null @*/ public static Sample start(/*@ non_null @*/ String category, /*@ non_null @*/ String name)
+	{
+		if (!s_enabled)
+		{
+			return null;
+		}
+		return start(category + ":" + name);
+	}
+
+	/**
+	 * Stops measuring a section, and adds its figures to those of the
+	 * section
+	 * @param s The measurement returned by {@link #start(String)}; may be
+	 * {@code null}, in which case nothing is done
+	 */
+	public static void stop(/*@ null @*/ Sample s)
+	{
+		if (s == null)
+		{
+			return;
+		}
+		long wall = System.nanoTime() - s.m_wall;
+		long cpu = cpuTime() - s.m_cpu;
+		long allocated = allocatedBytes() - s.m_allocated;
+		Section section = s_sections.get(s.m_name);
+		if (section == null)
+		{
+			Section new_section = new Section(s.m_name);
+			section = ((ConcurrentHashMap<String,Section>) s_sections).putIfAbsent(s.m_name, new_section);
+			if (section == null)
+			{
+				section = new_section;
+			}
+		}
+		section.add(wall, wall - s.m_childWall, cpu - s.m_childCpu, allocated - s.m_childAllocated);
+		Sample parent = s.m_parent;
+		if (parent != null)
+		{
+			parent.m_childWall += wall;
+			parent.m_childCpu += cpu;
+			parent.m_childAllocated += allocated;
+		}
+		s_current.set(parent);
+	}
+
+	/**
+	 * Gets the figures recorded so far
+	 * @return The list of sections, sorted by decreasing self wall-clock
+	 * time
+	 */
+	/*@ non_null @*/ public static List<Section> getSections()
+	{
+		List<Section> sections = new ArrayList<Section>();
+		for (Section s : s_sections.values())
+		{
+			sections.add(s.copy());
+		}
+		Collections.sort(sections, new Comparator<Section>()
+		{
+			@Override
+			public int compare(Section s1, Section s2)
+			{
+				if (s1.m_selfWall != s2.m_selfWall)
+				{
+					return s1.m_selfWall > s2.m_selfWall ? -1 : 1;
+				}
+				return s1.m_name.compareTo(s2.m_name);
+			}
+		});
+		return sections;
+	}
+
+	/**
+	 * Prints the figures recorded so far as a table, sorted by decreasing
+	 * self wall-clock time
+	 * @param ps The print stream to print to
+	 */
+	public static void printTable(/*@ non_null @*/ PrintStream ps)
+	{
+		ps.println(String.format("%-32s %8s %10s %10s %10s %12s", "Section", "Calls", "Wall ms", "Self ms", "CPU ms", "Alloc KB"));
+		for (Section s : getSections())
+		{
+			ps.println(String.format("%-32s %8d %10.1f %10.1f %10.1f %12d", s.m_name, s.m_calls, s.m_wall / 1e6, s.m_selfWall / 1e6, s.m_selfCpu / 1e6, s.m_selfAllocated / 1024));
+		}
+	}
+
+	/**
+	 * Gets the figures recorded so far as a JSON element
+	 * @return A JSON list with one element per section, sorted by decreasing
+	 * self wall-clock time
+	 */
+	/*@ non_null @*/ public static JsonList toJson()
+	{
+		JsonList list = new JsonList();
+		for (Section s : getSections())
+		{
+			JsonMap map = new JsonMap();
+			map.put("name", s.m_name);
+			map.put("calls", s.m_calls);
+			map.put("wallNanos", s.m_wall);
+			map.put("selfWallNanos", s.m_selfWall);
+			map.put("selfCpuNanos", s.m_selfCpu);
+			map.put("selfAllocatedBytes", s.m_selfAllocated);
+			list.add(map);
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the CPU time of the current thread
+	 * @return The time in nanoseconds, or 0 if it cannot be measured
+	 */
+	protected static long cpuTime()
+	{
+		return s_threads.isCurrentThreadCpuTimeSupported() ? s_threads.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * Gets the memory allocated by the current thread
+	 * @return The number of bytes, or 0 if it cannot be measured
+	 */
+	protected static long allocatedBytes()
+	{
+		if (!s_allocationSupported)
+		{
+			return 0;
+		}
+		return ((com.sun.management.ThreadMXBean) s_threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * The measurement of a section in progress
+	 */
+	public static class Sample
+	{
+		/**
+		 * The name of the section
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The measurement of the section this one is nested in, if any
+		 */
+		/*@ null @*/ protected final Sample m_parent;
+
+		/**
+		 * The wall-clock time when the measurement started
+		 */
+		protected final long m_wall;
+
+		/**
+		 * The CPU time of the thread when the measurement started
+		 */
+		protected final long m_cpu;
+
+		/**
+		 * The memory allocated by the thread when the measurement started
+		 */
+		protected final long m_allocated;
+
+		/**
+		 * The wall-clock time spent in nested sections
+		 */
+		protected long m_childWall = 0;
+
+		/**
+		 * The CPU time spent in nested sections
+		 */
+		protected long m_childCpu = 0;
+
+		/**
+		 * The memory allocated in nested sections
+		 */
+		protected long m_childAllocated = 0;
+
+		/**
+		 * Starts a new measurement
+		 * @param name The name of the section
+		 * @param parent The measurement of the section this one is nested
+		 * in, if any
+		 */
+		protected Sample(/*@ non_null @*/ String name, /*@ null @*/ Sample parent)
+		{
+			super();
+			m_name = name;
+			m_parent = parent;
+			m_allocated = allocatedBytes();
+			m_cpu = cpuTime();
+			m_wall = System.nanoTime();
+		}
+	}
+
+	/**
+	 * The figures recorded for a section
+	 */
+	public static class Section
+	{
+		/**
+		 * The name of the section
+		 */
+		/*@ non_null @*/ protected final String m_name;
+
+		/**
+		 * The number of times the section was measured
+		 */
+		protected long m_calls = 0;
+
+		/**
+		 * The total wall-clock time, in nanoseconds
+		 */
+		protected long m_wall = 0;
+
+		/**
+		 * The wall-clock time outside nested sections, in nanoseconds
+		 */
+		protected long m_selfWall = 0;
+
+		/**
+		 * The CPU time outside nested sections, in nanoseconds
+		 */
+		protected long m_selfCpu = 0;
+
+		/**
+		 * The memory allocated outside nested sections, in bytes
+		 */
+		protected long m_selfAllocated = 0;
+
+		/**
+		 * Creates a new section
+		 * @param name The name of the section
+		 */
+		protected Section(/*@ non_null @*/ String name)
+		{
+			super();
+			m_name = name;
+		}
+
+		/**
+		 * Adds the figures of a measurement to this section
+		 * @param wall The total wall-clock time
+		 * @param self_wall The wall-clock time outside nested sections
+		 * @param self_cpu The CPU time outside nested sections
+		 * @param self_allocated The memory allocated outside nested sections
+		 */
+		protected synchronized void add(long wall, long self_wall, long self_cpu, long self_allocated)
+		{
+			m_calls++;
+			m_wall += wall;
+			m_selfWall += self_wall;
+			m_selfCpu += self_cpu;
+			m_selfAllocated += self_allocated;
+		}
+
+		/**
+		 * Creates a copy of this section
+		 * @return The copy
+		 */
+		protected synchronized Section copy()
+		{
+			Section s = new Section(m_name);
+			s.m_calls = m_calls;
+			s.m_wall = m_wall;
+			s.m_selfWall = m_selfWall;
+			s.m_selfCpu = m_selfCpu;
+			s.m_selfAllocated = m_selfAllocated;
+			return s;
+		}
+
+		/**
+		 * Gets the name of the section
+		 * @return The name
+		 */
+		/*@ pure non_null @*/ public String getName()
+		{
+			return m_name;
+		}
+
+		/**
+		 * Gets the number of times the section was measured
+		 * @return The number of calls
+		 */
+		public long getCalls()
+		{
+			return m_calls;
+		}
+
+		/**
+		 * Gets the total wall-clock time spent in the section
+		 * @return The time, in nanoseconds
+		 */
+		public long getWallTime()
+		{
+			return m_wall;
+		}
+
+		/**
+		 * Gets the wall-clock time spent in the section, outside nested
+		 * sections
+		 * @return The time, in nanoseconds
+		 */
+		public long getSelfWallTime()
+		{
+			return m_selfWall;
+		}
+
+		/**
+		 * Gets the CPU time spent in the section, outside nested sections
+		 * @return The time, in nanoseconds
+		 */
+		public long getSelfCpuTime()
+		{
+			return m_selfCpu;
+		}
+
+		/**
+		 * Gets the memory allocated in the section, outside nested sections
+		 * @return The number of bytes
+		 */
+		public long getSelfAllocatedBytes()
+		{
+			return m_selfAllocated;
+		}
+	}
+}
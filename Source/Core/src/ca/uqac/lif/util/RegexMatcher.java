@@ -0,0 +1,77 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+/**
+ * Finds the matches of a {@link RegexPattern} in a string. The methods
+ * have the same meaning as those of {@link java.util.regex.Matcher}.
+ * @author Sylvain Hallé
+ */
+public interface RegexMatcher
+{
+	/**
+	 * Finds the next match of the pattern, starting at a given position
+	 * @param from The position
+	 * @return {@code true} if a match was found, {@code false} otherwise
+	 */
+	public boolean find(int from);
+
+	/**
+	 * Finds the next match of the pattern after the previous one
+	 * @return {@code true} if a match was found, {@code false} otherwise
+	 */
+	public boolean find();
+
+	/**
+	 * Determines if the whole string matches the pattern
+	 * @return {@code true} if the string matches, {@code false} otherwise
+	 */
+	public boolean matches();
+
+	/**
+	 * Gets the position of the first character of the last match
+	 * @return The position
+	 */
+	public int start();
+
+	/**
+	 * Gets the position after the last character of the last match
+	 * @return The position
+	 */
+	public int end();
+
+	/**
+	 * Gets the string matched by a capture group in the last match
+	 * @param group The index of the group; 0 designates the whole match
+	 * @return The string, or {@code null} if the group did not participate
+	 * in the match
+	 */
+	public String group(int group);
+
+	/**
+	 * Gets the string matched by the whole pattern in the last match
+	 * @return The string
+	 */
+	public String group();
+
+	/**
+	 * Gets the number of capture groups in the pattern
+	 * @return The number of groups
+	 */
+	public int groupCount();
+}
@@ -0,0 +1,330 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A compiled regular expression, evaluated either by
+ * {@link java.util.regex.Pattern} or by {@link LinearRegex}.
+ * <p>
+ * The engine used by {@link #compile(String)} is chosen globally with
+ * {@link #setLinear(boolean)}. When the linear-time engine is selected,
+ * patterns that use constructs it does not support (back references,
+ * lookaround, etc.) are evaluated by <tt>java.util.regex</tt> instead; these
+ * patterns are recorded, and can be retrieved with {@link #getFallbacks()}.
+ * @author Sylvain Hallé
+ */
+public abstract class RegexPattern
+{
+	/**
+	 * Whether {@link #compile(String)} uses the linear-time engine
+	 */
+	protected static volatile boolean s_linear = false;
+
+	/**
+	 * The patterns that could not be handled by the linear-time engine
+	 */
+	/*@ non_null @*/ protected static final Set<String> s_fallbacks = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+
+	/**
+	 * The source of this pattern
+	 */
+	/*@ non_null @*/ protected final String m_pattern;
+
+	/**
+	 * Creates a new pattern
+	 * @param pattern The source of the pattern
+	 */
+	protected RegexPattern(/*@ non_null @*/ String pattern)
+	{
+		super();
+		m_pattern = pattern;
+	}
+
+	/**
+	 * Sets whether patterns are evaluated by the linear-time engine. This only
+	 * affects the patterns compiled after the call.
+	 * @param b Set to {@code true} to use the linear-time engine,
+	 * {@code false} to use <tt>java.util.regex</tt> (the default)
+	 */
+	public static void setLinear(boolean b)
+	{
+		s_linear = b;
+	}
+
+	/**
+	 * Determines if patterns are evaluated by the linear-time engine
+	 * @return {@code true} if the linear-time engine is used
+	 */
+	public static boolean isLinearEnabled()
+	{
+		return s_linear;
+	}
+
+	/**
+	 * Gets the patterns that were evaluated by <tt>java.util.regex</tt>
+	 * because the linear-time engine does not support them
+	 * @return The list of patterns, sorted alphabetically
+	 */
+	/*@ non_null @*/ public static List<String> getFallbacks()
+	{
+		List<String> list = new ArrayList<String>(s_fallbacks);
+		Collections.sort(list);
+		return list;
+	}
+
+	/**
+	 * Compiles a regular expression with the engine selected by
+	 * {@link #setLinear(boolean)}
+	 * @param regex The regular expression
+	 * @return The compiled pattern
+	 * @throws PatternSyntaxException If the expression is not valid
+	 */
+	/*@ non_null @*/ public static RegexPattern compile(/*@ non_null @*/ String regex) throws PatternSyntaxException
+	{
+		return compile(regex, s_linear);
+	}
+
+	/**
+	 * Compiles a regular expression
+	 * @param regex The regular expression
+	 * @param linear Set to {@code true} to use the linear-time engine when
+	 * the expression allows it
+	 * @return The compiled pattern
+	 * @throws PatternSyntaxException If the expression is not valid
+	 */
+	/*@ non_null @*/ public static RegexPattern compile(/*@ non_null @*/ String regex, boolean linear) throws PatternSyntaxException
+	{
+		// Always compile with java.util.regex, so that invalid patterns are
+		// reported the same way whatever the engine
+		Pattern pat = Pattern.compile(regex);
+		if (linear)
+		{
+			try
+			{
+				return new LinearRegex(regex);
+			}
+			catch (LinearRegex.UnsupportedPatternException e)
+			{
+				s_fallbacks.add(regex);
+			}
+		}
+		return new JavaPattern(regex, pat);
+	}
+
+	/**
+	 * Gets the source of this pattern
+	 * @return The regular expression
+	 */
+	/*@ pure non_null @*/ public String pattern()
+	{
+		return m_pattern;
+	}
+
+	/**
+	 * Determines if this pattern is evaluated in linear time
+	 * @return {@code true} if the pattern is evaluated by {@link LinearRegex}
+	 */
+	public abstract boolean isLinear();
+
+	/**
+	 * Creates a matcher of this pattern on a string
+	 * @param s The string
+	 * @return The matcher
+	 */
+	/*@ non_null @*/ public abstract RegexMatcher matcher(/*@ non_null @*/ CharSequence s);
+
+	@Override
+	public String toString()
+	{
+		return m_pattern;
+	}
+
+	/**
+	 * Computes the replacement string for a match, the same way as
+	 * {@link Matcher#appendReplacement(StringBuffer, String)}: <tt>$n</tt>
+	 * stands for the n-th group, and a backslash escapes the character
+	 * that follows.
+	 * @param m The matcher, positioned on the match
+	 * @param replacement The replacement template
+	 * @return The replacement string
+	 * @throws IllegalArgumentException If the template is not valid, or
+	 * refers to a named group
+	 */
+	/*@ non_null @*/ public static String expandReplacement(/*@ non_null @*/ RegexMatcher m, /*@ non_null @*/ String replacement) throws IllegalArgumentException
+	{
+		StringBuilder out = new StringBuilder();
+		int i = 0;
+		while (i < replacement.length())
+		{
+			char c = replacement.charAt(i++);
+			if (c == '\\')
+			{
+				if (i >= replacement.length())
+				{
+					throw new IllegalArgumentException("character to be escaped is missing");
+				}
+				out.append(replacement.charAt(i++));
+			}
+			else if (c == '$')
+			{
+				if (i >= replacement.length() || !Character.isDigit(replacement.charAt(i)))
+				{
+					throw new IllegalArgumentException("Illegal group reference");
+				}
+				int group = replacement.charAt(i++) - '0';
+				if (group > m.groupCount())
+				{
+					throw new IndexOutOfBoundsException("No group " + group);
+				}
+				// Take as many digits as possible while the group exists
+				while (i < replacement.length() && Character.isDigit(replacement.charAt(i)))
+				{
+					int next = group * 10 + (replacement.charAt(i) - '0');
+					if (next > m.groupCount())
+					{
+						break;
+					}
+					group = next;
+					i++;
+				}
+				String g = m.group(group);
+				if (g != null)
+				{
+					out.append(g);
+				}
+			}
+			else
+			{
+				out.append(c);
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * A pattern evaluated by <tt>java.util.regex</tt>
+	 */
+	protected static class JavaPattern extends RegexPattern
+	{
+		/**
+		 * The compiled pattern
+		 */
+		/*@ non_null @*/ protected final Pattern m_compiled;
+
+		/**
+		 * Creates a new pattern
+		 * @param regex The source of the pattern
+		 * @param compiled The compiled pattern
+		 */
+		public JavaPattern(/*@ non_null @*/ String regex, /*@ non_null @*/ Pattern compiled)
+		{
+			super(regex);
+			m_compiled = compiled;
+		}
+
+		@Override
+		public boolean isLinear()
+		{
+			return false;
+		}
+
+		@Override
+		/*@ non_null @*/ public RegexMatcher matcher(/*@ non_null @*/ CharSequence s)
+		{
+			return new JavaMatcher(m_compiled.matcher(s));
+		}
+	}
+
+	/**
+	 * A matcher that delegates to a {@link Matcher}
+	 */
+	protected static class JavaMatcher implements RegexMatcher
+	{
+		/**
+		 * The matcher to delegate to
+		 */
+		/*@ non_null @*/ protected final Matcher m_matcher;
+
+		/**
+		 * Creates a new matcher
+		 * @param m The matcher to delegate to
+		 */
+		public JavaMatcher(/*@ non_null @*/ Matcher m)
+		{
+			super();
+			m_matcher = m;
+		}
+
+		@Override
+		public boolean find(int from)
+		{
+			return m_matcher.find(from);
+		}
+
+		@Override
+		public boolean find()
+		{
+			return m_matcher.find();
+		}
+
+		@Override
+		public boolean matches()
+		{
+			return m_matcher.matches();
+		}
+
+		@Override
+		public int start()
+		{
+			return m_matcher.start();
+		}
+
+		@Override
+		public int end()
+		{
+			return m_matcher.end();
+		}
+
+		@Override
+		public String group(int group)
+		{
+			return m_matcher.group(group);
+		}
+
+		@Override
+		public String group()
+		{
+			return m_matcher.group();
+		}
+
+		@Override
+		public int groupCount()
+		{
+			return m_matcher.groupCount();
+		}
+	}
+}
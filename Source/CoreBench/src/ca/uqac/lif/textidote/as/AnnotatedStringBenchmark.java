@@ -0,0 +1,240 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.as;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+
+/**
+ * Measures the operations of {@link AnnotatedString} on documents of
+ * increasing size. The documents are made of synthetic LaTeX paragraphs,
+ * so that the operations find the same kind of text they find when
+ * cleaning real documents.
+ * <p>
+ * The operations that modify a string work on a fresh copy of the
+ * document at each invocation. The queries are made at positions drawn at
+ * random (with a fixed seed) across the whole document, on a string to
+ * which a chain of {@value #CHAIN_LENGTH} operations has been applied.
+ * <p>
+ * Run with <tt>ant bench</tt>; results are written as JSON.
+ * @author Sylvain Hallé
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnnotatedStringBenchmark
+{
+	/**
+	 * The number of operations applied to the string on which queries are
+	 * made
+	 */
+	public static final int CHAIN_LENGTH = 10;
+
+	/**
+	 * The number of positions at which queries are made
+	 */
+	protected static final int NUM_QUERIES = 1024;
+
+	/**
+	 * The paragraphs the documents are made of
+	 */
+	/*@ non_null @*/ protected static final String[] PARAGRAPHS = {
+			"This is a \\emph{simple} paragraph, with a citation~\\cite{hal18}.",
+			"% A comment that the cleaner removes",
+			"The results are shown in Figure~\\ref{fig:results}, and discussed in \\textbf{Section}~\\ref{sec:discussion}.",
+			"Some inline math, such as $x^2 + y^2 = z^2$, appears in the text.",
+			""};
+
+	/**
+	 * The size of the document, in characters
+	 */
+	@Param({"1024", "65536", "1048576", "5242880"})
+	public int m_size;
+
+	/**
+	 * The text of the document
+	 */
+	protected String m_text;
+
+	/**
+	 * The document, as an annotated string on which no operation was
+	 * applied
+	 */
+	protected AnnotatedString m_original;
+
+	/**
+	 * The document, after a chain of operations
+	 */
+	protected AnnotatedString m_transformed;
+
+	/**
+	 * The positions at which queries are made in the transformed string
+	 */
+	protected int[] m_indices;
+
+	/**
+	 * The line/column positions corresponding to the indices in the
+	 * original string
+	 */
+	protected Position[] m_positions;
+
+	/**
+	 * The number of queries made so far
+	 */
+	protected int m_query = 0;
+
+	/**
+	 * Creates the document and the strings to query
+	 */
+	@Setup(Level.Trial)
+	public void setup()
+	{
+		m_text = createDocument(m_size);
+		m_original = new AnnotatedString(m_text);
+		m_transformed = applyChain(new AnnotatedString(m_text));
+		Random random = new Random(0);
+		m_indices = new int[NUM_QUERIES];
+		m_positions = new Position[NUM_QUERIES];
+		for (int i = 0; i < NUM_QUERIES; i++)
+		{
+			m_indices[i] = random.nextInt(m_transformed.length());
+			m_positions[i] = m_original.getPosition(random.nextInt(m_original.length()));
+		}
+	}
+
+	@Benchmark
+	public AnnotatedString replaceAll()
+	{
+		return new AnnotatedString(m_text).replaceAll("\\\\emph\\{(.*?)\\}", "$1");
+	}
+
+	@Benchmark
+	public AnnotatedString removeLine()
+	{
+		AnnotatedString as = new AnnotatedString(m_original);
+		return as.removeLine(as.lineCount() / 2);
+	}
+
+	@Benchmark
+	public AnnotatedString insertAt()
+	{
+		return new AnnotatedString(m_original).insertAt("inserted", m_size / 2);
+	}
+
+	@Benchmark
+	public AnnotatedString composeChain()
+	{
+		return applyChain(new AnnotatedString(m_text));
+	}
+
+	@Benchmark
+	public Range findOriginalRange()
+	{
+		int index = nextIndex();
+		return m_transformed.findOriginalRange(index, Math.min(index + 10, m_transformed.length() - 1));
+	}
+
+	@Benchmark
+	public Position getPosition()
+	{
+		return m_transformed.getPosition(nextIndex());
+	}
+
+	@Benchmark
+	public int getIndex()
+	{
+		return m_original.getIndex(m_positions[m_query++ % NUM_QUERIES]);
+	}
+
+	@Benchmark
+	public List<AnnotatedString.Line> getLines()
+	{
+		// A new string, as the lines of a string are only computed once
+		return new AnnotatedString(m_text).getLines();
+	}
+
+	/**
+	 * Gets the next position at which to make a query
+	 * @return The position
+	 */
+	protected int nextIndex()
+	{
+		return m_indices[m_query++ % NUM_QUERIES];
+	}
+
+	/**
+	 * Applies to a string a chain of operations similar to those of the
+	 * LaTeX cleaner
+	 * @param as The string
+	 * @return The string
+	 */
+	/*@ non_null @*/ protected static AnnotatedString applyChain(/*@ non_null @*/ AnnotatedString as)
+	{
+		String[][] replacements = {
+				{"%.*", ""},
+				{"\\\\emph\\{(.*?)\\}", "$1"},
+				{"\\\\textbf\\{(.*?)\\}", "$1"},
+				{"\\\\cite\\{.*?\\}", "[0]"},
+				{"\\\\ref\\{.*?\\}", "0"},
+				{"\\$.*?\\$", "X"},
+				{"~", " "},
+				{"Figure", "Fig."},
+				{"\\s+,", ","},
+				{"  +", " "}};
+		for (int i = 0; i < CHAIN_LENGTH; i++)
+		{
+			as = as.replaceAll(replacements[i][0], replacements[i][1]);
+		}
+		return as;
+	}
+
+	/**
+	 * Creates a synthetic LaTeX document
+	 * @param size The size of the document, in characters
+	 * @return The document
+	 */
+	/*@ non_null @*/ protected static String createDocument(int size)
+	{
+		StringBuilder out = new StringBuilder(size + 128);
+		for (int i = 0; out.length() < size; i++)
+		{
+			out.append(PARAGRAPHS[i % PARAGRAPHS.length]).append(AnnotatedString.CRLF);
+		}
+		out.setLength(size);
+		return out.toString();
+	}
+}
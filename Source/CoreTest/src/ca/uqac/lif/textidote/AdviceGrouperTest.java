@@ -0,0 +1,84 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.RegexRule;
+
+public class AdviceGrouperTest
+{
+	@Test
+	public void testGroup()
+	{
+		AnnotatedString as = new AnnotatedString("Teh cat\nand teh dog\nand TEH bird");
+		RegexRule rule1 = new RegexRule("sh:teh", "teh", "Typo");
+		RegexRule rule2 = new RegexRule("sh:cat", "cat", "Cat");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		ad_list.add(new Advice(rule1, new Range(0, 2), "Typo", as, as.getLine(0)));
+		ad_list.add(new Advice(rule2, new Range(4, 6), "Cat", as, as.getLine(0)));
+		ad_list.add(new Advice(rule1, new Range(12, 14), "Typo", as, as.getLine(1)));
+		ad_list.add(new Advice(rule1, new Range(24, 26), "Typo", as, as.getLine(2)));
+		List<Advice> grouped = new AdviceGrouper().group(ad_list);
+		assertEquals(2, grouped.size());
+		assertTrue(grouped.get(0) instanceof AdviceGroup);
+		AdviceGroup group = (AdviceGroup) grouped.get(0);
+		assertEquals(3, group.size());
+		assertEquals(new Range(0, 2), group.getRange());
+		assertEquals("Typo (3 occurrences; also at L2C5, L3C5)", group.getMessage());
+		assertSame(ad_list.get(1), grouped.get(1));
+	}
+
+	@Test
+	public void testNoRepetition()
+	{
+		AnnotatedString as = new AnnotatedString("Teh cat");
+		RegexRule rule = new RegexRule("sh:teh", "teh", "Typo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		ad_list.add(new Advice(rule, new Range(0, 2), "Typo", as, as.getLine(0)));
+		ad_list.add(new Advice(rule, new Range(4, 6), "Typo", as, as.getLine(0)));
+		assertSame(ad_list, new AdviceGrouper().group(ad_list));
+	}
+
+	@Test
+	public void testManyLocations()
+	{
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20; i++)
+		{
+			text.append("teh\n");
+		}
+		AnnotatedString as = new AnnotatedString(text.toString());
+		RegexRule rule = new RegexRule("sh:teh", "teh", "Typo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		for (int i = 0; i < 20; i++)
+		{
+			ad_list.add(new Advice(rule, new Range(4 * i, 4 * i + 2), "Typo", as, as.getLine(i)));
+		}
+		List<Advice> grouped = new AdviceGrouper().group(ad_list);
+		assertEquals(1, grouped.size());
+		assertTrue(grouped.get(0).getMessage().endsWith("L11C1 and 9 more)"));
+	}
+}
@@ -0,0 +1,194 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonNumber;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+import ca.uqac.lif.json.JsonString;
+
+public class BatchProcessorTest
+{
+	@Test
+	public void testSingleRequest() throws JsonParseException
+	{
+		BatchProcessor processor = new BatchProcessor();
+		String result = processor.process("{\"id\": \"a\", \"text\": \"Hello \\\\cite{a}\\\\cite{b}.\"}");
+		assertEquals(-1, result.indexOf('\n'));
+		JsonMap map = (JsonMap) new JsonParser().parse(result);
+		assertEquals("a", ((JsonString) map.get("id")).stringValue());
+		JsonList matches = (JsonList) map.get("matches");
+		assertEquals(1, matches.size());
+		JsonMap rule = (JsonMap) ((JsonMap) matches.get(0)).get("rule");
+		assertEquals("sh:c:mul", ((JsonString) rule.get("id")).stringValue());
+	}
+
+	@Test
+	public void testIgnore() throws JsonParseException
+	{
+		BatchProcessor processor = new BatchProcessor();
+		String result = processor.process("{\"text\": \"Hello \\\\cite{a}\\\\cite{b}.\", \"options\": {\"ignore\": \"sh:c:mul\"}}");
+		JsonMap map = (JsonMap) new JsonParser().parse(result);
+		assertNull(map.get("id"));
+		assertEquals(0, ((JsonList) map.get("matches")).size());
+	}
+
+	@Test
+	public void testErrors() throws JsonParseException
+	{
+		BatchProcessor processor = new BatchProcessor();
+		JsonMap map = (JsonMap) new JsonParser().parse(processor.process("{\"id\": 3, \"text\": \"a\", \"type\": \"foo\"}"));
+		assertEquals(3, ((JsonNumber) map.get("id")).numberValue().intValue());
+		assertNotNull(map.get("error"));
+		map = (JsonMap) new JsonParser().parse(processor.process("{\"id\": 3}"));
+		assertNotNull(map.get("error"));
+		map = (JsonMap) new JsonParser().parse(processor.process("not JSON"));
+		assertNotNull(map.get("error"));
+	}
+
+	@Test
+	public void testMetrics() throws JsonParseException
+	{
+		BatchProcessor processor = new BatchProcessor();
+		processor.process("{\"text\": \"Hello \\\\cite{a}\\\\cite{b}.\"}");
+		JsonMap map = (JsonMap) new JsonParser().parse(processor.process("{\"id\": 1, \"metrics\": \"json\"}"));
+		assertEquals(1, ((JsonNumber) map.get("id")).numberValue().intValue());
+		JsonMap metrics = (JsonMap) map.get("metrics");
+		assertNotNull(metrics.get("textidote_documents_linted_total"));
+		assertNotNull(metrics.get("textidote_rule_duration_seconds"));
+		map = (JsonMap) new JsonParser().parse(processor.process("{\"metrics\": \"prometheus\"}"));
+		String text = ((JsonString) map.get("metrics")).stringValue();
+		assertTrue(text.contains("# TYPE textidote_documents_linted_total counter"));
+		map = (JsonMap) new JsonParser().parse(processor.process("{\"metrics\": \"foo\"}"));
+		assertNotNull(map.get("error"));
+	}
+
+	@Test(timeout = 60000)
+	public void testStream() throws IOException, JsonParseException
+	{
+		StringBuilder in = new StringBuilder();
+		for (int i = 0; i < 50; i++)
+		{
+			in.append("{\"id\": ").append(i).append(", \"text\": \"Snippet ").append(i);
+			if (i % 2 == 0)
+			{
+				in.append(" \\\\cite{a}\\\\cite{b}");
+			}
+			in.append(".\"}\n");
+			if (i % 10 == 0)
+			{
+				in.append("\n");
+			}
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(baos);
+		BatchProcessor processor = new BatchProcessor().setThreads(4, 3);
+		int count = processor.process(new ByteArrayInputStream(in.toString().getBytes()), out);
+		assertEquals(50, count);
+		String[] lines = baos.toString().split("\n");
+		assertEquals(50, lines.length);
+		for (int i = 0; i < 50; i++)
+		{
+			JsonMap map = (JsonMap) new JsonParser().parse(lines[i]);
+			assertEquals(i, ((JsonNumber) map.get("id")).numberValue().intValue());
+			assertEquals(i % 2 == 0 ? 1 : 0, ((JsonList) map.get("matches")).size());
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testBrokenInput() throws JsonParseException
+	{
+		final byte[] requests = "{\"id\": 0, \"text\": \"A.\"}\n{\"id\": 1, \"text\": \"B.\"}\n".getBytes();
+		InputStream in = new InputStream()
+		{
+			int m_position = 0;
+
+			@Override
+			public int read() throws IOException
+			{
+				if (m_position >= requests.length)
+				{
+					throw new IOException("Broken pipe");
+				}
+				return requests[m_position++];
+			}
+		};
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(baos);
+		BatchProcessor processor = new BatchProcessor().setThreads(2, 2);
+		try
+		{
+			processor.process(in, out);
+			fail("The exception should be thrown");
+		}
+		catch (IOException e)
+		{
+			// Expected
+		}
+		// The requests read before the error are all answered before returning
+		String[] lines = baos.toString().split("\n");
+		assertEquals(2, lines.length);
+		for (int i = 0; i < 2; i++)
+		{
+			JsonMap map = (JsonMap) new JsonParser().parse(lines[i]);
+			assertEquals(i, ((JsonNumber) map.get("id")).numberValue().intValue());
+		}
+	}
+
+	@Test
+	public void testEngineCache() throws Exception
+	{
+		BatchProcessor processor = new BatchProcessor();
+		LintEngine engine = processor.getEngine(Linter.Language.LATEX, "", getOptions("sh:c:mul, sh:001"));
+		assertSame(engine, processor.getEngine(Linter.Language.LATEX, "", getOptions("sh:001,sh:c:mul,,sh:001")));
+		assertNotSame(engine, processor.getEngine(Linter.Language.LATEX, "", getOptions("sh:001")));
+		for (int i = 0; i < BatchProcessor.MAX_ENGINES + 5; i++)
+		{
+			processor.getEngine(Linter.Language.LATEX, "", getOptions("rule" + i));
+		}
+		assertEquals(BatchProcessor.MAX_ENGINES, processor.m_engines.size());
+	}
+
+	@Test
+	public void testUnknownLanguage() throws JsonParseException
+	{
+		BatchProcessor processor = new BatchProcessor();
+		JsonMap map = (JsonMap) new JsonParser().parse(processor.process("{\"id\": 1, \"text\": \"A.\", \"language\": \"foo\"}"));
+		assertNotNull(map.get("error"));
+		assertTrue(processor.m_engines.isEmpty());
+	}
+
+	protected static JsonMap getOptions(String ignored)
+	{
+		JsonMap options = new JsonMap();
+		options.put("ignore", ignored);
+		return options;
+	}
+}
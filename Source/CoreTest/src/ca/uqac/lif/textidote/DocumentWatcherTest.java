@@ -0,0 +1,96 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DocumentWatcherTest
+{
+	@Test
+	public void testDependents() throws IOException
+	{
+		DocumentWatcher watcher = new DocumentWatcher();
+		try
+		{
+			watcher.setIncludes("main.tex", Arrays.asList("ch1.tex", "ch2.tex"));
+			watcher.setIncludes("ch1.tex", Arrays.asList("fig.tex"));
+			watcher.setIncludes("ch2.tex", Arrays.asList("fig.tex"));
+			assertEquals(Arrays.asList("fig.tex", "ch1.tex", "ch2.tex", "main.tex"), Arrays.asList(watcher.getDependents("fig.tex").toArray()));
+			assertEquals(Arrays.asList("ch2.tex", "main.tex"), Arrays.asList(watcher.getDependents("ch2.tex").toArray()));
+			assertEquals(Arrays.asList("main.tex"), Arrays.asList(watcher.getDependents("main.tex").toArray()));
+			// ch2 no longer includes the figure
+			watcher.setIncludes("ch2.tex", Collections.<String>emptyList());
+			assertEquals(Arrays.asList("fig.tex", "ch1.tex", "main.tex"), Arrays.asList(watcher.getDependents("fig.tex").toArray()));
+			assertTrue(watcher.getIncludes("ch2.tex").isEmpty());
+		}
+		finally
+		{
+			watcher.close();
+		}
+	}
+
+	@Test(timeout = 60000)
+	public void testChange() throws IOException, InterruptedException
+	{
+		File folder = File.createTempFile("textidote", "");
+		folder.delete();
+		folder.mkdir();
+		File root = new File(folder, "main.tex");
+		File chapter = new File(folder, "ch1.tex");
+		File other = new File(folder, "other.tex");
+		write(root, "\\input{ch1}");
+		write(chapter, "Hello");
+		DocumentWatcher watcher = new DocumentWatcher();
+		try
+		{
+			watcher.setIncludes(root.getPath(), Arrays.asList(chapter.getPath()));
+			assertTrue(watcher.awaitChanges(100, TimeUnit.MILLISECONDS).isEmpty());
+			// A file that is not part of the document is ignored
+			write(other, "Foo");
+			assertTrue(watcher.awaitChanges(1, TimeUnit.SECONDS).isEmpty());
+			write(chapter, "Hello world");
+			List<String> changed = watcher.awaitChanges(30, TimeUnit.SECONDS);
+			assertEquals(Arrays.asList(chapter.getPath(), root.getPath()), changed);
+		}
+		finally
+		{
+			watcher.close();
+			root.delete();
+			chapter.delete();
+			other.delete();
+			folder.delete();
+		}
+	}
+
+	protected static void write(File f, String contents) throws IOException
+	{
+		FileOutputStream fos = new FileOutputStream(f);
+		fos.write(contents.getBytes());
+		fos.close();
+	}
+}
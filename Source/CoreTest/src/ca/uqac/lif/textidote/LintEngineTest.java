@@ -0,0 +1,135 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.as.AnnotatedString;
+
+public class LintEngineTest
+{
+	@Test
+	public void testLint() throws LinterException
+	{
+		LintEngine engine = new LintEngine();
+		LintResult result = engine.lint(read("\\begin{document}\nHello \\cite{a}\\cite{b}.\n\\input{foo}\n\\end{document}"));
+		assertEquals(1, result.getAdvice().size());
+		assertEquals("sh:c:mul", result.getAdvice().get(0).getRule().getName());
+		assertEquals(Arrays.asList("foo.tex"), result.getInnerFiles());
+	}
+
+	@Test
+	public void testIgnore() throws LinterException
+	{
+		LintEngine engine = new LintEngine().setIgnored(Arrays.asList("sh:c:*"));
+		LintResult result = engine.lint(read("\\begin{document}\nHello \\cite{a}\\cite{b}.\n\\end{document}"));
+		assertTrue(result.getAdvice().isEmpty());
+	}
+
+	@Test
+	public void testReadAll() throws LinterException
+	{
+		LintEngine engine = new LintEngine();
+		AnnotatedString s = read("Hello \\cite{a}\\cite{b}.");
+		assertEquals(1, engine.lint(s, "", false).getAdvice().size());
+		try
+		{
+			engine.lint(s, "", true);
+			fail("Text before \\begin{document} should be ignored");
+		}
+		catch (EmptyInputException e)
+		{
+			// Expected
+		}
+		engine.setReadAll(true);
+		assertEquals(1, engine.lint(s, "", true).getAdvice().size());
+	}
+
+	@Test(timeout = 60000)
+	public void testConcurrent() throws Exception
+	{
+		final LintEngine engine = new LintEngine();
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<LintResult>> futures = new ArrayList<Future<LintResult>>();
+		for (int i = 0; i < 40; i++)
+		{
+			final int n = i;
+			futures.add(pool.submit(new Callable<LintResult>()
+			{
+				@Override
+				public LintResult call() throws Exception
+				{
+					StringBuilder sb = new StringBuilder("\\begin{document}\nText.\n");
+					for (int j = 0; j < n % 5; j++)
+					{
+						sb.append("Hello \\cite{a}\\cite{b}.\n");
+					}
+					sb.append("\\input{file").append(n).append("}\n\\end{document}");
+					return engine.lint(read(sb.toString()));
+				}
+			}));
+		}
+		for (int i = 0; i < 40; i++)
+		{
+			LintResult result = futures.get(i).get();
+			assertEquals(i % 5, result.getAdvice().size());
+			assertEquals(Arrays.asList("file" + i + ".tex"), result.getInnerFiles());
+		}
+		pool.shutdown();
+	}
+
+	@Test(timeout = 60000)
+	public void testPool() throws LinterException
+	{
+		StringBuilder sb = new StringBuilder("\\begin{document}\n");
+		for (int i = 0; i < 20; i++)
+		{
+			sb.append("\\section{intro.}\n\\subsection{A}\nHello \\cite{a}\\cite{b}, see figure~\\ref{fig:x}.\n");
+			sb.append("\\begin{figure}\\caption{a caption}\\label{fig:y").append(i).append("}\\end{figure}\n\\\\ Some text.\n\n");
+		}
+		sb.append("\\end{document}");
+		AnnotatedString s = read(sb.toString());
+		List<Advice> expected = new LintEngine().lint(s).getAdvice();
+		List<Advice> actual = new LintEngine().setPool(ForkJoinPool.commonPool()).lint(s).getAdvice();
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getRule().getName(), actual.get(i).getRule().getName());
+			assertEquals(expected.get(i).getRange(), actual.get(i).getRange());
+			assertEquals(expected.get(i).getMessage(), actual.get(i).getMessage());
+		}
+	}
+
+	protected static AnnotatedString read(String s)
+	{
+		return AnnotatedString.read(new Scanner(s));
+	}
+}
@@ -19,13 +19,25 @@ package ca.uqac.lif.textidote;
 
 import static ca.uqac.lif.textidote.as.AnnotatedString.CRLF;
 
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
 import org.junit.Test;
+import org.languagetool.JLanguageTool;
+import org.languagetool.Language;
+import org.languagetool.rules.RuleMatch;
 
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.cleaning.TextCleanerException;
 import ca.uqac.lif.textidote.cleaning.latex.LatexCleaner;
+import ca.uqac.lif.textidote.rules.CheckLanguage;
+import ca.uqac.lif.textidote.rules.LanguageFactory;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.util.Deadline;
 
 public class LinterTest
 {	
@@ -44,4 +56,147 @@ public class LinterTest
 		Linter l = new Linter(detexer);
 		l.evaluateAll(AnnotatedString.read(new Scanner("abc" + CRLF + "def")));
 	}
+	
+	@Test(timeout = 10000)
+	public void testRuleTimeout() throws TextCleanerException, LinterException
+	{
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 60; i++)
+		{
+			text.append("a");
+		}
+		LatexCleaner detexer = new LatexCleaner().setIgnoreBeforeDocument(false);
+		Linter l = new Linter(detexer);
+		l.add(new RegexRule("sh:slow", "(.*a){20}b", "Slow"));
+		l.add(new RegexRule("sh:fast", "aaa", "Fast"));
+		l.setTimeBudget(200, 0);
+		List<Advice> advice = l.evaluateAll(AnnotatedString.read(new Scanner(text.toString())));
+		assertEquals(21, advice.size());
+		assertEquals("sh:slow", advice.get(0).getRule().getName());
+		assertTrue(advice.get(0).getMessage().contains("time budget"));
+		assertEquals("sh:fast", advice.get(1).getRule().getName());
+	}
+	
+	@Test(timeout = 20000)
+	public void testLanguageTimeout() throws Exception
+	{
+		// A single paragraph, much longer than a chunk
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 200000)
+		{
+			text.append("This is a sentence in a very long paragraph. ");
+		}
+		LatexCleaner detexer = new LatexCleaner().setIgnoreBeforeDocument(false);
+		Linter l = new Linter(detexer);
+		SlowLanguageCheck rule = new SlowLanguageCheck();
+		l.addCleaned(rule);
+		l.setTimeBudget(200, 0);
+		List<Advice> advice = l.evaluateAll(AnnotatedString.read(new Scanner(text.toString())));
+		assertEquals(1, advice.size());
+		assertTrue(advice.get(0).getMessage().contains("time budget"));
+		assertTrue(rule.m_tool.m_longest <= CheckLanguage.MAX_CHUNK_LENGTH);
+		assertTrue(rule.m_tool.m_checked < text.length() / 2);
+	}
+	
+	@Test(timeout = 10000)
+	public void testDocumentTimeout() throws TextCleanerException, LinterException
+	{
+		LatexCleaner detexer = new LatexCleaner().setIgnoreBeforeDocument(false);
+		Linter l = new Linter(detexer);
+		l.add(new SpinningRule("sh:spin1"));
+		l.add(new SpinningRule("sh:spin2"));
+		l.setTimeBudget(0, 100);
+		List<Advice> advice = l.evaluateAll(AnnotatedString.read(new Scanner("abc" + CRLF + "def")));
+		assertEquals(2, advice.size());
+		assertEquals("sh:spin1", advice.get(0).getRule().getName());
+		assertEquals("sh:spin2", advice.get(1).getRule().getName());
+		assertTrue(advice.get(1).getMessage().contains("for the document"));
+	}
+	
+	@Test(timeout = 10000)
+	public void testBlacklistPushdown() throws TextCleanerException, LinterException
+	{
+		LatexCleaner detexer = new LatexCleaner().setIgnoreBeforeDocument(false);
+		Linter l = new Linter(detexer);
+		l.add(new SpinningRule("sh:spin1"));
+		l.addToBlacklist(Arrays.asList("sh:sp*"));
+		// Added after the blacklist, and ignored as well
+		l.addCleaned(new SpinningRule("sh:spin2"));
+		l.add(new RegexRule("sh:fast", "aaa", "Fast"));
+		List<Advice> advice = l.evaluateAll(AnnotatedString.read(new Scanner("aaa")));
+		assertEquals(1, advice.size());
+		assertEquals("sh:fast", advice.get(0).getRule().getName());
+	}
+	
+	/**
+	 * A language check whose calls to LanguageTool take a time proportional
+	 * to the length of the text, and cannot be interrupted
+	 */
+	protected static class SlowLanguageCheck extends CheckLanguage
+	{
+		protected final SlowLanguageTool m_tool;
+
+		public SlowLanguageCheck() throws UnsupportedLanguageException
+		{
+			super(LanguageFactory.getLanguageFromString("en"));
+			m_tool = new SlowLanguageTool(LanguageFactory.getLanguageFromString("en"));
+			m_languageTool = m_tool;
+		}
+	}
+
+	protected static class SlowLanguageTool extends JLanguageTool
+	{
+		protected int m_longest = 0;
+
+		protected int m_checked = 0;
+
+		public SlowLanguageTool(Language lang)
+		{
+			super(lang);
+		}
+
+		@Override
+		public List<RuleMatch> check(String text)
+		{
+			// 10 microseconds per character
+			long end = System.nanoTime() + text.length() * 10000L;
+			while (System.nanoTime() < end)
+			{
+				// Busy wait
+			}
+			m_longest = Math.max(m_longest, text.length());
+			m_checked += text.length();
+			return new ArrayList<RuleMatch>();
+		}
+	}
+
+	/**
+	 * A rule that runs until it is stopped
+	 */
+	protected static class SpinningRule extends Rule
+	{
+		public SpinningRule(String name)
+		{
+			super(name);
+		}
+
+		@Override
+		public List<Advice> evaluate(AnnotatedString s)
+		{
+			while (true)
+			{
+				Deadline.checkCurrent();
+				if (s.isEmpty())
+				{
+					return new ArrayList<Advice>();
+				}
+			}
+		}
+
+		@Override
+		public String getDescription()
+		{
+			return "Spins";
+		}
+	}
 }
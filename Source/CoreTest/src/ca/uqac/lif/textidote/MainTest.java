@@ -22,6 +22,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
 import java.io.File;
 
@@ -29,6 +31,11 @@ import static org.junit.Assert.*;
 
 import org.junit.Test;
 
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.util.AnsiPrinter;
 import ca.uqac.lif.util.NullPrintStream;
 
 public class MainTest
@@ -730,6 +737,23 @@ public class MainTest
 		assertTrue(output, output.trim().isEmpty());
 	}
 
+	@Test
+	public void testTwoRootsOnJsonOutput() throws IOException, JsonParseException
+	{
+		// The first file is written before the second one is found to have
+		// sub-files; the report must still be complete
+		String in_path = new File(MainTest.class.getResource("rules/data/test-nobreak.tex").getFile()).getAbsolutePath();
+		String in_path2 = new File(MainTest.class.getResource("rules/data/include-twice.tex").getFile()).getAbsolutePath();
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream out = new PrintStream(baos);
+		int ret_code = Main.mainLoop(new String[] {"--read-all", "--output", "json", in_path, in_path2}, null, out, new NullPrintStream(), null);
+		String output = new String(baos.toByteArray());
+		assertEquals(-5, ret_code);
+		assertContains("should not break lines manually", output);
+		JsonMap map = (JsonMap) new JsonParser().parse(output);
+		assertNotNull(map.get("matches"));
+	}
+
 	@Test
 	public void testIncludeWithRootAsArgument() throws IOException
 	{
@@ -760,4 +784,37 @@ public class MainTest
 		assertContains("Beneficial", output);
 		assertContains("travelling", output);
 	}
+
+	@Test
+	public void testProjectAdviceCleared() throws Exception
+	{
+		LintEngine engine = new LintEngine().setType(Linter.Language.LATEX).setReadAll(true).setProject(true);
+		Map<String,LintResult> results = new LinkedHashMap<String,LintResult>();
+		results.put("a.tex", lint(engine, "a.tex", "Some text.\n\\begin{figure}\n\\caption{A}\\label{fig:a}\n\\end{figure}\n"));
+		results.put("b.tex", lint(engine, "b.tex", "Some text.\n"));
+		AdviceRenderer renderer = new AdviceRenderer(new AnsiPrinter(new NullPrintStream()))
+		{
+			@Override
+			public void render()
+			{
+				// Nothing to do
+			}
+		};
+		int num_local = results.get("a.tex").getAdvice().size();
+		int num_advice = Main.addProjectAdvice(engine, results, renderer);
+		assertEquals(1, num_advice);
+		assertEquals(num_local + 1, renderer.m_advice.get("a.tex").size());
+		// Only b.tex changes, and now refers to the figure of a.tex
+		results.put("b.tex", lint(engine, "b.tex", "See Figure \\ref{fig:a}.\n"));
+		num_advice = Main.addProjectAdvice(engine, results, renderer);
+		assertEquals(0, num_advice);
+		assertEquals(num_local, renderer.m_advice.get("a.tex").size());
+	}
+
+	protected static LintResult lint(LintEngine engine, String filename, String text) throws LinterException
+	{
+		AnnotatedString as = AnnotatedString.read(new Scanner(text));
+		as.setResourceName(filename);
+		return engine.lint(as, "", false);
+	}
 }
@@ -0,0 +1,64 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.textidote.rules.RegexRuleSet;
+
+public class RuleBlacklistTest
+{
+	@Test
+	public void testIgnored()
+	{
+		RuleBlacklist bl = new RuleBlacklist().addAll(Arrays.asList("sh:001", "lt:en:*_US", "sh:c:*"));
+		assertTrue(bl.isIgnored("sh:001"));
+		assertFalse(bl.isIgnored("sh:0011"));
+		assertTrue(bl.isIgnored("lt:en:MORFOLOGIK_RULE_EN_US"));
+		assertFalse(bl.isIgnored("lt:en:MORFOLOGIK_RULE_EN_GB"));
+		assertTrue(bl.isIgnored("sh:c:mul"));
+		assertFalse(bl.isIgnored("sh:d:c:mul"));
+		assertEquals(Arrays.asList("001"), bl.getSuffixes("sh:"));
+		assertTrue(new RuleBlacklist().isEmpty());
+	}
+
+	@Test
+	public void testFilterSet()
+	{
+		List<RegexRule> rules = new ArrayList<RegexRule>();
+		rules.add(new RegexRule("sh:a", "a", "A"));
+		rules.add(new RegexRule("sh:b", "b", "B"));
+		RegexRuleSet set = new RegexRuleSet(rules);
+		List<Rule> in_list = new ArrayList<Rule>();
+		in_list.add(set);
+		// Nothing to remove: the set is kept as is
+		assertSame(set, new RuleBlacklist().addAll(Arrays.asList("sh:c")).filter(in_list).get(0));
+		List<Rule> out_list = new RuleBlacklist().addAll(Arrays.asList("sh:a")).filter(in_list);
+		assertEquals(1, out_list.size());
+		assertEquals(1, ((RegexRuleSet) out_list.get(0)).getRules().size());
+		assertEquals("sh:b", ((RegexRuleSet) out_list.get(0)).getRules().get(0).getName());
+		assertTrue(new RuleBlacklist().addAll(Arrays.asList("sh:*")).filter(in_list).isEmpty());
+	}
+}
@@ -0,0 +1,110 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.cleaning;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.cleaning.latex.IncludeScanner;
+
+public class IncludeScannerTest
+{
+	@Test
+	public void testScan1()
+	{
+		IncludeScanner scanner = new IncludeScanner();
+		List<String> files = scanner.scan(Arrays.asList("Hello", "\\input{foo}", "\\include{bar.tex} world"), false);
+		assertEquals(2, files.size());
+		assertEquals("foo.tex", files.get(0));
+		assertEquals("bar.tex", files.get(1));
+	}
+
+	@Test
+	public void testScanComments()
+	{
+		IncludeScanner scanner = new IncludeScanner();
+		List<String> files = scanner.scan(Arrays.asList(
+				"% \\input{foo}",
+				"Text % \\input{bar}",
+				"\\begin{comment}",
+				"\\input{baz}",
+				"\\end{comment}",
+				"% textidote: ignore begin",
+				"\\input{qux}",
+				"% textidote: ignore end",
+				"50\\% \\input{ok}"), false);
+		assertEquals(1, files.size());
+		assertEquals("ok.tex", files.get(0));
+	}
+
+	@Test
+	public void testScanBeforeDocument()
+	{
+		IncludeScanner scanner = new IncludeScanner();
+		List<String> lines = Arrays.asList("\\input{preamble}", "\\begin{document}", "\\input{chapter}", "\\end{document}");
+		assertEquals(2, scanner.scan(lines, false).size());
+		List<String> files = scanner.scan(lines, true);
+		assertEquals(1, files.size());
+		assertEquals("chapter.tex", files.get(0));
+	}
+
+	@Test
+	public void testScanRoot()
+	{
+		IncludeScanner scanner = new IncludeScanner("doc");
+		List<String> files = scanner.scan(Arrays.asList("%!TEX root = ../main.tex", "\\input{sections/intro}"), false);
+		assertEquals(1, files.size());
+		assertEquals(new File("doc/../sections/intro.tex").getPath(), files.get(0));
+	}
+
+	@Test
+	public void testScanTree()
+	{
+		final Map<String,String> contents = new HashMap<String,String>();
+		contents.put("main.tex", "\\input{a}\n\\input{b}");
+		contents.put("a.tex", "\\input{c}\n\\input{b}");
+		contents.put("b.tex", "Hello");
+		contents.put("c.tex", "\\input{main}");
+		IncludeScanner scanner = new IncludeScanner()
+		{
+			@Override
+			protected InputStream open(String filename)
+			{
+				String s = contents.get(filename);
+				if (s == null)
+				{
+					return null;
+				}
+				return new ByteArrayInputStream(s.getBytes());
+			}
+		};
+		Map<String,List<String>> tree = scanner.scanTree("main.tex");
+		assertEquals(Arrays.asList("main.tex", "a.tex", "b.tex", "c.tex"), Arrays.asList(tree.keySet().toArray()));
+		assertEquals(Arrays.asList("c.tex", "b.tex"), tree.get("a.tex"));
+		assertTrue(tree.get("b.tex").isEmpty());
+	}
+}
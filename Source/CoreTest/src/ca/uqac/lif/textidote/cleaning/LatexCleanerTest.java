@@ -21,9 +21,17 @@ import static ca.uqac.lif.textidote.as.AnnotatedString.CRLF;
 import static ca.uqac.lif.textidote.as.AnnotatedString.CRLF_S;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -31,6 +39,7 @@ import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.Position;
 import ca.uqac.lif.textidote.cleaning.latex.LatexCleaner;
+import ca.uqac.lif.util.RegexPattern;
 
 public class LatexCleanerTest
 {
@@ -425,6 +434,35 @@ public class LatexCleanerTest
 		assertEquals("bar baz bar", as.toString());
 	}
 	
+	@Test
+	public void testReplacementCleanerLinear() throws TextCleanerException
+	{
+		Map<String,String> replacements = new HashMap<String,String>();
+		replacements.put("~+", " ");
+		replacements.put("f(o+)", "b$1r");
+		ReplacementCleaner cleaner = new ReplacementCleaner(replacements);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++)
+		{
+			text.append("Fig.~~").append(i).append(" foo ");
+		}
+		AnnotatedString expected = cleaner.clean(new AnnotatedString(text.toString()));
+		RegexPattern.setLinear(true);
+		try
+		{
+			AnnotatedString as = cleaner.clean(new AnnotatedString(text.toString()));
+			assertEquals(expected.toString(), as.toString());
+			for (int i = 0; i < as.length(); i += 7)
+			{
+				assertEquals(expected.findOriginalIndex(i), as.findOriginalIndex(i));
+			}
+		}
+		finally
+		{
+			RegexPattern.setLinear(false);
+		}
+	}
+
 	@Test(expected=TextCleanerException.class)
 	public void testReplacementCleaner3() throws TextCleanerException
 	{
@@ -466,6 +504,68 @@ public class LatexCleanerTest
 		assertEquals("foo.tex", s_file);
 	}
 	
+	@Test
+	public void testIncludes3() throws TextCleanerException
+	{
+		LatexCleaner detexer = new LatexCleaner();
+		detexer.setIgnoreBeforeDocument(false);
+		CleaningResult result = detexer.cleanDocument(AnnotatedString.read(new Scanner("\\input{foo.tex}\nSomething.\n\\include{bar}")));
+		assertTrue(result.getString().toString().contains("Something."));
+		assertEquals(Arrays.asList("foo.tex", "bar.tex"), result.getInnerFiles());
+		result = new CompositeCleaner(detexer).cleanDocument(AnnotatedString.read(new Scanner("Something.")));
+		assertTrue(result.getInnerFiles().isEmpty());
+	}
+	
+	@Test
+	public void testStages() throws TextCleanerException
+	{
+		LatexCleaner detexer = new LatexCleaner();
+		detexer.setIgnoreBeforeDocument(false);
+		String text = "Hello % a comment\n\\begin{equation}x\\end{equation}\n\\input{foo}\n\\textbf{World}.";
+		AnnotatedString original = AnnotatedString.read(new Scanner(text));
+		CleaningStages stages = new CompositeCleaner(detexer).cleanInStages(original);
+		AnnotatedString decommented = stages.get(CleaningStages.Stage.DECOMMENTED);
+		assertEquals(detexer.cleanComments(AnnotatedString.read(new Scanner(text))).toString(), decommented.toString());
+		AnnotatedString removed = stages.get(CleaningStages.Stage.ENVIRONMENTS_REMOVED);
+		assertFalse(removed.toString().contains("equation"));
+		assertTrue(removed.toString().contains("textbf"));
+		CleaningResult result = stages.getResult();
+		CleaningResult expected = detexer.cleanDocument(AnnotatedString.read(new Scanner(text)));
+		assertEquals(expected.getString().toString(), result.getString().toString());
+		assertEquals(expected.getInnerFiles(), result.getInnerFiles());
+		// Stages are computed once, and the original is left untouched
+		assertSame(decommented, stages.get(CleaningStages.Stage.DECOMMENTED));
+		assertEquals(text.replace("\n", CRLF), original.toString());
+	}
+	
+	@Test(timeout = 60000)
+	public void testIncludesConcurrent() throws Exception
+	{
+		final LatexCleaner detexer = new LatexCleaner();
+		detexer.setIgnoreBeforeDocument(false);
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		List<Future<CleaningResult>> futures = new ArrayList<Future<CleaningResult>>();
+		for (int i = 0; i < 100; i++)
+		{
+			final int n = i;
+			futures.add(pool.submit(new Callable<CleaningResult>()
+			{
+				@Override
+				public CleaningResult call() throws TextCleanerException
+				{
+					return detexer.cleanDocument(AnnotatedString.read(new Scanner("Text " + n + ".\n\\input{file" + n + "}")));
+				}
+			}));
+		}
+		for (int i = 0; i < 100; i++)
+		{
+			CleaningResult result = futures.get(i).get();
+			assertTrue(result.getString().toString().startsWith("Text " + i + "."));
+			assertEquals(Arrays.asList("file" + i + ".tex"), result.getInnerFiles());
+		}
+		pool.shutdown();
+	}
+	
 	@Test
 	public void testInlineEquations() throws TextCleanerException
 	{
@@ -0,0 +1,89 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.util.AnsiPrinter;
+
+public class AnsiAdviceRendererTest
+{
+	@Test
+	public void testFileDoneSingle()
+	{
+		AnnotatedString as = new AnnotatedString("foo bar");
+		List<Advice> ad_list = getAdvice(as);
+		ByteArrayOutputStream baos1 = new ByteArrayOutputStream();
+		AnsiAdviceRenderer renderer = getRenderer(baos1);
+		renderer.addAdvice("a.tex", as, ad_list);
+		renderer.render();
+		ByteArrayOutputStream baos2 = new ByteArrayOutputStream();
+		renderer = getRenderer(baos2);
+		renderer.begin();
+		renderer.fileDone("a.tex", as, ad_list);
+		renderer.end();
+		String output = new String(baos2.toByteArray());
+		assertEquals(new String(baos1.toByteArray()), output);
+		assertFalse(output.contains("a.tex"));
+	}
+
+	@Test
+	public void testFileDoneMultiple()
+	{
+		AnnotatedString as1 = new AnnotatedString("foo bar");
+		AnnotatedString as2 = new AnnotatedString("baz");
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiAdviceRenderer renderer = getRenderer(baos);
+		renderer.begin();
+		renderer.fileDone("a.tex", as1, getAdvice(as1));
+		assertEquals(0, baos.size());
+		renderer.fileDone("b.tex", as2, new ArrayList<Advice>());
+		// Both files are printed as soon as the second one is done
+		String output = new String(baos.toByteArray());
+		assertTrue(output.startsWith("a.tex"));
+		assertTrue(output.contains("b.tex"));
+		assertTrue(output.contains("* Everything is OK!"));
+		renderer.end();
+		assertEquals(output, new String(baos.toByteArray()));
+	}
+
+	protected static AnsiAdviceRenderer getRenderer(ByteArrayOutputStream baos)
+	{
+		AnsiPrinter printer = new AnsiPrinter(baos);
+		printer.disableColors();
+		return new AnsiAdviceRenderer(printer);
+	}
+
+	protected static List<Advice> getAdvice(AnnotatedString as)
+	{
+		RegexRule rule = new RegexRule("sh:foo", "foo", "Foo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		ad_list.add(new Advice(rule, new Range(0, 2), "Foo", as, as.getLine(0)));
+		return ad_list;
+	}
+}
@@ -27,9 +27,11 @@ import org.junit.Test;
 
 import ca.uqac.lif.petitpoucet.function.strings.Range;
 import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGrouper;
 import ca.uqac.lif.textidote.Rule;
 import ca.uqac.lif.textidote.as.AnnotatedString;
 import ca.uqac.lif.textidote.as.Position;
+import ca.uqac.lif.textidote.rules.RegexRule;
 import ca.uqac.lif.util.AnsiPrinter;
 import static ca.uqac.lif.textidote.as.AnnotatedString.CRLF;
 
@@ -78,4 +80,28 @@ public class ClickableAdviceRendererTest
 		String expected = String.format(filename + ":" + (startLine + 1) + ":" + (startCol + 1) + ": " + message + " \"" + line2 + "\"%n");
 		assertEquals(expected, output);
 	}
+
+	@Test
+	public void testGroup()
+	{
+		AnnotatedString as = new AnnotatedString("teh" + CRLF + "teh" + CRLF + "teh");
+		RegexRule rule = new RegexRule("sh:teh", "teh", "Typo");
+		List<Advice> adList = new ArrayList<Advice>();
+		for (int i = 0; i < 3; i++)
+		{
+			adList.add(new Advice(rule, new Range(as.getIndex(new Position(i, 0)), as.getIndex(new Position(i, 2))), "Typo", as, as.getLine(i)));
+		}
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter printer = new AnsiPrinter(baos);
+		printer.disableColors();
+		ClickableAdviceRenderer renderer = new ClickableAdviceRenderer(printer);
+		renderer.addAdvice("file", as, new AdviceGrouper().group(adList));
+		renderer.render();
+		String[] lines = new String(baos.toByteArray()).split("\\r?\\n");
+		// Every occurrence gets its own clickable line
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].startsWith("file:1:1: Typo (occurrence 1 of 3)"));
+		assertTrue(lines[1].startsWith("file:2:1: Typo (occurrence 2 of 3)"));
+		assertTrue(lines[2].startsWith("file:3:1: Typo (occurrence 3 of 3)"));
+	}
 }
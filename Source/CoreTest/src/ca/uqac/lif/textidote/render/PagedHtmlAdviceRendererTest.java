@@ -0,0 +1,94 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.util.AnsiPrinter;
+
+public class PagedHtmlAdviceRendererTest
+{
+	@Test
+	public void testPages() throws IOException
+	{
+		File folder = File.createTempFile("textidote", "");
+		folder.delete();
+		folder.mkdir();
+		File index = new File(folder, PagedHtmlAdviceRenderer.INDEX_PAGE);
+		File page1 = new File(folder, "file-1.html");
+		File page2 = new File(folder, "file-2.html");
+		try
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			PagedHtmlAdviceRenderer renderer = new PagedHtmlAdviceRenderer(new AnsiPrinter(baos), folder);
+			AnnotatedString s1 = new AnnotatedString("foo bar");
+			RegexRule rule = new RegexRule("sh:foo", "foo", "Foo");
+			List<Advice> ad_list = new ArrayList<Advice>();
+			ad_list.add(new Advice(rule, new Range(0, 2), "Foo", s1, s1.getLine(0)));
+			renderer.begin();
+			renderer.fileDone("a.tex", s1, ad_list);
+			// The page of a file is written as soon as it is done
+			assertTrue(page1.exists());
+			assertFalse(index.exists());
+			renderer.fileDone("b&c.tex", new AnnotatedString("baz"), new ArrayList<Advice>());
+			renderer.end();
+			assertFalse(renderer.checkError());
+			assertEquals(0, baos.size());
+			String html = read(index);
+			assertTrue(html.contains("<p>Found 1 warning(s) in 2 file(s)</p>"));
+			assertTrue(html.contains("<a href=\"file-1.html\">a.tex</a></td><td>1</td>"));
+			assertTrue(html.contains("<a href=\"file-2.html\">b&amp;c.tex</a></td><td>0</td>"));
+			html = read(page1);
+			assertTrue(html.contains("<span class=\"highlight-sh\" title=\"Foo [sh:foo]\">foo</span>"));
+			assertTrue(read(page2).contains("<p>Found 0 warning(s)</p>"));
+		}
+		finally
+		{
+			index.delete();
+			page1.delete();
+			page2.delete();
+			folder.delete();
+		}
+	}
+
+	protected static String read(File f) throws IOException
+	{
+		Scanner scanner = new Scanner(new FileInputStream(f));
+		StringBuilder out = new StringBuilder();
+		while (scanner.hasNextLine())
+		{
+			out.append(scanner.nextLine()).append("\n");
+		}
+		scanner.close();
+		return out.toString();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGrouper;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.CheckFigureReferences;
+import ca.uqac.lif.textidote.rules.CheckFigureReferencesTest;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.util.AnsiPrinter;
+
+public class StreamingHtmlAdviceRendererTest
+{
+	@Test
+	public void testRender()
+	{
+		AnnotatedString in_string = AnnotatedString.read(new Scanner(CheckFigureReferencesTest.class.getResourceAsStream("data/test4.tex")));
+		List<Advice> ad_list = new CheckFigureReferences().evaluate(in_string);
+		String html = render(in_string, ad_list);
+		assertTrue(html.contains("<p>Found " + ad_list.size() + " warning(s)</p>"));
+		assertEquals(in_string.lineCount(), count(html, "<div class=\"codeline\">"));
+		assertEquals(count(html, "<span"), count(html, "</span>"));
+	}
+
+	@Test
+	public void testSpans()
+	{
+		AnnotatedString in_string = new AnnotatedString("  a < b \\section{x}\nc & d % e");
+		RegexRule rule = new RegexRule("sh:foo", "foo", "Foo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		// Spans the two lines, and overlaps the keyword
+		ad_list.add(new Advice(rule, new Range(12, 22), "Foo", in_string, in_string.getLine(0)));
+		String html = render(in_string, ad_list);
+		assertTrue(html.contains("&nbsp;&nbsp;a &lt; b "));
+		assertTrue(html.contains("<div class=\"linenb\">2</div><div class=\"codeline\"><span class=\"highlight-sh\" title=\"Foo [sh:foo]\">c &amp;</span> d <span class=\"comment\">% e</span></div>"));
+		// The advice is closed and opened again at the end of the keyword
+		assertTrue(html.contains("<span class=\"keyword1\">\\sec<span class=\"highlight-sh\" title=\"Foo [sh:foo]\">tion</span></span><span class=\"highlight-sh\" title=\"Foo [sh:foo]\">{x}</span>"));
+	}
+
+	@Test
+	public void testGroup()
+	{
+		AnnotatedString in_string = new AnnotatedString("teh\nteh\nteh");
+		RegexRule rule = new RegexRule("sh:teh", "teh", "Typo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		for (int i = 0; i < 3; i++)
+		{
+			ad_list.add(new Advice(rule, new Range(4 * i, 4 * i + 2), "Typo", in_string, in_string.getLine(i)));
+		}
+		String html = render(in_string, new AdviceGrouper().group(ad_list));
+		// Every occurrence is highlighted, not only the first one
+		assertEquals(3, count(html, "<span class=\"highlight-sh\""));
+	}
+
+	protected static String render(AnnotatedString s, List<Advice> ad_list)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter ansi_p = new AnsiPrinter(new PrintStream(baos));
+		StreamingHtmlAdviceRenderer renderer = new StreamingHtmlAdviceRenderer(ansi_p);
+		renderer.addAdvice("foo", s, ad_list);
+		renderer.render();
+		ansi_p.flush();
+		return new String(baos.toByteArray());
+	}
+
+	protected static int count(String s, String pattern)
+	{
+		int count = 0;
+		for (int pos = s.indexOf(pattern); pos >= 0; pos = s.indexOf(pattern, pos + 1))
+		{
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.render;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonNumber;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonParser;
+import ca.uqac.lif.json.JsonParser.JsonParseException;
+import ca.uqac.lif.json.JsonString;
+import ca.uqac.lif.petitpoucet.function.strings.Range;
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.AdviceGrouper;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.RegexRule;
+import ca.uqac.lif.util.AnsiPrinter;
+
+public class StreamingJsonAdviceRendererTest
+{
+	@Test
+	public void testMultipleFiles() throws JsonParseException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter ansi_p = new AnsiPrinter(new PrintStream(baos));
+		StreamingJsonAdviceRenderer renderer = new StreamingJsonAdviceRenderer(ansi_p, "");
+		AnnotatedString s1 = new AnnotatedString("foo bar");
+		AnnotatedString s2 = new AnnotatedString("baz");
+		RegexRule rule = new RegexRule("sh:foo", "foo", "Foo");
+		List<Advice> ad_list1 = new ArrayList<Advice>();
+		ad_list1.add(new Advice(rule, new Range(0, 2), "Foo", s1, s1.getLine(0)));
+		renderer.addAdvice("a.tex", s1, ad_list1);
+		// The first match is written before the report is complete
+		ansi_p.flush();
+		assertTrue(new String(baos.toByteArray()).contains("\"a.tex\""));
+		List<Advice> ad_list2 = new ArrayList<Advice>();
+		ad_list2.add(new Advice(rule, new Range(0, 1), "Bar", s2, s2.getLine(0)));
+		renderer.addAdvice("b.tex", s2, ad_list2);
+		// Advice added to a file already written
+		ad_list1.add(new Advice(rule, new Range(4, 6), "Baz", s1, s1.getLine(0)));
+		renderer.addAdvice("a.tex", s1, ad_list1);
+		renderer.render();
+		ansi_p.flush();
+		JsonMap map = (JsonMap) new JsonParser().parse(new String(baos.toByteArray()));
+		assertNotNull(map.get("software"));
+		assertNotNull(map.get("language"));
+		JsonList matches = (JsonList) map.get("matches");
+		assertEquals(3, matches.size());
+		assertEquals("Foo", ((JsonString) ((JsonMap) matches.get(0)).get("message")).stringValue());
+		assertEquals("b.tex", ((JsonString) ((JsonMap) matches.get(1)).get("file")).stringValue());
+		assertEquals("Baz", ((JsonString) ((JsonMap) matches.get(2)).get("message")).stringValue());
+		assertEquals("a.tex", ((JsonString) ((JsonMap) matches.get(2)).get("file")).stringValue());
+	}
+
+	@Test
+	public void testGroup() throws JsonParseException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter ansi_p = new AnsiPrinter(new PrintStream(baos));
+		StreamingJsonAdviceRenderer renderer = new StreamingJsonAdviceRenderer(ansi_p, "");
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20; i++)
+		{
+			text.append("teh\n");
+		}
+		AnnotatedString s = new AnnotatedString(text.toString());
+		RegexRule rule = new RegexRule("sh:teh", "teh", "Typo");
+		List<Advice> ad_list = new ArrayList<Advice>();
+		for (int i = 0; i < 20; i++)
+		{
+			ad_list.add(new Advice(rule, new Range(4 * i, 4 * i + 2), "Typo", s, s.getLine(i)));
+		}
+		renderer.addAdvice("a.tex", s, new AdviceGrouper().group(ad_list));
+		renderer.render();
+		ansi_p.flush();
+		JsonMap map = (JsonMap) new JsonParser().parse(new String(baos.toByteArray()));
+		JsonList matches = (JsonList) map.get("matches");
+		assertEquals(1, matches.size());
+		// Every occurrence is listed, not only the first ones
+		JsonList locations = (JsonList) ((JsonMap) matches.get(0)).get("locations");
+		assertEquals(20, locations.size());
+		assertEquals(20, ((JsonNumber) ((JsonMap) locations.get(19)).get("line")).numberValue().intValue());
+	}
+
+	@Test
+	public void testKeep() throws JsonParseException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter ansi_p = new AnsiPrinter(new PrintStream(baos));
+		StreamingJsonAdviceRenderer renderer = new StreamingJsonAdviceRenderer(ansi_p, "", true);
+		AnnotatedString s1 = new AnnotatedString("foo bar");
+		AnnotatedString s2 = new AnnotatedString("baz");
+		RegexRule rule = new RegexRule("sh:foo", "foo", "Foo");
+		List<Advice> ad_list1 = new ArrayList<Advice>();
+		ad_list1.add(new Advice(rule, new Range(0, 2), "Foo", s1, s1.getLine(0)));
+		List<Advice> ad_list2 = new ArrayList<Advice>();
+		ad_list2.add(new Advice(rule, new Range(0, 1), "Bar", s2, s2.getLine(0)));
+		renderer.addAdvice("a.tex", s1, ad_list1);
+		renderer.addAdvice("b.tex", s2, ad_list2);
+		renderer.render();
+		ansi_p.flush();
+		baos.reset();
+		// Only b.tex changes
+		List<Advice> ad_list3 = new ArrayList<Advice>();
+		ad_list3.add(new Advice(rule, new Range(1, 2), "Baz", s2, s2.getLine(0)));
+		renderer.addAdvice("b.tex", s2, ad_list3);
+		renderer.render();
+		ansi_p.flush();
+		JsonMap map = (JsonMap) new JsonParser().parse(new String(baos.toByteArray()));
+		JsonList matches = (JsonList) map.get("matches");
+		assertEquals(2, matches.size());
+		assertEquals("Baz", ((JsonString) ((JsonMap) matches.get(0)).get("message")).stringValue());
+		assertEquals("b.tex", ((JsonString) ((JsonMap) matches.get(0)).get("file")).stringValue());
+		assertEquals("Foo", ((JsonString) ((JsonMap) matches.get(1)).get("message")).stringValue());
+		assertEquals("a.tex", ((JsonString) ((JsonMap) matches.get(1)).get("file")).stringValue());
+	}
+
+	@Test
+	public void testEmpty() throws JsonParseException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		AnsiPrinter ansi_p = new AnsiPrinter(new PrintStream(baos));
+		StreamingJsonAdviceRenderer renderer = new StreamingJsonAdviceRenderer(ansi_p, "");
+		renderer.addAdvice("a.tex", new AnnotatedString("foo"), new ArrayList<Advice>());
+		renderer.render();
+		ansi_p.flush();
+		JsonMap map = (JsonMap) new JsonParser().parse(new String(baos.toByteArray()));
+		assertEquals(0, ((JsonList) map.get("matches")).size());
+	}
+}
@@ -62,6 +62,31 @@ public class CheckFigureReferencesTest
 		assertEquals(1, ad_list.size());
 	}
 	
+	@Test
+	public void testMultipleLabels()
+	{
+		AnnotatedString in_string = new AnnotatedString("\\begin{figure}\n\\label{A}\n\\end{figure}\n"
+				+ "\\begin{figure}\n\\label{B}\n\\end{figure}\n"
+				+ "\\begin{figure}\n\\label{fig:c}\n\\end{figure}\n"
+				+ "See \\cref{A, B} and \\ref{fig:cd}.");
+		Rule r = new CheckFigureReferences();
+		List<Advice> ad_list = r.evaluate(in_string);
+		assertEquals(1, ad_list.size());
+		assertEquals("Figure fig:c is never referenced in the text", ad_list.get(0).getMessage());
+	}
+	
+	@Test
+	public void testIndex()
+	{
+		ReferenceIndex index = new DocumentStructure(new AnnotatedString("\\cref{a,b} \\autoref{c}\n\\ref{a}")).getReferences();
+		assertEquals(4, index.size());
+		assertEquals(2, index.getReferences("a").size());
+		assertEquals(8, index.getReferences("b").get(0).getStart());
+		assertFalse(index.isReferenced("d"));
+		index.addAll(new DocumentStructure(new AnnotatedString("\\ref{d}")).getReferences());
+		assertTrue(index.isReferenced("d"));
+	}
+	
 	@Test
 	public void test3()
 	{
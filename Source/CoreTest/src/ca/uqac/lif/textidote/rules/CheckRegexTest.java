@@ -19,6 +19,9 @@ package ca.uqac.lif.textidote.rules;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
@@ -63,6 +66,72 @@ public class CheckRegexTest
 		assertEquals(2, ad_list.size());
 	}
 
+	@Test
+	public void testRuleSet1()
+	{
+		AnnotatedString in_string = AnnotatedString.read(new Scanner("\\cite{a}\\cite{b} foo, i.e. bar foo\nHello \"World\" \\cite{c}\\cite{d}"));
+		List<Rule> rules = new ArrayList<Rule>();
+		rules.addAll(m_rules.values());
+		rules.addAll(m_detex_rules.values());
+		rules.add(new RegexRule("name:foo", "foo", "Message foo"));
+		List<Advice> expected = new ArrayList<Advice>();
+		List<RegexRule> regex_rules = new ArrayList<RegexRule>();
+		for (Rule r : rules)
+		{
+			expected.addAll(r.evaluate(in_string));
+			regex_rules.add((RegexRule) r);
+		}
+		List<Advice> ad_list = new RegexRuleSet(regex_rules).evaluate(in_string);
+		assertEquals(expected.size(), ad_list.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getRule(), ad_list.get(i).getRule());
+			assertEquals(expected.get(i).getRange(), ad_list.get(i).getRange());
+			assertEquals(expected.get(i).getMessage(), ad_list.get(i).getMessage());
+		}
+	}
+	
+	@Test
+	public void testRuleSet2()
+	{
+		AnnotatedString in_string = AnnotatedString.read(new Scanner("foo bar foo baz foo"));
+		RegexRule r1 = new RegexRule("name:foo", "(f)oo", "Message $1");
+		RegexRule r2 = new RegexRule("name:bar", "ba\\w", "ba.", "Message bar");
+		List<Advice> ad_list = new RegexRuleSet(Arrays.asList(r1, r2)).evaluate(in_string);
+		assertEquals(3, ad_list.size());
+		for (Advice ad : ad_list)
+		{
+			assertEquals(r1, ad.getRule());
+			assertEquals("Message f", ad.getMessage());
+		}
+	}
+	
+	@Test
+	public void testLiterals()
+	{
+		assertEquals(new HashSet<String>(Arrays.asList("\\cite")), m_rules.get("sh:c:mul").getRequiredLiterals());
+		assertEquals(new HashSet<String>(Arrays.asList("Figure", "figure")), m_rules.get("sh:hcfig").getRequiredLiterals());
+		assertEquals(new HashSet<String>(Arrays.asList("i.e.", "e.g.")), m_rules.get("sh:011").getRequiredLiterals());
+		assertEquals(new HashSet<String>(Arrays.asList("\"")), m_detex_rules.get("sh:d:008").getRequiredLiterals());
+		assertNull(m_detex_rules.get("sh:d:005").getRequiredLiterals());
+		assertNull(RegexLiterals.getRequiredLiterals("a?b*"));
+		assertNull(RegexLiterals.getRequiredLiterals("(?i)foo"));
+		assertEquals(new HashSet<String>(Arrays.asList("yz")), RegexLiterals.getRequiredLiterals("x{0,2}yz"));
+	}
+	
+	@Test
+	public void testRuleSetSkips()
+	{
+		RegexRuleSet set = new RegexRuleSet(m_rules.values());
+		List<Advice> ad_list = set.evaluate(AnnotatedString.read(new Scanner("Hello \\cite{a}\\cite{b}.")));
+		assertEquals(1, ad_list.size());
+		assertEquals(1, set.getEvaluationCount());
+		Map<String,Long> skips = set.getSkipCounts();
+		assertEquals(0, skips.get("sh:c:mul").longValue());
+		assertEquals(1, skips.get("sh:hcfig").longValue());
+		assertEquals(1, skips.get("sh:010").longValue());
+	}
+	
 	@Test
 	public void testCmul1()
 	{
@@ -0,0 +1,82 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
+
+public class DocumentStructureTest
+{
+	@Test
+	public void testStructure()
+	{
+		AnnotatedString in_string = new AnnotatedString("Intro text\n\\section{A}\n\\subsection{B}\nOne two three\n\n"
+				+ "Line \\\\ break\n\\begin{figure}\n\\includegraphics{/tmp/x.png}\n\\caption{No period}\n\\label{fig:a}\n\\end{figure}\n"
+				+ "See \\citep{x} and \\cite{y}.");
+		DocumentStructure ds = new DocumentStructure(in_string);
+		List<Heading> headings = ds.getHeadings();
+		assertEquals(2, headings.size());
+		assertEquals("section", headings.get(0).getName());
+		assertTrue(headings.get(0).isPrecededByText());
+		assertFalse(headings.get(1).isPrecededByText());
+		assertEquals(2, ds.getWordsBeforeHeadings());
+		assertEquals(1, ds.getLineBreaks().size());
+		assertEquals(0, ds.getLineBreaks().get(0).getDepth());
+		assertEquals(1, ds.getGraphics().size());
+		assertEquals("/tmp/x.png", ds.getGraphics().get(0).getPath());
+		assertEquals(1, ds.getCaptions().size());
+		assertTrue(ds.getCaptions().get(0).getMissingPeriodAt() > 0);
+		assertEquals(1, ds.getFigures().size());
+		assertTrue(ds.getFigures().get(0).hasLabel());
+		assertEquals("fig:a", ds.getFigureLabels().get(0).getName());
+		assertTrue(ds.getNatbibCitePosition() > 0);
+		assertTrue(ds.getPlainCitePosition() > ds.getNatbibCitePosition());
+	}
+
+	@Test
+	public void testRuleSet()
+	{
+		AnnotatedString in_string = AnnotatedString.read(new Scanner(DocumentStructureTest.class.getResourceAsStream("data/test-subsec-stress.tex")));
+		List<StructuralRule> rules = new ArrayList<StructuralRule>();
+		rules.add(new CheckSubsections());
+		rules.add(new CheckSubsectionSize());
+		rules.add(new CheckStackedHeadings());
+		List<Advice> expected = new ArrayList<Advice>();
+		for (StructuralRule r : rules)
+		{
+			expected.addAll(r.evaluate(in_string));
+		}
+		List<Advice> actual = new StructuralRuleSet(rules).evaluate(in_string);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getRule(), actual.get(i).getRule());
+			assertEquals(expected.get(i).getRange(), actual.get(i).getRange());
+		}
+	}
+}
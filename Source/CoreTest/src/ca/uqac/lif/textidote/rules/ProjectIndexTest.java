@@ -0,0 +1,106 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.textidote.rules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.Advice;
+import ca.uqac.lif.textidote.as.AnnotatedString;
+import ca.uqac.lif.textidote.rules.DocumentStructure.Heading;
+
+public class ProjectIndexTest
+{
+	@Test
+	public void testHeadingOrder()
+	{
+		ProjectIndex index = getIndex();
+		assertEquals(2, index.size());
+		assertEquals("main.tex", index.getDocumentOrder().get(0).getFilename());
+		assertEquals("ch1.tex", index.getDocumentOrder().get(1).getFilename());
+		List<Heading> headings = index.getHeadings();
+		assertEquals(5, headings.size());
+		assertEquals("section", headings.get(0).getName());
+		assertEquals("subsection", headings.get(1).getName());
+		assertEquals("ch1.tex", headings.get(1).getString().getResourceName());
+		assertEquals("section", headings.get(2).getName());
+	}
+
+	@Test
+	public void testFigureReferences()
+	{
+		ProjectIndex index = getIndex();
+		assertTrue(index.getReferences().isReferenced("fig:x"));
+		CheckFigureReferences rule = new CheckFigureReferences();
+		// On its own, the sub-file has a figure that is never referenced
+		assertEquals(1, rule.evaluate(index.getEntry("ch1.tex").getString()).size());
+		assertTrue(rule.evaluate(index).isEmpty());
+	}
+
+	@Test
+	public void testSubsections()
+	{
+		ProjectIndex index = getIndex();
+		CheckSubsections rule = new CheckSubsections();
+		assertTrue(rule.evaluate(index.getEntry("main.tex").getString()).isEmpty());
+		// Section A has a single sub-section, which is in the sub-file
+		List<Advice> ad_list = rule.evaluate(index);
+		assertEquals(1, ad_list.size());
+		assertEquals("main.tex", ad_list.get(0).getResource());
+	}
+
+	@Test
+	public void testCiteMix()
+	{
+		ProjectIndex index = new ProjectIndex();
+		index.add("main.tex", getStructure("main.tex", "See \\citep{a}.\n\\input{ch1}"), list("ch1.tex"));
+		index.add("ch1.tex", getStructure("ch1.tex", "See \\cite{b}."), new ArrayList<String>());
+		List<Advice> ad_list = new CheckCiteMix().evaluate(index);
+		assertEquals(1, ad_list.size());
+		assertEquals("main.tex", ad_list.get(0).getResource());
+	}
+
+	protected static ProjectIndex getIndex()
+	{
+		ProjectIndex index = new ProjectIndex();
+		index.add("main.tex", getStructure("main.tex", "\\section{A}\n\\input{ch1}\n\\section{B}\n\\subsection{B1}\n\\subsection{B2}\nSee Figure \\ref{fig:x}."), list("ch1.tex"));
+		index.add("ch1.tex", getStructure("ch1.tex", "\\subsection{A1}\n\\begin{figure}\n\\caption{A figure.}\n\\label{fig:x}\n\\end{figure}"), new ArrayList<String>());
+		return index;
+	}
+
+	protected static DocumentStructure getStructure(String filename, String contents)
+	{
+		AnnotatedString s = new AnnotatedString(contents);
+		s.setResourceName(filename);
+		return new DocumentStructure(s);
+	}
+
+	protected static List<String> list(String ... filenames)
+	{
+		List<String> list = new ArrayList<String>();
+		for (String f : filenames)
+		{
+			list.add(f);
+		}
+		return list;
+	}
+}
@@ -0,0 +1,61 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AhoCorasickTest
+{
+	@Test
+	public void testSearch()
+	{
+		AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+		final List<String> found = new ArrayList<String>();
+		ac.search("ushers and his", new AhoCorasick.MatchListener()
+		{
+			@Override
+			public void found(int keyword, int start)
+			{
+				found.add(keyword + "@" + start);
+			}
+		});
+		assertEquals(Arrays.asList("1@1", "0@2", "3@2", "2@11"), found);
+	}
+
+	@Test
+	public void testNoMatch()
+	{
+		AhoCorasick ac = new AhoCorasick(Arrays.asList("\\cite", "et al."));
+		final List<String> found = new ArrayList<String>();
+		ac.search("Lorem ipsum \\cit et al", new AhoCorasick.MatchListener()
+		{
+			@Override
+			public void found(int keyword, int start)
+			{
+				found.add(keyword + "@" + start);
+			}
+		});
+		assertTrue(found.isEmpty());
+	}
+}
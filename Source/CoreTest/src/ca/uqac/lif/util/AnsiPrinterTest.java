@@ -76,6 +76,36 @@ public class AnsiPrinterTest {
         assertEquals("Pad", AnsiPrinter.padToLength(in, 3));
     }
 
+    @Test
+    public void testBuffered() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        AnsiPrinter printer = new AnsiPrinter(baos, 1024, false);
+        printer.fg(AnsiPrinter.Color.YELLOW);
+        printer.print("foo");
+        printer.resetColors();
+        printer.print("bar");
+        assertEquals(0, baos.size());
+        printer.flush();
+        assertEquals("\u001B[1;33mfoo\u001B[0m\u001B[39m\u001B[49mbar", new String(baos.toByteArray()));
+    }
+
+    @Test
+    public void testAsync() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        AnsiPrinter printer = new AnsiPrinter(baos, 16, true);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            printer.fg(AnsiPrinter.Color.YELLOW);
+            printer.print(i);
+            printer.resetColors();
+            expected.append("\u001B[1;33m").append(i).append("\u001B[0m\u001B[39m\u001B[49m");
+        }
+        printer.flush();
+        assertFalse(printer.checkError());
+        assertEquals(expected.toString(), new String(baos.toByteArray()));
+        printer.close();
+    }
+
     protected static void assertContains(String subs, String s)
     {
         assertTrue("Couldn't locate \""+subs+"\" inside \""+s+"\"", s.indexOf(subs)!=-1);
@@ -0,0 +1,37 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FlightEventTest
+{
+	@Test
+	public void testNotRecording()
+	{
+		// No recording is started by the tests
+		FlightEvent.Type type = new FlightEvent.Type("ca.uqac.lif.textidote.Test", "Test", "An event of the tests").withField("name", "Name", String.class);
+		assertEquals("ca.uqac.lif.textidote.Test", type.getName());
+		assertFalse(FlightEvent.isRecording());
+		FlightEvent event = type.begin();
+		assertNull(event);
+		FlightEvent.commit(event, "foo");
+	}
+}
@@ -0,0 +1,295 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import ca.uqac.lif.textidote.Main;
+
+public class LinearRegexTest
+{
+	protected static final String SAMPLE = "\\section{introduction.}\n"
+			+ "\\subsection{ALL CAPS}\n\\paragraph{lower case}\n"
+			+ "Lorem ipsum \\cite{foo} \\cite{bar}, see Figure 3 and figure~\\ref{fig:a}.\n"
+			+ "et al. foo, i.e. bar, e.g., baz etc. a  b ``quotes'' \"quotes\" -- 10 -- 20\n"
+			+ "\\begin{figure}\\caption{a caption}\\end{figure} $x = 1$ \\textbf{bold}\n"
+			+ "Il y a 3 h et 5 kg; \u00e9t\u00e9 l'ann\u00e9e \u2014 un test.\r\nFin\u2028ligne";
+
+	@Test
+	public void testSimple() throws Exception
+	{
+		assertSameMatches("a(b|c)*d", "xxabcbdyyad abd");
+		assertSameMatches("\\bfoo\\b", "foo afoo foo_ foo. foo");
+		assertSameMatches("^\\s*$", "");
+		assertSameMatches("[^a-z\\d]+", "abc123DEF!!x");
+		assertSameMatches("a*", "baaab");
+		assertSameMatches("x$", "ax\nbx\r\ncx");
+		assertSameMatches("(a|ab)(c|bcd)", "abcd");
+		assertSameMatches("\\Q.*\\E|\\x41|\\u00e9", ".*A\u00e9");
+	}
+
+	@Test
+	public void testRulePatterns() throws Exception
+	{
+		List<String> texts = new ArrayList<String>();
+		texts.add(SAMPLE);
+		texts.add(read("/ca/uqac/lif/textidote/rules/data/test1.tex"));
+		texts.add(read("/ca/uqac/lif/textidote/rules/data/test-subsec-1.tex"));
+		int linear = 0;
+		for (String filename : new String[] {"rules/regex.csv", "rules/regex-detex.csv"})
+		{
+			for (String regex : readPatterns(filename))
+			{
+				if (RegexPattern.compile(regex, true).isLinear())
+				{
+					linear++;
+				}
+				for (String text : texts)
+				{
+					assertSameMatches(regex, text);
+				}
+			}
+		}
+		assertTrue(linear > 0);
+	}
+
+	@Test(timeout = 10000)
+	public void testPathological()
+	{
+		StringBuilder s = new StringBuilder();
+		for (int i = 0; i < 50000; i++)
+		{
+			s.append('a');
+		}
+		RegexPattern pat = RegexPattern.compile("(a+)+b", true);
+		assertTrue(pat.isLinear());
+		assertFalse(pat.matcher(s).find());
+		pat = RegexPattern.compile("(a|aa)+$", true);
+		s.append('!');
+		assertFalse(pat.matcher(s).find(0));
+	}
+
+	@Test(timeout = 10000)
+	public void testSurrogates()
+	{
+		String emoji = "\uD83D\uDE00";
+		assertSameMatches(".", "a" + emoji + "b\uDE00\uD83D");
+		assertSameMatches("[^a]+|\\W", emoji + "a" + emoji + emoji + "!");
+		assertSameMatches("\\b\\w+\\b", "x" + emoji + "yz \uD835\uDC00b");
+		assertSameMatches("\\uDE00|a.", "a" + emoji + emoji);
+		assertFalse(RegexPattern.compile("\\uD83D\\uDE00", true).isLinear());
+		StringBuilder s = new StringBuilder(emoji);
+		for (int i = 0; i < 50000; i++)
+		{
+			s.append('a');
+		}
+		s.append('!');
+		Deadline previous = Deadline.setCurrent(Deadline.after(5000));
+		try
+		{
+			// Still evaluated in linear time, through the deadline
+			RegexPattern pat = RegexPattern.compile("(a|aa)+$", true);
+			assertTrue(pat.isLinear());
+			assertFalse(pat.matcher(Deadline.current().wrap(s)).find(0));
+			// A pattern that falls back reads the text through the deadline
+			Deadline.setCurrent(Deadline.after(100));
+			pat = RegexPattern.compile("(a|aa)+\\1$", true);
+			assertFalse(pat.isLinear());
+			pat.matcher(Deadline.current().wrap(s.substring(0, 100) + "!")).find(0);
+			fail("Deadline was not enforced");
+		}
+		catch (Deadline.DeadlineExceededException e)
+		{
+			// Expected
+		}
+		finally
+		{
+			Deadline.setCurrent(previous);
+		}
+	}
+
+	@Test
+	public void testNullableLoops()
+	{
+		assertFalse(RegexPattern.compile("(?:([^a]?|a))*", true).isLinear());
+		assertFalse(RegexPattern.compile("(a|\\b)+", true).isLinear());
+		assertFalse(RegexPattern.compile("(a?){2,}", true).isLinear());
+		assertTrue(RegexPattern.compile("(a?)?b*", true).isLinear());
+		assertSameMatches("(?:([^a]?|a))*", "_ 1__a1b\\b");
+	}
+
+	@Test(timeout = 60000)
+	public void testDifferential()
+	{
+		Random random = new Random(42);
+		String[] texts = {"_ 1__a1b\\b", "ab ba\r\n", "ba \uD83D\uDE00a!", ""};
+		int linear = 0;
+		for (int i = 0; i < 3000; i++)
+		{
+			String regex = randomPattern(random, 2);
+			if (RegexPattern.compile(regex, true).isLinear())
+			{
+				linear++;
+			}
+			for (String text : texts)
+			{
+				assertSameMatches(regex, text);
+			}
+		}
+		assertTrue(linear > 1000);
+	}
+
+	@Test
+	public void testFallback()
+	{
+		RegexPattern pat = RegexPattern.compile("(?<!\\\\)(a)\\1", true);
+		assertFalse(pat.isLinear());
+		assertTrue(RegexPattern.getFallbacks().contains("(?<!\\\\)(a)\\1"));
+		RegexMatcher mat = pat.matcher("\\aa aa");
+		assertTrue(mat.find());
+		assertEquals(4, mat.start());
+	}
+
+	@Test
+	public void testReplacement()
+	{
+		RegexMatcher mat = RegexPattern.compile("(\\w+)@(\\w+)", true).matcher("me@home");
+		assertTrue(mat.find());
+		assertEquals("home at me \\$1", RegexPattern.expandReplacement(mat, "$2 at $1 \\\\\\$1"));
+	}
+
+	/**
+	 * Checks that the linear-time engine finds the same successive matches
+	 * and groups as <tt>java.util.regex</tt>
+	 * @param regex The pattern
+	 * @param text The text to search
+	 */
+	protected static void assertSameMatches(String regex, String text)
+	{
+		Matcher expected = Pattern.compile(regex).matcher(text);
+		RegexMatcher actual = RegexPattern.compile(regex, true).matcher(text);
+		int pos = 0;
+		while (pos <= text.length())
+		{
+			boolean found = expected.find(pos);
+			assertEquals(regex + " at " + pos, found, actual.find(pos));
+			if (!found)
+			{
+				break;
+			}
+			assertEquals(regex, expected.start(), actual.start());
+			assertEquals(regex, expected.end(), actual.end());
+			assertEquals(regex, expected.groupCount(), actual.groupCount());
+			for (int i = 0; i <= expected.groupCount(); i++)
+			{
+				assertEquals(regex + " group " + i, expected.group(i), actual.group(i));
+			}
+			pos = expected.end() == expected.start() ? expected.end() + 1 : expected.end();
+		}
+	}
+
+	/**
+	 * Generates a random pattern on a small alphabet
+	 * @param random The source of randomness
+	 * @param depth The maximum nesting of the pattern
+	 * @return The pattern
+	 */
+	protected static String randomPattern(Random random, int depth)
+	{
+		StringBuilder out = new StringBuilder();
+		int length = 1 + random.nextInt(3);
+		for (int i = 0; i < length; i++)
+		{
+			int kind = random.nextInt(depth > 0 ? 10 : 7);
+			switch (kind)
+			{
+			case 0:
+				out.append("[^a]");
+				break;
+			case 1:
+				out.append(".");
+				break;
+			case 2:
+				out.append(random.nextBoolean() ? "\\b" : "$");
+				break;
+			case 3:
+				out.append("\\w");
+				break;
+			case 4:
+			case 5:
+			case 6:
+				out.append("ab ".charAt(random.nextInt(3)));
+				break;
+			case 7:
+				out.append("(?:").append(randomPattern(random, depth - 1)).append(")");
+				break;
+			default:
+				out.append("(").append(randomPattern(random, depth - 1));
+				if (random.nextBoolean())
+				{
+					out.append("|").append(randomPattern(random, depth - 1));
+				}
+				out.append(")");
+				break;
+			}
+			String[] quantifiers = {"", "", "", "*", "+", "?", "{1,2}", "{2}", "*?", "+?", "??"};
+			out.append(quantifiers[random.nextInt(quantifiers.length)]);
+		}
+		return out.toString();
+	}
+
+	protected static List<String> readPatterns(String filename)
+	{
+		List<String> patterns = new ArrayList<String>();
+		Scanner scanner = new Scanner(Main.class.getResourceAsStream(filename));
+		while (scanner.hasNextLine())
+		{
+			String line = scanner.nextLine();
+			if (line.trim().isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+			String[] parts = line.split("\\t+");
+			if (parts.length >= 3)
+			{
+				patterns.add(parts[1]);
+			}
+		}
+		scanner.close();
+		return patterns;
+	}
+
+	protected static String read(String resource)
+	{
+		InputStream is = LinearRegexTest.class.getResourceAsStream(resource);
+		Scanner scanner = new Scanner(is, "UTF-8").useDelimiter("\\A");
+		String s = scanner.hasNext() ? scanner.next() : "";
+		scanner.close();
+		return s;
+	}
+}
@@ -0,0 +1,104 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+import ca.uqac.lif.json.JsonList;
+import ca.uqac.lif.json.JsonMap;
+import ca.uqac.lif.json.JsonNumber;
+import ca.uqac.lif.json.JsonString;
+
+public class MetricRegistryTest
+{
+	@Test
+	public void testCounter()
+	{
+		MetricRegistry metrics = new MetricRegistry();
+		metrics.counter("requests_total", "Requests", "result", "hit").increment();
+		metrics.counter("requests_total", "Requests", "result", "hit").add(2);
+		metrics.counter("requests_total", "Requests", "result", "miss").increment();
+		assertEquals(3, metrics.counter("requests_total", "Requests", "result", "hit").get());
+		assertEquals(1, metrics.counter("requests_total", "Requests", "result", "miss").get());
+		String text = print(metrics);
+		assertTrue(text.contains("# TYPE requests_total counter"));
+		assertTrue(text.contains("requests_total{result=\"hit\"} 3\n"));
+		assertTrue(text.contains("requests_total{result=\"miss\"} 1\n"));
+	}
+
+	@Test
+	public void testHistogram()
+	{
+		MetricRegistry metrics = new MetricRegistry();
+		MetricRegistry.Histogram h = metrics.histogram("duration_seconds", "Duration", "rule", "a\"b");
+		h.observe(0.002);
+		h.observeNanos(3000000000L);
+		h.observe(100);
+		assertEquals(3, h.getCount());
+		assertEquals(103.002, h.getSum(), 1e-9);
+		String text = print(metrics);
+		assertTrue(text.contains("duration_seconds_bucket{rule=\"a\\\"b\",le=\"0.001\"} 0\n"));
+		assertTrue(text.contains("duration_seconds_bucket{rule=\"a\\\"b\",le=\"0.005\"} 1\n"));
+		assertTrue(text.contains("duration_seconds_bucket{rule=\"a\\\"b\",le=\"5\"} 2\n"));
+		assertTrue(text.contains("duration_seconds_bucket{rule=\"a\\\"b\",le=\"+Inf\"} 3\n"));
+		assertTrue(text.contains("duration_seconds_count{rule=\"a\\\"b\"} 3\n"));
+		JsonMap json = metrics.toJson();
+		JsonMap family = (JsonMap) json.get("duration_seconds");
+		assertEquals("histogram", ((JsonString) family.get("type")).stringValue());
+		JsonMap value = (JsonMap) ((JsonList) family.get("values")).get(0);
+		assertEquals("a\"b", ((JsonString) ((JsonMap) value.get("labels")).get("rule")).stringValue());
+		assertEquals(3, ((JsonNumber) value.get("count")).numberValue().intValue());
+	}
+
+	@Test
+	public void testGauge()
+	{
+		MetricRegistry metrics = new MetricRegistry();
+		metrics.gauge("queue_depth", "Queue depth", new MetricRegistry.Gauge()
+		{
+			@Override
+			public double getValue()
+			{
+				return 4;
+			}
+		});
+		assertTrue(print(metrics).contains("queue_depth 4\n"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongType()
+	{
+		MetricRegistry metrics = new MetricRegistry();
+		metrics.counter("foo", "Foo");
+		metrics.histogram("foo", "Foo");
+	}
+
+	protected static String print(MetricRegistry metrics)
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		PrintStream ps = new PrintStream(baos);
+		metrics.printPrometheus(ps);
+		ps.flush();
+		return baos.toString();
+	}
+}
@@ -0,0 +1,74 @@
+/*
+    TeXtidote, a linter for LaTeX documents
+    Copyright (C) 2018-2023  Sylvain Hallé
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+package ca.uqac.lif.util;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class ProfilerTest
+{
+	@Test
+	public void testDisabled()
+	{
+		Profiler.setEnabled(false);
+		Profiler.reset();
+		Profiler.Sample s = Profiler.start("foo");
+		assertNull(s);
+		Profiler.stop(s);
+		assertTrue(Profiler.getSections().isEmpty());
+	}
+
+	@Test
+	public void testNested() throws InterruptedException
+	{
+		Profiler.reset();
+		Profiler.setEnabled(true);
+		try
+		{
+			for (int i = 0; i < 2; i++)
+			{
+				Profiler.Sample outer = Profiler.start("outer");
+				Profiler.Sample inner = Profiler.start("rule", "inner");
+				Thread.sleep(20);
+				Profiler.stop(inner);
+				Profiler.stop(outer);
+			}
+			List<Profiler.Section> sections = Profiler.getSections();
+			assertEquals(2, sections.size());
+			// Sorted by decreasing self time
+			Profiler.Section inner = sections.get(0);
+			Profiler.Section outer = sections.get(1);
+			assertEquals("rule:inner", inner.getName());
+			assertEquals("outer", outer.getName());
+			assertEquals(2, inner.getCalls());
+			assertEquals(2, outer.getCalls());
+			assertTrue(inner.getSelfWallTime() >= 40000000L);
+			assertTrue(outer.getWallTime() >= inner.getWallTime());
+			assertEquals(outer.getWallTime() - inner.getWallTime(), outer.getSelfWallTime());
+			assertEquals(2, Profiler.toJson().size());
+		}
+		finally
+		{
+			Profiler.setEnabled(false);
+			Profiler.reset();
+		}
+	}
+}